@@ -10,6 +10,7 @@ import androidx.test.platform.app.InstrumentationRegistry
 import org.junit.Assert.assertEquals
 import org.junit.Assert.assertNotEquals
 import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
 import org.junit.Rule
 import org.junit.Test
 import org.junit.runner.RunWith
@@ -128,6 +129,27 @@ class DatabaseMigrationTest {
             Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_12,
+            true,
+            Migrations.MIGRATION_11_12
+        )
+
         val migratedDatabaseV3 = getMigratedDatabase()
         val listFromDB = migratedDatabaseV3.streamDAO().getAll().blockingFirst()
 
@@ -224,6 +246,27 @@ class DatabaseMigrationTest {
             Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_12,
+            true,
+            Migrations.MIGRATION_11_12
+        )
+
         val migratedDatabaseV8 = getMigratedDatabase()
         val listFromDB = migratedDatabaseV8.searchHistoryDAO().getAll().blockingFirst()
 
@@ -296,6 +339,27 @@ class DatabaseMigrationTest {
             Migrations.MIGRATION_8_9
         )
 
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
+        testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_12,
+            true,
+            Migrations.MIGRATION_11_12
+        )
+
         val migratedDatabaseV9 = getMigratedDatabase()
         var localListFromDB = migratedDatabaseV9.playlistDAO().getAll().blockingFirst()
         var remoteListFromDB = migratedDatabaseV9.playlistRemoteDAO().getAll().blockingFirst()
@@ -337,6 +401,109 @@ class DatabaseMigrationTest {
         assertEquals(-1, remoteListFromDB[1].displayIndex)
     }
 
+    @Test
+    fun migrateDatabaseFrom9to10() {
+        val databaseInV9 = testHelper.createDatabase(AppDatabase.DATABASE_NAME, Migrations.DB_VER_9)
+        databaseInV9.close()
+
+        val migratedDatabaseV10 = testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_10,
+            true,
+            Migrations.MIGRATION_9_10
+        )
+
+        migratedDatabaseV10.query(
+            "SELECT name FROM sqlite_master WHERE type = 'index' AND tbl_name = 'streams'"
+        ).use { cursor ->
+            val indices = generateSequence { if (cursor.moveToNext()) cursor.getString(0) else null }
+                .toList()
+            assertTrue(indices.contains("index_streams_upload_date"))
+        }
+    }
+
+    @Test
+    fun migrateDatabaseFrom10to11() {
+        val databaseInV10 = testHelper.createDatabase(AppDatabase.DATABASE_NAME, Migrations.DB_VER_10)
+        databaseInV10.run {
+            insert(
+                "subscriptions", SQLiteDatabase.CONFLICT_FAIL,
+                ContentValues().apply {
+                    put("uid", 1)
+                    put("service_id", DEFAULT_SERVICE_ID)
+                    put("url", DEFAULT_URL)
+                    put("name", DEFAULT_NAME)
+                    put("notification_mode", 0)
+                }
+            )
+            insert(
+                "feed_last_updated", SQLiteDatabase.CONFLICT_FAIL,
+                ContentValues().apply {
+                    put("subscription_id", 1)
+                    put("last_updated", 0)
+                }
+            )
+            close()
+        }
+
+        val migratedDatabaseV11 = testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_11,
+            true,
+            Migrations.MIGRATION_10_11
+        )
+
+        migratedDatabaseV11.query(
+            "SELECT etag, last_modified, content_hash FROM feed_last_updated"
+        ).use { cursor ->
+            assertTrue(cursor.moveToFirst())
+            assertTrue(cursor.isNull(0))
+            assertTrue(cursor.isNull(1))
+            assertTrue(cursor.isNull(2))
+        }
+    }
+
+    @Test
+    fun migrateDatabaseFrom11to12() {
+        val databaseInV11 = testHelper.createDatabase(AppDatabase.DATABASE_NAME, Migrations.DB_VER_11)
+        databaseInV11.run {
+            insert(
+                "streams", SQLiteDatabase.CONFLICT_FAIL,
+                ContentValues().apply {
+                    put("uid", 1)
+                    put("service_id", DEFAULT_SERVICE_ID)
+                    put("url", DEFAULT_URL)
+                    put("title", DEFAULT_TITLE)
+                    put("stream_type", DEFAULT_TYPE.name)
+                    put("duration", DEFAULT_DURATION)
+                    put("uploader", DEFAULT_UPLOADER_NAME)
+                }
+            )
+            close()
+        }
+
+        val migratedDatabaseV12 = testHelper.runMigrationsAndValidate(
+            AppDatabase.DATABASE_NAME,
+            Migrations.DB_VER_12,
+            true,
+            Migrations.MIGRATION_11_12
+        )
+
+        // the existing streams are candidates, and the triggers record the new ones
+        migratedDatabaseV12.execSQL(
+            "INSERT INTO streams (uid, service_id, url, title, stream_type, duration, uploader) " +
+                "VALUES (2, $DEFAULT_SERVICE_ID, '$DEFAULT_SECOND_URL', '$DEFAULT_TITLE', " +
+                "'${DEFAULT_TYPE.name}', $DEFAULT_DURATION, '$DEFAULT_UPLOADER_NAME')"
+        )
+        migratedDatabaseV12.query(
+            "SELECT stream_id FROM stream_orphan_candidates ORDER BY stream_id"
+        ).use { cursor ->
+            val candidates = generateSequence { if (cursor.moveToNext()) cursor.getLong(0) else null }
+                .toList()
+            assertEquals(listOf(1L, 2L), candidates)
+        }
+    }
+
     private fun getMigratedDatabase(): AppDatabase {
         val database: AppDatabase = Room.databaseBuilder(
             ApplicationProvider.getApplicationContext(),
@@ -55,7 +55,7 @@ class FeedDAOTest {
         db = Room.inMemoryDatabaseBuilder(
             context,
             AppDatabase::class.java
-        ).build()
+        ).addCallback(AppDatabase.CALLBACK).build()
         feedDAO = db.feedDAO()
         streamDAO = db.streamDAO()
         subscriptionDAO = db.subscriptionDAO()
@@ -74,9 +74,11 @@ class FeedDAOTest {
             FeedGroupEntity.GROUP_ALL_ID,
             includePlayed = true,
             includePartiallyPlayed = true,
-            null
+            null,
+            null,
+            null,
+            100
         )
-            .blockingGet()
         val allowedStreams = listOf(stream3, stream5, stream6, stream7)
         assertEqual(streams, allowedStreams)
     }
@@ -88,13 +90,56 @@ class FeedDAOTest {
             FeedGroupEntity.GROUP_ALL_ID,
             includePlayed = true,
             includePartiallyPlayed = true,
-            null
+            null,
+            null,
+            null,
+            100
         )
-            .blockingGet()
         val allowedStreams = listOf(stream3, stream4, stream5, stream6, stream7)
         assertEqual(streams, allowedStreams)
     }
 
+    @Test
+    fun testDeleteOrphanCandidates() {
+        setupUnlinkDelete("2023-08-15T00:00:00Z")
+        // only the unlinked streams are deleted, and the candidates are consumed
+        assertEquals(
+            listOf(stream3, stream5, stream6, stream7),
+            streamDAO.getAll().blockingFirst().sortedBy { it.uid }
+        )
+        assertEquals(0, streamDAO.deleteOrphanCandidates())
+
+        feedDAO.deleteAll()
+        assertEquals(4, streamDAO.deleteOrphanCandidates())
+    }
+
+    @Test
+    fun testGetStreams_Pages() {
+        clearAndFillTables()
+        val pages = mutableListOf<List<StreamWithState>>()
+        var last: StreamWithState? = null
+        do {
+            val page = feedDAO.getStreams(
+                FeedGroupEntity.GROUP_ALL_ID,
+                includePlayed = true,
+                includePartiallyPlayed = true,
+                null,
+                last?.stream?.uploadDate,
+                last?.stream?.uid,
+                2
+            )
+            pages.add(page)
+            last = page.lastOrNull()
+        } while (page.size == 2)
+
+        assertEquals(listOf(2, 2, 2, 1), pages.map { it.size })
+        // newest first, streams with the same upload date are sorted by uid
+        assertEquals(
+            listOf(stream6, stream5, stream7, stream4, stream3, stream2, stream1),
+            pages.flatten().map { it.stream }
+        )
+    }
+
     private fun assertEqual(streams: List<StreamWithState>?, allowedStreams: List<StreamEntity>) {
         assertNotNull(streams)
         assertEquals(
@@ -112,7 +157,7 @@ class FeedDAOTest {
             feedDAO.unlinkStreamsOlderThan(OffsetDateTime.parse(time))
         }.blockingSubscribe()
         Single.fromCallable {
-            streamDAO.deleteOrphans()
+            streamDAO.deleteOrphanCandidates()
         }.blockingSubscribe()
     }
 
@@ -34,6 +34,7 @@ import org.schabi.newpipe.extractor.services.youtube.extractors.YoutubeStreamExt
 import org.schabi.newpipe.ktx.hasAssignableCause
 import org.schabi.newpipe.settings.NewPipeSettings
 import org.schabi.newpipe.util.BridgeStateSaverInitializer
+import org.schabi.newpipe.util.InfoCache
 import org.schabi.newpipe.util.Localization
 import org.schabi.newpipe.util.ServiceHelper
 import org.schabi.newpipe.util.StateSaver
@@ -105,6 +106,7 @@ open class App :
 
         BridgeStateSaverInitializer.init(this)
         StateSaver.init(this)
+        InfoCache.init(this)
         initNotificationChannels()
 
         ServiceHelper.initServices(this)
@@ -136,7 +138,7 @@ open class App :
         }.build()
 
     protected open fun getDownloader(): Downloader {
-        val downloader = DownloaderImpl.init(null)
+        val downloader = DownloaderImpl.init(null, this)
         setCookiesToDownloader(downloader)
         return downloader
     }
@@ -146,6 +148,7 @@ open class App :
         val key = getString(R.string.recaptcha_cookies_key)
         downloader.setCookie(ReCaptchaActivity.RECAPTCHA_COOKIES_KEY, prefs.getString(key, null))
         downloader.updateYoutubeRestrictedModeCookies(this)
+        downloader.updateHttpCacheEnabled(this)
     }
 
     private fun configureRxJavaErrorHandler() {
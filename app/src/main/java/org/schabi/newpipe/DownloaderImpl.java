@@ -4,6 +4,7 @@ import android.content.Context;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import androidx.preference.PreferenceManager;
 
 import org.schabi.newpipe.error.ReCaptchaActivity;
@@ -13,7 +14,12 @@ import org.schabi.newpipe.extractor.downloader.Response;
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException;
 import org.schabi.newpipe.util.InfoCache;
 
+import java.io.Closeable;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -23,9 +29,16 @@ import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Dispatcher;
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
 import okhttp3.RequestBody;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.HashingSource;
+import okio.Okio;
 
 public final class DownloaderImpl extends Downloader {
     public static final String USER_AGENT =
@@ -35,19 +48,55 @@ public final class DownloaderImpl extends Downloader {
     public static final String YOUTUBE_RESTRICTED_MODE_COOKIE = "PREF=f2=8000000";
     public static final String YOUTUBE_DOMAIN = "youtube.com";
 
+    private static final String HTTP_CACHE_DIR_NAME = "okhttp";
+    private static final long HTTP_CACHE_SIZE_BYTES = 32 * 1024 * 1024;
+    /**
+     * The responses of these hosts are never cached, even if the HTTP cache is enabled: they
+     * serve the media, which would evict everything else from the cache.
+     */
+    private static final List<String> UNCACHED_HOSTS = List.of("googlevideo.com", "sndcdn.com");
+
+    private static final int MAX_IDLE_CONNECTIONS = 10;
+    private static final long KEEP_ALIVE_MINUTES = 5;
+    /**
+     * Limits of the asynchronous requests, e.g. the ones of the image loader. The synchronous
+     * ones made by the extractor are only limited by the threads running them.
+     */
+    private static final int MAX_REQUESTS = 64;
+    private static final int MAX_REQUESTS_PER_HOST = 10;
+
     private static DownloaderImpl instance;
     private final Map<String, String> mCookies;
     private final OkHttpClient client;
+    /**
+     * The same as {@link #client}, sharing its connections, with the HTTP cache.
+     */
+    @Nullable
+    private final OkHttpClient cachingClient;
+    private volatile boolean httpCacheEnabled;
+    private final ThreadLocal<Revalidation> revalidation = new ThreadLocal<>();
+
+    @VisibleForTesting
+    DownloaderImpl(final OkHttpClient.Builder builder, @Nullable final File httpCacheDirectory) {
+        final Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(MAX_REQUESTS);
+        dispatcher.setMaxRequestsPerHost(MAX_REQUESTS_PER_HOST);
 
-    private DownloaderImpl(final OkHttpClient.Builder builder) {
         this.client = builder
                 .readTimeout(30, TimeUnit.SECONDS)
-//                .cache(new Cache(new File(context.getExternalCacheDir(), "okhttp"),
-//                        16 * 1024 * 1024))
+                .connectionPool(new ConnectionPool(
+                        MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .build();
+        this.cachingClient = httpCacheDirectory == null ? null : client.newBuilder()
+                .cache(new Cache(httpCacheDirectory, HTTP_CACHE_SIZE_BYTES))
                 .build();
         this.mCookies = new HashMap<>();
     }
 
+    /**
+     * @return the client without the HTTP cache, e.g. for the image loader, which has its own
+     */
     @NonNull
     public OkHttpClient getClient() {
         return client;
@@ -57,11 +106,14 @@ public final class DownloaderImpl extends Downloader {
      * It's recommended to call exactly once in the entire lifetime of the application.
      *
      * @param builder if null, default builder will be used
+     * @param context if null, the HTTP cache can not be enabled
      * @return a new instance of {@link DownloaderImpl}
      */
-    public static DownloaderImpl init(@Nullable final OkHttpClient.Builder builder) {
+    public static DownloaderImpl init(@Nullable final OkHttpClient.Builder builder,
+                                      @Nullable final Context context) {
         instance = new DownloaderImpl(
-                builder != null ? builder : new OkHttpClient.Builder());
+                builder != null ? builder : new OkHttpClient.Builder(),
+                context != null ? new File(context.getCacheDir(), HTTP_CACHE_DIR_NAME) : null);
         return instance;
     }
 
@@ -111,6 +163,25 @@ public final class DownloaderImpl extends Downloader {
         InfoCache.getInstance().clearCache();
     }
 
+    public void updateHttpCacheEnabled(final Context context) {
+        setHttpCacheEnabled(PreferenceManager.getDefaultSharedPreferences(context)
+                .getBoolean(context.getString(R.string.enable_http_cache_key), false));
+    }
+
+    @VisibleForTesting
+    void setHttpCacheEnabled(final boolean enabled) {
+        httpCacheEnabled = enabled;
+    }
+
+    /**
+     * Removes all the responses from the HTTP cache. This does disk I/O.
+     */
+    public void clearHttpCache() throws IOException {
+        if (cachingClient != null) {
+            Objects.requireNonNull(cachingClient.cache()).evictAll();
+        }
+    }
+
     /**
      * Get the size of the content that the url is pointing by firing a HEAD request.
      *
@@ -128,12 +199,113 @@ public final class DownloaderImpl extends Downloader {
         }
     }
 
+    /**
+     * Makes the next GET request of the current thread conditional, using the validators of a
+     * previous response of the same resource. If the server answers that the resource has not
+     * changed, or its content has the same hash, the request throws a
+     * {@link NotModifiedException} instead of returning the response, so that the caller can skip
+     * parsing it. {@link #endRevalidation()} must be called afterwards on the same thread.
+     *
+     * @param validators the validators of the previous response, or null to only collect the
+     *                   validators of the new one
+     */
+    public void startRevalidation(@Nullable final Validators validators) {
+        revalidation.set(new Revalidation(validators));
+    }
+
+    /**
+     * Ends the revalidation started by {@link #startRevalidation(Validators)}.
+     *
+     * @return the validators of the response, the previous ones if it was not modified, or null
+     * if no successful GET request was made
+     */
+    @Nullable
+    public Validators endRevalidation() {
+        final Revalidation current = revalidation.get();
+        revalidation.remove();
+        return current == null ? null : current.result;
+    }
+
     @Override
     public Response execute(@NonNull final Request request)
             throws IOException, ReCaptchaException {
-        final String httpMethod = request.httpMethod();
+        final okhttp3.Request.Builder requestBuilder = buildRequest(request);
+
+        // only the first GET request is revalidated, the others are not the resource itself
+        final Revalidation pending = revalidation.get();
+        final Revalidation conditional = pending != null && !pending.done
+                && "GET".equals(request.httpMethod()) ? pending : null;
+        if (conditional != null) {
+            conditional.done = true;
+            if (conditional.previous != null) {
+                if (conditional.previous.etag != null) {
+                    requestBuilder.header("If-None-Match", conditional.previous.etag);
+                }
+                if (conditional.previous.lastModified != null) {
+                    requestBuilder.header("If-Modified-Since", conditional.previous.lastModified);
+                }
+            }
+        }
+
+        final String url = request.url();
+        try (okhttp3.Response response = call(requestBuilder.build())) {
+            if (conditional != null && conditional.previous != null && response.code() == 304) {
+                conditional.result = conditional.previous;
+                throw new NotModifiedException(url);
+            }
+
+            final String responseBodyToReturn;
+            try (ResponseBody body = response.body()) {
+                if (conditional != null && response.isSuccessful()) {
+                    // hash the body while reading it, instead of copying the whole string again
+                    final HashingSource hashingSource = HashingSource.sha256(body.source());
+                    try (BufferedSource source = Okio.buffer(hashingSource)) {
+                        responseBodyToReturn = source.readString(charsetOf(body));
+                    }
+                    conditional.result = new Validators(response.header("ETag"),
+                            response.header("Last-Modified"), hashingSource.hash().base64());
+                    if (conditional.previous != null && conditional.result.contentHash
+                            .equals(conditional.previous.contentHash)) {
+                        throw new NotModifiedException(url);
+                    }
+                } else {
+                    responseBodyToReturn = body.string();
+                }
+            }
+
+            final String latestUrl = response.request().url().toString();
+            return new Response(
+                    response.code(),
+                    response.message(),
+                    response.headers().toMultimap(),
+                    responseBodyToReturn,
+                    latestUrl);
+        }
+    }
+
+    /**
+     * Like {@link #execute(Request)}, but the body is not read into a {@link String}: it can be
+     * read as a stream from the returned response, which must be closed. Use this for large
+     * bodies which can be parsed incrementally.
+     */
+    @NonNull
+    public StreamingResponse executeStreaming(@NonNull final Request request)
+            throws IOException, ReCaptchaException {
+        return new StreamingResponse(call(buildRequest(request).build()));
+    }
+
+    /**
+     * @see #executeStreaming(Request)
+     */
+    @NonNull
+    public StreamingResponse getStreaming(@NonNull final String url)
+            throws IOException, ReCaptchaException {
+        return executeStreaming(Request.newBuilder().get(url).build());
+    }
+
+    @NonNull
+    private okhttp3.Request.Builder buildRequest(@NonNull final Request request) {
         final String url = request.url();
-        final Map<String, List<String>> headers = request.headers();
         final byte[] dataToSend = request.dataToSend();
 
         RequestBody requestBody = null;
@@ -142,7 +314,7 @@ public final class DownloaderImpl extends Downloader {
         }
 
         final okhttp3.Request.Builder requestBuilder = new okhttp3.Request.Builder()
-                .method(httpMethod, requestBody)
+                .method(request.httpMethod(), requestBody)
                 .url(url)
                 .addHeader("User-Agent", USER_AGENT);
 
@@ -151,31 +323,143 @@ public final class DownloaderImpl extends Downloader {
             requestBuilder.addHeader("Cookie", cookies);
         }
 
-        headers.forEach((headerName, headerValueList) -> {
+        request.headers().forEach((headerName, headerValueList) -> {
             requestBuilder.removeHeader(headerName);
             headerValueList.forEach(headerValue ->
                     requestBuilder.addHeader(headerName, headerValue));
         });
+        return requestBuilder;
+    }
 
-        try (
-                okhttp3.Response response = client.newCall(requestBuilder.build()).execute()
-        ) {
-            if (response.code() == 429) {
-                throw new ReCaptchaException("reCaptcha Challenge requested", url);
-            }
+    @NonNull
+    private okhttp3.Response call(@NonNull final okhttp3.Request request)
+            throws IOException, ReCaptchaException {
+        final okhttp3.Response response = clientFor(request).newCall(request).execute();
+        if (response.code() == 429) {
+            response.close();
+            throw new ReCaptchaException("reCaptcha Challenge requested",
+                    request.url().toString());
+        }
+        return response;
+    }
 
-            String responseBodyToReturn = null;
-            try (ResponseBody body = response.body()) {
-                responseBodyToReturn = body.string();
+    @VisibleForTesting
+    @NonNull
+    OkHttpClient clientFor(@NonNull final okhttp3.Request request) {
+        if (cachingClient == null || !httpCacheEnabled) {
+            return client;
+        }
+
+        final String host = request.url().host();
+        for (final String uncachedHost : UNCACHED_HOSTS) {
+            if (host.equals(uncachedHost) || host.endsWith("." + uncachedHost)) {
+                return client;
             }
+        }
+        return cachingClient;
+    }
 
-            final String latestUrl = response.request().url().toString();
-            return new Response(
-                    response.code(),
-                    response.message(),
-                    response.headers().toMultimap(),
-                    responseBodyToReturn,
-                    latestUrl);
+    @NonNull
+    private static Charset charsetOf(@NonNull final ResponseBody body) {
+        final MediaType contentType = body.contentType();
+        final Charset charset = contentType == null ? null : contentType.charset(null);
+        return charset == null ? StandardCharsets.UTF_8 : charset;
+    }
+
+    /**
+     * A response whose body has not been read yet, see {@link #executeStreaming(Request)}.
+     */
+    public static final class StreamingResponse implements Closeable {
+        @NonNull
+        private final okhttp3.Response response;
+
+        private StreamingResponse(@NonNull final okhttp3.Response response) {
+            this.response = response;
+        }
+
+        public int responseCode() {
+            return response.code();
+        }
+
+        @NonNull
+        public String responseMessage() {
+            return response.message();
+        }
+
+        @Nullable
+        public String getHeader(@NonNull final String name) {
+            return response.header(name);
+        }
+
+        /**
+         * @return the URL of the response, after the redirects
+         */
+        @NonNull
+        public String latestUrl() {
+            return response.request().url().toString();
+        }
+
+        /**
+         * @return the body, which can only be read once
+         */
+        @NonNull
+        public InputStream byteStream() {
+            return response.body().byteStream();
+        }
+
+        /**
+         * @return the whole body, which can only be read once
+         */
+        @NonNull
+        public byte[] bytes() throws IOException {
+            return response.body().bytes();
+        }
+
+        @Override
+        public void close() {
+            response.close();
+        }
+    }
+
+    /**
+     * The validators of a response, which allow to check whether the resource changed since.
+     */
+    public static final class Validators {
+        @Nullable
+        public final String etag;
+        @Nullable
+        public final String lastModified;
+        @Nullable
+        public final String contentHash;
+
+        public Validators(@Nullable final String etag,
+                          @Nullable final String lastModified,
+                          @Nullable final String contentHash) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentHash = contentHash;
+        }
+    }
+
+    /**
+     * Thrown by a revalidated request when the resource has not changed since the previous
+     * response, see {@link #startRevalidation(Validators)}.
+     */
+    public static final class NotModifiedException extends IOException {
+        public NotModifiedException(final String url) {
+            super("Not modified: " + url);
+        }
+    }
+
+    private static final class Revalidation {
+        @Nullable
+        final Validators previous;
+        @Nullable
+        Validators result;
+        boolean done;
+
+        Revalidation(@Nullable final Validators previous) {
+            this.previous = previous;
         }
     }
 }
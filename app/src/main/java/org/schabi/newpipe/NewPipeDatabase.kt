@@ -10,6 +10,8 @@ import android.content.Context
 import androidx.room.Room.databaseBuilder
 import kotlin.concurrent.Volatile
 import org.schabi.newpipe.database.AppDatabase
+import org.schabi.newpipe.database.Migrations.MIGRATION_10_11
+import org.schabi.newpipe.database.Migrations.MIGRATION_11_12
 import org.schabi.newpipe.database.Migrations.MIGRATION_1_2
 import org.schabi.newpipe.database.Migrations.MIGRATION_2_3
 import org.schabi.newpipe.database.Migrations.MIGRATION_3_4
@@ -18,6 +20,7 @@ import org.schabi.newpipe.database.Migrations.MIGRATION_5_6
 import org.schabi.newpipe.database.Migrations.MIGRATION_6_7
 import org.schabi.newpipe.database.Migrations.MIGRATION_7_8
 import org.schabi.newpipe.database.Migrations.MIGRATION_8_9
+import org.schabi.newpipe.database.Migrations.MIGRATION_9_10
 
 object NewPipeDatabase {
 
@@ -37,8 +40,11 @@ object NewPipeDatabase {
             MIGRATION_5_6,
             MIGRATION_6_7,
             MIGRATION_7_8,
-            MIGRATION_8_9
-        ).build()
+            MIGRATION_8_9,
+            MIGRATION_9_10,
+            MIGRATION_10_11,
+            MIGRATION_11_12
+        ).addCallback(AppDatabase.CALLBACK).build()
     }
 
     @JvmStatic
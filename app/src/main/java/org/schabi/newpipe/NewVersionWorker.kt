@@ -19,7 +19,7 @@ import androidx.work.workDataOf
 import com.grack.nanojson.JsonParser
 import com.grack.nanojson.JsonParserException
 import java.io.IOException
-import org.schabi.newpipe.extractor.downloader.Response
+import org.schabi.newpipe.DownloaderImpl.StreamingResponse
 import org.schabi.newpipe.extractor.exceptions.ReCaptchaException
 import org.schabi.newpipe.util.ReleaseVersionUtil
 
@@ -105,11 +105,10 @@ class NewVersionWorker(
         }
 
         // Make a network request to get latest NewPipe data.
-        val response = DownloaderImpl.getInstance().get(NEWPIPE_API_URL)
-        handleResponse(response)
+        DownloaderImpl.getInstance().getStreaming(NEWPIPE_API_URL).use { handleResponse(it) }
     }
 
-    private fun handleResponse(response: Response) {
+    private fun handleResponse(response: StreamingResponse) {
         val prefs = PreferenceManager.getDefaultSharedPreferences(applicationContext)
         try {
             // Store a timestamp which needs to be exceeded,
@@ -127,7 +126,7 @@ class NewVersionWorker(
         // Parse the json from the response.
         try {
             val newpipeVersionInfo = JsonParser.`object`()
-                .from(response.responseBody()).getObject("flavors")
+                .from(response.byteStream()).getObject("flavors")
                 .getObject("newpipe")
 
             val versionName = newpipeVersionInfo.getString("version")
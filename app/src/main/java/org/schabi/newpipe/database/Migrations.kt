@@ -8,6 +8,7 @@ package org.schabi.newpipe.database
 
 import android.util.Log
 import androidx.room.migration.Migration
+import androidx.sqlite.db.SupportSQLiteDatabase
 import org.schabi.newpipe.MainActivity
 
 object Migrations {
@@ -29,6 +30,9 @@ object Migrations {
     const val DB_VER_7 = 7
     const val DB_VER_8 = 8
     const val DB_VER_9 = 9
+    const val DB_VER_10 = 10
+    const val DB_VER_11 = 11
+    const val DB_VER_12 = 12
 
     private val TAG = Migrations::class.java.getName()
     private val isDebug = MainActivity.DEBUG
@@ -348,4 +352,51 @@ object Migrations {
             db.endTransaction()
         }
     }
+
+    val MIGRATION_9_10 = Migration(DB_VER_9, DB_VER_10) { db ->
+        // Lets the feed be read page by page in upload date order without sorting all streams
+        db.execSQL(
+            "CREATE INDEX IF NOT EXISTS `index_streams_upload_date` ON `streams` (`upload_date`)"
+        )
+    }
+
+    val MIGRATION_10_11 = Migration(DB_VER_10, DB_VER_11) { db ->
+        // Validators of the last feed response, to skip unchanged feeds
+        db.execSQL("ALTER TABLE `feed_last_updated` ADD COLUMN `etag` TEXT")
+        db.execSQL("ALTER TABLE `feed_last_updated` ADD COLUMN `last_modified` TEXT")
+        db.execSQL("ALTER TABLE `feed_last_updated` ADD COLUMN `content_hash` TEXT")
+    }
+
+    val MIGRATION_11_12 = Migration(DB_VER_11, DB_VER_12) { db ->
+        db.execSQL(
+            "CREATE TABLE IF NOT EXISTS `stream_orphan_candidates` " +
+                "(`stream_id` INTEGER NOT NULL, PRIMARY KEY(`stream_id`))"
+        )
+        createStreamOrphanTriggers(db)
+
+        // the orphans created before are only found by checking every stream once
+        db.execSQL("INSERT INTO stream_orphan_candidates (stream_id) SELECT uid FROM streams")
+    }
+
+    /**
+     * Creates the triggers which record the streams that may have become orphans, so that only
+     * those are checked after a feed refresh instead of the whole streams table. Room can not
+     * declare triggers, so this is also called when the database is created, see
+     * [AppDatabase.CALLBACK].
+     */
+    fun createStreamOrphanTriggers(db: SupportSQLiteDatabase) {
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS `stream_orphan_on_insert` AFTER INSERT ON `streams` " +
+                "BEGIN INSERT OR IGNORE INTO stream_orphan_candidates (stream_id) " +
+                "VALUES (NEW.uid); END"
+        )
+        for (table in listOf("feed", "stream_history", "playlist_stream_join")) {
+            db.execSQL(
+                "CREATE TRIGGER IF NOT EXISTS `stream_orphan_on_${table}_delete` " +
+                    "AFTER DELETE ON `$table` " +
+                    "BEGIN INSERT OR IGNORE INTO stream_orphan_candidates (stream_id) " +
+                    "VALUES (OLD.stream_id); END"
+            )
+        }
+    }
 }
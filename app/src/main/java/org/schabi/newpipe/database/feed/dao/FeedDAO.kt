@@ -1,5 +1,6 @@
 package org.schabi.newpipe.database.feed.dao
 
+import androidx.room.ColumnInfo
 import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
@@ -7,7 +8,6 @@ import androidx.room.Query
 import androidx.room.Transaction
 import androidx.room.Update
 import io.reactivex.rxjava3.core.Flowable
-import io.reactivex.rxjava3.core.Maybe
 import java.time.OffsetDateTime
 import org.schabi.newpipe.database.feed.model.FeedEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
@@ -23,75 +23,101 @@ abstract class FeedDAO {
     abstract fun deleteAll(): Int
 
     /**
+     * Gets a page of the feed streams. Streams without upload date (e.g. live streams) come
+     * first, sorted by uid, then the others sorted by upload date and uid, newest first.
+     *
+     * The page continues after the stream given by [afterUploadDate] and [afterUid], so each page
+     * is read with an index seek instead of sorting the whole feed.
+     *
      * @param groupId          the group id to get feed streams of; use
      *                         [FeedGroupEntity.GROUP_ALL_ID] to not filter by group
      * @param includePlayed    if false, only return all of the live, never-played or non-finished
      *                         feed streams (see `@see` items); if true no filter is applied
      * @param uploadDateBefore get only streams uploaded before this date (useful to filter out
      *                         future streams); use null to not filter by upload date
+     * @param afterUploadDate  the upload date of the last stream of the previous page
+     * @param afterUid         the uid of the last stream of the previous page; use null to get
+     *                         the first page
+     * @param limit            the maximum amount of streams to return
      * @return the feed streams filtered according to the conditions provided in the parameters
      * @see StreamStateEntity.isFinished()
      * @see StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS
      * @see StreamStateEntity.PLAYBACK_SAVE_THRESHOLD_START_MILLISECONDS
      */
+    @Transaction
+    open fun getStreams(
+        groupId: Long,
+        includePlayed: Boolean,
+        includePartiallyPlayed: Boolean,
+        uploadDateBefore: OffsetDateTime?,
+        afterUploadDate: OffsetDateTime?,
+        afterUid: Long?,
+        limit: Int
+    ): List<StreamWithState> {
+        if (afterUid != null && afterUploadDate != null) {
+            return getStreamsWithUploadDate(
+                groupId, includePlayed, includePartiallyPlayed, uploadDateBefore,
+                afterUploadDate, afterUid, limit
+            )
+        }
+
+        val streams = getStreamsWithoutUploadDate(
+            groupId, includePlayed, includePartiallyPlayed, afterUid, limit
+        )
+        if (streams.size >= limit) {
+            return streams
+        }
+
+        return streams + getStreamsWithUploadDate(
+            groupId, includePlayed, includePartiallyPlayed, uploadDateBefore,
+            null, null, limit - streams.size
+        )
+    }
+
     @Query(
         """
         SELECT s.*, sst.progress_time
-        FROM streams s
+        $FEED_STREAMS_FILTER
+        AND s.upload_date IS NULL
+        AND (:afterUid IS NULL OR s.uid < :afterUid)
 
-        LEFT JOIN stream_state sst
-        ON s.uid = sst.stream_id
-        
-        LEFT JOIN stream_history sh
-        ON s.uid = sh.stream_id
-        
-        INNER JOIN feed f
-        ON s.uid = f.stream_id
-
-        LEFT JOIN feed_group_subscription_join fgs
-        ON (
-            :groupId <> ${FeedGroupEntity.GROUP_ALL_ID}
-            AND fgs.subscription_id = f.subscription_id
-        )
+        ORDER BY s.uid DESC
+        LIMIT :limit
+        """
+    )
+    internal abstract fun getStreamsWithoutUploadDate(
+        groupId: Long,
+        includePlayed: Boolean,
+        includePartiallyPlayed: Boolean,
+        afterUid: Long?,
+        limit: Int
+    ): List<StreamWithState>
 
-        WHERE (
-            :groupId = ${FeedGroupEntity.GROUP_ALL_ID}
-            OR fgs.group_id = :groupId
-        )
-        AND (
-            :includePlayed
-            OR sh.stream_id IS NULL
-            OR sst.stream_id IS NULL
-            OR sst.progress_time < s.duration * 1000 - ${StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS}
-            OR sst.progress_time < s.duration * 1000 * 3 / 4
-            OR s.stream_type = 'LIVE_STREAM'
-            OR s.stream_type = 'AUDIO_LIVE_STREAM'
-        )
-        AND (
-            :includePartiallyPlayed
-            OR sh.stream_id IS NULL
-            OR sst.stream_id IS NULL
-            OR (sst.progress_time <= ${StreamStateEntity.PLAYBACK_SAVE_THRESHOLD_START_MILLISECONDS}
-            AND sst.progress_time <= s.duration * 1000 / 4)
-            OR (sst.progress_time >= s.duration * 1000 - ${StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS}
-            AND sst.progress_time >= s.duration * 1000 * 3 / 4)
-        )
+    @Query(
+        """
+        SELECT s.*, sst.progress_time
+        $FEED_STREAMS_FILTER
+        AND s.upload_date IS NOT NULL
+        AND (:uploadDateBefore IS NULL OR s.upload_date < :uploadDateBefore)
         AND (
-            :uploadDateBefore IS NULL
-            OR s.upload_date IS NULL
-            OR s.upload_date < :uploadDateBefore
+            :afterUid IS NULL
+            OR s.upload_date < :afterUploadDate
+            OR (s.upload_date = :afterUploadDate AND s.uid < :afterUid)
         )
 
-        ORDER BY s.upload_date IS NULL DESC, s.upload_date DESC, s.uploader ASC
-        LIMIT 500
+        ORDER BY s.upload_date DESC, s.uid DESC
+        LIMIT :limit
         """
     )
-    abstract fun getStreams(
+    internal abstract fun getStreamsWithUploadDate(
         groupId: Long,
         includePlayed: Boolean,
         includePartiallyPlayed: Boolean,
-        uploadDateBefore: OffsetDateTime?
-    ): Maybe<List<StreamWithState>>
+        uploadDateBefore: OffsetDateTime?,
+        afterUploadDate: OffsetDateTime?,
+        afterUid: Long?,
+        limit: Int
+    ): List<StreamWithState>
 
     /**
      * Remove links to streams that are older than the given date
@@ -234,4 +260,88 @@ abstract class FeedDAO {
         outdatedThreshold: OffsetDateTime,
         @NotificationMode notificationMode: Int
     ): Flowable<List<SubscriptionEntity>>
+
+    @Query("SELECT * FROM feed_last_updated")
+    abstract fun getAllLastUpdated(): List<FeedLastUpdatedEntity>
+
+    @Query("SELECT * FROM feed_last_updated WHERE subscription_id = :subscriptionId")
+    abstract fun getLastUpdated(subscriptionId: Long): FeedLastUpdatedEntity?
+
+    /**
+     * @return how many streams of every subscription are in the feed and the upload date of the
+     * oldest of them, which are used to predict when each channel uploads next
+     */
+    @Query(
+        """
+        SELECT f.subscription_id, COUNT(*) AS upload_count, MIN(s.upload_date) AS oldest_upload_date
+        FROM feed f
+
+        INNER JOIN streams s
+        ON s.uid = f.stream_id
+
+        WHERE s.upload_date IS NOT NULL
+
+        GROUP BY f.subscription_id
+        """
+    )
+    abstract fun getAllUploadStats(): List<SubscriptionUploadStats>
+
+    data class SubscriptionUploadStats(
+        @ColumnInfo(name = FeedEntity.SUBSCRIPTION_ID)
+        val subscriptionId: Long,
+
+        @ColumnInfo(name = "upload_count")
+        val uploadCount: Int,
+
+        @ColumnInfo(name = "oldest_upload_date")
+        val oldestUploadDate: OffsetDateTime
+    )
+
+    companion object {
+        /**
+         * The joins and the filters shared by the feed stream queries, the parameters are
+         * described in [getStreams].
+         */
+        private const val FEED_STREAMS_FILTER = """
+        FROM streams s
+
+        LEFT JOIN stream_state sst
+        ON s.uid = sst.stream_id
+        
+        LEFT JOIN stream_history sh
+        ON s.uid = sh.stream_id
+        
+        INNER JOIN feed f
+        ON s.uid = f.stream_id
+
+        LEFT JOIN feed_group_subscription_join fgs
+        ON (
+            :groupId <> ${FeedGroupEntity.GROUP_ALL_ID}
+            AND fgs.subscription_id = f.subscription_id
+        )
+
+        WHERE (
+            :groupId = ${FeedGroupEntity.GROUP_ALL_ID}
+            OR fgs.group_id = :groupId
+        )
+        AND (
+            :includePlayed
+            OR sh.stream_id IS NULL
+            OR sst.stream_id IS NULL
+            OR sst.progress_time < s.duration * 1000 - ${StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS}
+            OR sst.progress_time < s.duration * 1000 * 3 / 4
+            OR s.stream_type = 'LIVE_STREAM'
+            OR s.stream_type = 'AUDIO_LIVE_STREAM'
+        )
+        AND (
+            :includePartiallyPlayed
+            OR sh.stream_id IS NULL
+            OR sst.stream_id IS NULL
+            OR (sst.progress_time <= ${StreamStateEntity.PLAYBACK_SAVE_THRESHOLD_START_MILLISECONDS}
+            AND sst.progress_time <= s.duration * 1000 / 4)
+            OR (sst.progress_time >= s.duration * 1000 - ${StreamStateEntity.PLAYBACK_FINISHED_END_MILLISECONDS}
+            AND sst.progress_time >= s.duration * 1000 * 3 / 4)
+        )
+        """
+    }
 }
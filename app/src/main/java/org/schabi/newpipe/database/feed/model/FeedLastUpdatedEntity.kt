@@ -28,12 +28,25 @@ data class FeedLastUpdatedEntity(
     var subscriptionId: Long,
 
     @ColumnInfo(name = LAST_UPDATED)
-    var lastUpdated: OffsetDateTime? = null
+    var lastUpdated: OffsetDateTime? = null,
+
+    // validators of the last response of the dedicated feed, see DownloaderImpl.Validators
+    @ColumnInfo(name = ETAG)
+    var etag: String? = null,
+
+    @ColumnInfo(name = LAST_MODIFIED)
+    var lastModified: String? = null,
+
+    @ColumnInfo(name = CONTENT_HASH)
+    var contentHash: String? = null
 ) {
     companion object {
         const val FEED_LAST_UPDATED_TABLE = "feed_last_updated"
 
         const val SUBSCRIPTION_ID = "subscription_id"
         const val LAST_UPDATED = "last_updated"
+        const val ETAG = "etag"
+        const val LAST_MODIFIED = "last_modified"
+        const val CONTENT_HASH = "content_hash"
     }
 }
@@ -12,6 +12,7 @@ import java.time.OffsetDateTime
 import org.schabi.newpipe.database.BasicDAO
 import org.schabi.newpipe.database.stream.model.StreamEntity
 import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_ID
+import org.schabi.newpipe.database.stream.model.StreamOrphanCandidateEntity
 import org.schabi.newpipe.extractor.stream.StreamType
 import org.schabi.newpipe.util.StreamTypeUtil
 
@@ -38,17 +39,42 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
     @Insert(onConflict = OnConflictStrategy.IGNORE)
     internal abstract fun silentInsertAllInternal(streams: List<StreamEntity>): List<Long>
 
-    @Query("SELECT COUNT(*) != 0 FROM streams WHERE url = :url AND service_id = :serviceId")
-    internal abstract fun exists(serviceId: Int, url: String): Boolean
+    @Query("SELECT url FROM streams WHERE service_id = :serviceId AND url IN (:urls)")
+    internal abstract fun getExistingUrlsInternal(serviceId: Int, urls: List<String>): List<String>
 
     @Query(
         """
-        SELECT uid, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
+        SELECT uid, url, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
         FROM streams WHERE url = :url AND service_id = :serviceId
         """
     )
     internal abstract fun getMinimalStreamForCompare(serviceId: Int, url: String): StreamCompareFeed?
 
+    @Query(
+        """
+        SELECT uid, url, stream_type, textual_upload_date, upload_date, is_upload_date_approximation, duration 
+        FROM streams WHERE service_id = :serviceId AND url IN (:urls)
+        """
+    )
+    internal abstract fun getMinimalStreamsForCompare(serviceId: Int, urls: List<String>): List<StreamCompareFeed>
+
+    /**
+     * Finds which of the given urls belong to a stream in the database, using one query for
+     * every [MAX_QUERY_ARGUMENTS] urls.
+     *
+     * @param serviceId the service of the streams
+     * @param urls the stream urls to check
+     * @return the urls of the streams which are in the database
+     */
+    @Transaction
+    open fun getExistingUrls(serviceId: Int, urls: Collection<String>): Set<String> {
+        val existingUrls = HashSet<String>()
+        for (chunk in urls.distinct().chunked(MAX_QUERY_ARGUMENTS)) {
+            existingUrls.addAll(getExistingUrlsInternal(serviceId, chunk))
+        }
+        return existingUrls
+    }
+
     @Transaction
     open fun upsert(newerStream: StreamEntity): Long {
         val uid = silentInsertInternal(newerStream)
@@ -64,30 +90,65 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         return newerStream.uid
     }
 
+    /**
+     * Inserts the new streams and updates the existing ones. The existing streams are looked up
+     * with one query for every [MAX_QUERY_ARGUMENTS] streams, then the new streams are inserted
+     * and the others updated in two batches.
+     *
+     * @param streams the streams to insert or update, their uid is set by this method
+     * @return the uid of each stream, in the same order
+     */
     @Transaction
     open fun upsertAll(streams: List<StreamEntity>): List<Long> {
-        val insertUidList = silentInsertAllInternal(streams)
+        val existentStreams = HashMap<Pair<Int, String>, StreamCompareFeed>()
+        for ((serviceId, streamsOfService) in streams.groupBy { it.serviceId }) {
+            val urls = streamsOfService.map { it.url }.distinct()
+            for (chunk in urls.chunked(MAX_QUERY_ARGUMENTS)) {
+                for (existentStream in getMinimalStreamsForCompare(serviceId, chunk)) {
+                    existentStreams[Pair(serviceId, existentStream.url)] = existentStream
+                }
+            }
+        }
 
-        val streamIds = ArrayList<Long>(streams.size)
+        val streamsToUpdate = ArrayList<StreamEntity>()
+        val streamsToInsert = ArrayList<StreamEntity>()
+        for (newerStream in streams) {
+            val existentStream = existentStreams[Pair(newerStream.serviceId, newerStream.url)]
+            if (existentStream == null) {
+                streamsToInsert.add(newerStream)
+            } else {
+                mergeWithExistentStream(newerStream, existentStream)
+                streamsToUpdate.add(newerStream)
+            }
+        }
+
+        val insertUidList = silentInsertAllInternal(streamsToInsert)
         for ((index, uid) in insertUidList.withIndex()) {
-            val newerStream = streams[index]
+            val newerStream = streamsToInsert[index]
             if (uid != -1L) {
-                streamIds.add(uid)
                 newerStream.uid = uid
                 continue
             }
 
+            // the same stream is present more than once in the list
             compareAndUpdateStream(newerStream)
-            streamIds.add(newerStream.uid)
+            streamsToUpdate.add(newerStream)
         }
 
-        update(streams)
-        return streamIds
+        update(streamsToUpdate)
+        return streams.map { it.uid }
     }
 
     private fun compareAndUpdateStream(newerStream: StreamEntity) {
         val existentMinimalStream = getMinimalStreamForCompare(newerStream.serviceId, newerStream.url)
             ?: error("Stream cannot be null just after insertion.")
+        mergeWithExistentStream(newerStream, existentMinimalStream)
+    }
+
+    private fun mergeWithExistentStream(
+        newerStream: StreamEntity,
+        existentMinimalStream: StreamCompareFeed
+    ) {
         newerStream.uid = existentMinimalStream.uid
 
         if (!StreamTypeUtil.isLiveStream(newerStream.streamType)) {
@@ -123,6 +184,62 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
     )
     abstract fun deleteOrphans(): Int
 
+    @Query("SELECT stream_id FROM stream_orphan_candidates LIMIT :limit")
+    internal abstract fun getOrphanCandidates(limit: Int): List<Long>
+
+    @Query(
+        """
+        DELETE FROM streams WHERE
+
+        uid IN (:streamIds)
+
+        AND NOT EXISTS (SELECT 1 FROM stream_history sh
+        WHERE sh.stream_id = streams.uid)
+
+        AND NOT EXISTS (SELECT 1 FROM playlist_stream_join ps
+        WHERE ps.stream_id = streams.uid)
+
+        AND NOT EXISTS (SELECT 1 FROM feed f
+        WHERE f.stream_id = streams.uid)
+        """
+    )
+    internal abstract fun deleteOrphans(streamIds: List<Long>): Int
+
+    @Query("DELETE FROM stream_orphan_candidates WHERE stream_id IN (:streamIds)")
+    internal abstract fun removeOrphanCandidates(streamIds: List<Long>)
+
+    /**
+     * Deletes the orphans among a batch of the streams recorded by the triggers as possible
+     * orphans, see [StreamOrphanCandidateEntity].
+     *
+     * @return the amount of deleted streams, or null if there are no candidates left
+     */
+    @Transaction
+    internal open fun deleteOrphanCandidatesBatch(): Int? {
+        val candidates = getOrphanCandidates(MAX_QUERY_ARGUMENTS)
+        if (candidates.isEmpty()) {
+            return null
+        }
+
+        val deleted = deleteOrphans(candidates)
+        removeOrphanCandidates(candidates)
+        return deleted
+    }
+
+    /**
+     * Like [deleteOrphans], but only checks the streams which may have become orphans since the
+     * last call. Each batch of [MAX_QUERY_ARGUMENTS] candidates is a separate transaction, so
+     * that the database is not locked for long.
+     *
+     * @return the amount of deleted streams
+     */
+    fun deleteOrphanCandidates(): Int {
+        var deleted = 0
+        while (true) {
+            deleted += deleteOrphanCandidatesBatch() ?: return deleted
+        }
+    }
+
     /**
      * Minimal entry class used when comparing/updating an existent stream.
      */
@@ -130,6 +247,9 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         @ColumnInfo(name = STREAM_ID)
         var uid: Long = 0,
 
+        @ColumnInfo(name = StreamEntity.STREAM_URL)
+        var url: String,
+
         @ColumnInfo(name = StreamEntity.STREAM_TYPE)
         var streamType: StreamType,
 
@@ -145,4 +265,12 @@ abstract class StreamDAO : BasicDAO<StreamEntity> {
         @ColumnInfo(name = StreamEntity.STREAM_DURATION)
         var duration: Long
     )
+
+    companion object {
+        /**
+         * Maximum amount of urls bound to a single query, SQLite before 3.32 (Android 11)
+         * allows up to 999 arguments.
+         */
+        private const val MAX_QUERY_ARGUMENTS = 500
+    }
 }
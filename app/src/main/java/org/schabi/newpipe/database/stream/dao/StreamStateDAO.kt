@@ -6,6 +6,7 @@
 
 package org.schabi.newpipe.database.stream.dao
 
+import androidx.room.ColumnInfo
 import androidx.room.Dao
 import androidx.room.Insert
 import androidx.room.OnConflictStrategy
@@ -13,6 +14,7 @@ import androidx.room.Query
 import androidx.room.Transaction
 import io.reactivex.rxjava3.core.Flowable
 import org.schabi.newpipe.database.BasicDAO
+import org.schabi.newpipe.database.stream.model.StreamEntity
 import org.schabi.newpipe.database.stream.model.StreamStateEntity
 
 @Dao
@@ -31,6 +33,25 @@ interface StreamStateDAO : BasicDAO<StreamStateEntity> {
     @Query("SELECT * FROM " + StreamStateEntity.STREAM_STATE_TABLE + " WHERE " + StreamStateEntity.JOIN_STREAM_ID + " = :streamId")
     fun getState(streamId: Long): Flowable<MutableList<StreamStateEntity>>
 
+    @Query("SELECT * FROM " + StreamStateEntity.STREAM_STATE_TABLE + " WHERE " + StreamStateEntity.JOIN_STREAM_ID + " IN (:streamIds)")
+    fun getStates(streamIds: List<Long>): List<StreamStateEntity>
+
+    /**
+     * @return the uid and the state, if any, of the streams with the given urls which are in the
+     * database
+     */
+    @Query(
+        """
+        SELECT s.uid, s.url, st.progress_time FROM streams s
+
+        LEFT JOIN stream_state st
+        ON st.stream_id = s.uid
+
+        WHERE s.service_id = :serviceId AND s.url IN (:urls)
+        """
+    )
+    fun getStatesByUrl(serviceId: Int, urls: List<String>): List<StreamStateByUrl>
+
     @Query("DELETE FROM " + StreamStateEntity.STREAM_STATE_TABLE + " WHERE " + StreamStateEntity.JOIN_STREAM_ID + " = :streamId")
     fun deleteState(streamId: Long): Int
 
@@ -42,4 +63,15 @@ interface StreamStateDAO : BasicDAO<StreamStateEntity> {
         silentInsertInternal(stream)
         return update(stream).toLong()
     }
+
+    data class StreamStateByUrl(
+        @ColumnInfo(name = StreamEntity.STREAM_ID)
+        val streamId: Long,
+
+        @ColumnInfo(name = StreamEntity.STREAM_URL)
+        val url: String,
+
+        @ColumnInfo(name = StreamStateEntity.STREAM_PROGRESS_MILLIS)
+        val progressMillis: Long?
+    )
 }
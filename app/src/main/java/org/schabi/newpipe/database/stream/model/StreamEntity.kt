@@ -9,6 +9,7 @@ import java.io.Serializable
 import java.time.OffsetDateTime
 import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_SERVICE_ID
 import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_TABLE
+import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_UPLOAD_DATE
 import org.schabi.newpipe.database.stream.model.StreamEntity.Companion.STREAM_URL
 import org.schabi.newpipe.extractor.localization.DateWrapper
 import org.schabi.newpipe.extractor.stream.StreamInfo
@@ -20,7 +21,8 @@ import org.schabi.newpipe.util.image.ImageStrategy
 @Entity(
     tableName = STREAM_TABLE,
     indices = [
-        Index(value = [STREAM_SERVICE_ID, STREAM_URL], unique = true)
+        Index(value = [STREAM_SERVICE_ID, STREAM_URL], unique = true),
+        Index(value = [STREAM_UPLOAD_DATE])
     ]
 )
 data class StreamEntity(
@@ -0,0 +1,26 @@
+package org.schabi.newpipe.database.stream.model
+
+import androidx.room.ColumnInfo
+import androidx.room.Entity
+import org.schabi.newpipe.database.stream.model.StreamOrphanCandidateEntity.Companion.STREAM_ID
+import org.schabi.newpipe.database.stream.model.StreamOrphanCandidateEntity.Companion.STREAM_ORPHAN_CANDIDATE_TABLE
+
+/**
+ * A stream which may not be referenced anymore by the feed, the history or a playlist, because
+ * it was just inserted or one of its references was removed. The rows are inserted by triggers,
+ * see [org.schabi.newpipe.database.Migrations.createStreamOrphanTriggers], and consumed by
+ * [org.schabi.newpipe.database.stream.dao.StreamDAO.deleteOrphanCandidates].
+ */
+@Entity(
+    tableName = STREAM_ORPHAN_CANDIDATE_TABLE,
+    primaryKeys = [STREAM_ID]
+)
+data class StreamOrphanCandidateEntity(
+    @ColumnInfo(name = STREAM_ID)
+    val streamId: Long
+) {
+    companion object {
+        const val STREAM_ORPHAN_CANDIDATE_TABLE = "stream_orphan_candidates"
+        const val STREAM_ID = "stream_id"
+    }
+}
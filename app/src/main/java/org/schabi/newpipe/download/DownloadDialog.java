@@ -1067,6 +1067,10 @@ public class DownloadDialog extends DialogFragment
 
                 if (selectedStream.getFormat() == MediaFormat.MPEG_4) {
                     psName = Postprocessing.ALGORITHM_MP4_FROM_DASH_MUXER;
+                    psArgs = new String[] {
+                            String.valueOf(prefs.getBoolean(
+                                    getString(R.string.downloads_fragmented_mp4), false))
+                    };
                 } else {
                     psName = Postprocessing.ALGORITHM_WEBM_MUXER;
                 }
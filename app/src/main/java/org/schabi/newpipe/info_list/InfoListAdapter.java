@@ -32,12 +32,18 @@ import org.schabi.newpipe.info_list.holder.StreamGridInfoItemHolder;
 import org.schabi.newpipe.info_list.holder.StreamInfoItemHolder;
 import org.schabi.newpipe.info_list.holder.StreamMiniInfoItemHolder;
 import org.schabi.newpipe.local.history.HistoryRecordManager;
+import org.schabi.newpipe.local.history.StreamStateRepository;
+import org.schabi.newpipe.util.DependentPreferenceHelper;
 import org.schabi.newpipe.util.FallbackViewHolder;
 import org.schabi.newpipe.util.OnClickGesture;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.disposables.CompositeDisposable;
 
 /*
  * Created by Christian Schabesberger on 01.08.16.
@@ -84,6 +90,7 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
     private final InfoItemBuilder infoItemBuilder;
     private final List<InfoItem> infoItemList;
     private final HistoryRecordManager recordManager;
+    private final CompositeDisposable disposables = new CompositeDisposable();
 
     private boolean useMiniVariant = false;
     private boolean showFooter = false;
@@ -134,6 +141,7 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
 
         final int offsetStart = sizeConsideringHeaderOffset();
         infoItemList.addAll(data);
+        loadStreamStates(data);
 
         if (DEBUG) {
             Log.d(TAG, "addInfoItemList() after > offsetStart = " + offsetStart + ", "
@@ -154,6 +162,39 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         }
     }
 
+    /**
+     * Loads the states of a whole page of streams with a single query, so that the holders find
+     * them in memory instead of querying the database one by one while binding.
+     */
+    private void loadStreamStates(final List<? extends InfoItem> data) {
+        if (!DependentPreferenceHelper.getPositionsInListsEnabled(layoutInflater.getContext())) {
+            return;
+        }
+
+        final List<InfoItem> streams = data.stream()
+                .filter(StreamInfoItem.class::isInstance)
+                .collect(Collectors.toList());
+        if (!streams.isEmpty()) {
+            disposables.add(recordManager.loadStreamStates(streams)
+                    .subscribe(() -> { }, throwable ->
+                            Log.e(TAG, "Could not load the stream states", throwable)));
+        }
+    }
+
+    private void onStreamStateUpdate(final StreamStateRepository.Update update) {
+        if (update.getUrl() == null) {
+            return;
+        }
+
+        for (int i = 0; i < infoItemList.size(); i++) {
+            final InfoItem item = infoItemList.get(i);
+            if (item instanceof StreamInfoItem && item.getServiceId() == update.getServiceId()
+                    && update.getUrl().equals(item.getUrl())) {
+                notifyItemChanged(hasHeader() ? i + 1 : i, update);
+            }
+        }
+    }
+
     public void clearStreamItemList() {
         if (infoItemList.isEmpty()) {
             return;
@@ -340,6 +381,33 @@ public class InfoListAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolde
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull final RecyclerView.ViewHolder holder, final int position,
+                                 @NonNull final List<Object> payloads) {
+        if (!payloads.isEmpty() && holder instanceof InfoItemHolder) {
+            // only the state of the stream changed, see onStreamStateUpdate
+            ((InfoItemHolder) holder).updateState(
+                    infoItemList.get(hasHeader() ? position - 1 : position), recordManager);
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull final RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        disposables.add(recordManager.getStreamStateUpdates()
+                .observeOn(AndroidSchedulers.mainThread())
+                .subscribe(this::onStreamStateUpdate, throwable ->
+                        Log.e(TAG, "Could not update the stream states", throwable)));
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull final RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        disposables.clear();
+    }
+
     public GridLayoutManager.SpanSizeLookup getSpanSizeLookup(final int spanCount) {
         return new GridLayoutManager.SpanSizeLookup() {
             @Override
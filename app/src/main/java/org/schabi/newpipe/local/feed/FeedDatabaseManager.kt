@@ -10,8 +10,10 @@ import io.reactivex.rxjava3.schedulers.Schedulers
 import java.time.LocalDate
 import java.time.OffsetDateTime
 import java.time.ZoneOffset
+import org.schabi.newpipe.DownloaderImpl.Validators
 import org.schabi.newpipe.MainActivity.DEBUG
 import org.schabi.newpipe.NewPipeDatabase
+import org.schabi.newpipe.database.feed.dao.FeedDAO
 import org.schabi.newpipe.database.feed.model.FeedEntity
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.feed.model.FeedLastUpdatedEntity
@@ -34,24 +36,42 @@ class FeedDatabaseManager(context: Context) {
          */
         val FEED_OLDEST_ALLOWED_DATE: OffsetDateTime = LocalDate.now().minusWeeks(13)
             .atStartOfDay().atOffset(ZoneOffset.UTC)
+
+        /**
+         * Amount of streams loaded at once from the database.
+         */
+        const val FEED_PAGE_SIZE = 100
     }
 
     fun groups() = feedGroupTable.getAll()
 
     fun database() = database
 
+    /**
+     * Gets a page of the feed, newest streams first.
+     *
+     * @param after the last stream of the previous page, or null to get the first page
+     * @param pageSize the maximum amount of streams to return
+     */
     fun getStreams(
         groupId: Long,
         includePlayedStreams: Boolean,
         includePartiallyPlayedStreams: Boolean,
-        includeFutureStreams: Boolean
+        includeFutureStreams: Boolean,
+        after: StreamWithState? = null,
+        pageSize: Int = FEED_PAGE_SIZE
     ): Maybe<List<StreamWithState>> {
-        return feedTable.getStreams(
-            groupId,
-            includePlayedStreams,
-            includePartiallyPlayedStreams,
-            if (includeFutureStreams) null else OffsetDateTime.now()
-        )
+        return Maybe.fromCallable {
+            feedTable.getStreams(
+                groupId,
+                includePlayedStreams,
+                includePartiallyPlayedStreams,
+                if (includeFutureStreams) null else OffsetDateTime.now(),
+                after?.stream?.uploadDate,
+                after?.stream?.uid,
+                pageSize
+            )
+        }
     }
 
     fun outdatedSubscriptions(outdatedThreshold: OffsetDateTime) = feedTable.getAllOutdated(outdatedThreshold)
@@ -73,16 +93,56 @@ class FeedDatabaseManager(context: Context) {
         outdatedThreshold: OffsetDateTime
     ) = feedTable.getAllOutdatedForGroup(groupId, outdatedThreshold)
 
+    /**
+     * @return the last update of each loaded subscription, null if it has to be loaded again
+     */
+    fun getLastUpdated(): Map<Long, OffsetDateTime?> = feedTable.getAllLastUpdated()
+        .associate { it.subscriptionId to it.lastUpdated }
+
+    /**
+     * @return the amount and the oldest upload date of the feed streams of each subscription
+     */
+    fun getUploadStats(): Map<Long, FeedDAO.SubscriptionUploadStats> = feedTable
+        .getAllUploadStats()
+        .associateBy { it.subscriptionId }
+
+    /**
+     * @return the validators of the last dedicated feed response of the subscription, or null if
+     * there are none
+     */
+    fun getFeedValidators(subscriptionId: Long): Validators? {
+        return feedTable.getLastUpdated(subscriptionId)
+            ?.takeIf { it.lastUpdated != null }
+            ?.let { Validators(it.etag, it.lastModified, it.contentHash) }
+    }
+
+    /**
+     * Marks the subscription as updated without changing its streams, e.g. because its feed has
+     * not been modified.
+     */
+    fun markAsUpdated(subscriptionId: Long, validators: Validators?) = feedTable
+        .setLastUpdatedForSubscription(lastUpdatedEntity(subscriptionId, validators))
+
     fun markAsOutdated(subscriptionId: Long) = feedTable
         .setLastUpdatedForSubscription(FeedLastUpdatedEntity(subscriptionId, null))
 
-    fun doesStreamExist(stream: StreamInfoItem): Boolean {
-        return streamTable.exists(stream.serviceId, stream.url)
+    /**
+     * @param streams the streams to look for
+     * @return the service id and the url of the given streams which are in the database
+     */
+    fun getExistingStreams(streams: List<StreamInfoItem>): Set<Pair<Int, String>> {
+        return streams
+            .groupBy({ it.serviceId }, { it.url })
+            .flatMap { (serviceId, urls) ->
+                streamTable.getExistingUrls(serviceId, urls).map { Pair(serviceId, it) }
+            }
+            .toSet()
     }
 
     fun upsertAll(
         subscriptionId: Long,
         items: List<StreamInfoItem>,
+        validators: Validators? = null,
         oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE
     ) {
         val itemsToInsert = items.mapNotNull { stream ->
@@ -105,14 +165,21 @@ class FeedDatabaseManager(context: Context) {
             feedTable.insertAll(feedEntities)
         }
 
-        feedTable.setLastUpdatedForSubscription(
-            FeedLastUpdatedEntity(subscriptionId, OffsetDateTime.now(ZoneOffset.UTC))
-        )
+        feedTable.setLastUpdatedForSubscription(lastUpdatedEntity(subscriptionId, validators))
     }
 
+    private fun lastUpdatedEntity(subscriptionId: Long, validators: Validators?) =
+        FeedLastUpdatedEntity(
+            subscriptionId,
+            OffsetDateTime.now(ZoneOffset.UTC),
+            validators?.etag,
+            validators?.lastModified,
+            validators?.contentHash
+        )
+
     fun removeOrphansOrOlderStreams(oldestAllowedDate: OffsetDateTime = FEED_OLDEST_ALLOWED_DATE) {
         feedTable.unlinkStreamsOlderThan(oldestAllowedDate)
-        streamTable.deleteOrphans()
+        streamTable.deleteOrphanCandidates()
     }
 
     fun clear() {
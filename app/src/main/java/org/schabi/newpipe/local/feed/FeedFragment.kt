@@ -68,6 +68,7 @@ import org.schabi.newpipe.extractor.exceptions.ContentNotAvailableException
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
 import org.schabi.newpipe.extractor.utils.Utils.isNullOrEmpty
 import org.schabi.newpipe.fragments.BaseStateFragment
+import org.schabi.newpipe.fragments.OnScrollBelowItemsListener
 import org.schabi.newpipe.info_list.ItemViewMode
 import org.schabi.newpipe.info_list.dialog.InfoItemDialog
 import org.schabi.newpipe.ktx.animate
@@ -159,6 +160,12 @@ class FeedFragment : BaseStateFragment<FeedState>() {
             }
         })
 
+        feedBinding.itemsList.addOnScrollListener(object : OnScrollBelowItemsListener() {
+            override fun onScrolledDown(recyclerView: RecyclerView) {
+                viewModel.loadMoreItems()
+            }
+        })
+
         feedBinding.itemsList.adapter = groupAdapter
         setupListViewMode()
     }
@@ -422,8 +429,11 @@ class FeedFragment : BaseStateFragment<FeedState>() {
         val oldOldestSubscriptionUpdate = oldestSubscriptionUpdate
 
         groupAdapter.updateAsync(loadedState.items, false) {
-            oldOldestSubscriptionUpdate?.run {
-                highlightNewItemsAfter(oldOldestSubscriptionUpdate)
+            // the new items of a page are older than the ones already highlighted
+            if (!loadedState.isNextPage) {
+                oldOldestSubscriptionUpdate?.run {
+                    highlightNewItemsAfter(oldOldestSubscriptionUpdate)
+                }
             }
         }
 
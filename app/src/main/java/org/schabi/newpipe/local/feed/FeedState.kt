@@ -15,7 +15,9 @@ sealed class FeedState {
         val items: List<StreamItem>,
         val oldestUpdate: OffsetDateTime?,
         val notLoadedCount: Long,
-        val itemsErrors: List<Throwable>
+        val itemsErrors: List<Throwable>,
+        /** true if the items only differ from the previous state by a newly loaded page */
+        val isNextPage: Boolean = false
     ) : FeedState()
 
     data class ErrorState(
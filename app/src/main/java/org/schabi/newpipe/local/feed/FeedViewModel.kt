@@ -11,6 +11,7 @@ import androidx.lifecycle.viewmodel.viewModelFactory
 import androidx.preference.PreferenceManager
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Flowable
+import io.reactivex.rxjava3.disposables.Disposable
 import io.reactivex.rxjava3.functions.Function6
 import io.reactivex.rxjava3.processors.BehaviorProcessor
 import io.reactivex.rxjava3.schedulers.Schedulers
@@ -30,7 +31,7 @@ import org.schabi.newpipe.util.DEFAULT_THROTTLE_TIMEOUT
 
 class FeedViewModel(
     private val application: Application,
-    groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
+    private val groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
     initialShowPlayedItems: Boolean,
     initialShowPartiallyPlayedItems: Boolean,
     initialShowFutureItems: Boolean
@@ -55,6 +56,13 @@ class FeedViewModel(
     private val mutableStateLiveData = MutableLiveData<FeedState>()
     val stateLiveData: LiveData<FeedState> = mutableStateLiveData
 
+    // The following fields are only accessed from the main thread
+    private var lastLoadedState: FeedState.LoadedState? = null
+    private var lastStreamsQuery: StreamsQuery? = null
+    private var lastStream: StreamWithState? = null
+    private var hasMoreStreams = false
+    private var loadMoreDisposable: Disposable? = null
+
     private var combineDisposable = Flowable
         .combineLatest(
             FeedEventManager.events(),
@@ -79,26 +87,36 @@ class FeedViewModel(
         .subscribeOn(Schedulers.io())
         .observeOn(Schedulers.io())
         .map { (event, showPlayedItems, showPartiallyPlayedItems, showFutureItems, notLoadedCount, oldestUpdate) ->
+            val query = StreamsQuery(showPlayedItems, showPartiallyPlayedItems, showFutureItems)
             val streamItems = if (event is SuccessResultEvent || event is IdleEvent) {
-                feedDatabaseManager
-                    .getStreams(groupId, showPlayedItems, showPartiallyPlayedItems, showFutureItems)
-                    .blockingGet(arrayListOf())
+                getStreams(query, null).blockingGet(arrayListOf())
             } else {
                 arrayListOf()
             }
 
-            CombineResultDataHolder(event, streamItems, notLoadedCount, oldestUpdate)
+            CombineResultDataHolder(event, streamItems, notLoadedCount, oldestUpdate, query)
         }
         .observeOn(AndroidSchedulers.mainThread())
-        .subscribe { (event, listFromDB, notLoadedCount, oldestUpdate) ->
-            mutableStateLiveData.postValue(
-                when (event) {
-                    is IdleEvent -> FeedState.LoadedState(listFromDB.map { e -> StreamItem(e) }, oldestUpdate, notLoadedCount, listOf())
-                    is ProgressEvent -> FeedState.ProgressState(event.currentProgress, event.maxProgress, event.progressMessage)
-                    is SuccessResultEvent -> FeedState.LoadedState(listFromDB.map { e -> StreamItem(e) }, oldestUpdate, notLoadedCount, event.itemsErrors)
-                    is ErrorResultEvent -> FeedState.ErrorState(event.error)
-                }
-            )
+        .subscribe { (event, listFromDB, notLoadedCount, oldestUpdate, query) ->
+            // a page loaded with the previous filters or before a refresh is not valid anymore
+            loadMoreDisposable?.dispose()
+
+            if (event is IdleEvent || event is SuccessResultEvent) {
+                lastStreamsQuery = query
+                lastStream = listFromDB.lastOrNull()
+                hasMoreStreams = listFromDB.size >= FeedDatabaseManager.FEED_PAGE_SIZE
+            }
+
+            val state = when (event) {
+                is IdleEvent -> FeedState.LoadedState(listFromDB.map { e -> StreamItem(e) }, oldestUpdate, notLoadedCount, listOf())
+                is ProgressEvent -> FeedState.ProgressState(event.currentProgress, event.maxProgress, event.progressMessage)
+                is SuccessResultEvent -> FeedState.LoadedState(listFromDB.map { e -> StreamItem(e) }, oldestUpdate, notLoadedCount, event.itemsErrors)
+                is ErrorResultEvent -> FeedState.ErrorState(event.error)
+            }
+            if (state is FeedState.LoadedState) {
+                lastLoadedState = state
+            }
+            mutableStateLiveData.postValue(state)
 
             if (event is ErrorResultEvent || event is SuccessResultEvent) {
                 FeedEventManager.reset()
@@ -108,8 +126,60 @@ class FeedViewModel(
     override fun onCleared() {
         super.onCleared()
         combineDisposable.dispose()
+        loadMoreDisposable?.dispose()
     }
 
+    /**
+     * Loads the next page of the feed, if any, and appends it to the loaded streams.
+     * Does nothing while a page is already being loaded.
+     */
+    fun loadMoreItems() {
+        val state = lastLoadedState ?: return
+        val query = lastStreamsQuery ?: return
+        val after = lastStream ?: return
+        if (!hasMoreStreams || loadMoreDisposable?.isDisposed == false) {
+            return
+        }
+
+        loadMoreDisposable = getStreams(query, after)
+            .defaultIfEmpty(listOf())
+            .subscribeOn(Schedulers.io())
+            .observeOn(AndroidSchedulers.mainThread())
+            .subscribe(
+                { page ->
+                    hasMoreStreams = page.size >= FeedDatabaseManager.FEED_PAGE_SIZE
+                    if (page.isEmpty()) {
+                        return@subscribe
+                    }
+
+                    lastStream = page.last()
+                    val newState = state.copy(
+                        items = state.items + page.map { e -> StreamItem(e) },
+                        itemsErrors = listOf(),
+                        isNextPage = true
+                    )
+                    lastLoadedState = newState
+                    mutableStateLiveData.postValue(newState)
+                },
+                { error -> mutableStateLiveData.postValue(FeedState.ErrorState(error)) }
+            )
+    }
+
+    private fun getStreams(query: StreamsQuery, after: StreamWithState?) =
+        feedDatabaseManager.getStreams(
+            groupId,
+            query.showPlayedItems,
+            query.showPartiallyPlayedItems,
+            query.showFutureItems,
+            after
+        )
+
+    private data class StreamsQuery(
+        val showPlayedItems: Boolean,
+        val showPartiallyPlayedItems: Boolean,
+        val showFutureItems: Boolean
+    )
+
     private data class CombineResultEventHolder(
         val t1: FeedEventManager.Event,
         val t2: Boolean,
@@ -123,7 +193,8 @@ class FeedViewModel(
         val t1: FeedEventManager.Event,
         val t2: List<StreamWithState>,
         val t3: Long,
-        val t4: OffsetDateTime?
+        val t4: OffsetDateTime?,
+        val t5: StreamsQuery
     )
 
     fun setSaveShowPlayedItems(showPlayedItems: Boolean) {
@@ -42,7 +42,8 @@ class NotificationWorker(
     override fun createWork(): Single<Result> = if (areNotificationsEnabled(applicationContext)) {
         feedLoadManager.startLoading(
             ignoreOutdatedThreshold = true,
-            groupId = FeedLoadManager.GROUP_NOTIFICATION_ENABLED
+            groupId = FeedLoadManager.GROUP_NOTIFICATION_ENABLED,
+            onlyLikelyUpdated = true
         )
             .doOnSubscribe { showLoadingFeedForegroundNotification() }
             .map { feed ->
@@ -0,0 +1,278 @@
+package org.schabi.newpipe.local.feed.service
+
+import io.reactivex.rxjava3.core.Scheduler
+import io.reactivex.rxjava3.core.Single
+import io.reactivex.rxjava3.core.SingleEmitter
+import io.reactivex.rxjava3.schedulers.Schedulers
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import kotlin.math.max
+import kotlin.math.min
+import kotlin.random.Random
+import org.schabi.newpipe.extractor.ServiceList
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException
+import org.schabi.newpipe.ktx.hasAssignableCause
+
+/**
+ * Limits the extractions done by [FeedLoadManager], separately for each service.
+ *
+ * The amount of concurrent extractions grows by one after every window of healthy extractions,
+ * and is reduced multiplicatively when the latency grows or the service rate limits us (a
+ * [ReCaptchaException], which is also thrown on HTTP 429). The start of the extractions is
+ * paced by a token bucket with a similar feedback. Waiting is done with timers of [scheduler],
+ * no thread is blocked.
+ */
+class FeedLoadLimiter(
+    private val scheduler: Scheduler = Schedulers.computation(),
+    private val random: Random = Random.Default
+) {
+    private val lock = Any()
+    private val services = HashMap<Int, ServiceState>()
+
+    /**
+     * Waits until an extraction of the given service can start.
+     *
+     * @param serviceId the service of the extraction
+     * @return a [Permit] which must be released when the extraction ends
+     */
+    fun acquire(serviceId: Int): Single<Permit> = Single.create { emitter ->
+        val waiter = Waiter(emitter)
+        val ready = synchronized(lock) {
+            val service = services.getOrPut(serviceId) { ServiceState(serviceId) }
+            service.waiting.addLast(waiter)
+            dispatch(service)
+        }
+
+        emitter.setCancellable {
+            synchronized(lock) { services[serviceId]?.waiting?.remove(waiter) }
+        }
+        grant(ready)
+    }
+
+    /**
+     * @return the current amount of concurrent extractions allowed for the given service
+     */
+    fun getConcurrency(serviceId: Int): Int = synchronized(lock) {
+        services[serviceId]?.concurrency ?: initialConcurrency(serviceId).toInt()
+    }
+
+    private fun now() = scheduler.now(TimeUnit.MILLISECONDS)
+
+    /**
+     * Gives a permit to as many waiting extractions as the limits allow, must be called
+     * holding [lock]. If an extraction has to wait for the pacer, a timer is scheduled.
+     */
+    private fun dispatch(service: ServiceState): List<Pair<Waiter, Permit>> {
+        val ready = ArrayList<Pair<Waiter, Permit>>()
+
+        while (service.waiting.isNotEmpty() && service.inFlight < service.concurrency) {
+            val now = now()
+            val delay = service.takeToken(now)
+            if (delay > 0) {
+                if (!service.timerScheduled) {
+                    service.timerScheduled = true
+                    // a random jitter makes the requests less regular, see FeedLoadManager
+                    scheduler.scheduleDirect(
+                        { onTimer(service) },
+                        delay + random.nextLong(MAX_JITTER_MILLIS),
+                        TimeUnit.MILLISECONDS
+                    )
+                }
+                break
+            }
+
+            service.inFlight++
+            val startTime = now
+            ready.add(
+                Pair(
+                    service.waiting.removeFirst(),
+                    Permit { error, record -> onRelease(service, startTime, error, record) }
+                )
+            )
+        }
+
+        return ready
+    }
+
+    private fun onTimer(service: ServiceState) {
+        val ready = synchronized(lock) {
+            service.timerScheduled = false
+            dispatch(service)
+        }
+        grant(ready)
+    }
+
+    private fun onRelease(service: ServiceState, startTime: Long, error: Throwable?, record: Boolean) {
+        val ready = synchronized(lock) {
+            service.inFlight--
+            if (record) {
+                service.record(now(), startTime, error)
+            }
+            dispatch(service)
+        }
+        grant(ready)
+    }
+
+    private fun grant(ready: List<Pair<Waiter, Permit>>) {
+        for ((waiter, permit) in ready) {
+            if (waiter.emitter.isDisposed) {
+                permit.cancel()
+            } else {
+                waiter.emitter.onSuccess(permit)
+            }
+        }
+    }
+
+    private class Waiter(val emitter: SingleEmitter<Permit>)
+
+    /**
+     * Allows an extraction to run, [release] or [cancel] must be called once it ends.
+     */
+    class Permit internal constructor(
+        private val onRelease: (error: Throwable?, record: Boolean) -> Unit
+    ) {
+        private val released = AtomicBoolean()
+
+        /**
+         * Ends the extraction, its result is used to adapt the limits.
+         *
+         * @param error the error of the extraction, or null if it succeeded
+         */
+        fun release(error: Throwable?) {
+            if (released.compareAndSet(false, true)) {
+                onRelease(error, true)
+            }
+        }
+
+        /**
+         * Ends the extraction without using its result, e.g. because it has not been done.
+         */
+        fun cancel() {
+            if (released.compareAndSet(false, true)) {
+                onRelease(null, false)
+            }
+        }
+    }
+
+    private inner class ServiceState(serviceId: Int) {
+        val waiting = ArrayDeque<Waiter>()
+        var inFlight = 0
+        var timerScheduled = false
+
+        private var limit = initialConcurrency(serviceId)
+        private var rate = initialRate(serviceId)
+        private val maxRate = rate * MAX_RATE_FACTOR
+        private var tokens = BURST_SIZE.toDouble()
+        private var lastRefill = now()
+        private var pausedUntil = 0L
+        private var cooldown = 0L
+
+        private var lastBackoff = Long.MIN_VALUE
+        private var latency = 0.0
+        private var minLatency = Double.MAX_VALUE
+        private var errorRate = 0.0
+
+        val concurrency get() = max(MIN_CONCURRENCY, limit.toInt())
+
+        /**
+         * Takes a token from the bucket.
+         *
+         * @return 0 if a token was taken, otherwise the milliseconds to wait for one
+         */
+        fun takeToken(now: Long): Long {
+            if (now < pausedUntil) {
+                return pausedUntil - now
+            }
+
+            tokens = min(BURST_SIZE.toDouble(), tokens + (now - lastRefill) * rate / 1000)
+            lastRefill = now
+
+            if (tokens < 1) {
+                return max(1, ((1 - tokens) * 1000 / rate).toLong())
+            }
+
+            tokens -= 1
+            return 0
+        }
+
+        fun record(now: Long, startTime: Long, error: Throwable?) {
+            // only the first signal counts, the extractions already running when the limits
+            // were reduced are likely to fail or be slow too
+            val afterBackoff = startTime > lastBackoff
+
+            if (error.hasAssignableCause<ReCaptchaException>()) {
+                if (afterBackoff) {
+                    limit = max(MIN_CONCURRENCY.toDouble(), limit * BACKOFF_FACTOR)
+                    rate = max(MIN_RATE, rate * BACKOFF_FACTOR)
+                    cooldown = if (cooldown == 0L) MIN_COOLDOWN_MILLIS else min(cooldown * 2, MAX_COOLDOWN_MILLIS)
+                    pausedUntil = now + cooldown
+                    tokens = 0.0
+                    lastBackoff = now
+                }
+                return
+            }
+
+            errorRate += ((if (error == null) 0.0 else 1.0) - errorRate) * EWMA_WEIGHT
+            if (error != null) {
+                return
+            }
+
+            cooldown = 0
+            val sample = (now - startTime).toDouble()
+            latency = if (latency == 0.0) sample else latency + (sample - latency) * EWMA_WEIGHT
+            minLatency = min(minLatency, latency)
+
+            if (latency > minLatency * LATENCY_TOLERANCE) {
+                if (afterBackoff) {
+                    limit = max(MIN_CONCURRENCY.toDouble(), limit * LATENCY_BACKOFF_FACTOR)
+                    lastBackoff = now
+                }
+            } else if (errorRate < MAX_HEALTHY_ERROR_RATE) {
+                // additive increase: about one more extraction for every window of successes
+                limit = min(MAX_CONCURRENCY.toDouble(), limit + 1 / limit)
+                rate = min(maxRate, rate + RATE_INCREASE / rate)
+            }
+        }
+    }
+
+    companion object {
+        private const val MIN_CONCURRENCY = 1
+        private const val MAX_CONCURRENCY = 8
+
+        /**
+         * Extractions started per second, at the start of a refresh.
+         */
+        private const val INITIAL_RATE = 5.0
+
+        /**
+         * YouTube rate limits aggressively, so start slower. This is about the rate of the fixed
+         * delays used before.
+         */
+        private const val INITIAL_RATE_YOUTUBE = 2.0
+        private const val MIN_RATE = 0.2
+        private const val MAX_RATE_FACTOR = 3.0
+        private const val RATE_INCREASE = 0.2
+        private const val BURST_SIZE = 5
+
+        private const val BACKOFF_FACTOR = 0.5
+        private const val LATENCY_BACKOFF_FACTOR = 0.8
+        private const val LATENCY_TOLERANCE = 2.0
+        private const val MAX_HEALTHY_ERROR_RATE = 0.2
+        private const val EWMA_WEIGHT = 0.2
+
+        private const val MIN_COOLDOWN_MILLIS = 10_000L
+        private const val MAX_COOLDOWN_MILLIS = 120_000L
+        private const val MAX_JITTER_MILLIS = 250L
+
+        /**
+         * Upper bound of the extractions running at the same time, for all services.
+         */
+        const val MAX_PARALLEL_EXTRACTIONS = MAX_CONCURRENCY * 2
+
+        private fun initialConcurrency(serviceId: Int) =
+            if (serviceId == ServiceList.YouTube.serviceId) 3.0 else 4.0
+
+        private fun initialRate(serviceId: Int) =
+            if (serviceId == ServiceList.YouTube.serviceId) INITIAL_RATE_YOUTUBE else INITIAL_RATE
+    }
+}
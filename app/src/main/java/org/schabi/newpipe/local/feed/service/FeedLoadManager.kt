@@ -6,6 +6,7 @@ import androidx.preference.PreferenceManager
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers
 import io.reactivex.rxjava3.core.Completable
 import io.reactivex.rxjava3.core.Flowable
+import io.reactivex.rxjava3.core.Maybe
 import io.reactivex.rxjava3.core.Notification
 import io.reactivex.rxjava3.core.Single
 import io.reactivex.rxjava3.functions.Consumer
@@ -15,16 +16,19 @@ import java.time.OffsetDateTime
 import java.time.ZoneOffset
 import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicInteger
+import org.schabi.newpipe.DownloaderImpl
+import org.schabi.newpipe.DownloaderImpl.NotModifiedException
+import org.schabi.newpipe.DownloaderImpl.Validators
 import org.schabi.newpipe.R
 import org.schabi.newpipe.database.feed.model.FeedGroupEntity
 import org.schabi.newpipe.database.subscription.NotificationMode
 import org.schabi.newpipe.database.subscription.SubscriptionEntity
 import org.schabi.newpipe.extractor.Info
 import org.schabi.newpipe.extractor.NewPipe
-import org.schabi.newpipe.extractor.ServiceList
 import org.schabi.newpipe.extractor.feed.FeedInfo
 import org.schabi.newpipe.extractor.stream.StreamInfoItem
 import org.schabi.newpipe.ktx.getStringSafe
+import org.schabi.newpipe.ktx.hasAssignableCause
 import org.schabi.newpipe.local.feed.FeedDatabaseManager
 import org.schabi.newpipe.local.subscription.SubscriptionManager
 import org.schabi.newpipe.util.ChannelTabHelper
@@ -57,10 +61,14 @@ class FeedLoadManager(private val context: Context) {
      * @param ignoreOutdatedThreshold When `false`, only subscriptions which have not been updated
      * within the `feed_update_threshold` are checked for updates. This threshold can be set by
      * the user in the app settings. When `true`, all subscriptions are checked for new streams.
+     * @param onlyLikelyUpdated When `true`, only the subscriptions which are likely to have new
+     * streams, and a few of the others, are checked, see [FeedRefreshScheduler]. This is meant for
+     * the periodic background refresh, a refresh requested by the user checks all of them.
      */
     fun startLoading(
         groupId: Long = FeedGroupEntity.GROUP_ALL_ID,
-        ignoreOutdatedThreshold: Boolean = false
+        ignoreOutdatedThreshold: Boolean = false,
+        onlyLikelyUpdated: Boolean = false
     ): Single<List<Notification<FeedUpdateInfo>>> {
         val defaultSharedPreferences = PreferenceManager.getDefaultSharedPreferences(context)
         val useFeedExtractor = defaultSharedPreferences.getBoolean(
@@ -94,12 +102,20 @@ class FeedLoadManager(private val context: Context) {
             else -> feedDatabaseManager.outdatedSubscriptionsForGroup(groupId, outdatedThreshold)
         }
 
-        // like `currentProgress`, but counts the number of YouTube extractions that have begun, so
-        // they can be properly throttled every once in a while (see doOnNext below)
-        val youtubeExtractionCount = AtomicInteger()
+        // adapts the amount of extractions running in parallel to how each service responds
+        val limiter = FeedLoadLimiter()
 
         return outdatedSubscriptions
             .take(1)
+            .map { subscriptions ->
+                if (onlyLikelyUpdated) {
+                    // skip the subscriptions unlikely to have uploaded since their last update
+                    FeedRefreshScheduler(feedDatabaseManager)
+                        .selectDue(subscriptions, OffsetDateTime.now(ZoneOffset.UTC))
+                } else {
+                    subscriptions
+                }
+            }
             .doOnNext {
                 currentProgress.set(0)
                 maxProgress.set(it.size)
@@ -114,22 +130,22 @@ class FeedLoadManager(private val context: Context) {
             // Randomize user subscription ordering to attempt to resist fingerprinting
             .flatMap { Flowable.fromIterable(it.shuffled()) }
             .takeWhile { !cancelSignal.get() }
-            .doOnNext { subscriptionEntity ->
-                // throttle YouTube extractions once every BATCH_SIZE to avoid being rate limited
-                if (subscriptionEntity.serviceId == ServiceList.YouTube.serviceId) {
-                    val previousCount = youtubeExtractionCount.getAndIncrement()
-                    if (previousCount != 0 && previousCount % BATCH_SIZE == 0) {
-                        Thread.sleep(DELAY_BETWEEN_BATCHES_MILLIS.random())
+            .flatMapMaybe({ subscriptionEntity ->
+                limiter.acquire(subscriptionEntity.serviceId)
+                    .observeOn(Schedulers.io())
+                    .flatMapMaybe { permit ->
+                        if (cancelSignal.get()) {
+                            permit.cancel()
+                            return@flatMapMaybe Maybe.empty()
+                        }
+
+                        val notification =
+                            loadStreams(subscriptionEntity, useFeedExtractor, defaultSharedPreferences)
+                        // loadStreams catches all errors, the rate limit ones are among the causes
+                        permit.release(notification.error)
+                        Maybe.just(notification)
                     }
-                }
-            }
-            .parallel(PARALLEL_EXTRACTIONS, PARALLEL_EXTRACTIONS * 2)
-            .runOn(Schedulers.io(), PARALLEL_EXTRACTIONS * 2)
-            .filter { !cancelSignal.get() }
-            .map { subscriptionEntity ->
-                loadStreams(subscriptionEntity, useFeedExtractor, defaultSharedPreferences)
-            }
-            .sequential()
+            }, false, FeedLoadLimiter.MAX_PARALLEL_EXTRACTIONS)
             .observeOn(AndroidSchedulers.mainThread())
             .doOnNext(NotificationConsumer())
             .observeOn(Schedulers.io())
@@ -170,18 +186,41 @@ class FeedLoadManager(private val context: Context) {
             // either by using the dedicated feed method or by getting the channel info
             var originalInfo: Info? = null
             var streams: List<StreamInfoItem>? = null
+            var validators: Validators? = null
             val errors = ArrayList<Throwable>()
 
             if (useFeedExtractor) {
-                NewPipe.getService(subscriptionEntity.serviceId)
+                val feedExtractor = NewPipe.getService(subscriptionEntity.serviceId)
                     .getFeedExtractor(subscriptionEntity.url)
-                    ?.also { feedExtractor ->
-                        // the user wants to use a feed extractor and there is one, use it
-                        val feedInfo = FeedInfo.getInfo(feedExtractor)
-                        errors.addAll(feedInfo.errors)
-                        originalInfo = feedInfo
-                        streams = feedInfo.relatedItems
+
+                if (feedExtractor != null) {
+                    // the user wants to use a feed extractor and there is one, use it;
+                    // the request is conditional, an unchanged feed is neither parsed nor stored
+                    val downloader = DownloaderImpl.getInstance()
+                    downloader.startRevalidation(
+                        feedDatabaseManager.getFeedValidators(subscriptionEntity.uid)
+                    )
+                    val feedInfo = try {
+                        FeedInfo.getInfo(feedExtractor)
+                    } catch (e: Throwable) {
+                        if (!e.hasAssignableCause<NotModifiedException>()) {
+                            throw e
+                        }
+                        null
+                    } finally {
+                        validators = downloader.endRevalidation()
                     }
+
+                    if (feedInfo == null) {
+                        return Notification.createOnNext(
+                            FeedUpdateInfo(subscriptionEntity, validators)
+                        )
+                    }
+
+                    errors.addAll(feedInfo.errors)
+                    originalInfo = feedInfo
+                    streams = feedInfo.relatedItems
+                }
             }
 
             if (originalInfo == null) {
@@ -240,7 +279,8 @@ class FeedLoadManager(private val context: Context) {
                     subscriptionEntity,
                     originalInfo!!,
                     streams!!,
-                    errors
+                    errors,
+                    validators
                 )
             )
         } catch (e: Throwable) {
@@ -288,14 +328,29 @@ class FeedLoadManager(private val context: Context) {
 
         override fun accept(list: List<Notification<FeedUpdateInfo>>) {
             feedDatabaseManager.database().runInTransaction {
+                // look up the streams of the whole batch at once
+                val knownStreams = HashSet(
+                    feedDatabaseManager.getExistingStreams(
+                        list.mapNotNull { it.value }.flatMap { it.streams }
+                    )
+                )
+
                 for (notification in list) {
                     when {
+                        notification.isOnNext && notification.value!!.isNotModified -> {
+                            val info = notification.value!!
+                            info.newStreams = emptyList()
+                            feedDatabaseManager.markAsUpdated(info.uid, info.validators)
+                        }
+
                         notification.isOnNext -> {
                             val info = notification.value!!
 
-                            notification.value!!.newStreams = filterNewStreams(info.streams)
+                            notification.value!!.newStreams = filterNewStreams(info.streams, knownStreams)
+                            // a stream shared with another subscription of the batch is new once
+                            info.streams.mapTo(knownStreams) { Pair(it.serviceId, it.url) }
 
-                            feedDatabaseManager.upsertAll(info.uid, info.streams)
+                            feedDatabaseManager.upsertAll(info.uid, info.streams, info.validators)
                             subscriptionManager.updateFromInfo(info)
 
                             if (info.errors.isNotEmpty()) {
@@ -325,9 +380,12 @@ class FeedLoadManager(private val context: Context) {
             }
         }
 
-        private fun filterNewStreams(list: List<StreamInfoItem>): List<StreamInfoItem> {
+        private fun filterNewStreams(
+            list: List<StreamInfoItem>,
+            knownStreams: Set<Pair<Int, String>>
+        ): List<StreamInfoItem> {
             return list.filter {
-                !feedDatabaseManager.doesStreamExist(it) &&
+                !knownStreams.contains(Pair(it.serviceId, it.url)) &&
                     it.uploadDate != null &&
                     // Streams older than this date are automatically removed from the feed.
                     // Therefore, streams which are not in the database,
@@ -346,23 +404,6 @@ class FeedLoadManager(private val context: Context) {
          */
         const val GROUP_NOTIFICATION_ENABLED = -2L
 
-        /**
-         * How many extractions will be running in parallel.
-         */
-        private const val PARALLEL_EXTRACTIONS = 3
-
-        /**
-         * How many YouTube extractions to perform before waiting [DELAY_BETWEEN_BATCHES_MILLIS]
-         * to avoid being rate limited
-         */
-        private const val BATCH_SIZE = 50
-
-        /**
-         * Wait a random delay in this range once every [BATCH_SIZE] YouTube extractions to avoid
-         * being rate limited
-         */
-        private val DELAY_BETWEEN_BATCHES_MILLIS = (6000L..12000L)
-
         /**
          * Number of items to buffer to mass-insert in the database.
          */
@@ -0,0 +1,101 @@
+package org.schabi.newpipe.local.feed.service
+
+import java.time.Duration
+import java.time.OffsetDateTime
+import kotlin.math.ln
+import kotlin.math.max
+import org.schabi.newpipe.database.feed.dao.FeedDAO.SubscriptionUploadStats
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
+import org.schabi.newpipe.local.feed.FeedDatabaseManager
+
+/**
+ * Predicts when each subscription is likely to have new streams, so that a feed refresh only
+ * loads those instead of every outdated subscription.
+ *
+ * The upload rate of a channel is estimated from the amount of its streams in the feed and the
+ * time since the oldest of them, assuming uploads are a Poisson process. A subscription is checked again once it has a
+ * [NEW_STREAM_PROBABILITY] chance of having uploaded since its last update, and at least once
+ * every [MAX_CHECK_INTERVAL]. A small budget of the remaining subscriptions, the ones updated
+ * longest ago, is checked anyway, to correct wrong predictions.
+ *
+ * @param lastUpdated the last update of each subscription, see [FeedDatabaseManager.getLastUpdated]
+ * @param uploadStats the feed streams of each subscription, see [FeedDatabaseManager.getUploadStats]
+ */
+class FeedRefreshScheduler(
+    private val lastUpdated: Map<Long, OffsetDateTime?>,
+    private val uploadStats: Map<Long, SubscriptionUploadStats>
+) {
+    constructor(feedDatabaseManager: FeedDatabaseManager) : this(
+        feedDatabaseManager.getLastUpdated(),
+        feedDatabaseManager.getUploadStats()
+    )
+
+    /**
+     * @param subscriptionId the subscription to check
+     * @param now the current time
+     * @return when the subscription should be checked next, or null if it has never been
+     * loaded (or has to be loaded again) and is always due
+     */
+    fun getNextCheck(subscriptionId: Long, now: OffsetDateTime): OffsetDateTime? {
+        val lastUpdate = lastUpdated[subscriptionId] ?: return null
+        val stats = uploadStats[subscriptionId]
+        if (stats == null || stats.uploadCount <= 0) {
+            return lastUpdate.plus(MAX_CHECK_INTERVAL)
+        }
+
+        // the feed only keeps the recent streams, and measuring up to now instead of up to the
+        // newest upload also accounts for a channel which stopped uploading
+        val window = max(
+            Duration.between(stats.oldestUploadDate, now).seconds,
+            MIN_HISTORY_WINDOW.seconds
+        )
+        val expectedIntervalSeconds = window.toDouble() / stats.uploadCount
+
+        // P(at least one upload in t) = 1 - exp(-t / interval)
+        val checkInterval = Duration.ofSeconds(
+            (expectedIntervalSeconds * -ln(1 - NEW_STREAM_PROBABILITY)).toLong()
+        )
+        return lastUpdate.plus(minOf(checkInterval, MAX_CHECK_INTERVAL))
+    }
+
+    /**
+     * @param subscriptions the outdated subscriptions
+     * @param now the current time
+     * @return the subscriptions which are likely to have new streams, followed by the ones
+     * updated longest ago within the budget
+     */
+    fun selectDue(
+        subscriptions: List<SubscriptionEntity>,
+        now: OffsetDateTime
+    ): List<SubscriptionEntity> {
+        val (due, notDue) = subscriptions.partition {
+            getNextCheck(it.uid, now)?.isAfter(now) != true
+        }
+
+        val staleBudget = max(MIN_STALE_CHECKS, subscriptions.size * STALE_CHECKS_PERCENT / 100)
+        return due + notDue
+            .sortedBy { lastUpdated[it.uid] }
+            .take(staleBudget)
+    }
+
+    companion object {
+        /**
+         * The probability of new streams a subscription needs to be checked.
+         */
+        private const val NEW_STREAM_PROBABILITY = 0.5
+
+        /**
+         * Avoids overestimating the rate of channels which uploaded a few streams at once.
+         */
+        private val MIN_HISTORY_WINDOW = Duration.ofDays(1)
+
+        private val MAX_CHECK_INTERVAL = Duration.ofDays(7)
+
+        /**
+         * Part of the not due subscriptions which are checked anyway, with a minimum of
+         * [MIN_STALE_CHECKS].
+         */
+        private const val STALE_CHECKS_PERCENT = 5
+        private const val MIN_STALE_CHECKS = 5
+    }
+}
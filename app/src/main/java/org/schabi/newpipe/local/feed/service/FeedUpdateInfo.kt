@@ -1,5 +1,6 @@
 package org.schabi.newpipe.local.feed.service
 
+import org.schabi.newpipe.DownloaderImpl.Validators
 import org.schabi.newpipe.database.subscription.NotificationMode
 import org.schabi.newpipe.database.subscription.SubscriptionEntity
 import org.schabi.newpipe.extractor.Info
@@ -25,13 +26,18 @@ data class FeedUpdateInfo(
     val description: String?,
     val subscriberCount: Long?,
     val streams: List<StreamInfoItem>,
-    val errors: List<Throwable>
+    val errors: List<Throwable>,
+    // the validators of the dedicated feed response, if any
+    val validators: Validators? = null,
+    // if true, the feed has not changed since the last update and there is nothing to store
+    val isNotModified: Boolean = false
 ) {
     constructor(
         subscription: SubscriptionEntity,
         info: Info,
         streams: List<StreamInfoItem>,
-        errors: List<Throwable>
+        errors: List<Throwable>,
+        validators: Validators? = null
     ) : this(
         uid = subscription.uid,
         notificationMode = subscription.notificationMode,
@@ -46,7 +52,26 @@ data class FeedUpdateInfo(
         description = (info as? ChannelInfo)?.description,
         subscriberCount = (info as? ChannelInfo)?.subscriberCount,
         streams = streams,
-        errors = errors
+        errors = errors,
+        validators = validators
+    )
+
+    /**
+     * Creates the info of a subscription whose feed has not changed since the last update.
+     */
+    constructor(subscription: SubscriptionEntity, validators: Validators?) : this(
+        uid = subscription.uid,
+        notificationMode = subscription.notificationMode,
+        name = subscription.name.orEmpty(),
+        avatarUrl = subscription.avatarUrl,
+        url = subscription.url.orEmpty(),
+        serviceId = subscription.serviceId,
+        description = subscription.description,
+        subscriberCount = subscription.subscriberCount,
+        streams = emptyList(),
+        errors = emptyList(),
+        validators = validators,
+        isNotModified = true
     )
 
     /**
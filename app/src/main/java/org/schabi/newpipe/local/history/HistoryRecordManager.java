@@ -50,11 +50,13 @@ import org.schabi.newpipe.util.ExtractorHelper;
 import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 
@@ -64,6 +66,7 @@ public class HistoryRecordManager {
     private final StreamHistoryDAO streamHistoryTable;
     private final SearchHistoryDAO searchHistoryTable;
     private final StreamStateDAO streamStateTable;
+    private final StreamStateRepository streamStateRepository;
     private final SharedPreferences sharedPreferences;
     private final String searchHistoryKey;
     private final String streamHistoryKey;
@@ -74,6 +77,7 @@ public class HistoryRecordManager {
         streamHistoryTable = database.streamHistoryDAO();
         searchHistoryTable = database.searchHistoryDAO();
         streamStateTable = database.streamStateDAO();
+        streamStateRepository = StreamStateRepository.getInstance(context);
         sharedPreferences = PreferenceManager.getDefaultSharedPreferences(context);
         searchHistoryKey = context.getString(R.string.enable_search_history_key);
         streamHistoryKey = context.getString(R.string.enable_watch_history_key);
@@ -122,6 +126,8 @@ public class HistoryRecordManager {
                     duration * 1000
             );
             streamStateTable.upsert(entity);
+            streamStateRepository.onStateChanged(info.getServiceId(), info.getUrl(), streamId,
+                    entity);
 
             // Add a history entry
             final StreamHistoryEntity latestEntry = streamHistoryTable.getLatestEntry(streamId);
@@ -160,6 +166,7 @@ public class HistoryRecordManager {
         return Completable.fromAction(() -> {
             streamStateTable.deleteState(streamId);
             streamHistoryTable.deleteStreamHistory(streamId);
+            streamStateRepository.onStateDeleted(streamId);
         }).subscribeOn(Schedulers.io());
     }
 
@@ -170,6 +177,7 @@ public class HistoryRecordManager {
 
     public Single<Integer> deleteCompleteStreamStateHistory() {
         return Single.fromCallable(streamStateTable::deleteAll)
+                .doOnSuccess(deleted -> streamStateRepository.invalidateAll())
                 .subscribeOn(Schedulers.io());
     }
 
@@ -259,60 +267,77 @@ public class HistoryRecordManager {
             final StreamStateEntity state = new StreamStateEntity(streamId, progressMillis);
             if (state.isValid(info.getDuration())) {
                 streamStateTable.upsert(state);
+                streamStateRepository.onStateChanged(info.getServiceId(), info.getUrl(),
+                        streamId, state);
             }
         })).subscribeOn(Schedulers.io());
     }
 
+    /**
+     * Loads the state of an item, from memory if it has been loaded recently, e.g. by
+     * {@link #loadStreamStates(List)}.
+     *
+     * @param info the item to get the state of
+     * @return a single array containing the state, or {@code null} if the item has no state
+     */
     public Single<StreamStateEntity[]> loadStreamState(final InfoItem info) {
-        return Single.fromCallable(() -> {
-            final List<StreamEntity> entities = streamTable
-                    .getStream(info.getServiceId(), info.getUrl()).blockingFirst();
-            if (entities.isEmpty()) {
-                return new StreamStateEntity[]{null};
-            }
-            final List<StreamStateEntity> states = streamStateTable
-                    .getState(entities.get(0).getUid()).blockingFirst();
-            if (states.isEmpty()) {
-                return new StreamStateEntity[]{null};
-            }
-            return new StreamStateEntity[]{states.get(0)};
-        }).subscribeOn(Schedulers.io());
+        final StreamStateRepository.CachedState cached =
+                streamStateRepository.getCachedState(info.getServiceId(), info.getUrl());
+        if (cached != null) {
+            return Single.just(new StreamStateEntity[]{cached.getState()});
+        }
+
+        return Single.fromCallable(() -> new StreamStateEntity[]{streamStateRepository
+                        .loadStates(Collections.singletonList(info)).get(0)})
+                .subscribeOn(Schedulers.io());
+    }
+
+    /**
+     * Loads the states of a page of items with a single query, so that they are in memory when
+     * the items are shown, see {@link #loadStreamState(InfoItem)}.
+     *
+     * @param items the items to load the states of
+     * @return a completable which loads the states
+     */
+    public Completable loadStreamStates(final List<? extends InfoItem> items) {
+        return Completable.fromAction(() -> streamStateRepository.loadStates(items))
+                .subscribeOn(Schedulers.io());
     }
 
     public Single<List<StreamStateEntity>> loadLocalStreamStateBatch(
             final List<? extends LocalItem> items) {
         return Single.fromCallable(() -> {
-            final List<StreamStateEntity> result = new ArrayList<>(items.size());
+            final List<Long> streamIds = new ArrayList<>(items.size());
             for (final LocalItem item : items) {
-                final long streamId;
                 if (item instanceof StreamStatisticsEntry) {
-                    streamId = ((StreamStatisticsEntry) item).getStreamId();
+                    streamIds.add(((StreamStatisticsEntry) item).getStreamId());
                 } else if (item instanceof PlaylistStreamEntity) {
-                    streamId = ((PlaylistStreamEntity) item).getStreamUid();
+                    streamIds.add(((PlaylistStreamEntity) item).getStreamUid());
                 } else if (item instanceof PlaylistStreamEntry) {
-                    streamId = ((PlaylistStreamEntry) item).getStreamId();
-                } else {
-                    result.add(null);
-                    continue;
-                }
-                final List<StreamStateEntity> states = streamStateTable.getState(streamId)
-                        .blockingFirst();
-                if (states.isEmpty()) {
-                    result.add(null);
+                    streamIds.add(((PlaylistStreamEntry) item).getStreamId());
                 } else {
-                    result.add(states.get(0));
+                    // no stream has this uid, so the state is null
+                    streamIds.add(-1L);
                 }
             }
-            return result;
+            return streamStateRepository.loadLocalStates(streamIds);
         }).subscribeOn(Schedulers.io());
     }
 
+    /**
+     * @return the states written from now on, to update the items already shown
+     */
+    public Observable<StreamStateRepository.Update> getStreamStateUpdates() {
+        return streamStateRepository.getUpdates();
+    }
+
     ///////////////////////////////////////////////////////
     // Utility
     ///////////////////////////////////////////////////////
 
     public Single<Integer> removeOrphanedRecords() {
-        return Single.fromCallable(streamTable::deleteOrphans).subscribeOn(Schedulers.io());
+        return Single.fromCallable(streamTable::deleteOrphanCandidates)
+                .subscribeOn(Schedulers.io());
     }
 
 }
@@ -0,0 +1,208 @@
+package org.schabi.newpipe.local.history
+
+import android.content.Context
+import androidx.collection.LruCache
+import io.reactivex.rxjava3.core.Observable
+import io.reactivex.rxjava3.subjects.PublishSubject
+import org.schabi.newpipe.NewPipeDatabase
+import org.schabi.newpipe.database.stream.dao.StreamStateDAO
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
+import org.schabi.newpipe.extractor.InfoItem
+
+/**
+ * Resolves the playback states shown in the lists, whole pages at once with a single query, and
+ * keeps the most recently used ones in memory. [HistoryRecordManager] keeps the cache up to date
+ * when it writes states, and the changes are published through [updates].
+ */
+class StreamStateRepository internal constructor(private val streamStateTable: StreamStateDAO) {
+    private val lock = Any()
+    private val statesById = LruCache<Long, CachedState>(MAX_CACHED_STATES)
+    private val idsByUrl = LruCache<UrlKey, Long>(MAX_CACHED_STATES)
+    private val updateSubject = PublishSubject.create<Update>().toSerialized()
+
+    // incremented on every write, so that the results of the queries started before are not cached
+    private var version = 0L
+
+    /**
+     * The state of a stream, [state] is null if the stream has no state.
+     */
+    class CachedState(val state: StreamStateEntity?)
+
+    /**
+     * A state written by [HistoryRecordManager], [state] is null if it was deleted.
+     */
+    data class Update(
+        val serviceId: Int,
+        val url: String?,
+        val streamId: Long,
+        val state: StreamStateEntity?
+    )
+
+    private data class UrlKey(val serviceId: Int, val url: String)
+
+    val updates: Observable<Update> get() = updateSubject
+
+    /**
+     * @return the cached state of the stream, or null if it is not cached
+     */
+    fun getCachedState(serviceId: Int, url: String): CachedState? = synchronized(lock) {
+        when (val streamId = idsByUrl[UrlKey(serviceId, url)]) {
+            null -> null
+            NOT_IN_DATABASE -> NO_STATE
+            else -> statesById[streamId]
+        }
+    }
+
+    /**
+     * @return the cached state of the stream, or null if it is not cached
+     */
+    fun getCachedState(streamId: Long): CachedState? = synchronized(lock) {
+        statesById[streamId]
+    }
+
+    /**
+     * Gets the states of the given items, querying the database once for every
+     * [MAX_QUERY_ARGUMENTS] items which are not cached. Must not be called on the main thread.
+     *
+     * @return the state of each item, or null if it has none
+     */
+    fun loadStates(items: List<InfoItem>): List<StreamStateEntity?> {
+        val keys = items.map { UrlKey(it.serviceId, it.url) }
+        val loaded = HashMap<UrlKey, StreamStateEntity?>()
+        val missing = ArrayList<UrlKey>()
+        for (key in keys.distinct()) {
+            val cached = getCachedState(key.serviceId, key.url)
+            if (cached == null) {
+                missing.add(key)
+            } else {
+                loaded[key] = cached.state
+            }
+        }
+
+        for ((serviceId, urls) in missing.groupBy({ it.serviceId }, { it.url })) {
+            for (chunk in urls.chunked(MAX_QUERY_ARGUMENTS)) {
+                val queryVersion = synchronized(lock) { version }
+                val found = streamStateTable.getStatesByUrl(serviceId, chunk)
+                    .associateBy { it.url }
+
+                synchronized(lock) {
+                    val cache = queryVersion == version
+                    for (url in chunk) {
+                        val key = UrlKey(serviceId, url)
+                        val stream = found[url]
+                        val state = stream?.progressMillis
+                            ?.let { StreamStateEntity(stream.streamId, it) }
+
+                        if (cache) {
+                            idsByUrl.put(key, stream?.streamId ?: NOT_IN_DATABASE)
+                            if (stream != null) {
+                                statesById.put(stream.streamId, state?.let { CachedState(it) } ?: NO_STATE)
+                            }
+                        }
+                        loaded[key] = state
+                    }
+                }
+            }
+        }
+
+        return keys.map { loaded[it] }
+    }
+
+    /**
+     * Like [loadStates], for streams which are known to be in the database.
+     *
+     * @return the state of each stream, or null if it has none
+     */
+    fun loadLocalStates(streamIds: List<Long>): List<StreamStateEntity?> {
+        val loaded = HashMap<Long, StreamStateEntity?>()
+        val missing = ArrayList<Long>()
+        for (streamId in streamIds.distinct()) {
+            val cached = getCachedState(streamId)
+            if (cached == null) {
+                missing.add(streamId)
+            } else {
+                loaded[streamId] = cached.state
+            }
+        }
+
+        for (chunk in missing.chunked(MAX_QUERY_ARGUMENTS)) {
+            val queryVersion = synchronized(lock) { version }
+            val found = streamStateTable.getStates(chunk).associateBy { it.streamUid }
+            synchronized(lock) {
+                val cache = queryVersion == version
+                for (streamId in chunk) {
+                    val state = found[streamId]
+                    if (cache) {
+                        statesById.put(streamId, state?.let { CachedState(it) } ?: NO_STATE)
+                    }
+                    loaded[streamId] = state
+                }
+            }
+        }
+
+        return streamIds.map { loaded[it] }
+    }
+
+    /**
+     * Records a state which has just been written to the database.
+     *
+     * @param state the new state, or null if it was deleted
+     */
+    fun onStateChanged(serviceId: Int, url: String?, streamId: Long, state: StreamStateEntity?) {
+        synchronized(lock) {
+            version++
+            if (url != null) {
+                idsByUrl.put(UrlKey(serviceId, url), streamId)
+            }
+            statesById.put(streamId, state?.let { CachedState(it) } ?: NO_STATE)
+        }
+        updateSubject.onNext(Update(serviceId, url, streamId, state))
+    }
+
+    /**
+     * Records that the state of a stream has been deleted, when only its uid is known.
+     */
+    fun onStateDeleted(streamId: Long) {
+        synchronized(lock) {
+            version++
+            statesById.put(streamId, NO_STATE)
+        }
+        updateSubject.onNext(Update(NO_SERVICE_ID, null, streamId, null))
+    }
+
+    /**
+     * Forgets every cached state, e.g. because all of them have been deleted.
+     */
+    fun invalidateAll() {
+        synchronized(lock) {
+            version++
+            statesById.evictAll()
+            idsByUrl.evictAll()
+        }
+    }
+
+    companion object {
+        private const val MAX_CACHED_STATES = 1000
+
+        /**
+         * Keeps the queries below the SQLite limit of arguments.
+         */
+        private const val MAX_QUERY_ARGUMENTS = 500
+
+        private const val NOT_IN_DATABASE = -1L
+        private const val NO_SERVICE_ID = -1
+        private val NO_STATE = CachedState(null)
+
+        @Volatile
+        private var instance: StreamStateRepository? = null
+
+        @JvmStatic
+        fun getInstance(context: Context): StreamStateRepository {
+            return instance ?: synchronized(this) {
+                instance ?: StreamStateRepository(
+                    NewPipeDatabase.getInstance(context).streamStateDAO()
+                ).also { instance = it }
+            }
+        }
+    }
+}
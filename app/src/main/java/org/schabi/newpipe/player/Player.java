@@ -100,6 +100,8 @@ import org.schabi.newpipe.player.event.PlayerServiceEventListener;
 import org.schabi.newpipe.player.helper.AudioReactor;
 import org.schabi.newpipe.player.helper.CustomRenderersFactory;
 import org.schabi.newpipe.player.helper.LoadController;
+import org.schabi.newpipe.player.helper.MediaPrefetcher;
+import org.schabi.newpipe.player.helper.PlaybackStateMonitor;
 import org.schabi.newpipe.player.helper.PlayerDataSource;
 import org.schabi.newpipe.player.helper.PlayerHelper;
 import org.schabi.newpipe.player.mediaitem.MediaItemTag;
@@ -214,6 +216,8 @@ public final class Player implements PlaybackListener, Listener {
     @NonNull
     private final LoadController loadController;
     @NonNull
+    private final MediaPrefetcher mediaPrefetcher;
+    @NonNull
     private final DefaultRenderersFactory renderFactory;
 
     @NonNull
@@ -295,6 +299,7 @@ public final class Player implements PlaybackListener, Listener {
         final PlayerDataSource dataSource = new PlayerDataSource(context,
                 new DefaultBandwidthMeter.Builder(context).build());
         loadController = new LoadController();
+        mediaPrefetcher = new MediaPrefetcher(dataSource);
 
         renderFactory = prefs.getBoolean(
                 context.getString(
@@ -629,6 +634,7 @@ public final class Player implements PlaybackListener, Listener {
                 .setUsePlatformDiagnostics(false)
                 .build();
         simpleExoPlayer.addListener(this);
+        simpleExoPlayer.setPriorityTaskManager(mediaPrefetcher.getPriorityTaskManager());
         simpleExoPlayer.setPlayWhenReady(playOnReady);
         simpleExoPlayer.setSeekParameters(PlayerHelper.getSeekParameters(context));
         simpleExoPlayer.setWakeMode(C.WAKE_MODE_NETWORK);
@@ -680,6 +686,7 @@ public final class Player implements PlaybackListener, Listener {
         if (playQueueManager != null) {
             playQueueManager.dispose();
         }
+        mediaPrefetcher.cancel();
     }
 
     public void destroy() {
@@ -692,7 +699,9 @@ public final class Player implements PlaybackListener, Listener {
         stopActivityBinding();
 
         destroyPlayer();
+        mediaPrefetcher.release();
         unregisterBroadcastReceiver();
+        PlaybackStateMonitor.setActive(false);
 
         databaseUpdateDisposable.clear();
         progressUpdateDisposable.set(null);
@@ -731,7 +740,7 @@ public final class Player implements PlaybackListener, Listener {
         }
 
         if (playQueue != null) {
-            playQueueManager = new MediaSourceManager(this, playQueue);
+            playQueueManager = new MediaSourceManager(this, playQueue, context);
         }
     }
 
@@ -1144,6 +1153,8 @@ public final class Player implements PlaybackListener, Listener {
             Log.d(TAG, "changeState() called with: state = [" + state + "]");
         }
         currentState = state;
+        PlaybackStateMonitor.setActive(state == STATE_BLOCKED
+                || state == STATE_BUFFERING || state == STATE_PLAYING);
         switch (state) {
             case STATE_BLOCKED:
                 onBlocked();
@@ -2025,6 +2036,12 @@ public final class Player implements PlaybackListener, Listener {
         return videoResolver.resolve(info);
     }
 
+    @Override // own playback listener
+    public void onNextSourceLoaded(@NonNull final MediaItemTag tag) {
+        // the video-only streams are not read while the video renderer is disabled
+        mediaPrefetcher.prefetch(tag, isAudioOnly);
+    }
+
     public void disablePreloadingOfCurrentTrack() {
         loadController.disablePreloadingOfCurrentTrack();
     }
@@ -0,0 +1,332 @@
+package org.schabi.newpipe.player.helper;
+
+import static org.schabi.newpipe.MainActivity.DEBUG;
+import static org.schabi.newpipe.extractor.stream.AudioStream.UNKNOWN_BITRATE;
+
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.cache.CacheWriter;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+import com.google.android.exoplayer2.util.PriorityTaskManager.PriorityTooLowException;
+
+import org.schabi.newpipe.extractor.ServiceList;
+import org.schabi.newpipe.extractor.stream.AudioStream;
+import org.schabi.newpipe.extractor.stream.DeliveryMethod;
+import org.schabi.newpipe.extractor.stream.Stream;
+import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.extractor.stream.StreamType;
+import org.schabi.newpipe.extractor.stream.VideoStream;
+import org.schabi.newpipe.player.mediaitem.MediaItemTag;
+import org.schabi.newpipe.player.resolver.PlaybackResolver;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Downloads the beginning of the streams of the next queue item into the cache of
+ * {@link PlayerDataSource}, so that the player can switch to it without buffering, even when the
+ * network is slow.
+ * <p>
+ * The prefetch requests have a lower priority than the playback ones: they wait while the player
+ * is loading, see {@link PlayerDataSource#getPriorityTaskManager()}. Only the streams which are
+ * read from a single URL are prefetched, i.e. not HLS, OTF and live streams.
+ * </p>
+ */
+public final class MediaPrefetcher {
+    private static final String TAG = MediaPrefetcher.class.getSimpleName();
+
+    /**
+     * How many seconds of every stream are prefetched, when its bitrate is known.
+     */
+    private static final int PREFETCH_SECONDS = 10;
+    private static final long MIN_PREFETCH_BYTES = 256 * 1024;
+    private static final long MAX_PREFETCH_BYTES = 2 * 1024 * 1024;
+    private static final long UNKNOWN_BITRATE_PREFETCH_BYTES = 1024 * 1024;
+
+    @NonNull
+    private final PlayerDataSource dataSource;
+    @NonNull
+    private final ExecutorService executor;
+
+    @Nullable
+    private PrefetchTask currentTask;
+
+    public MediaPrefetcher(@NonNull final PlayerDataSource dataSource) {
+        this(dataSource, Executors.newSingleThreadExecutor(runnable ->
+                new Thread(() -> {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    runnable.run();
+                }, TAG)));
+    }
+
+    @VisibleForTesting
+    MediaPrefetcher(@NonNull final PlayerDataSource dataSource,
+                    @NonNull final ExecutorService executor) {
+        this.dataSource = dataSource;
+        this.executor = executor;
+    }
+
+    @NonNull
+    public PriorityTaskManager getPriorityTaskManager() {
+        return dataSource.getPriorityTaskManager();
+    }
+
+    /**
+     * Starts prefetching the streams which the player reads to play the item with the given tag,
+     * and cancels the previous prefetch.
+     *
+     * @param tag       the tag of the resolved source of the item
+     * @param audioOnly whether the video is not rendered, so that video-only streams are not read
+     */
+    @MainThread
+    public void prefetch(@NonNull final MediaItemTag tag, final boolean audioOnly) {
+        final StreamInfo info = tag.getMaybeStreamInfo().orElse(null);
+        if (info == null) {
+            cancel();
+            return;
+        }
+
+        final List<StreamWriter> writers = new ArrayList<>();
+        for (final Stream stream : streamsToPrefetch(tag, audioOnly)) {
+            final StreamWriter writer = writerOf(info, stream);
+            if (writer != null) {
+                writers.add(writer);
+            }
+        }
+        prefetch(info.getUrl(), writers);
+    }
+
+    /**
+     * Cancels the previous prefetch and writes the given streams into the cache, one after the
+     * other, while the player is not loading.
+     *
+     * @param url     the URL of the item, for logging
+     * @param writers the streams to write
+     */
+    @MainThread
+    void prefetch(@NonNull final String url, @NonNull final List<StreamWriter> writers) {
+        cancel();
+
+        if (!writers.isEmpty()) {
+            currentTask = new PrefetchTask(url, writers);
+            currentTask.future = executor.submit(currentTask);
+        }
+    }
+
+    @MainThread
+    public void cancel() {
+        if (currentTask != null) {
+            currentTask.cancel();
+            currentTask = null;
+        }
+    }
+
+    @MainThread
+    public void release() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    /**
+     * @return the streams read by the player, as chosen by the playback resolvers
+     */
+    @NonNull
+    private static List<Stream> streamsToPrefetch(@NonNull final MediaItemTag tag,
+                                                  final boolean audioOnly) {
+        final VideoStream videoStream = tag.getMaybeQuality()
+                .map(MediaItemTag.Quality::getSelectedVideoStream)
+                .orElse(null);
+        final AudioStream audioStream = tag.getMaybeAudioTrack()
+                .map(MediaItemTag.AudioTrack::getSelectedAudioStream)
+                .orElse(null);
+
+        final List<Stream> streams = new ArrayList<>(2);
+        if (videoStream != null
+                && !(audioOnly && videoStream.isVideoOnly() && audioStream != null)) {
+            streams.add(videoStream);
+        }
+        // the audio of muxed video streams is read from the video stream itself
+        if (audioStream != null && (videoStream == null || videoStream.isVideoOnly())) {
+            streams.add(audioStream);
+        }
+        return streams;
+    }
+
+    /**
+     * @return a writer of the given stream into the same cache entry the player will read, or
+     * {@code null} if the stream is not supported
+     * @see PlaybackResolver#buildMediaSource
+     */
+    @Nullable
+    private StreamWriter writerOf(@NonNull final StreamInfo info, @NonNull final Stream stream) {
+        if (!stream.isUrl() || stream.getContent() == null || stream.getContent().isEmpty()
+                || stream.getDeliveryMethod() != DeliveryMethod.PROGRESSIVE_HTTP) {
+            return null;
+        }
+
+        final DataSpec.Builder dataSpec = new DataSpec.Builder()
+                .setUri(Uri.parse(stream.getContent()))
+                .setPosition(0)
+                .setLength(prefetchBytesOf(stream));
+
+        if (info.getService() != ServiceList.YouTube) {
+            return new CacheStreamWriter(dataSource.getPrefetchCacheDataSourceFactory(),
+                    dataSpec.setKey(PlaybackResolver.cacheKeyOf(info, stream)).build());
+        }
+
+        if (info.getStreamType() != StreamType.VIDEO_STREAM) {
+            return null;
+        }
+
+        if (stream instanceof AudioStream
+                || (stream instanceof VideoStream && ((VideoStream) stream).isVideoOnly())) {
+            // Played through a generated DASH manifest, whose representations have no cache
+            // key, so the URL of the stream is used as the key
+            return new CacheStreamWriter(dataSource.getYoutubeDashPrefetchCacheDataSourceFactory(),
+                    dataSpec.build());
+        }
+
+        return new CacheStreamWriter(
+                dataSource.getYoutubeProgressivePrefetchCacheDataSourceFactory(),
+                dataSpec.setKey(PlaybackResolver.cacheKeyOf(info, stream)).build());
+    }
+
+    private static long prefetchBytesOf(@NonNull final Stream stream) {
+        final long bitsPerSecond;
+        if (stream instanceof AudioStream) {
+            final AudioStream audioStream = (AudioStream) stream;
+            bitsPerSecond = audioStream.getAverageBitrate() != UNKNOWN_BITRATE
+                    ? audioStream.getAverageBitrate() * 1000L : audioStream.getBitrate();
+        } else if (stream instanceof VideoStream) {
+            bitsPerSecond = ((VideoStream) stream).getBitrate();
+        } else {
+            bitsPerSecond = 0;
+        }
+
+        if (bitsPerSecond <= 0) {
+            return UNKNOWN_BITRATE_PREFETCH_BYTES;
+        }
+        return Math.max(MIN_PREFETCH_BYTES,
+                Math.min(MAX_PREFETCH_BYTES, bitsPerSecond / 8 * PREFETCH_SECONDS));
+    }
+
+    /**
+     * Writes the beginning of a stream into the cache.
+     */
+    interface StreamWriter {
+        /**
+         * Writes the bytes which are not in the cache yet.
+         *
+         * @throws PriorityTooLowException if the player started loading, the writing can be
+         *                                 resumed by calling this method again
+         */
+        void cache() throws IOException;
+
+        /**
+         * Stops {@link #cache()}, can be called from any thread.
+         */
+        void cancel();
+    }
+
+    private static final class CacheStreamWriter implements StreamWriter {
+        @NonNull
+        private final CacheWriter cacheWriter;
+
+        CacheStreamWriter(@NonNull final CacheFactory dataSourceFactory,
+                          @NonNull final DataSpec dataSpec) {
+            cacheWriter = new CacheWriter(
+                    dataSourceFactory.createDataSource(), dataSpec, null, null);
+        }
+
+        @Override
+        public void cache() throws IOException {
+            // the bytes already in the cache are skipped
+            cacheWriter.cache();
+        }
+
+        @Override
+        public void cancel() {
+            cacheWriter.cancel();
+        }
+    }
+
+    private final class PrefetchTask implements Runnable {
+        @NonNull
+        private final String url;
+        @NonNull
+        private final List<StreamWriter> writers;
+        private volatile boolean cancelled;
+        @Nullable
+        private Future<?> future;
+
+        PrefetchTask(@NonNull final String url, @NonNull final List<StreamWriter> writers) {
+            this.url = url;
+            this.writers = writers;
+        }
+
+        void cancel() {
+            cancelled = true;
+            for (final StreamWriter writer : writers) {
+                writer.cancel();
+            }
+            if (future != null) {
+                // interrupts the wait for the player to stop loading
+                future.cancel(true);
+            }
+        }
+
+        @Override
+        public void run() {
+            final PriorityTaskManager priorityTaskManager = getPriorityTaskManager();
+            priorityTaskManager.add(C.PRIORITY_DOWNLOAD);
+            try {
+                for (final StreamWriter writer : writers) {
+                    if (cancelled) {
+                        return;
+                    }
+                    cache(priorityTaskManager, writer);
+                }
+                if (DEBUG) {
+                    Log.d(TAG, "Prefetched " + writers.size() + " streams of " + url);
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (final IOException e) {
+                // the player will load the streams itself
+                if (DEBUG && !cancelled) {
+                    Log.d(TAG, "Failed to prefetch " + url, e);
+                }
+            } finally {
+                priorityTaskManager.remove(C.PRIORITY_DOWNLOAD);
+            }
+        }
+
+        private void cache(@NonNull final PriorityTaskManager priorityTaskManager,
+                           @NonNull final StreamWriter writer)
+                throws InterruptedException, IOException {
+            while (true) {
+                // wait until the player stops loading
+                priorityTaskManager.proceed(C.PRIORITY_DOWNLOAD);
+                try {
+                    writer.cache();
+                    return;
+                } catch (final PriorityTooLowException e) {
+                    // the player started loading again, continue once it is done
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package org.schabi.newpipe.player.helper;
+
+import androidx.annotation.NonNull;
+
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.subjects.BehaviorSubject;
+import io.reactivex.rxjava3.subjects.Subject;
+
+/**
+ * Publishes whether the player is loading or playing a stream, so other components (e.g. the
+ * downloads) can react to it without depending on the player.
+ */
+public final class PlaybackStateMonitor {
+    private static final Subject<Boolean> ACTIVE =
+            BehaviorSubject.createDefault(false).toSerialized();
+
+    private PlaybackStateMonitor() {
+    }
+
+    /**
+     * @param active {@code true} if the player is buffering or playing, otherwise, {@code false}
+     */
+    public static void setActive(final boolean active) {
+        ACTIVE.onNext(active);
+    }
+
+    /**
+     * @return the current state followed by every change, emitted on the thread of the player
+     */
+    @NonNull
+    public static Observable<Boolean> observeActive() {
+        return ACTIVE.distinctUntilChanged();
+    }
+}
@@ -7,6 +7,7 @@ import android.util.Log;
 
 import androidx.annotation.Nullable;
 
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.database.StandaloneDatabaseProvider;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
 import com.google.android.exoplayer2.source.SingleSampleMediaSource;
@@ -19,9 +20,11 @@ import com.google.android.exoplayer2.source.smoothstreaming.SsMediaSource;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DefaultDataSource;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSource;
+import com.google.android.exoplayer2.upstream.PriorityDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.upstream.cache.LeastRecentlyUsedCacheEvictor;
 import com.google.android.exoplayer2.upstream.cache.SimpleCache;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
 
 import org.schabi.newpipe.DownloaderImpl;
 import org.schabi.newpipe.extractor.services.youtube.dashmanifestcreators.YoutubeOtfDashManifestCreator;
@@ -77,6 +80,13 @@ public class PlayerDataSource {
     private final CacheFactory ytDashCacheDataSourceFactory;
     private final CacheFactory ytProgressiveDashCacheDataSourceFactory;
 
+    // Data Source Factories used by MediaPrefetcher to write into the cache
+    // Their requests are run only while the player is not loading
+    private final PriorityTaskManager priorityTaskManager = new PriorityTaskManager();
+    private final CacheFactory prefetchCacheDataSourceFactory;
+    private final CacheFactory ytDashPrefetchCacheDataSourceFactory;
+    private final CacheFactory ytProgressivePrefetchCacheDataSourceFactory;
+
 
     public PlayerDataSource(final Context context,
                             final TransferListener transferListener) {
@@ -101,6 +111,16 @@ public class PlayerDataSource {
         ytProgressiveDashCacheDataSourceFactory = new CacheFactory(context, transferListener, cache,
                 getYoutubeHttpDataSourceFactory(false, true));
 
+        // prefetch data source factories are not reported to the transfer listener, so that
+        // they do not affect the bandwidth estimate of the playback
+        prefetchCacheDataSourceFactory = new CacheFactory(context, null, cache,
+                getPrefetchDataSourceFactory(new DefaultHttpDataSource.Factory()
+                        .setUserAgent(DownloaderImpl.USER_AGENT)));
+        ytDashPrefetchCacheDataSourceFactory = new CacheFactory(context, null, cache,
+                getPrefetchDataSourceFactory(getYoutubeHttpDataSourceFactory(true, true)));
+        ytProgressivePrefetchCacheDataSourceFactory = new CacheFactory(context, null, cache,
+                getPrefetchDataSourceFactory(getYoutubeHttpDataSourceFactory(false, true)));
+
         // set the maximum size to manifest creators
         YoutubeProgressiveDashManifestCreator.getCache().setMaximumSize(MAX_MANIFEST_CACHE_SIZE);
         YoutubeOtfDashManifestCreator.getCache().setMaximumSize(MAX_MANIFEST_CACHE_SIZE);
@@ -191,6 +211,36 @@ public class PlayerDataSource {
     //endregion
 
 
+    //region Prefetch data source factories
+
+    /**
+     * @return the {@link PriorityTaskManager} which the player must use, so that the prefetch
+     * requests wait while the player is loading
+     */
+    public PriorityTaskManager getPriorityTaskManager() {
+        return priorityTaskManager;
+    }
+
+    CacheFactory getPrefetchCacheDataSourceFactory() {
+        return prefetchCacheDataSourceFactory;
+    }
+
+    CacheFactory getYoutubeDashPrefetchCacheDataSourceFactory() {
+        return ytDashPrefetchCacheDataSourceFactory;
+    }
+
+    CacheFactory getYoutubeProgressivePrefetchCacheDataSourceFactory() {
+        return ytProgressivePrefetchCacheDataSourceFactory;
+    }
+
+    private DataSource.Factory getPrefetchDataSourceFactory(
+            final DataSource.Factory upstreamDataSourceFactory) {
+        return new PriorityDataSource.Factory(upstreamDataSourceFactory, priorityTaskManager,
+                C.PRIORITY_DOWNLOAD);
+    }
+    //endregion
+
+
     //region Static methods
     private static DefaultDashChunkSource.Factory getDefaultDashChunkSourceFactory(
             final DataSource.Factory dataSourceFactory) {
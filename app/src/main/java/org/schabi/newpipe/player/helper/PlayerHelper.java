@@ -381,6 +381,16 @@ public final class PlayerHelper {
         return Integer.parseInt(preferredIntervalBytes) * 1024;
     }
 
+    /**
+     * @param context the context to read the preferences with
+     * @return how many queue items after the current one are loaded ahead on unmetered networks
+     */
+    public static int getLoadAheadQueueItems(@NonNull final Context context) {
+        return Integer.parseInt(getPreferences(context).getString(
+                context.getString(R.string.load_ahead_queue_items_key),
+                context.getString(R.string.load_ahead_queue_items_default_value)));
+    }
+
     // endregion
     // region Private helpers
 
@@ -0,0 +1,110 @@
+package org.schabi.newpipe.player.playback;
+
+import static org.schabi.newpipe.util.ServiceHelper.getCacheExpirationMillis;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import org.schabi.newpipe.player.helper.PlayerHelper;
+import org.schabi.newpipe.player.playqueue.PlayQueue;
+import org.schabi.newpipe.player.playqueue.PlayQueueItem;
+import org.schabi.newpipe.util.ListHelper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Decides which items of the {@link PlayQueue} {@link MediaSourceManager} loads ahead of time, so
+ * that skipping to them starts playback without waiting for the extraction.
+ * <p>
+ * Up to {@link #maxLookAhead} items after the current one are loaded, as set by the user, fewer
+ * on metered networks.
+ * The items which would be reached only after the loaded sources expire are not loaded, since
+ * they would have to be loaded again anyway.
+ * </p>
+ */
+final class LookAheadPolicy {
+    /**
+     * How many items after the current one are loaded on metered networks, like before the
+     * look-ahead was adaptive.
+     */
+    static final int METERED_MAX_LOOK_AHEAD = 1;
+    /**
+     * How many items before the current one are loaded. They are not put in the playlist
+     * timeline, only cached for a potential later usage.
+     */
+    static final int LOOK_BEHIND = 1;
+
+    @NonNull
+    private final Context context;
+    private final int maxLookAhead;
+    private final int meteredMaxLookAhead;
+
+    LookAheadPolicy(@NonNull final Context context) {
+        this(context, PlayerHelper.getLoadAheadQueueItems(context), METERED_MAX_LOOK_AHEAD);
+    }
+
+    LookAheadPolicy(@NonNull final Context context,
+                    final int maxLookAhead,
+                    final int meteredMaxLookAhead) {
+        this.context = context;
+        this.maxLookAhead = maxLookAhead;
+        this.meteredMaxLookAhead = meteredMaxLookAhead;
+    }
+
+    /**
+     * @return how many items after the current one should be loaded on the current network
+     */
+    int getLookAhead() {
+        return ListHelper.isMeteredNetwork(context)
+                ? Math.min(meteredMaxLookAhead, maxLookAhead) : maxLookAhead;
+    }
+
+    /**
+     * @param playQueue the queue being played
+     * @param lookAhead how many items after the current one should be loaded
+     * @return the items to load by decreasing priority: the current one, the next ones in queue
+     * order and the previous one, or an empty list if there is no current item
+     */
+    @NonNull
+    static List<PlayQueueItem> getItemsToLoad(@NonNull final PlayQueue playQueue,
+                                              final int lookAhead) {
+        final int currentIndex = playQueue.getIndex();
+        final PlayQueueItem currentItem = playQueue.getItem(currentIndex);
+        if (currentItem == null) {
+            return Collections.emptyList();
+        }
+
+        final List<PlayQueueItem> streams = playQueue.getStreams();
+        final int size = streams.size();
+        final Set<PlayQueueItem> items = new LinkedHashSet<>();
+        items.add(currentItem);
+
+        // Do a round robin at the end of the queue. The next item is always loaded, for
+        // seamless playback, the others only if they are reached before their source expires.
+        long millisUntilItem = durationMillisOf(currentItem);
+        for (int i = 1; i <= lookAhead && i < size; i++) {
+            final PlayQueueItem item = streams.get((currentIndex + i) % size);
+            if (i > 1 && millisUntilItem > getCacheExpirationMillis(item.getServiceId())) {
+                break;
+            }
+            items.add(item);
+            millisUntilItem += durationMillisOf(item);
+        }
+
+        for (int i = Math.max(0, currentIndex - LOOK_BEHIND); i < currentIndex; i++) {
+            items.add(streams.get(i));
+        }
+
+        return new ArrayList<>(items);
+    }
+
+    private static long durationMillisOf(@NonNull final PlayQueueItem item) {
+        // the duration of live streams is unknown
+        return Math.max(0, item.getDuration()) * 1000;
+    }
+}
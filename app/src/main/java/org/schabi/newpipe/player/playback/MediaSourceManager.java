@@ -1,5 +1,6 @@
 package org.schabi.newpipe.player.playback;
 
+import android.content.Context;
 import android.os.Handler;
 import android.util.Log;
 
@@ -22,8 +23,9 @@ import org.schabi.newpipe.player.playqueue.PlayQueueEvent;
 import org.schabi.newpipe.player.playqueue.PlayQueueEvent.RemoveEvent;
 import org.schabi.newpipe.player.playqueue.PlayQueueEvent.ReorderEvent;
 
-import java.util.Collection;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -34,6 +36,7 @@ import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.disposables.SerialDisposable;
 import io.reactivex.rxjava3.internal.subscriptions.EmptySubscription;
 import io.reactivex.rxjava3.schedulers.Schedulers;
 import io.reactivex.rxjava3.subjects.PublishSubject;
@@ -48,11 +51,12 @@ public class MediaSourceManager {
     private final String TAG = "MediaSourceManager@" + hashCode();
 
     /**
-     * Determines how many streams before and after the current stream should be loaded.
+     * Determines how many streams after the current stream must be in the queue for playback.
      * The default value (1) ensures seamless playback under typical network settings.
      * <p>
-     * The streams after the current will be loaded into the playlist timeline while the
-     * streams before will only be cached for future usage.
+     * How many streams before and after the current one are loaded is decided by the
+     * {@link LookAheadPolicy}. The streams after the current will be loaded into the playlist
+     * timeline while the streams before will only be cached for future usage.
      * </p>
      *
      * @see #onMediaSourceReceived(PlayQueueItem, ManagedMediaSource)
@@ -69,6 +73,9 @@ public class MediaSourceManager {
      */
     private static final int MAXIMUM_LOADER_SIZE = WINDOW_SIZE * 2 + 1;
 
+    @NonNull
+    private final LookAheadPolicy lookAheadPolicy;
+
     @NonNull
     private final PlaybackListener playbackListener;
     @NonNull
@@ -114,6 +121,22 @@ public class MediaSourceManager {
 
     @NonNull
     private final CompositeDisposable loaderReactor;
+    /**
+     * Loads the items other than the current one, one after the other, see
+     * {@link #prefetchItems(List)}. It holds the load of {@link #prefetchingItem}.
+     */
+    @NonNull
+    private final SerialDisposable prefetchReactor;
+    /**
+     * The items still to load ahead, by decreasing priority.
+     */
+    @NonNull
+    private final List<PlayQueueItem> prefetchQueue = new ArrayList<>();
+    /**
+     * The item loaded by {@link #prefetchReactor}, if any.
+     */
+    @Nullable
+    private PlayQueueItem prefetchingItem;
     @NonNull
     private final Set<PlayQueueItem> loadingItems;
 
@@ -126,14 +149,16 @@ public class MediaSourceManager {
     private final Handler removeMediaSourceHandler = new Handler();
 
     public MediaSourceManager(@NonNull final PlaybackListener listener,
-                              @NonNull final PlayQueue playQueue) {
-        this(listener, playQueue, 400L,
+                              @NonNull final PlayQueue playQueue,
+                              @NonNull final Context context) {
+        this(listener, playQueue, new LookAheadPolicy(context), 400L,
                 /*playbackNearEndGapMillis=*/TimeUnit.MILLISECONDS.convert(30, TimeUnit.SECONDS),
                 /*progressUpdateIntervalMillis*/TimeUnit.MILLISECONDS.convert(2, TimeUnit.SECONDS));
     }
 
     private MediaSourceManager(@NonNull final PlaybackListener listener,
                                @NonNull final PlayQueue playQueue,
+                               @NonNull final LookAheadPolicy lookAheadPolicy,
                                final long loadDebounceMillis,
                                final long playbackNearEndGapMillis,
                                final long progressUpdateIntervalMillis) {
@@ -148,6 +173,7 @@ public class MediaSourceManager {
 
         this.playbackListener = listener;
         this.playQueue = playQueue;
+        this.lookAheadPolicy = lookAheadPolicy;
 
         this.playbackNearEndGapMillis = playbackNearEndGapMillis;
         this.progressUpdateIntervalMillis = progressUpdateIntervalMillis;
@@ -159,6 +185,7 @@ public class MediaSourceManager {
 
         this.playQueueReactor = EmptySubscription.INSTANCE;
         this.loaderReactor = new CompositeDisposable();
+        this.prefetchReactor = new SerialDisposable();
 
         this.isBlocked = new AtomicBoolean(false);
 
@@ -188,6 +215,9 @@ public class MediaSourceManager {
 
         playQueueReactor.cancel();
         loaderReactor.dispose();
+        prefetchReactor.dispose();
+        prefetchQueue.clear();
+        prefetchingItem = null;
     }
 
     /*//////////////////////////////////////////////////////////////////////////
@@ -382,17 +412,23 @@ public class MediaSourceManager {
         if (DEBUG) {
             Log.d(TAG, "MediaSource - loadImmediate() called");
         }
-        final ItemsToLoad itemsToLoad = getItemsToLoad(playQueue);
-        if (itemsToLoad == null) {
+        final int lookAhead = lookAheadPolicy.getLookAhead();
+        final List<PlayQueueItem> itemsToLoad =
+                LookAheadPolicy.getItemsToLoad(playQueue, lookAhead);
+        if (itemsToLoad.isEmpty()) {
             return;
         }
 
         // Evict the previous items being loaded to free up memory, before start loading new ones
         maybeClearLoaders();
 
-        maybeLoadItem(itemsToLoad.center);
-        for (final PlayQueueItem item : itemsToLoad.neighbors) {
-            maybeLoadItem(item);
+        // The current item has higher priority
+        maybeLoadItem(itemsToLoad.get(0));
+        prefetchItems(itemsToLoad.subList(1, itemsToLoad.size()));
+
+        // Fetch the next items of the queue early, so that they can be loaded ahead too
+        if (!playQueue.isComplete() && playQueue.size() - playQueue.getIndex() <= lookAhead) {
+            playQueue.fetch();
         }
     }
 
@@ -400,23 +436,81 @@ public class MediaSourceManager {
         if (DEBUG) {
             Log.d(TAG, "maybeLoadItem() called.");
         }
-        if (playQueue.indexOf(item) >= playlist.size()) {
+        if (!shouldLoadItem(item)) {
             return;
         }
 
+        loadingItems.add(item);
+        final Disposable loader = getLoadedMediaSource(item)
+                .observeOn(AndroidSchedulers.mainThread())
+                /* No exception handling since getLoadedMediaSource guarantees nonnull return */
+                .subscribe(mediaSource -> onMediaSourceReceived(item, mediaSource));
+        loaderReactor.add(loader);
+    }
+
+    /**
+     * Loads the given items one after the other, in order, so that the next items are ready as
+     * soon as possible without flooding the service with requests. The items are checked when
+     * their turn comes, so the ones loaded in the meantime are skipped.
+     * <p>
+     * The item being loaded keeps loading if it is still among the given items, otherwise its
+     * load is cancelled, e.g. because the user jumped to another item.
+     * </p>
+     *
+     * @param items the items to load by decreasing priority
+     */
+    private void prefetchItems(@NonNull final List<PlayQueueItem> items) {
+        // Copy the items, the play queue may change while they are loaded
+        prefetchQueue.clear();
+        prefetchQueue.addAll(items);
+
+        if (prefetchingItem != null) {
+            if (prefetchQueue.remove(prefetchingItem)) {
+                return;
+            }
+            prefetchReactor.set(null);
+            loadingItems.remove(prefetchingItem);
+            prefetchingItem = null;
+        }
+        prefetchNextItem();
+    }
+
+    private void prefetchNextItem() {
+        while (!prefetchQueue.isEmpty()) {
+            final PlayQueueItem item = prefetchQueue.remove(0);
+            if (shouldLoadItem(item)) {
+                prefetchingItem = item;
+                loadingItems.add(item);
+                prefetchReactor.set(getLoadedMediaSource(item)
+                        .observeOn(AndroidSchedulers.mainThread())
+                        /* No exception handling since getLoadedMediaSource guarantees nonnull
+                         * return */
+                        .subscribe(mediaSource -> {
+                            prefetchingItem = null;
+                            onMediaSourceReceived(item, mediaSource);
+                            // the playlist update may have already started the next load
+                            if (prefetchingItem == null) {
+                                prefetchNextItem();
+                            }
+                        }));
+                return;
+            }
+        }
+    }
+
+    private boolean shouldLoadItem(@NonNull final PlayQueueItem item) {
+        if (playQueue.indexOf(item) >= playlist.size()) {
+            return false;
+        }
+
         if (!loadingItems.contains(item) && isCorrectionNeeded(item)) {
             if (DEBUG) {
                 Log.d(TAG, "MediaSource - Loading=[" + item.getTitle() + "] "
                         + "with url=[" + item.getUrl() + "]");
             }
-
-            loadingItems.add(item);
-            final Disposable loader = getLoadedMediaSource(item)
-                    .observeOn(AndroidSchedulers.mainThread())
-                    /* No exception handling since getLoadedMediaSource guarantees nonnull return */
-                    .subscribe(mediaSource -> onMediaSourceReceived(item, mediaSource));
-            loaderReactor.add(loader);
+            return true;
         }
+        return false;
     }
 
     private Single<ManagedMediaSource> getLoadedMediaSource(@NonNull final PlayQueueItem stream) {
@@ -474,6 +568,11 @@ public class MediaSourceManager {
             playlist.update(itemIndex, mediaSource, removeMediaSourceHandler,
                     this::maybeSynchronizePlayer);
         }
+
+        if (itemIndex == playQueue.getIndex() + 1 && mediaSource instanceof LoadedMediaSource) {
+            MediaItemTag.from(((LoadedMediaSource) mediaSource).getMediaItem())
+                    .ifPresent(playbackListener::onNextSourceLoaded);
+        }
     }
 
     /**
@@ -537,6 +636,10 @@ public class MediaSourceManager {
                 && loaderReactor.size() > MAXIMUM_LOADER_SIZE) {
             loaderReactor.clear();
             loadingItems.clear();
+            // the item loaded ahead is not held by the loaderReactor, its load keeps running
+            if (prefetchingItem != null) {
+                loadingItems.add(prefetchingItem);
+            }
         }
     }
 
@@ -559,50 +662,4 @@ public class MediaSourceManager {
             playlist.expand();
         }
     }
-
-    /*//////////////////////////////////////////////////////////////////////////
-    // Manager Helpers
-    //////////////////////////////////////////////////////////////////////////*/
-
-    @Nullable
-    private static ItemsToLoad getItemsToLoad(@NonNull final PlayQueue playQueue) {
-        // The current item has higher priority
-        final int currentIndex = playQueue.getIndex();
-        final PlayQueueItem currentItem = playQueue.getItem(currentIndex);
-        if (currentItem == null) {
-            return null;
-        }
-
-        // The rest are just for seamless playback
-        // Although timeline is not updated prior to the current index, these sources are still
-        // loaded into the cache for faster retrieval at a potentially later time.
-        final int leftBound = Math.max(0, currentIndex - MediaSourceManager.WINDOW_SIZE);
-        final int rightLimit = currentIndex + MediaSourceManager.WINDOW_SIZE + 1;
-        final int rightBound = Math.min(playQueue.size(), rightLimit);
-        final Set<PlayQueueItem> neighbors = new ArraySet<>(
-                playQueue.getStreams().subList(leftBound, rightBound));
-
-        // Do a round robin
-        final int excess = rightLimit - playQueue.size();
-        if (excess >= 0) {
-            neighbors.addAll(playQueue.getStreams()
-                    .subList(0, Math.min(playQueue.size(), excess)));
-        }
-        neighbors.remove(currentItem);
-
-        return new ItemsToLoad(currentItem, neighbors);
-    }
-
-    private static class ItemsToLoad {
-        @NonNull
-        private final PlayQueueItem center;
-        @NonNull
-        private final Collection<PlayQueueItem> neighbors;
-
-        ItemsToLoad(@NonNull final PlayQueueItem center,
-                    @NonNull final Collection<PlayQueueItem> neighbors) {
-            this.center = center;
-            this.neighbors = neighbors;
-        }
-    }
 }
@@ -6,6 +6,7 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.source.MediaSource;
 
 import org.schabi.newpipe.extractor.stream.StreamInfo;
+import org.schabi.newpipe.player.mediaitem.MediaItemTag;
 import org.schabi.newpipe.player.playqueue.PlayQueueItem;
 
 public interface PlaybackListener {
@@ -69,6 +70,17 @@ public interface PlaybackListener {
     @Nullable
     MediaSource sourceOf(PlayQueueItem item, StreamInfo info);
 
+    /**
+     * Called when the source of the item after the current one has been resolved, so that the
+     * listener can e.g. start downloading the beginning of its streams.
+     * <p>
+     * May be called at any time.
+     * </p>
+     *
+     * @param tag the tag of the resolved source
+     */
+    void onNextSourceLoaded(@NonNull MediaItemTag tag);
+
     /**
      * Called when the play queue can no longer be played or used.
      * Currently, this means the play queue is empty and complete.
@@ -143,6 +143,15 @@ abstract class AbstractInfoPlayQueue<T extends ListInfo<? extends InfoItem>>
         };
     }
 
+    @NonNull
+    @Override
+    public synchronized PlayQueue copy() {
+        final AbstractInfoPlayQueue<?> copy = (AbstractInfoPlayQueue<?>) super.copy();
+        // the running fetch belongs to this play queue
+        copy.fetchReactor = null;
+        return copy;
+    }
+
     @Override
     public void dispose() {
         super.dispose();
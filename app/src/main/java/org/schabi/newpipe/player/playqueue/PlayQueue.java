@@ -12,11 +12,15 @@ import org.schabi.newpipe.player.playqueue.PlayQueueEvent.RecoveryEvent;
 import org.schabi.newpipe.player.playqueue.PlayQueueEvent.RemoveEvent;
 import org.schabi.newpipe.player.playqueue.PlayQueueEvent.ReorderEvent;
 import org.schabi.newpipe.player.playqueue.PlayQueueEvent.SelectEvent;
+import org.schabi.newpipe.util.Copyable;
 
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
@@ -32,25 +36,26 @@ import io.reactivex.rxjava3.subjects.PublishSubject;
  * message bus, providing all listeners with new updates to the play queue.
  * </p>
  * <p>
- * This class can be serialized for passing intents, but in order to start the
- * message bus, it must be initialized.
+ * This class can be serialized or {@link #copy() copied} for passing intents, but in order to
+ * start the message bus, it must be initialized.
  * </p>
  */
-public abstract class PlayQueue implements Serializable {
+public abstract class PlayQueue implements Serializable, Cloneable, Copyable<PlayQueue> {
     public static final boolean DEBUG = MainActivity.DEBUG;
+    private static final Random RANDOM = new Random();
     @NonNull
-    private final AtomicInteger queueIndex;
-    private final List<PlayQueueItem> history = new ArrayList<>();
+    private AtomicInteger queueIndex;
+    private List<PlayQueueItem> history = new ArrayList<>();
 
-    private List<PlayQueueItem> backup;
-    private List<PlayQueueItem> streams;
+    private PlayQueueItemList streams;
+    private boolean shuffled = false;
 
     private transient PublishSubject<PlayQueueEvent> eventBroadcast;
     private transient Flowable<PlayQueueEvent> broadcastReceiver;
     private transient boolean disposed = false;
 
     PlayQueue(final int index, final List<PlayQueueItem> startWith) {
-        streams = new ArrayList<>(startWith);
+        streams = new PlayQueueItemList(startWith);
 
         if (streams.size() > index) {
             history.add(streams.get(index));
@@ -106,6 +111,51 @@ public abstract class PlayQueue implements Serializable {
      */
     public abstract void fetch();
 
+    /**
+     * Copies the play queue, e.g. to hand it over to the player while the caller keeps using
+     * its own. The copy has the same state as this play queue, with copies of the items, but
+     * its message bus is not initialized.
+     * <p>
+     * Unlike a serialization round trip, the immutable data of the items (e.g. their
+     * thumbnails) is shared, so copying is fast enough for the main thread even with very
+     * large queues.
+     * </p>
+     *
+     * @return a copy of the play queue
+     */
+    @NonNull
+    @Override
+    public synchronized PlayQueue copy() {
+        final PlayQueue copy;
+        try {
+            copy = (PlayQueue) super.clone();
+        } catch (final CloneNotSupportedException e) {
+            // PlayQueue implements Cloneable
+            throw new IllegalStateException(e);
+        }
+
+        final IdentityHashMap<PlayQueueItem, PlayQueueItem> itemCopies = new IdentityHashMap<>();
+        copy.streams = streams.copy(item -> itemCopies.computeIfAbsent(item, PlayQueueItem::new));
+        copy.history = new ArrayList<>(history.size());
+        for (final PlayQueueItem item : history) {
+            copy.history.add(itemCopies.computeIfAbsent(item, PlayQueueItem::new));
+        }
+        copy.queueIndex = new AtomicInteger(queueIndex.get());
+
+        copy.eventBroadcast = null;
+        copy.broadcastReceiver = null;
+        copy.disposed = false;
+        return copy;
+    }
+
+    /**
+     * @return the number of items, see {@link #size()}
+     */
+    @Override
+    public int getWeight() {
+        return size();
+    }
+
     /*//////////////////////////////////////////////////////////////////////////
     // Readonly ops
     //////////////////////////////////////////////////////////////////////////*/
@@ -186,7 +236,10 @@ public abstract class PlayQueue implements Serializable {
 
     /**
      * Returns the index of the given item using referential equality.
-     * May be null despite play queue contains identical item.
+     * May be -1 despite play queue contains identical item.
+     * <p>
+     * Takes logarithmic time, so it can be called often even on very large queues.
+     * </p>
      *
      * @param item the item to find the index of
      * @return the index of the given item
@@ -217,7 +270,7 @@ public abstract class PlayQueue implements Serializable {
      * @return whether the play queue is shuffled
      */
     public boolean isShuffled() {
-        return backup != null;
+        return shuffled;
     }
 
     /**
@@ -265,8 +318,8 @@ public abstract class PlayQueue implements Serializable {
     /**
      * Appends the given {@link PlayQueueItem}s to the current play queue.
      * <p>
-     * If the play queue is shuffled, then append the items to the backup queue as is and
-     * append the shuffle items to the play queue.
+     * If the play queue is shuffled, then the items are shuffled before being appended, and
+     * placed after all the other items in the order restored by {@link #unshuffle()}.
      * </p>
      * <p>
      * Will emit a {@link AppendEvent} on any given context.
@@ -277,15 +330,20 @@ public abstract class PlayQueue implements Serializable {
     public synchronized void append(@NonNull final List<PlayQueueItem> items) {
         final List<PlayQueueItem> itemList = new ArrayList<>(items);
 
-        if (isShuffled()) {
-            backup.addAll(itemList);
-            Collections.shuffle(itemList);
-        }
         if (!streams.isEmpty() && streams.get(streams.size() - 1).isAutoQueued()
                 && !itemList.get(0).isAutoQueued()) {
             streams.remove(streams.size() - 1);
         }
+
+        final int oldSize = streams.size();
         streams.addAll(itemList);
+        if (isShuffled()) {
+            // Insert every item at a random position among the ones before it, so that the
+            // items keep the order in which they were added in the unshuffled queue
+            for (int i = 1; i < itemList.size(); i++) {
+                streams.move(oldSize + i, oldSize + RANDOM.nextInt(i + 1));
+            }
+        }
 
         broadcast(new AppendEvent(itemList.size()));
     }
@@ -356,10 +414,6 @@ public abstract class PlayQueue implements Serializable {
             queueIndex.set(0);
         }
 
-        if (backup != null) {
-            backup.remove(getItem(removeIndex));
-        }
-
         history.remove(streams.remove(removeIndex));
         if (streams.size() > queueIndex.get()) {
             history.add(streams.get(queueIndex.get()));
@@ -396,9 +450,8 @@ public abstract class PlayQueue implements Serializable {
             queueIndex.incrementAndGet();
         }
 
-        final PlayQueueItem playQueueItem = streams.remove(source);
-        playQueueItem.setAutoQueued(false);
-        streams.add(target, playQueueItem);
+        streams.get(source).setAutoQueued(false);
+        streams.move(source, target);
         broadcast(new MoveEvent(source, target));
     }
 
@@ -435,9 +488,9 @@ public abstract class PlayQueue implements Serializable {
     /**
      * Shuffles the current play queue
      * <p>
-     * This method first backs up the existing play queue and item being played. Then a newly
-     * shuffled play queue will be generated along with currently playing item placed at the
-     * beginning of the queue. This item will also be added to the history.
+     * This method first saves the order of the existing play queue, if it is not shuffled yet.
+     * Then the play queue is shuffled, with the currently playing item placed at the beginning
+     * of the queue. This item will also be added to the history.
      * </p>
      * <p>
      * Will emit a {@link ReorderEvent} if shuffled.
@@ -447,11 +500,12 @@ public abstract class PlayQueue implements Serializable {
      * top, so shuffling a size-2 list does nothing)
      */
     public synchronized void shuffle() {
-        // Create a backup if it doesn't already exist
-        // Note: The backup-list has to be created at all cost (even when size <= 2).
+        // Save the order if it isn't already saved
+        // Note: The order has to be saved at all cost (even when size <= 2).
         // Otherwise it's not possible to enter shuffle-mode!
-        if (backup == null) {
-            backup = new ArrayList<>(streams);
+        if (!shuffled) {
+            streams.saveOrder();
+            shuffled = true;
         }
         // Can't shuffle a list that's empty or only has one element
         if (size() <= 2) {
@@ -461,11 +515,8 @@ public abstract class PlayQueue implements Serializable {
         final int originalIndex = getIndex();
         final PlayQueueItem currentItem = getItem();
 
-        Collections.shuffle(streams);
-
-        // Move currentItem to the head of the queue
-        streams.remove(currentItem);
-        streams.add(0, currentItem);
+        // Shuffle with currentItem at the head of the queue
+        streams.shuffle(originalIndex, RANDOM);
         queueIndex.set(0);
 
         history.add(currentItem);
@@ -474,26 +525,26 @@ public abstract class PlayQueue implements Serializable {
     }
 
     /**
-     * Unshuffles the current play queue if a backup play queue exists.
+     * Unshuffles the current play queue if it is shuffled.
      * <p>
      * This method undoes shuffling and index will be set to the previously playing item if found,
      * otherwise, the index will reset to 0.
      * </p>
      * <p>
-     * Will emit a {@link ReorderEvent} if a backup exists.
+     * Will emit a {@link ReorderEvent} if the play queue is shuffled.
      * </p>
      */
     public synchronized void unshuffle() {
-        if (backup == null) {
+        if (!shuffled) {
             return;
         }
         final int originIndex = getIndex();
         final PlayQueueItem current = getItem();
 
-        streams = backup;
-        backup = null;
+        streams.restoreOrder();
+        shuffled = false;
 
-        final int newIndex = streams.indexOf(current);
+        final int newIndex = current == null ? -1 : streams.indexOf(current);
         if (newIndex != -1) {
             queueIndex.set(newIndex);
         } else {
@@ -540,11 +591,10 @@ public abstract class PlayQueue implements Serializable {
         if (size() != other.size()) {
             return false;
         }
-        for (int i = 0; i < size(); i++) {
-            final PlayQueueItem stream = streams.get(i);
-            final PlayQueueItem otherStream = other.streams.get(i);
+        final Iterator<PlayQueueItem> otherStreams = other.streams.iterator();
+        for (final PlayQueueItem stream : streams) {
             // Check is based on serviceId and URL
-            if (!stream.isSameItem(otherStream)) {
+            if (!stream.isSameItem(otherStreams.next())) {
                 return false;
             }
         }
@@ -54,6 +54,20 @@ public class PlayQueueItem implements Serializable {
                 item.getUploaderUrl(), item.getStreamType());
     }
 
+    /**
+     * Copies the state of the given item, sharing its immutable data.
+     *
+     * @param item the item to copy
+     */
+    PlayQueueItem(@NonNull final PlayQueueItem item) {
+        this(item.title, item.url, item.serviceId, item.duration, item.thumbnails,
+                item.uploader, item.uploaderUrl, item.streamType);
+
+        this.isAutoQueued = item.isAutoQueued;
+        this.recoveryPosition = item.recoveryPosition;
+        this.error = item.error;
+    }
+
     @SuppressWarnings("ParameterNumber")
     private PlayQueueItem(@Nullable final String name, @Nullable final String url,
                           final int serviceId, final long duration,
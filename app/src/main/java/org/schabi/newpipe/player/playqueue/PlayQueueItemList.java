@@ -0,0 +1,478 @@
+package org.schabi.newpipe.player.playqueue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.UnaryOperator;
+
+/**
+ * The list of the items of a {@link PlayQueue}, stored in a balanced tree (a treap ordered by
+ * position) so that the items can be inserted, removed and moved in logarithmic time.
+ * <p>
+ * The nodes holding each item are indexed by identity, so that {@link #indexOf(Object)} takes
+ * logarithmic time too, instead of scanning the list. Every node also remembers the position its
+ * item had when {@link #saveOrder()} was called, so that the list can be shuffled and then
+ * restored with {@link #restoreOrder()} without keeping a copy of it.
+ * </p>
+ * <p>
+ * This class is not thread-safe, {@link PlayQueue} synchronizes the changes.
+ * </p>
+ */
+final class PlayQueueItemList extends AbstractList<PlayQueueItem> implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private static final class Node {
+        @NonNull
+        final PlayQueueItem item;
+        /**
+         * The random priority used to balance the tree: every node has a greater priority than
+         * its children.
+         */
+        final int priority = ThreadLocalRandom.current().nextInt();
+        /**
+         * The number of nodes in the subtree of this node, including itself.
+         */
+        int size = 1;
+        /**
+         * The key of the node in the saved order, see {@link #saveOrder()}.
+         */
+        long order;
+
+        @Nullable
+        Node left;
+        @Nullable
+        Node right;
+        @Nullable
+        Node parent;
+        /**
+         * The next node holding the same item, if the item is in the list more than once.
+         */
+        @Nullable
+        Node nextWithSameItem;
+
+        Node(@NonNull final PlayQueueItem item, final long order) {
+            this.item = item;
+            this.order = order;
+        }
+    }
+
+    @Nullable
+    private transient Node root;
+    /**
+     * The first node holding each item.
+     */
+    private transient IdentityHashMap<PlayQueueItem, Node> nodes = new IdentityHashMap<>();
+    /**
+     * The key in the saved order of the next added item, which is placed after all the others.
+     */
+    private transient long nextOrder;
+
+    PlayQueueItemList(@NonNull final List<PlayQueueItem> items) {
+        addAll(items);
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // List
+    //////////////////////////////////////////////////////////////////////////*/
+
+    @Override
+    public int size() {
+        return sizeOf(root);
+    }
+
+    @NonNull
+    @Override
+    public PlayQueueItem get(final int index) {
+        return nodeAt(index).item;
+    }
+
+    @Override
+    public void add(final int index, @NonNull final PlayQueueItem item) {
+        if (index < 0 || index > size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+
+        final Node node = new Node(item, nextOrder++);
+        register(node);
+        insert(index, node);
+        modCount++;
+    }
+
+    @NonNull
+    @Override
+    public PlayQueueItem remove(final int index) {
+        final Node node = detach(index);
+        unregister(node);
+        modCount++;
+        return node.item;
+    }
+
+    /**
+     * @param o the item to find
+     * @return the first position of the item, compared by identity, or {@code -1} if it is not
+     * in the list
+     */
+    @Override
+    public int indexOf(@Nullable final Object o) {
+        if (!(o instanceof PlayQueueItem)) {
+            return -1;
+        }
+
+        int index = -1;
+        for (Node node = nodes.get(o); node != null; node = node.nextWithSameItem) {
+            final int position = positionOf(node);
+            if (index == -1 || position < index) {
+                index = position;
+            }
+        }
+        return index;
+    }
+
+    @Override
+    public boolean contains(@Nullable final Object o) {
+        //noinspection SuspiciousMethodCalls
+        return nodes.containsKey(o);
+    }
+
+    @NonNull
+    @Override
+    public Iterator<PlayQueueItem> iterator() {
+        return new Iterator<PlayQueueItem>() {
+            @Nullable
+            private Node next = root == null ? null : leftmost(root);
+            private final int expectedModCount = modCount;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public PlayQueueItem next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                final Node current = next;
+                next = successorOf(current);
+                return current.item;
+            }
+        };
+    }
+
+    /**
+     * @param copyItem returns the copy of an item
+     * @return a list with the copies of the items, in the same order and with the same saved
+     * order
+     */
+    @NonNull
+    PlayQueueItemList copy(@NonNull final UnaryOperator<PlayQueueItem> copyItem) {
+        final PlayQueueItemList copy = new PlayQueueItemList(Collections.emptyList());
+        for (final Node node : toNodeArray()) {
+            final Node nodeCopy = new Node(copyItem.apply(node.item), node.order);
+            copy.register(nodeCopy);
+            copy.root = merge(copy.root, nodeCopy);
+        }
+        copy.nextOrder = nextOrder;
+        return copy;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Reordering
+    //////////////////////////////////////////////////////////////////////////*/
+
+    /**
+     * Moves the item at the source position to the target position, keeping its saved order.
+     *
+     * @param source the position of the item to move
+     * @param target the new position of the item
+     */
+    void move(final int source, final int target) {
+        final Node node = detach(source);
+        insert(target, node);
+        modCount++;
+    }
+
+    /**
+     * Saves the current order of the items, so that it can be restored by
+     * {@link #restoreOrder()}. The items added afterwards are placed at the end of the saved
+     * order, while moving items does not change it.
+     */
+    void saveOrder() {
+        long order = 0;
+        for (Node node = root == null ? null : leftmost(root); node != null;
+             node = successorOf(node)) {
+            node.order = order++;
+        }
+        nextOrder = order;
+    }
+
+    /**
+     * Shuffles the items, except the one at the given position which is moved to the head.
+     *
+     * @param headIndex the position of the item to put at the head
+     * @param random    the source of randomness
+     */
+    void shuffle(final int headIndex, @NonNull final Random random) {
+        final Node head = detach(headIndex);
+        final Node[] others = toNodeArray();
+        Collections.shuffle(Arrays.asList(others), random);
+
+        root = reset(head);
+        for (final Node node : others) {
+            root = merge(root, reset(node));
+        }
+        modCount++;
+    }
+
+    /**
+     * Sorts the items by the order saved by {@link #saveOrder()}.
+     */
+    void restoreOrder() {
+        final Node[] sorted = toNodeArray();
+        Arrays.sort(sorted, (a, b) -> Long.compare(a.order, b.order));
+
+        root = null;
+        for (final Node node : sorted) {
+            root = merge(root, reset(node));
+        }
+        modCount++;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Tree
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private static int sizeOf(@Nullable final Node node) {
+        return node == null ? 0 : node.size;
+    }
+
+    private static void update(@NonNull final Node node) {
+        node.size = 1 + sizeOf(node.left) + sizeOf(node.right);
+        if (node.left != null) {
+            node.left.parent = node;
+        }
+        if (node.right != null) {
+            node.right.parent = node;
+        }
+    }
+
+    @NonNull
+    private static Node reset(@NonNull final Node node) {
+        node.left = null;
+        node.right = null;
+        node.parent = null;
+        node.size = 1;
+        return node;
+    }
+
+    /**
+     * @return the root of the tree with the nodes of the first tree followed by the ones of the
+     * second tree
+     */
+    @Nullable
+    private static Node merge(@Nullable final Node first, @Nullable final Node second) {
+        if (first == null || second == null) {
+            final Node merged = first == null ? second : first;
+            if (merged != null) {
+                merged.parent = null;
+            }
+            return merged;
+        }
+
+        if (first.priority > second.priority) {
+            first.right = merge(first.right, second);
+            update(first);
+            first.parent = null;
+            return first;
+        } else {
+            second.left = merge(first, second.left);
+            update(second);
+            second.parent = null;
+            return second;
+        }
+    }
+
+    /**
+     * Splits the tree in two trees, with the given number of nodes in the first one.
+     *
+     * @return the roots of the two trees
+     */
+    @NonNull
+    private static Node[] split(@Nullable final Node node, final int count) {
+        if (node == null) {
+            return new Node[2];
+        }
+
+        final Node[] result;
+        if (sizeOf(node.left) < count) {
+            result = split(node.right, count - sizeOf(node.left) - 1);
+            node.right = result[0];
+            update(node);
+            result[0] = node;
+        } else {
+            result = split(node.left, count);
+            node.left = result[1];
+            update(node);
+            result[1] = node;
+        }
+        node.parent = null;
+        return result;
+    }
+
+    private void insert(final int index, @NonNull final Node node) {
+        final Node[] parts = split(root, index);
+        root = merge(merge(parts[0], reset(node)), parts[1]);
+    }
+
+    @NonNull
+    private Node detach(final int index) {
+        final Node node = nodeAt(index);
+        final Node[] parts = split(root, index);
+        final Node[] rest = split(parts[1], 1);
+        root = merge(parts[0], rest[1]);
+        return reset(node);
+    }
+
+    @NonNull
+    private Node nodeAt(final int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size());
+        }
+
+        Node node = root;
+        int remaining = index;
+        while (true) {
+            //noinspection ConstantConditions the index is within bounds
+            final int leftSize = sizeOf(node.left);
+            if (remaining < leftSize) {
+                node = node.left;
+            } else if (remaining == leftSize) {
+                return node;
+            } else {
+                remaining -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private static int positionOf(@NonNull final Node node) {
+        int position = sizeOf(node.left);
+        Node child = node;
+        Node parent = node.parent;
+        while (parent != null) {
+            if (parent.right == child) {
+                position += sizeOf(parent.left) + 1;
+            }
+            child = parent;
+            parent = parent.parent;
+        }
+        return position;
+    }
+
+    @NonNull
+    private static Node leftmost(@NonNull final Node node) {
+        Node current = node;
+        while (current.left != null) {
+            current = current.left;
+        }
+        return current;
+    }
+
+    @Nullable
+    private static Node successorOf(@NonNull final Node node) {
+        if (node.right != null) {
+            return leftmost(node.right);
+        }
+
+        Node child = node;
+        Node parent = node.parent;
+        while (parent != null && parent.right == child) {
+            child = parent;
+            parent = parent.parent;
+        }
+        return parent;
+    }
+
+    @NonNull
+    private Node[] toNodeArray() {
+        final Node[] array = new Node[size()];
+        int i = 0;
+        for (Node node = root == null ? null : leftmost(root); node != null;
+             node = successorOf(node)) {
+            array[i++] = node;
+        }
+        return array;
+    }
+
+    private void register(@NonNull final Node node) {
+        node.nextWithSameItem = nodes.put(node.item, node);
+    }
+
+    private void unregister(@NonNull final Node node) {
+        final Node first = nodes.get(node.item);
+        if (first == node) {
+            if (node.nextWithSameItem == null) {
+                nodes.remove(node.item);
+            } else {
+                nodes.put(node.item, node.nextWithSameItem);
+            }
+        } else {
+            for (Node previous = first; previous != null; previous = previous.nextWithSameItem) {
+                if (previous.nextWithSameItem == node) {
+                    previous.nextWithSameItem = node.nextWithSameItem;
+                    break;
+                }
+            }
+        }
+        node.nextWithSameItem = null;
+    }
+
+    /*//////////////////////////////////////////////////////////////////////////
+    // Serialization
+    //////////////////////////////////////////////////////////////////////////*/
+
+    private void writeObject(@NonNull final ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        final Node[] array = toNodeArray();
+        out.writeInt(array.length);
+        for (final Node node : array) {
+            out.writeObject(node.item);
+            out.writeLong(node.order);
+        }
+        out.writeLong(nextOrder);
+    }
+
+    private void readObject(@NonNull final ObjectInputStream in)
+            throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        nodes = new IdentityHashMap<>();
+        final int size = in.readInt();
+        final List<Node> read = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            read.add(new Node((PlayQueueItem) in.readObject(), in.readLong()));
+        }
+        for (final Node node : read) {
+            register(node);
+            root = merge(root, node);
+        }
+        nextOrder = in.readLong();
+    }
+}
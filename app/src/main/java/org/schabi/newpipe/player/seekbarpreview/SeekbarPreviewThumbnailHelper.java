@@ -95,8 +95,6 @@ public final class SeekbarPreviewThumbnailHelper {
         } catch (final Exception ex) {
             Log.e(TAG, "Failed to resize and set seekbar preview thumbnail", ex);
             currentSeekbarPreviewThumbnail.setVisibility(View.GONE);
-        } finally {
-            previewThumbnail.recycle();
         }
     }
 }
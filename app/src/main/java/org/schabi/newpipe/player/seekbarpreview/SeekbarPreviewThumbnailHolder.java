@@ -3,28 +3,54 @@ package org.schabi.newpipe.player.seekbarpreview;
 import static org.schabi.newpipe.player.seekbarpreview.SeekbarPreviewThumbnailHelper.SeekbarPreviewThumbnailType;
 import static org.schabi.newpipe.player.seekbarpreview.SeekbarPreviewThumbnailHelper.getSeekbarPreviewThumbnailType;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
 import android.util.Log;
 
+import androidx.annotation.MainThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.collection.SparseArrayCompat;
+import androidx.annotation.WorkerThread;
+import androidx.collection.LruCache;
+import androidx.core.app.ActivityManagerCompat;
+import androidx.core.content.ContextCompat;
 
 import com.google.common.base.Stopwatch;
 
-import org.schabi.newpipe.App;
+import org.schabi.newpipe.DownloaderImpl;
 import org.schabi.newpipe.extractor.stream.Frameset;
-import org.schabi.newpipe.util.image.CoilHelper;
 
+import java.io.IOException;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.function.Supplier;
-
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Provides the seekbar preview thumbnails, which are cut out of the storyboard sheets of the
+ * current stream.
+ * <p>
+ * The sheets are downloaded in parallel, those closest to the last requested position first,
+ * and are kept compressed by one region decoder each. A frame is only decoded when it is
+ * requested, in the background, by decoding its region of the sheet, and the recently requested
+ * frames are cached. Both caches are bounded in bytes.
+ * </p>
+ */
 public class SeekbarPreviewThumbnailHolder {
 
     // This has to be <= 23 chars on devices running Android 7 or lower (API <= 25)
@@ -32,41 +58,49 @@ public class SeekbarPreviewThumbnailHolder {
     // https://stackoverflow.com/a/54744028
     public static final String TAG = "SeekbarPrevThumbHolder";
 
-    // Key = Position of the picture in milliseconds
-    // Supplier = Supplies the bitmap for that position
-    private final SparseArrayCompat<Supplier<Bitmap>> seekbarPreviewData =
-            new SparseArrayCompat<>();
-
-    // This ensures that if the reset is still undergoing
-    // and another reset starts, only the last reset is processed
-    private UUID currentUpdateRequestIdentifier = UUID.randomUUID();
-
-    public void resetFrom(@NonNull final Context context, final List<Frameset> framesets) {
-        final int seekbarPreviewType = getSeekbarPreviewThumbnailType(context);
+    private static final int PARALLEL_DOWNLOADS = 3;
+    private static final int MAX_SHEET_BYTES = 8 * 1024 * 1024;
+    private static final int MAX_FRAME_BYTES = 4 * 1024 * 1024;
+    // A sheet which failed to download is only downloaded again when its frames are requested
+    private static final int MAX_DOWNLOAD_ATTEMPTS = 3;
+
+    private static final ThreadPoolExecutor DOWNLOAD_EXECUTOR = new ThreadPoolExecutor(
+            PARALLEL_DOWNLOADS, PARALLEL_DOWNLOADS, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, TAG));
+
+    // Decodes the requested frames, separately so that they do not wait for the downloads
+    private static final ThreadPoolExecutor DECODE_EXECUTOR = new ThreadPoolExecutor(
+            1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, TAG));
+
+    static {
+        DOWNLOAD_EXECUTOR.allowCoreThreadTimeOut(true);
+        DECODE_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
 
-        final UUID updateRequestIdentifier = UUID.randomUUID();
-        this.currentUpdateRequestIdentifier = updateRequestIdentifier;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    @Nullable
+    private volatile Runnable onFrameDecodedListener;
 
-        final ExecutorService executorService = Executors.newSingleThreadExecutor();
-        executorService.submit(() -> {
-            try {
-                resetFromAsync(seekbarPreviewType, framesets, updateRequestIdentifier);
-            } catch (final Exception ex) {
-                Log.e(TAG, "Failed to execute async", ex);
-            }
-        });
-        // ensure that the executorService stops/destroys it's threads
-        // after the task is finished
-        executorService.shutdown();
-    }
+    // The storyboard of the current stream, replaced on every reset so that the downloads of the
+    // previous one are discarded
+    @Nullable
+    private volatile Storyboard storyboard;
 
-    private void resetFromAsync(final int seekbarPreviewType, final List<Frameset> framesets,
-                                final UUID updateRequestIdentifier) {
-        Log.d(TAG, "Clearing seekbarPreviewData");
-        synchronized (seekbarPreviewData) {
-            seekbarPreviewData.clear();
+    public void resetFrom(@NonNull final Context context, final List<Frameset> framesets) {
+        final Storyboard previous = storyboard;
+        if (previous != null) {
+            previous.cancel();
         }
+        storyboard = null;
 
+        final int seekbarPreviewType = getSeekbarPreviewThumbnailType(context);
         if (seekbarPreviewType == SeekbarPreviewThumbnailType.NONE) {
             Log.d(TAG, "Not processing seekbarPreviewData due to settings");
             return;
@@ -82,12 +116,17 @@ public class SeekbarPreviewThumbnailHolder {
                 + "[width=" + frameset.getFrameWidth()
                 + ", heigh=" + frameset.getFrameHeight() + "]");
 
-        // Abort method execution if we are not the latest request
-        if (!isRequestIdentifierCurrent(updateRequestIdentifier)) {
-            return;
-        }
-
-        generateDataFrom(frameset, updateRequestIdentifier);
+        // Low RAM devices get half of the memory
+        final ActivityManager activityManager =
+                ContextCompat.getSystemService(context, ActivityManager.class);
+        final int memoryDivisor = activityManager != null
+                && ActivityManagerCompat.isLowRamDevice(activityManager) ? 2 : 1;
+
+        final Storyboard newStoryboard = new Storyboard(frameset,
+                MAX_SHEET_BYTES / memoryDivisor, MAX_FRAME_BYTES / memoryDivisor,
+                () -> mainHandler.post(this::notifyFrameDecoded));
+        storyboard = newStoryboard;
+        newStoryboard.startDownloads();
     }
 
     private Frameset getFrameSetForType(final List<Frameset> framesets,
@@ -105,143 +144,384 @@ public class SeekbarPreviewThumbnailHolder {
         }
     }
 
-    private void generateDataFrom(final Frameset frameset, final UUID updateRequestIdentifier) {
-        Log.d(TAG, "Starting generation of seekbarPreviewData");
-        final Stopwatch sw = Log.isLoggable(TAG, Log.DEBUG) ? Stopwatch.createStarted() : null;
+    /**
+     * @param listener called on the main thread when a frame requested by
+     *                 {@link #getBitmapAt(int)} has been decoded, so that it can be requested
+     *                 again, or null to remove the listener
+     */
+    public void setOnFrameDecodedListener(@Nullable final Runnable listener) {
+        onFrameDecodedListener = listener;
+    }
+
+    /**
+     * The frame is decoded in the background if it is not cached yet: the closest cached frame
+     * is returned in the meantime, and the listener set with
+     * {@link #setOnFrameDecodedListener(Runnable)} is called once the frame is ready.
+     *
+     * @param positionInMs the position in the stream
+     * @return the cached frame closest to the position, if any. It must not be recycled.
+     */
+    @MainThread
+    public Optional<Bitmap> getBitmapAt(final int positionInMs) {
+        final Storyboard current = storyboard;
+        return current == null
+                ? Optional.empty() : Optional.ofNullable(current.getFrameAt(positionInMs));
+    }
 
-        int currentPosMs = 0;
-        int pos = 1;
+    private void notifyFrameDecoded() {
+        final Runnable listener = onFrameDecodedListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
 
-        final int urlFrameCount = frameset.getFramesPerPageX() * frameset.getFramesPerPageY();
+    /**
+     * A downloaded sheet, kept compressed by its region decoder.
+     */
+    private static final class Sheet {
+        @NonNull
+        final BitmapRegionDecoder decoder;
+        final int size;
+
+        Sheet(@NonNull final BitmapRegionDecoder decoder, final int size) {
+            this.decoder = decoder;
+            this.size = size;
+        }
+    }
 
-        // Process each url in the frameset
-        for (final String url : frameset.getUrls()) {
-            // get the bitmap
-            final Bitmap srcBitMap = getBitMapFrom(url);
+    private static final class Storyboard {
+        @NonNull
+        private final Frameset frameset;
+        private final int framesPerSheet;
+        private final int frameCount;
+        @NonNull
+        private final Runnable onFrameDecoded;
+
+        // Sheets by sheet index, and the indices of the sheets they contain
+        private final LruCache<Integer, Sheet> sheets;
+        private final TreeSet<Integer> loadedSheets = new TreeSet<>();
+        // Sheets waiting to be downloaded and being downloaded
+        private final TreeSet<Integer> pendingSheets = new TreeSet<>();
+        private final Set<Integer> downloadingSheets = new HashSet<>();
+        // How many times the download of each sheet failed
+        private final Map<Integer, Integer> failedSheets = new HashMap<>();
+        // Decoded frames by frame index, and the indices of the frames they contain
+        private final LruCache<Integer, Bitmap> frames;
+        private final TreeSet<Integer> decodedFrames = new TreeSet<>();
+
+        // The last requested frame, the sheets closest to it are downloaded first
+        private int focusFrame = 0;
+        // The frame to decode next, or -1
+        private int requestedFrame = -1;
+        private int runningDownloads = 0;
+        private boolean decoding = false;
+        private boolean cancelled = false;
+
+        Storyboard(@NonNull final Frameset frameset,
+                   final int maxSheetBytes,
+                   final int maxFrameBytes,
+                   @NonNull final Runnable onFrameDecoded) {
+            this.frameset = frameset;
+            this.framesPerSheet = Math.max(1,
+                    frameset.getFramesPerPageX() * frameset.getFramesPerPageY());
+            // Frames outside the video length are skipped
+            this.frameCount = Math.min(frameset.getTotalCount(),
+                    frameset.getUrls().size() * framesPerSheet);
+            this.onFrameDecoded = onFrameDecoded;
+
+            // The entries of both caches are only put and removed while holding the lock of the
+            // storyboard, so entryRemoved() is called while holding it too
+            sheets = new LruCache<Integer, Sheet>(maxSheetBytes) {
+                @Override
+                protected int sizeOf(@NonNull final Integer key, @NonNull final Sheet value) {
+                    return value.size;
+                }
 
-            // The data is not added directly to "seekbarPreviewData" due to
-            // concurrency and checks for "updateRequestIdentifier"
-            final var generatedDataForUrl = new SparseArrayCompat<Supplier<Bitmap>>(urlFrameCount);
+                @Override
+                protected void entryRemoved(final boolean evicted, @NonNull final Integer key,
+                                            @NonNull final Sheet oldValue,
+                                            @Nullable final Sheet newValue) {
+                    if (newValue == null) {
+                        loadedSheets.remove(key);
+                    }
+                    // A frame being decoded from it fails, see decodeFrame()
+                    oldValue.decoder.recycle();
+                }
+            };
+            frames = new LruCache<Integer, Bitmap>(maxFrameBytes) {
+                @Override
+                protected int sizeOf(@NonNull final Integer key, @NonNull final Bitmap value) {
+                    return value.getAllocationByteCount();
+                }
 
-            // The bitmap consists of several images, which we process here
-            // foreach frame in the returned bitmap
-            for (int i = 0; i < urlFrameCount; i++) {
-                // Frames outside the video length are skipped
-                if (pos > frameset.getTotalCount()) {
-                    break;
+                @Override
+                protected void entryRemoved(final boolean evicted, @NonNull final Integer key,
+                                            @NonNull final Bitmap oldValue,
+                                            @Nullable final Bitmap newValue) {
+                    if (newValue == null) {
+                        decodedFrames.remove(key);
+                    }
                 }
+            };
 
-                // Get the bounds where the frame is found
-                final int[] bounds = frameset.getFrameBoundsAt(currentPosMs);
-                generatedDataForUrl.put(currentPosMs,
-                                        createBitmapSupplier(srcBitMap, bounds, frameset));
+            for (int sheet = 0; sheet * framesPerSheet < frameCount; sheet++) {
+                pendingSheets.add(sheet);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+            pendingSheets.clear();
+            requestedFrame = -1;
+            sheets.evictAll();
+            frames.evictAll();
+        }
 
-                currentPosMs += frameset.getDurationPerFrame();
-                pos++;
+        synchronized void startDownloads() {
+            while (runningDownloads < PARALLEL_DOWNLOADS
+                    && runningDownloads < pendingSheets.size()) {
+                runningDownloads++;
+                DOWNLOAD_EXECUTOR.execute(this::downloadSheets);
             }
+        }
 
-            // Check if we are still the latest request
-            // If not abort method execution
-            if (isRequestIdentifierCurrent(updateRequestIdentifier)) {
-                synchronized (seekbarPreviewData) {
-                    seekbarPreviewData.putAll(generatedDataForUrl);
+        @WorkerThread
+        private void downloadSheets() {
+            while (true) {
+                final int sheet;
+                synchronized (this) {
+                    sheet = takeNextSheet();
+                    if (sheet < 0) {
+                        runningDownloads--;
+                        return;
+                    }
+                    downloadingSheets.add(sheet);
+                }
+
+                final byte[] bytes = download(frameset.getUrls().get(sheet));
+                final BitmapRegionDecoder decoder = bytes == null ? null : newRegionDecoder(bytes);
+
+                synchronized (this) {
+                    downloadingSheets.remove(sheet);
+                    if (decoder == null) {
+                        failedSheets.merge(sheet, 1, Integer::sum);
+                    } else if (cancelled) {
+                        decoder.recycle();
+                    } else {
+                        sheets.put(sheet, new Sheet(decoder, bytes.length));
+                        loadedSheets.add(sheet);
+                        failedSheets.remove(sheet);
+                        // Replace the closest frame shown in the meantime
+                        if (sheet == focusFrame / framesPerSheet) {
+                            requestDecode(focusFrame);
+                        }
+                    }
                 }
-            } else {
-                Log.d(TAG, "Aborted of generation of seekbarPreviewData");
-                break;
             }
         }
 
-        if (sw != null) {
-            Log.d(TAG, "Generation of seekbarPreviewData took " + sw.stop());
+        /**
+         * @return the pending sheet closest to the {@link #focusFrame}, or -1 if there is none
+         */
+        private int takeNextSheet() {
+            if (cancelled || pendingSheets.isEmpty()) {
+                return -1;
+            }
+
+            final int focusSheet = focusFrame / framesPerSheet;
+            final Integer before = pendingSheets.floor(focusSheet);
+            final Integer after = pendingSheets.ceiling(focusSheet);
+            final int sheet;
+            if (before == null) {
+                sheet = after;
+            } else if (after == null) {
+                sheet = before;
+            } else {
+                // Prefer the sheets after the position on ties, since playback moves forward
+                sheet = focusSheet - before < after - focusSheet ? before : after;
+            }
+            pendingSheets.remove(sheet);
+            return sheet;
         }
-    }
 
-    private Supplier<Bitmap> createBitmapSupplier(final Bitmap srcBitMap,
-                                                  final int[] bounds,
-                                                  final Frameset frameset) {
-        return () -> {
-            // It can happen, that the original bitmap could not be downloaded
-            // (or it was recycled though that should not happen)
-            // In such a case - we don't want a NullPointer/
-            // "cannot use a recycled source in createBitmap" Exception -> simply return null
-            if (srcBitMap == null || srcBitMap.isRecycled()) {
+        @MainThread
+        @Nullable
+        Bitmap getFrameAt(final int positionInMs) {
+            if (frameCount == 0) {
                 return null;
             }
 
-            // Under some rare circumstances the YouTube API returns slightly too small storyboards,
-            // (or not the matching frame width/height)
-            // This would lead to createBitmap cutting out a bitmap that is out of bounds,
-            // so we need to adjust the bounds accordingly
-            if (srcBitMap.getWidth() < bounds[1] + frameset.getFrameWidth()) {
-                bounds[1] = srcBitMap.getWidth() - frameset.getFrameWidth();
+            final int durationPerFrame = Math.max(1, frameset.getDurationPerFrame());
+            final int frame = Math.max(0, Math.min(frameCount - 1,
+                    (positionInMs + durationPerFrame / 2) / durationPerFrame));
+            final Bitmap cached = frames.get(frame);
+            if (cached != null) {
+                return cached;
             }
 
-            if (srcBitMap.getHeight() < bounds[2] + frameset.getFrameHeight()) {
-                bounds[2] = srcBitMap.getHeight() - frameset.getFrameHeight();
+            final int sheet = frame / framesPerSheet;
+            final Integer closestFrame;
+            synchronized (this) {
+                focusFrame = frame;
+                final Integer closestSheet = getClosest(loadedSheets, sheet);
+                if (closestSheet == null) {
+                    requeue(sheet);
+                } else if (closestSheet < sheet) {
+                    requeue(sheet);
+                    requestDecode(closestSheet * framesPerSheet + framesPerSheet - 1);
+                } else if (closestSheet > sheet) {
+                    requeue(sheet);
+                    requestDecode(closestSheet * framesPerSheet);
+                } else {
+                    requestDecode(frame);
+                }
+                closestFrame = getClosest(decodedFrames, frame);
             }
+            startDownloads();
 
-            // Cut out the corresponding bitmap form the "srcBitMap"
-            final Bitmap cutOutBitmap = Bitmap.createBitmap(srcBitMap, bounds[1], bounds[2],
-                    frameset.getFrameWidth(), frameset.getFrameHeight());
-
-            // If the cut out bitmap is identical to its source,
-            // we need to copy the bitmap to create a new instance.
-            // createBitmap allows itself to return the original object that is was created with
-            // this leads to recycled bitmaps being returned (if they are identical)
-            // Reference: https://stackoverflow.com/a/23683075 + first comment
-            // Fixes: https://github.com/TeamNewPipe/NewPipe/issues/11461
-            return cutOutBitmap == srcBitMap
-                    ? cutOutBitmap.copy(cutOutBitmap.getConfig(), true) : cutOutBitmap;
-        };
-    }
+            // Shown until the requested frame is decoded
+            return closestFrame == null ? null : frames.get(closestFrame);
+        }
 
-    @Nullable
-    private Bitmap getBitMapFrom(final String url) {
-        if (url == null) {
-            Log.w(TAG, "url is null; This should never happen");
-            return null;
+        /**
+         * Finds the value of the set closest to the given one with a binary search.
+         */
+        @Nullable
+        private static Integer getClosest(@NonNull final TreeSet<Integer> set, final int value) {
+            final Integer before = set.floor(value);
+            final Integer after = set.ceiling(value);
+            if (before == null) {
+                return after;
+            } else if (after == null) {
+                return before;
+            }
+            return value - before <= after - value ? before : after;
         }
 
-        final Stopwatch sw = Log.isLoggable(TAG, Log.DEBUG) ? Stopwatch.createStarted() : null;
-        try {
-            Log.d(TAG, "Downloading bitmap for seekbarPreview from '" + url + "'");
+        /**
+         * Downloads the sheet again if it was evicted from the cache, or if its download failed
+         * fewer than {@link #MAX_DOWNLOAD_ATTEMPTS} times.
+         */
+        private void requeue(final int sheet) {
+            if (!cancelled && !loadedSheets.contains(sheet) && !downloadingSheets.contains(sheet)
+                    && failedSheets.getOrDefault(sheet, 0) < MAX_DOWNLOAD_ATTEMPTS) {
+                pendingSheets.add(sheet);
+            }
+        }
 
-            // Gets the bitmap within the timeout of 15 seconds imposed by default by OkHttpClient
-            // Ensure that you are not running on the main thread, otherwise this will hang
-            final var bitmap = CoilHelper.INSTANCE.loadBitmapBlocking(App.getInstance(), url);
+        /**
+         * Decodes the given frame in the background, replacing the frame requested before if it
+         * is not being decoded yet.
+         */
+        private void requestDecode(final int frame) {
+            if (cancelled || decodedFrames.contains(frame)) {
+                return;
+            }
 
-            if (sw != null) {
-                Log.d(TAG, "Download of bitmap for seekbarPreview from '" + url + "' took "
-                        + sw.stop());
+            requestedFrame = frame;
+            if (!decoding) {
+                decoding = true;
+                DECODE_EXECUTOR.execute(this::decodeRequestedFrames);
             }
+        }
+
+        @WorkerThread
+        private void decodeRequestedFrames() {
+            while (true) {
+                final int frame;
+                final Sheet sheet;
+                synchronized (this) {
+                    frame = requestedFrame;
+                    requestedFrame = -1;
+                    sheet = frame < 0 ? null : sheets.get(frame / framesPerSheet);
+                    if (sheet == null) {
+                        decoding = false;
+                        return;
+                    }
+                }
 
-            return bitmap;
-        } catch (final Exception ex) {
-            Log.w(TAG, "Failed to get bitmap for seekbarPreview from url='" + url
-                    + "' in time", ex);
-            return null;
+                final Bitmap decoded = decodeFrame(sheet.decoder, frame);
+
+                synchronized (this) {
+                    if (decoded == null || cancelled) {
+                        continue;
+                    }
+                    frames.put(frame, decoded);
+                    decodedFrames.add(frame);
+                }
+                onFrameDecoded.run();
+            }
         }
-    }
 
-    private boolean isRequestIdentifierCurrent(final UUID requestIdentifier) {
-        return this.currentUpdateRequestIdentifier.equals(requestIdentifier);
-    }
+        @WorkerThread
+        @Nullable
+        private Bitmap decodeFrame(@NonNull final BitmapRegionDecoder decoder, final int frame) {
+            final int[] bounds = frameset.getFrameBoundsAt(frame * frameset.getDurationPerFrame());
+            final BitmapFactory.Options options = new BitmapFactory.Options();
+            // The storyboards have no transparency
+            options.inPreferredConfig = Bitmap.Config.RGB_565;
 
-    public Optional<Bitmap> getBitmapAt(final int positionInMs) {
-        // Get the frame supplier closest to the requested position
-        Supplier<Bitmap> closestFrame = () -> null;
-        synchronized (seekbarPreviewData) {
-            int min = Integer.MAX_VALUE;
-            for (int i = 0; i < seekbarPreviewData.size(); i++) {
-                final int pos = Math.abs(seekbarPreviewData.keyAt(i) - positionInMs);
-                if (pos < min) {
-                    closestFrame = seekbarPreviewData.valueAt(i);
-                    min = pos;
+            try {
+                // Under some rare circumstances the YouTube API returns slightly too small
+                // storyboards (or not the matching frame width/height). This would lead to
+                // decoding a region that is out of bounds, so the bounds are adjusted.
+                final int width = Math.min(frameset.getFrameWidth(), decoder.getWidth());
+                final int height = Math.min(frameset.getFrameHeight(), decoder.getHeight());
+                final int left = Math.max(0, Math.min(bounds[1], decoder.getWidth() - width));
+                final int top = Math.max(0, Math.min(bounds[2], decoder.getHeight() - height));
+
+                return decoder.decodeRegion(
+                        new Rect(left, top, left + width, top + height), options);
+            } catch (final IllegalArgumentException | IllegalStateException e) {
+                // IllegalStateException: the sheet was evicted and its decoder recycled
+                Log.w(TAG, "Failed to decode seekbar preview frame " + frame, e);
+                return null;
+            }
+        }
+
+        @WorkerThread
+        @Nullable
+        private static BitmapRegionDecoder newRegionDecoder(@NonNull final byte[] bytes) {
+            try {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+                    return BitmapRegionDecoder.newInstance(bytes, 0, bytes.length);
+                } else {
+                    //noinspection deprecation
+                    return BitmapRegionDecoder.newInstance(bytes, 0, bytes.length, false);
                 }
+            } catch (final IOException e) {
+                Log.w(TAG, "Failed to read seekbar preview sheet", e);
+                return null;
             }
         }
 
-        return Optional.ofNullable(closestFrame.get());
+        @WorkerThread
+        @Nullable
+        private static byte[] download(@Nullable final String url) {
+            if (url == null) {
+                Log.w(TAG, "url is null; This should never happen");
+                return null;
+            }
+
+            final Stopwatch sw = Log.isLoggable(TAG, Log.DEBUG) ? Stopwatch.createStarted() : null;
+            try (DownloaderImpl.StreamingResponse response =
+                         DownloaderImpl.getInstance().getStreaming(url)) {
+                if (response.responseCode() != 200) {
+                    Log.w(TAG, "Failed to download seekbarPreview sheet from url='" + url
+                            + "', response code " + response.responseCode());
+                    return null;
+                }
+
+                final byte[] bytes = response.bytes();
+                if (sw != null) {
+                    Log.d(TAG, "Download of seekbarPreview sheet from '" + url + "' took "
+                            + sw.stop());
+                }
+                return bytes;
+            } catch (final Exception ex) {
+                Log.w(TAG, "Failed to download seekbarPreview sheet from url='" + url + "'", ex);
+                return null;
+            }
+        }
     }
 }
@@ -205,6 +205,7 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
         binding.playbackSpeed.setOnClickListener(makeOnClickListener(this::onPlaybackSpeedClicked));
 
         binding.playbackSeekBar.setOnSeekBarChangeListener(this);
+        seekbarPreviewThumbnailHolder.setOnFrameDecodedListener(this::onSeekbarPreviewDecoded);
         binding.captionTextView.setOnClickListener(makeOnClickListener(this::onCaptionClicked));
         binding.resizeTextView.setOnClickListener(makeOnClickListener(this::onResizeClicked));
         binding.playbackLiveSync.setOnClickListener(makeOnClickListener(player::seekToDefault));
@@ -281,6 +282,7 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
         binding.audioTrackTextView.setOnClickListener(null);
         binding.playbackSpeed.setOnClickListener(null);
         binding.playbackSeekBar.setOnSeekBarChangeListener(null);
+        seekbarPreviewThumbnailHolder.setOnFrameDecodedListener(null);
         binding.captionTextView.setOnClickListener(null);
         binding.resizeTextView.setOnClickListener(null);
         binding.playbackLiveSync.setOnClickListener(null);
@@ -577,7 +579,19 @@ public abstract class VideoPlayerUi extends PlayerUi implements SeekBar.OnSeekBa
         }
 
         binding.currentDisplaySeek.setText(getTimeString(progress));
+        updateSeekbarPreviewThumbnail(progress);
+    }
+
+    /**
+     * Replaces the closest frame shown while the one of the current position was decoded.
+     */
+    private void onSeekbarPreviewDecoded() {
+        if (player.getCurrentState() == STATE_PAUSED_SEEK) {
+            updateSeekbarPreviewThumbnail(binding.playbackSeekBar.getProgress());
+        }
+    }
 
+    private void updateSeekbarPreviewThumbnail(final int progress) {
         // Seekbar Preview Thumbnail
         SeekbarPreviewThumbnailHelper
                 .tryResizeAndSetSeekbarPreviewThumbnail(
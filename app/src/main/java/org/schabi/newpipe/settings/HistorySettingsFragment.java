@@ -2,6 +2,7 @@ package org.schabi.newpipe.settings;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.util.Log;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
@@ -18,11 +19,14 @@ import org.schabi.newpipe.local.history.HistoryRecordManager;
 import org.schabi.newpipe.util.InfoCache;
 
 import io.reactivex.rxjava3.android.schedulers.AndroidSchedulers;
+import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
 import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public class HistorySettingsFragment extends BasePreferenceFragment {
     private String cacheWipeKey;
+    private String httpCacheEnabledKey;
     private String viewsHistoryClearKey;
     private String playbackStatesClearKey;
     private String searchHistoryClearKey;
@@ -34,6 +38,7 @@ public class HistorySettingsFragment extends BasePreferenceFragment {
         addPreferencesFromResourceRegistry();
 
         cacheWipeKey = getString(R.string.metadata_cache_wipe_key);
+        httpCacheEnabledKey = getString(R.string.enable_http_cache_key);
         viewsHistoryClearKey = getString(R.string.clear_views_history_key);
         playbackStatesClearKey = getString(R.string.clear_playback_states_key);
         searchHistoryClearKey = getString(R.string.clear_search_history_key);
@@ -60,8 +65,14 @@ public class HistorySettingsFragment extends BasePreferenceFragment {
     public boolean onPreferenceTreeClick(final Preference preference) {
         if (preference.getKey().equals(cacheWipeKey)) {
             InfoCache.getInstance().clearCache();
+            disposables.add(Completable.fromAction(DownloaderImpl.getInstance()::clearHttpCache)
+                    .subscribeOn(Schedulers.io())
+                    .subscribe(() -> { }, throwable -> Log.w(TAG, "Failed to clear HTTP cache",
+                            throwable)));
             Toast.makeText(requireContext(),
                     R.string.metadata_cache_wipe_complete_notice, Toast.LENGTH_SHORT).show();
+        } else if (preference.getKey().equals(httpCacheEnabledKey)) {
+            DownloaderImpl.getInstance().updateHttpCacheEnabled(requireContext());
         } else if (preference.getKey().equals(viewsHistoryClearKey)) {
             openDeleteWatchHistoryDialog(requireContext(), recordManager, disposables);
         } else if (preference.getKey().equals(playbackStatesClearKey)) {
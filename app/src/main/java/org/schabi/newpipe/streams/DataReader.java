@@ -1,5 +1,6 @@
 package org.schabi.newpipe.streams;
 
+import org.schabi.newpipe.streams.io.BufferPool;
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.EOFException;
@@ -20,14 +21,29 @@ public class DataReader {
     private long position = 0;
     private final SharpStream stream;
 
-    private InputStream view;
+    private View view;
     private int viewSize;
 
     public DataReader(final SharpStream stream) {
         this.stream = stream;
+        this.readBuffer = BufferPool.acquire(BUFFER_SIZE);
         this.readOffset = this.readBuffer.length;
     }
 
+    /**
+     * Returns the read buffer to the pool. The source stream is not closed, and any further
+     * read will report the end of the stream.
+     */
+    public void release() {
+        if (readBuffer == null) {
+            return;
+        }
+
+        BufferPool.release(readBuffer);
+        readBuffer = null;
+        readCount = -1;
+    }
+
     public long position() {
         return position;
     }
@@ -154,6 +170,53 @@ public class DataReader {
         return stream.canRewind();
     }
 
+    /**
+     * Copies {@code count} bytes into {@code target}. Any buffered byte is written first, the
+     * rest is transferred from channel to channel if the source stream supports it.
+     *
+     * @param count  the amount of bytes to copy
+     * @param target the output stream
+     * @return the amount of bytes copied, less than {@code count} if the end of the source
+     * stream was reached
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferTo(final long count, final SharpStream target) throws IOException {
+        if (readCount < 0) {
+            return 0;
+        }
+
+        long total = 0;
+
+        if (readCount > 0) {
+            final int amount = (int) Math.min(readCount, count);
+            target.write(readBuffer, readOffset, amount);
+
+            readOffset += amount;
+            readCount -= amount;
+            total = amount;
+
+            if (readCount == 0) {
+                readOffset = readBuffer.length;
+            }
+        }
+
+        if (total < count && stream.canTransfer()) {
+            total += stream.transferTo(count - total, target);
+        } else {
+            while (total < count && !fillBuffer()) {
+                final int amount = (int) Math.min(readCount, count - total);
+                target.write(readBuffer, readOffset, amount);
+
+                readOffset += amount;
+                readCount -= amount;
+                total += amount;
+            }
+        }
+
+        position += total;
+        return total;
+    }
+
     /**
      * Wraps this instance of {@code DataReader} into {@code InputStream}
      * object. Note: Any read in the {@code DataReader} will not modify
@@ -162,72 +225,93 @@ public class DataReader {
      * @param size the size of the view
      * @return the view
      */
-    public InputStream getView(final int size) {
+    public View getView(final int size) {
         if (view == null) {
-            view = new InputStream() {
-                @Override
-                public int read() throws IOException {
-                    if (viewSize < 1) {
-                        return -1;
-                    }
-                    final int res = DataReader.this.read();
-                    if (res > 0) {
-                        viewSize--;
-                    }
-                    return res;
-                }
-
-                @Override
-                public int read(final byte[] buffer) throws IOException {
-                    return read(buffer, 0, buffer.length);
-                }
-
-                @Override
-                public int read(final byte[] buffer, final int offset, final int count)
-                        throws IOException {
-                    if (viewSize < 1) {
-                        return -1;
-                    }
-
-                    final int res = DataReader.this.read(buffer, offset, Math.min(viewSize, count));
-                    viewSize -= res;
-
-                    return res;
-                }
-
-                @Override
-                public long skip(final long amount) throws IOException {
-                    if (viewSize < 1) {
-                        return 0;
-                    }
-                    final int res = (int) DataReader.this.skipBytes(Math.min(amount, viewSize));
-                    viewSize -= res;
-
-                    return res;
-                }
-
-                @Override
-                public int available() {
-                    return viewSize;
-                }
-
-                @Override
-                public void close() {
-                    viewSize = 0;
-                }
-
-                @Override
-                public boolean markSupported() {
-                    return false;
-                }
-
-            };
+            view = new View();
         }
         viewSize = size;
 
         return view;
     }
 
+    public final class View extends InputStream {
+        @Override
+        public int read() throws IOException {
+            if (viewSize < 1) {
+                return -1;
+            }
+            final int res = DataReader.this.read();
+            if (res > 0) {
+                viewSize--;
+            }
+            return res;
+        }
+
+        @Override
+        public int read(final byte[] buffer) throws IOException {
+            return read(buffer, 0, buffer.length);
+        }
+
+        @Override
+        public int read(final byte[] buffer, final int offset, final int count)
+                throws IOException {
+            if (viewSize < 1) {
+                return -1;
+            }
+
+            final int res = DataReader.this.read(buffer, offset, Math.min(viewSize, count));
+            viewSize -= res;
+
+            return res;
+        }
+
+        /**
+         * Copies up to {@code count} bytes of the view into {@code target}, see
+         * {@link DataReader#transferTo(long, SharpStream)}.
+         *
+         * @param count  the maximum amount of bytes to copy
+         * @param target the output stream
+         * @return the amount of bytes copied
+         * @throws IOException if an I/O error occurs
+         */
+        public long transferTo(final long count, final SharpStream target) throws IOException {
+            if (viewSize < 1) {
+                return 0;
+            }
+
+            final long res = DataReader.this.transferTo(Math.min(viewSize, count), target);
+            viewSize -= (int) res;
+
+            return res;
+        }
+
+        @Override
+        public long skip(final long amount) throws IOException {
+            if (viewSize < 1) {
+                return 0;
+            }
+            final int res = (int) DataReader.this.skipBytes(Math.min(amount, viewSize));
+            viewSize -= res;
+
+            return res;
+        }
+
+        @Override
+        public int available() {
+            return viewSize;
+        }
+
+        @Override
+        public void close() {
+            viewSize = 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
     private final short[] primitive = new short[LONG_SIZE];
 
     private void primitiveRead(final int amount) throws IOException {
@@ -245,7 +329,7 @@ public class DataReader {
         }
     }
 
-    private final byte[] readBuffer = new byte[BUFFER_SIZE];
+    private byte[] readBuffer;
     private int readOffset;
     private int readCount;
 
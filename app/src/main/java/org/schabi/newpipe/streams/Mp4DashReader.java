@@ -4,7 +4,6 @@ import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -70,6 +69,13 @@ public class Mp4DashReader {
         this.stream = new DataReader(source);
     }
 
+    /**
+     * Returns the read buffer to the pool, the reader can not be used after this call.
+     */
+    public void release() {
+        stream.release();
+    }
+
     public void parse() throws IOException, NoSuchElementException {
         if (selectedTrack > -1) {
             return;
@@ -905,7 +911,7 @@ public class Mp4DashReader {
     }
 
     public static class Mp4DashChunk {
-        public InputStream data;
+        public DataReader.View data;
         public Moof moof;
         private int i = 0;
 
@@ -934,6 +940,31 @@ public class Mp4DashReader {
 
             return sample;
         }
+
+        /**
+         * Same as {@link #getNextSample()}, but the sample data is copied into {@code target}
+         * instead of being loaded in memory.
+         *
+         * @param target the output stream
+         * @return the sample info, or {@code null} if there are no more samples in this chunk
+         * @throws IOException if an I/O error occurs
+         */
+        public TrunEntry transferNextSample(final SharpStream target) throws IOException {
+            if (data == null) {
+                throw new IllegalStateException("This chunk has info only");
+            }
+            if (i >= moof.traf.trun.entryCount) {
+                return null;
+            }
+
+            final TrunEntry info = moof.traf.trun.getAbsoluteEntry(i++, moof.traf.tfhd);
+
+            if (data.transferTo(info.sampleSize, target) != info.sampleSize) {
+                throw new EOFException("EOF reached while transferring a sample");
+            }
+
+            return info;
+        }
     }
 
     public static class Mp4DashSample {
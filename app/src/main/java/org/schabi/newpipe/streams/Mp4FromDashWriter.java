@@ -3,15 +3,17 @@ package org.schabi.newpipe.streams;
 import org.schabi.newpipe.streams.Mp4DashReader.Hdlr;
 import org.schabi.newpipe.streams.Mp4DashReader.Mdia;
 import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashChunk;
-import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashSample;
 import org.schabi.newpipe.streams.Mp4DashReader.Mp4Track;
 import org.schabi.newpipe.streams.Mp4DashReader.TrackKind;
 import org.schabi.newpipe.streams.Mp4DashReader.TrunEntry;
+import org.schabi.newpipe.streams.io.BufferPool;
 import org.schabi.newpipe.streams.io.SharpStream;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 /**
  * @author kapodamy
@@ -36,6 +38,7 @@ public class Mp4FromDashWriter {
     private long writeOffset;
 
     private boolean moovSimulation = true;
+    private boolean fragmented = false;
 
     private boolean done = false;
     private boolean parsed = false;
@@ -132,6 +135,8 @@ public class Mp4FromDashWriter {
             src.close();
         }
 
+        releaseReaders();
+
         tracks = null;
         sourceTracks = null;
 
@@ -268,11 +273,16 @@ public class Mp4FromDashWriter {
         // reserve moov space in the output stream
         if (auxSize > 0) {
             int length = auxSize;
-            final byte[] buffer = new byte[64 * 1024]; // 64 KiB
-            while (length > 0) {
-                final int count = Math.min(length, buffer.length);
-                outWrite(buffer, count);
-                length -= count;
+            final byte[] buffer = BufferPool.acquire(64 * 1024); // 64 KiB
+            Arrays.fill(buffer, (byte) 0);
+            try {
+                while (length > 0) {
+                    final int count = Math.min(length, buffer.length);
+                    outWrite(buffer, count);
+                    length -= count;
+                }
+            } finally {
+                BufferPool.release(buffer);
             }
         }
 
@@ -331,7 +341,8 @@ public class Mp4FromDashWriter {
 
                 int j = 0;
                 for (; j < limit; j++) {
-                    final Mp4DashSample sample = getNextSample(i);
+                    // the sample data goes straight to the output, before any table entry
+                    final TrunEntry sample = transferNextSample(i);
 
                     if (sample == null) {
                         if (tablesInfo[i].ctts > 0 && sampleExtra[i] >= 0) {
@@ -346,7 +357,7 @@ public class Mp4FromDashWriter {
                     sampleIndex[i]++;
 
                     if (tablesInfo[i].ctts > 0) {
-                        if (sample.info.sampleCompositionTimeOffset == sampleExtra[i]) {
+                        if (sample.sampleCompositionTimeOffset == sampleExtra[i]) {
                             sampleCount[i]++;
                         } else {
                             if (sampleExtra[i] >= 0) {
@@ -355,19 +366,17 @@ public class Mp4FromDashWriter {
                                 outRestore();
                             }
                             sampleCount[i] = 1;
-                            sampleExtra[i] = sample.info.sampleCompositionTimeOffset;
+                            sampleExtra[i] = sample.sampleCompositionTimeOffset;
                         }
                     }
 
-                    if (tablesInfo[i].stss > 0 && sample.info.isKeyframe) {
+                    if (tablesInfo[i].stss > 0 && sample.isKeyframe) {
                         sync[syncCount++] = sampleIndex[i];
                     }
 
                     if (tablesInfo[i].stsz > 0) {
-                        sizes[j] = sample.data.length;
+                        sizes[j] = sample.sampleSize;
                     }
-
-                    outWrite(sample.data, sample.data.length);
                 }
 
                 if (j > 0) {
@@ -401,9 +410,214 @@ public class Mp4FromDashWriter {
             outStream.write(auxBuffer.array(), 0, auxBuffer.capacity());
             auxBuffer = null;
         }
+
+        releaseReaders();
+    }
+
+    /**
+     * Writes a fragmented MP4 (moof+mdat pairs after an empty moov). Unlike {@link #build},
+     * the fragments are written append-only and the sources are read once, so this mode does
+     * not need space reserved for the moov box.
+     * <p>
+     * The track durations are usually unknown until every fragment is read, if the output can
+     * seek the moov box is rewritten with them at the end.
+     * </p>
+     *
+     * @param output the output stream
+     * @throws IOException if an I/O error occurs
+     */
+    public void buildFragmented(final SharpStream output) throws IOException {
+        if (done) {
+            throw new RuntimeException("already done");
+        }
+        if (!output.canWrite()) {
+            throw new IOException("the provided output is not writable");
+        }
+
+        outStream = output;
+        fragmented = true;
+        compatibleBrands.add(0x69736F36); // iso6
+
+        final int[] defaultMediaTime = new int[tracks.length];
+
+        // the moov box is small without sample tables, build it in memory
+        final int moovSize = makeMoov(defaultMediaTime, makeEmptyTables(), false);
+        moovSimulation = false;
+        writeOffset = 0;
+
+        final int ftypSize = makeFtyp();
+        writeFragmentedMoov(defaultMediaTime, moovSize);
+
+        final long[] decodeTime = new long[tracks.length];
+        final boolean[] trackDone = new boolean[tracks.length];
+        int sequenceNumber = 1;
+
+        while (true) {
+            // interleave the fragments by decode time
+            int track = -1;
+            double lowestTime = Double.MAX_VALUE;
+            for (int i = 0; i < tracks.length; i++) {
+                final double trackTime =
+                        decodeTime[i] / (double) tracks[i].trak.mdia.mdhdTimeScale;
+                if (!trackDone[i] && trackTime < lowestTime) {
+                    lowestTime = trackTime;
+                    track = i;
+                }
+            }
+
+            if (track < 0) {
+                break;
+            }
+
+            final Mp4DashChunk chunk = readers[track].getNextChunk(false);
+            if (chunk == null) {
+                trackDone[track] = true;
+                continue;
+            }
+
+            decodeTime[track] += writeFragment(track, sequenceNumber++, decodeTime[track], chunk);
+        }
+
+        // the durations of the tracks are the sum of the durations of their fragments
+        boolean unknownDuration = false;
+        for (int i = 0; i < tracks.length; i++) {
+            if (tracks[i].trak.tkhd.duration < 1) {
+                tracks[i].trak.tkhd.duration = decodeTime[i];
+                unknownDuration = true;
+            }
+        }
+
+        if (unknownDuration && outStream.canSeek()) {
+            // the size of the moov box does not change, only the durations are patched
+            outSeek(ftypSize);
+            writeFragmentedMoov(defaultMediaTime, moovSize);
+        }
+
+        releaseReaders();
+    }
+
+    private TablesInfo[] makeEmptyTables() {
+        final TablesInfo[] tablesInfo = new TablesInfo[tracks.length];
+        for (int i = 0; i < tablesInfo.length; i++) {
+            // all sample tables are empty, the samples are described by each moof box
+            tablesInfo[i] = new TablesInfo();
+            tablesInfo[i].stscBEntries = new int[0];
+        }
+        return tablesInfo;
     }
 
-    private Mp4DashSample getNextSample(final int track) throws IOException {
+    private void writeFragmentedMoov(final int[] defaultMediaTime, final int moovSize)
+            throws IOException {
+        auxBuffer = ByteBuffer.allocate(moovSize);
+        makeMoov(defaultMediaTime, makeEmptyTables(), false);
+        outWrite(auxBuffer.array());
+        auxBuffer = null;
+    }
+
+    private void releaseReaders() {
+        for (final Mp4DashReader reader : readers) {
+            if (reader != null) {
+                reader.release();
+            }
+        }
+    }
+
+    private long writeFragment(final int track, final int sequenceNumber, final long decodeTime,
+                               final Mp4DashChunk chunk) throws IOException {
+        final int entryCount = chunk.moof.traf.trun.entryCount;
+        final boolean hasCompositionTimeOffset =
+                Mp4DashReader.hasFlag(chunk.moof.traf.trun.bFlags, 0x0800);
+        final int rowSize = hasCompositionTimeOffset ? 16 : 12;
+
+        final int trunSize = 20 + (entryCount * rowSize);
+        final int trafSize = 8 + 16 + 20 + trunSize;
+        final int moofSize = 8 + 16 + trafSize;
+
+        final ByteBuffer buffer = ByteBuffer.allocate(moofSize + 8);
+        buffer.putInt(moofSize);
+        buffer.putInt(0x6D6F6F66); // "moof"
+
+        buffer.putInt(16);
+        buffer.putInt(0x6D666864); // "mfhd"
+        buffer.putInt(0x00); // default version & flags
+        buffer.putInt(sequenceNumber);
+
+        buffer.putInt(trafSize);
+        buffer.putInt(0x74726166); // "traf"
+
+        buffer.putInt(16);
+        buffer.putInt(0x74666864); // "tfhd"
+        buffer.putInt(0x020000); // default-base-is-moof
+        buffer.putInt(track + 1);
+
+        buffer.putInt(20);
+        buffer.putInt(0x74666474); // "tfdt"
+        buffer.putInt(0x01000000); // version 1, 64-bit decode time
+        buffer.putLong(decodeTime);
+
+        buffer.putInt(trunSize);
+        buffer.putInt(0x7472756E); // "trun"
+        // data-offset, sample-duration, sample-size, sample-flags and composition time offsets
+        // (version 1, signed) if the source has them
+        buffer.putInt(hasCompositionTimeOffset ? 0x01000F01 : 0x0701);
+        buffer.putInt(entryCount);
+        buffer.putInt(moofSize + 8); // the samples are right after the mdat header
+
+        final int defaultSampleDuration =
+                tracks[track].trex == null ? 0 : tracks[track].trex.defaultSampleDuration;
+        long duration = 0;
+        long size = 0;
+
+        TrunEntry info;
+        while ((info = chunk.getNextSampleInfo()) != null) {
+            final int sampleDuration =
+                    info.sampleDuration > 0 ? info.sampleDuration : defaultSampleDuration;
+
+            buffer.putInt(sampleDuration);
+            buffer.putInt(info.sampleSize);
+            // sync samples do not depend on others, the rest are non-sync
+            buffer.putInt(info.isKeyframe ? 0x02000000 : 0x01010000);
+            if (hasCompositionTimeOffset) {
+                buffer.putInt(info.sampleCompositionTimeOffset);
+            }
+
+            duration += sampleDuration;
+            size += info.sampleSize;
+        }
+
+        buffer.putInt((int) (size + 8));
+        buffer.putInt(0x6D646174); // "mdat"
+        outWrite(buffer.array());
+
+        final long transferred = chunk.data.transferTo(size, outStream);
+        writeOffset += transferred;
+        if (transferred != size) {
+            throw new EOFException("EOF reached while transferring a fragment");
+        }
+
+        return duration;
+    }
+
+    private void makeMvex() throws IOException {
+        auxWrite(ByteBuffer.allocate(8)
+                .putInt(8 + (32 * tracks.length))
+                .putInt(0x6D766578) // "mvex"
+                .array()
+        );
+
+        for (int i = 0; i < tracks.length; i++) {
+            auxWrite(ByteBuffer.allocate(32)
+                    .putInt(32)
+                    .putInt(0x74726578) // "trex"
+                    .putInt(0x00) // default version & flags
+                    .putInt(i + 1) // track id
+                    .putInt(1) // default sample description index
+                    .array() // default duration, size and flags are zero
+            );
+        }
+    }
+
+    private TrunEntry transferNextSample(final int track) throws IOException {
         if (readersChunks[track] == null) {
             readersChunks[track] = readers[track].getNextChunk(false);
             if (readersChunks[track] == null) {
@@ -411,11 +625,12 @@ public class Mp4FromDashWriter {
             }
         }
 
-        final Mp4DashSample sample = readersChunks[track].getNextSample();
+        final TrunEntry sample = readersChunks[track].transferNextSample(outStream);
         if (sample == null) {
             readersChunks[track] = null;
-            return getNextSample(track);
+            return transferNextSample(track);
         } else {
+            writeOffset += sample.sampleSize;
             return sample;
         }
     }
@@ -720,6 +935,10 @@ public class Mp4FromDashWriter {
             makeTrak(i, durations[i], defaultMediaTime[i], tablesInfo[i], is64);
         }
 
+        if (fragmented) {
+            makeMvex();
+        }
+
         return lengthFor(start);
     }
 
@@ -804,8 +1023,11 @@ public class Mp4FromDashWriter {
         // In audio tracks the following tables is not required: ssts ctts
         // And stsz can be empty if has a default sample size
         //
+        // in fragmented mode the stts table is empty as well
+        final int sttsRows = fragmented ? 0 : 1;
+
         if (moovSimulation) {
-            make(0x73747473, -1, 2, 1); // stts
+            make(0x73747473, -1, 2, sttsRows); // stts
             if (tablesInfo.stss > 0) {
                 make(0x73747373, -1, 1, tablesInfo.stss);
             }
@@ -816,7 +1038,7 @@ public class Mp4FromDashWriter {
             make(0x7374737A, tablesInfo.stszDefault, 1, tablesInfo.stsz);
             make(is64 ? 0x636F3634 : 0x7374636F, -1, is64 ? 2 : 1, tablesInfo.stco);
         } else {
-            tablesInfo.stts = make(0x73747473, -1, 2, 1);
+            tablesInfo.stts = make(0x73747473, -1, 2, sttsRows);
             if (tablesInfo.stss > 0) {
                 tablesInfo.stss = make(0x73747373, -1, 1, tablesInfo.stss);
             }
@@ -829,7 +1051,7 @@ public class Mp4FromDashWriter {
                     tablesInfo.stco);
         }
 
-        if (isAudio) {
+        if (isAudio && !fragmented) {
             auxWrite(makeSgpd());
             tablesInfo.sbgp = makeSbgp(); // during simulation the returned offset is ignored
         }
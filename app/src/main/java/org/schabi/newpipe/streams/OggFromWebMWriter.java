@@ -146,6 +146,10 @@ public class OggFromWebMWriter implements Closeable {
         done = true;
         parsed = true;
 
+        if (webm != null) {
+            webm.release();
+        }
+
         webmTrack = null;
         webm = null;
 
@@ -247,6 +251,8 @@ public class OggFromWebMWriter implements Closeable {
 
             webmBlock = bloq;
         }
+
+        webm.release();
     }
 
     private int makePacketheader(final long granPos, @NonNull final ByteBuffer buffer,
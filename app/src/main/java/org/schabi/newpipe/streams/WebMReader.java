@@ -4,7 +4,6 @@ import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.EOFException;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.NoSuchElementException;
@@ -60,6 +59,13 @@ public class WebMReader {
         this.stream = new DataReader(source);
     }
 
+    /**
+     * Returns the read buffer to the pool, the reader can not be used after this call.
+     */
+    public void release() {
+        stream.release();
+    }
+
     public void parse() throws IOException {
         Element elem = readElement(ID_EMBL);
         if (!readEbml(elem, 1, 2)) {
@@ -454,7 +460,7 @@ public class WebMReader {
     }
 
     public static class SimpleBlock {
-        public InputStream data;
+        public DataReader.View data;
         public boolean createdFromBlock;
 
         SimpleBlock(final Element ref) {
@@ -10,7 +10,6 @@ import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.Closeable;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
@@ -111,6 +110,8 @@ public class WebMWriter implements Closeable {
             src.close();
         }
 
+        releaseReaders();
+
         sourceTracks = null;
         readers = null;
         infoTracks = null;
@@ -327,6 +328,16 @@ public class WebMWriter implements Closeable {
         for (final ClusterInfo cluster : clustersOffsetsSizes) {
             writeInt(out, cluster.offset, cluster.size | 0x10000000);
         }
+
+        releaseReaders();
+    }
+
+    private void releaseReaders() {
+        for (final WebMReader reader : readers) {
+            if (reader != null) {
+                reader.release();
+            }
+        }
     }
 
     private Block getNextBlockFrom(final int internalTrackId) throws IOException {
@@ -407,10 +418,7 @@ public class WebMWriter implements Closeable {
 
         dump(listBuffer, stream);
 
-        int read;
-        while ((read = bloq.data.read(outBuffer)) > 0) {
-            dump(outBuffer, read, stream);
-        }
+        written += bloq.data.transferTo(bloq.dataSize, stream);
     }
 
     private long makeCluster(final SharpStream stream, final long timecode, final long offsetStart,
@@ -736,7 +744,7 @@ public class WebMWriter implements Closeable {
     }
 
     static class Block {
-        InputStream data;
+        DataReader.View data;
         int trackNumber;
         byte flags;
         int dataSize;
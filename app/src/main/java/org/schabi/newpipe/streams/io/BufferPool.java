@@ -0,0 +1,104 @@
+package org.schabi.newpipe.streams.io;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayDeque;
+
+/**
+ * Shared pool of the byte buffers used while downloading and muxing. The buffers are grouped by
+ * size, each size is a power of two between {@link #MINIMUM_SIZE} and {@link #MAXIMUM_SIZE}.
+ * The pool keeps up to {@link #MAXIMUM_POOLED_BYTES}, the excess is left to the garbage collector.
+ * <p>
+ * The leased buffers are not cleared, the previous content is still there.
+ */
+public final class BufferPool {
+    private static final int MINIMUM_SHIFT = 13;
+    private static final int MAXIMUM_SHIFT = 20;
+
+    /**
+     * Smallest buffer handed out (8 KiB)
+     */
+    public static final int MINIMUM_SIZE = 1 << MINIMUM_SHIFT;
+
+    /**
+     * Largest pooled buffer (1 MiB), bigger requests are always allocated
+     */
+    public static final int MAXIMUM_SIZE = 1 << MAXIMUM_SHIFT;
+
+    /**
+     * Maximum amount of memory retained by the pool (4 MiB)
+     */
+    private static final int MAXIMUM_POOLED_BYTES = 4 * 1024 * 1024;
+
+    @SuppressWarnings("unchecked")
+    private static final ArrayDeque<byte[]>[] POOLS =
+            new ArrayDeque[MAXIMUM_SHIFT - MINIMUM_SHIFT + 1];
+    private static int pooledBytes = 0;
+
+    static {
+        for (int i = 0; i < POOLS.length; i++) {
+            POOLS[i] = new ArrayDeque<>();
+        }
+    }
+
+    private BufferPool() {
+    }
+
+    /**
+     * Leases a buffer, the returned buffer can be larger than requested
+     *
+     * @param size the minimum size of the buffer
+     * @return a buffer with the size rounded up to the next power of two
+     */
+    @NonNull
+    public static byte[] acquire(final int size) {
+        if (size > MAXIMUM_SIZE) {
+            return new byte[size];
+        }
+
+        final int index = getIndex(size);
+
+        synchronized (POOLS) {
+            final byte[] buffer = POOLS[index].pollFirst();
+            if (buffer != null) {
+                pooledBytes -= buffer.length;
+                return buffer;
+            }
+        }
+
+        return new byte[1 << (index + MINIMUM_SHIFT)];
+    }
+
+    /**
+     * Returns a buffer to the pool, the buffer must not be used after calling this method
+     *
+     * @param buffer the buffer returned by {@link #acquire(int)}, can be {@code null}
+     */
+    public static void release(@Nullable final byte[] buffer) {
+        if (buffer == null || buffer.length > MAXIMUM_SIZE || buffer.length < MINIMUM_SIZE) {
+            return;
+        }
+        if (Integer.bitCount(buffer.length) != 1) {
+            return; // not allocated here
+        }
+
+        synchronized (POOLS) {
+            if (pooledBytes + buffer.length > MAXIMUM_POOLED_BYTES) {
+                return;
+            }
+
+            POOLS[getIndex(buffer.length)].addFirst(buffer);
+            pooledBytes += buffer.length;
+        }
+    }
+
+    private static int getIndex(final int size) {
+        if (size <= MINIMUM_SIZE) {
+            return 0;
+        }
+
+        final int shift = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return shift - MINIMUM_SHIFT;
+    }
+}
@@ -3,6 +3,8 @@ package org.schabi.newpipe.streams.io;
 import java.io.Closeable;
 import java.io.Flushable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Based on C#'s Stream class. SharpStream is a wrapper around the 2 different APIs for SAF
@@ -15,6 +17,8 @@ import java.io.IOException;
  * or {@link java.io.OutputStream}.
  */
 public abstract class SharpStream implements Closeable, Flushable {
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024; // 64 KiB
+
     public abstract int read() throws IOException;
 
     public abstract int read(byte[] buffer) throws IOException;
@@ -52,6 +56,149 @@ public abstract class SharpStream implements Closeable, Flushable {
 
     public abstract void write(byte[] buffer, int offset, int count) throws IOException;
 
+    /**
+     * Reads bytes into the remaining space of the given buffer. Streams backed by a
+     * {@link FileChannel} read directly into it, otherwise the buffer must be array-backed.
+     *
+     * @param buffer the destination buffer, its position is advanced by the amount read
+     * @return the amount of bytes read, or -1 if the end of the stream was reached
+     * @throws IOException if an I/O error occurs
+     */
+    public int read(final ByteBuffer buffer) throws IOException {
+        final int read = read(buffer.array(), buffer.arrayOffset() + buffer.position(),
+                buffer.remaining());
+        if (read > 0) {
+            buffer.position(buffer.position() + read);
+        }
+        return read;
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer. Streams backed by a {@link FileChannel}
+     * write directly from it, otherwise the buffer must be array-backed.
+     *
+     * @param buffer the source buffer, its position is advanced by the amount written
+     * @return the amount of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    public int write(final ByteBuffer buffer) throws IOException {
+        final int count = buffer.remaining();
+        write(buffer.array(), buffer.arrayOffset() + buffer.position(), count);
+        buffer.position(buffer.position() + count);
+        return count;
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer at an absolute position, without moving the
+     * current position of this stream. Only supported by the streams backed by a
+     * {@link FileChannel}.
+     *
+     * @param buffer   the source buffer, its position is advanced by the amount written
+     * @param position the absolute position in this stream where the bytes are written
+     * @return the amount of bytes written
+     * @throws IOException if an I/O error occurs
+     */
+    public int write(final ByteBuffer buffer, final long position) throws IOException {
+        final FileChannel channel = getChannel();
+        if (channel == null) {
+            throw new UnsupportedOperationException("not backed by a file channel");
+        }
+        return channel.write(buffer, position);
+    }
+
+    /**
+     * @return the channel backing this stream, or {@code null} if the stream is not backed
+     * by a file channel
+     */
+    public FileChannel getChannel() {
+        return null;
+    }
+
+    /**
+     * @return {@code true} if {@link #transferTo(long, SharpStream)} copies the bytes without
+     * passing them through a heap buffer
+     */
+    public boolean canTransfer() {
+        return false;
+    }
+
+    /**
+     * Copies up to {@code count} bytes from the current position of this stream into
+     * {@code target}, without passing them through the Java heap when both ends allow it.
+     * The position of this stream is advanced by the amount of bytes transferred.
+     *
+     * @param count  the maximum amount of bytes to transfer
+     * @param target the destination stream, bytes are written at its current position
+     * @return the amount of bytes transferred, less than {@code count} if the end of this
+     * stream was reached
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferTo(final long count, final SharpStream target) throws IOException {
+        // not backed by a file channel, copy through a heap buffer
+        final byte[] buffer = new byte[(int) Math.min(count, TRANSFER_BUFFER_SIZE)];
+        long transferred = 0;
+
+        while (transferred < count) {
+            final int read = read(buffer, 0, (int) Math.min(buffer.length, count - transferred));
+            if (read < 1) {
+                break;
+            }
+
+            target.write(buffer, 0, read);
+            transferred += read;
+        }
+
+        return transferred;
+    }
+
+    /**
+     * Writes {@code count} bytes read from {@code source}, starting at the absolute
+     * {@code position} in it, at the current position of this stream. The position of
+     * {@code source} is not modified. If this stream is backed by a file channel the bytes
+     * are copied by the kernel, otherwise they are copied through a heap buffer.
+     *
+     * @param source   the channel to read from
+     * @param position the absolute position in {@code source}
+     * @param count    the maximum amount of bytes to transfer
+     * @return the amount of bytes transferred, less than {@code count} if the end of
+     * {@code source} was reached
+     * @throws IOException if an I/O error occurs
+     */
+    public long transferFrom(final FileChannel source, final long position, final long count)
+            throws IOException {
+        final FileChannel channel = getChannel();
+        long transferred = 0;
+
+        if (channel != null) {
+            while (transferred < count) {
+                final long amount = source.transferTo(position + transferred,
+                        count - transferred, channel);
+                if (amount < 1) {
+                    break;
+                }
+                transferred += amount;
+            }
+            return transferred;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, TRANSFER_BUFFER_SIZE));
+        while (transferred < count) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), count - transferred));
+
+            final int read = source.read(buffer, position + transferred);
+            if (read < 1) {
+                break;
+            }
+
+            buffer.flip();
+            write(buffer);
+            transferred += read;
+        }
+
+        return transferred;
+    }
+
     public void flush() throws IOException {
         // STUB
     }
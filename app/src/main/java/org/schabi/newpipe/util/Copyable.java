@@ -0,0 +1,23 @@
+package org.schabi.newpipe.util;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An object which can copy itself faster than through Java serialization, e.g. by sharing its
+ * immutable parts. {@link SerializedCache} copies these objects with {@link #copy()}.
+ *
+ * @param <T> the type of the copies
+ */
+public interface Copyable<T> {
+    /**
+     * @return a copy which can be modified independently of this object
+     */
+    @NonNull
+    T copy();
+
+    /**
+     * @return roughly the number of elements held by this object, used to bound the size of the
+     * caches holding copies of it
+     */
+    int getWeight();
+}
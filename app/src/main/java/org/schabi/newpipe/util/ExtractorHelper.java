@@ -22,6 +22,7 @@ package org.schabi.newpipe.util;
 import static org.schabi.newpipe.extractor.utils.Utils.isNullOrEmpty;
 import static org.schabi.newpipe.util.text.TextLinkifier.SET_LINK_MOVEMENT_METHOD;
 
+import android.annotation.SuppressLint;
 import android.content.Context;
 import android.util.Log;
 import android.view.View;
@@ -59,10 +60,12 @@ import java.util.List;
 import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.disposables.CompositeDisposable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 
 public final class ExtractorHelper {
     private static final String TAG = ExtractorHelper.class.getSimpleName();
     private static final InfoCache CACHE = InfoCache.getInstance();
+    private static final InfoLoadCoalescer LOADS = new InfoLoadCoalescer();
 
     private ExtractorHelper() {
         //no instance
@@ -212,6 +215,14 @@ public final class ExtractorHelper {
      * Check if we can load it from the cache (forceLoad parameter), if we can't,
      * load from the network (Single loadFromNetwork)
      * and put the results in the cache.
+     * <p>
+     * If the cached item has expired but is not too old, it is returned immediately and reloaded
+     * from the network in the background, so that the next load gets the fresh one.
+     * </p>
+     * <p>
+     * The concurrent loads of the same item from the network are coalesced into one, see
+     * {@link InfoLoadCoalescer}.
+     * </p>
      *
      * @param <I>             the item type's class that extends {@link Info}
      * @param forceLoad       whether to force loading from the network instead of from the cache
@@ -227,15 +238,18 @@ public final class ExtractorHelper {
                                                          @NonNull final InfoCache.Type cacheType,
                                                          @NonNull final Single<I> loadFromNetwork) {
         checkServiceId(serviceId);
-        final Single<I> actualLoadFromNetwork = loadFromNetwork
-                .doOnSuccess(info -> CACHE.putInfo(serviceId, url, info, cacheType));
+        final Single<I> actualLoadFromNetwork = LOADS.load(
+                InfoCache.keyOf(serviceId, url, cacheType),
+                loadFromNetwork
+                        .doOnSuccess(info -> CACHE.putInfo(serviceId, url, info, cacheType)));
 
         final Single<I> load;
         if (forceLoad) {
             CACHE.removeInfo(serviceId, url, cacheType);
             load = actualLoadFromNetwork;
         } else {
-            load = Maybe.concat(ExtractorHelper.loadFromCache(serviceId, url, cacheType),
+            load = Maybe.concat(ExtractorHelper.loadFromCache(serviceId, url, cacheType,
+                                    actualLoadFromNetwork),
                             actualLoadFromNetwork.toMaybe())
                     .firstElement() // Take the first valid
                     .toSingle();
@@ -247,37 +261,70 @@ public final class ExtractorHelper {
     /**
      * Default implementation uses the {@link InfoCache} to get cached results.
      *
-     * @param <I>       the item type's class that extends {@link Info}
-     * @param serviceId the service to load from
-     * @param url       the URL to load
-     * @param cacheType the {@link InfoCache.Type} of the item
+     * @param <I>          the item type's class that extends {@link Info}
+     * @param serviceId    the service to load from
+     * @param url          the URL to load
+     * @param cacheType    the {@link InfoCache.Type} of the item
+     * @param revalidation the {@link Single} to reload the item in the background if it is stale
      * @return a {@link Single} that loads the item
      */
     private static <I extends Info> Maybe<I> loadFromCache(
             final int serviceId,
             @NonNull final String url,
-            @NonNull final InfoCache.Type cacheType) {
+            @NonNull final InfoCache.Type cacheType,
+            @NonNull final Single<I> revalidation) {
         checkServiceId(serviceId);
         return Maybe.defer(() -> {
-            //noinspection unchecked
-            final I info = (I) CACHE.getFromKey(serviceId, url, cacheType);
+            final InfoCache.CacheEntry entry = CACHE.getEntry(serviceId, url, cacheType);
             if (MainActivity.DEBUG) {
-                Log.d(TAG, "loadFromCache() called, info > " + info);
+                Log.d(TAG, "loadFromCache() called, info > "
+                        + (entry == null ? null : entry.getInfo()));
             }
 
             // Only return info if it's not null (it is cached)
-            if (info != null) {
-                return Maybe.just(info);
+            if (entry == null) {
+                return Maybe.empty();
             }
 
-            return Maybe.empty();
+            LOADS.onCacheHit(InfoCache.keyOf(serviceId, url, cacheType));
+            if (entry.isStale()) {
+                revalidate(serviceId, url, cacheType, revalidation);
+            }
+            //noinspection unchecked
+            return Maybe.just((I) entry.getInfo());
         });
     }
 
+    /**
+     * Reloads a stale item in the background, the revalidation {@link Single} joins the reload
+     * already running, if any, and puts the result in the cache. Errors are ignored.
+     */
+    @SuppressLint("CheckResult")
+    private static void revalidate(final int serviceId,
+                                   @NonNull final String url,
+                                   @NonNull final InfoCache.Type cacheType,
+                                   @NonNull final Single<? extends Info> revalidation) {
+        final String key = InfoCache.keyOf(serviceId, url, cacheType);
+        if (MainActivity.DEBUG) {
+            Log.d(TAG, "revalidate() called with: key = [" + key + "]");
+        }
+        revalidation
+                .subscribeOn(Schedulers.io())
+                .subscribe(info -> { }, throwable -> {
+                    if (MainActivity.DEBUG) {
+                        Log.d(TAG, "Failed to revalidate " + key, throwable);
+                    }
+                });
+    }
+
+    /**
+     * Only looks at the in-memory cache, so it can be called on the main thread.
+     */
     public static boolean isCached(final int serviceId,
                                    @NonNull final String url,
                                    @NonNull final InfoCache.Type cacheType) {
-        return null != loadFromCache(serviceId, url, cacheType).blockingGet();
+        checkServiceId(serviceId);
+        return null != CACHE.getFromKey(serviceId, url, cacheType);
     }
 
 
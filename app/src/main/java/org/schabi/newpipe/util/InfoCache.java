@@ -19,16 +19,22 @@
 
 package org.schabi.newpipe.util;
 
+import android.content.Context;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.collection.LruCache;
 
 import org.schabi.newpipe.MainActivity;
 import org.schabi.newpipe.extractor.Info;
 
+import java.io.File;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 public final class InfoCache {
     private final String TAG = getClass().getSimpleName();
@@ -41,7 +47,15 @@ public final class InfoCache {
      */
     private static final int TRIM_CACHE_TO = 30;
 
+    private static final String DISK_CACHE_DIR_NAME = "info_cache";
+
     private static final LruCache<String, CacheData> LRU_CACHE = new LruCache<>(MAX_ITEMS_ON_CACHE);
+    /**
+     * Writes to the persistent tier in the background, in the order of the calls.
+     */
+    private static final Executor DISK_EXECUTOR = Executors.newSingleThreadExecutor();
+    @Nullable
+    private static volatile InfoDiskCache diskCache;
 
     private InfoCache() {
         // no instance
@@ -51,22 +65,44 @@ public final class InfoCache {
      * Identifies the type of {@link Info} to put into the cache.
      */
     public enum Type {
-        STREAM,
-        CHANNEL,
-        CHANNEL_TAB,
-        COMMENTS,
-        PLAYLIST,
-        KIOSK,
+        /**
+         * The stream URLs expire after a few hours, so stale streams are never used.
+         */
+        STREAM(0),
+        CHANNEL(TimeUnit.DAYS.toMillis(1)),
+        CHANNEL_TAB(TimeUnit.DAYS.toMillis(1)),
+        COMMENTS(TimeUnit.HOURS.toMillis(6)),
+        PLAYLIST(TimeUnit.DAYS.toMillis(1)),
+        KIOSK(TimeUnit.HOURS.toMillis(6));
+
+        /**
+         * How long after its expiration an info can still be shown while it is reloaded.
+         */
+        private final long maxStaleMillis;
+
+        Type(final long maxStaleMillis) {
+            this.maxStaleMillis = maxStaleMillis;
+        }
     }
 
     public static InfoCache getInstance() {
         return INSTANCE;
     }
 
+    /**
+     * Initialize the persistent tier of the cache, usually you want to call this in the
+     * Application class. Without it, only the in-memory tier is used.
+     *
+     * @param context used to get the cache dir
+     */
+    public static void init(@NonNull final Context context) {
+        diskCache = new InfoDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIR_NAME));
+    }
+
     @NonNull
-    private static String keyOf(final int serviceId,
-                                @NonNull final String url,
-                                @NonNull final Type cacheType) {
+    static String keyOf(final int serviceId,
+                        @NonNull final String url,
+                        @NonNull final Type cacheType) {
         return serviceId + ":" + cacheType.ordinal() + ":" + url;
     }
 
@@ -94,6 +130,11 @@ public final class InfoCache {
         return data.info;
     }
 
+    /**
+     * Gets an info from the in-memory tier only, so it can be called on the main thread.
+     *
+     * @return the info, or {@code null} if it is not cached or has expired
+     */
     @Nullable
     public Info getFromKey(final int serviceId,
                            @NonNull final String url,
@@ -107,6 +148,53 @@ public final class InfoCache {
         }
     }
 
+    /**
+     * Gets an info from the in-memory tier or, if it is not there, from the persistent tier,
+     * where it may have been written before the process was killed. Unlike
+     * {@link #getFromKey(int, String, Type)}, this returns an expired info for up to the
+     * {@link Type#maxStaleMillis} of its type, so that it can be shown while it is reloaded.
+     *
+     * @return the cached info, or {@code null} if there is none which can be used
+     */
+    @WorkerThread
+    @Nullable
+    public CacheEntry getEntry(final int serviceId,
+                               @NonNull final String url,
+                               @NonNull final Type cacheType) {
+        final String key = keyOf(serviceId, url, cacheType);
+        synchronized (LRU_CACHE) {
+            final Info info = getInfo(key);
+            if (info != null) {
+                return new CacheEntry(info, false);
+            }
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk == null) {
+            return null;
+        }
+
+        final long expirationMillis = ServiceHelper.getCacheExpirationMillis(serviceId);
+        final InfoDiskCache.Entry entry =
+                disk.get(key, expirationMillis + cacheType.maxStaleMillis);
+        if (entry == null) {
+            return null;
+        }
+
+        final long expireTimestamp = entry.storedAt + expirationMillis;
+        if (System.currentTimeMillis() > expireTimestamp) {
+            if (DEBUG) {
+                Log.d(TAG, "getEntry() found stale info, key = [" + key + "]");
+            }
+            return new CacheEntry(entry.info, true);
+        }
+
+        synchronized (LRU_CACHE) {
+            LRU_CACHE.put(key, new CacheData(entry.info, expireTimestamp));
+        }
+        return new CacheEntry(entry.info, false);
+    }
+
     public void putInfo(final int serviceId,
                         @NonNull final String url,
                         @NonNull final Info info,
@@ -115,10 +203,17 @@ public final class InfoCache {
             Log.d(TAG, "putInfo() called with: info = [" + info + "]");
         }
 
+        final String key = keyOf(serviceId, url, cacheType);
         final long expirationMillis = ServiceHelper.getCacheExpirationMillis(info.getServiceId());
         synchronized (LRU_CACHE) {
-            final CacheData data = new CacheData(info, expirationMillis);
-            LRU_CACHE.put(keyOf(serviceId, url, cacheType), data);
+            final CacheData data =
+                    new CacheData(info, System.currentTimeMillis() + expirationMillis);
+            LRU_CACHE.put(key, data);
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null) {
+            DISK_EXECUTOR.execute(() -> disk.put(key, info));
         }
     }
 
@@ -129,8 +224,14 @@ public final class InfoCache {
             Log.d(TAG, "removeInfo() called with: "
                     + "serviceId = [" + serviceId + "], url = [" + url + "]");
         }
+        final String key = keyOf(serviceId, url, cacheType);
         synchronized (LRU_CACHE) {
-            LRU_CACHE.remove(keyOf(serviceId, url, cacheType));
+            LRU_CACHE.remove(key);
+        }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null) {
+            DISK_EXECUTOR.execute(() -> disk.remove(key));
         }
     }
 
@@ -141,6 +242,11 @@ public final class InfoCache {
         synchronized (LRU_CACHE) {
             LRU_CACHE.evictAll();
         }
+
+        final InfoDiskCache disk = diskCache;
+        if (disk != null) {
+            DISK_EXECUTOR.execute(disk::clear);
+        }
     }
 
     public void trimCache() {
@@ -159,12 +265,38 @@ public final class InfoCache {
         }
     }
 
+    /**
+     * An info returned by {@link #getEntry(int, String, Type)}.
+     */
+    public static final class CacheEntry {
+        @NonNull
+        private final Info info;
+        private final boolean stale;
+
+        private CacheEntry(@NonNull final Info info, final boolean stale) {
+            this.info = info;
+            this.stale = stale;
+        }
+
+        @NonNull
+        public Info getInfo() {
+            return info;
+        }
+
+        /**
+         * @return whether the info has expired and should be reloaded
+         */
+        public boolean isStale() {
+            return stale;
+        }
+    }
+
     private static final class CacheData {
         private final long expireTimestamp;
         private final Info info;
 
-        private CacheData(@NonNull final Info info, final long timeoutMillis) {
-            this.expireTimestamp = System.currentTimeMillis() + timeoutMillis;
+        private CacheData(@NonNull final Info info, final long expireTimestamp) {
+            this.expireTimestamp = expireTimestamp;
             this.info = info;
         }
 
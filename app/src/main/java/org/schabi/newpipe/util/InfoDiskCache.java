@@ -0,0 +1,221 @@
+package org.schabi.newpipe.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.extractor.Info;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The persistent tier of {@link InfoCache}: every {@link Info} is stored compressed in its own
+ * file, and the least recently used files are deleted when the cache grows above
+ * {@link #MAX_SIZE_BYTES}. All the methods do disk I/O, so they must not be called on the main
+ * thread.
+ */
+final class InfoDiskCache {
+    private static final String TAG = "InfoDiskCache";
+    private static final boolean DEBUG = MainActivity.DEBUG;
+
+    /**
+     * Incremented when the format of the files changes, so that the old files are discarded.
+     */
+    private static final int FORMAT_VERSION = 1;
+    private static final long MAX_SIZE_BYTES = 32 * 1024 * 1024;
+    /**
+     * Trim the cache to this size.
+     */
+    private static final long TRIM_SIZE_TO_BYTES = 24 * 1024 * 1024;
+    private static final String FILE_SUFFIX = ".info";
+    private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+    @NonNull
+    private final File directory;
+    /**
+     * The size of the files, computed the first time it is needed.
+     */
+    private long size = -1;
+
+    InfoDiskCache(@NonNull final File directory) {
+        this.directory = directory;
+    }
+
+    static final class Entry {
+        @NonNull
+        final Info info;
+        final long storedAt;
+
+        private Entry(@NonNull final Info info, final long storedAt) {
+            this.info = info;
+            this.storedAt = storedAt;
+        }
+    }
+
+    /**
+     * @param key    the key of the info
+     * @param maxAge the age after which the info is not returned and deleted
+     * @return the stored info, or {@code null} if there is none or it is older than maxAge
+     */
+    @WorkerThread
+    @Nullable
+    synchronized Entry get(@NonNull final String key, final long maxAge) {
+        final File file = fileOf(key);
+        if (!file.exists()) {
+            return null;
+        }
+
+        try (ObjectInputStream input = new ObjectInputStream(new GZIPInputStream(
+                new BufferedInputStream(new FileInputStream(file))))) {
+            if (input.readInt() != FORMAT_VERSION || !key.equals(input.readUTF())) {
+                delete(file);
+                return null;
+            }
+
+            final long storedAt = input.readLong();
+            if (System.currentTimeMillis() - storedAt > maxAge) {
+                delete(file);
+                return null;
+            }
+
+            final Entry entry = new Entry((Info) input.readObject(), storedAt);
+            // the modification time is used to find the least recently used files
+            //noinspection ResultOfMethodCallIgnored
+            file.setLastModified(System.currentTimeMillis());
+            return entry;
+        } catch (final Exception e) {
+            // e.g. the classes of the extractor have changed since the file was written
+            if (DEBUG) {
+                Log.d(TAG, "Failed to read cached info, key = [" + key + "]", e);
+            }
+            delete(file);
+            return null;
+        }
+    }
+
+    @WorkerThread
+    synchronized void put(@NonNull final String key, @NonNull final Info info) {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Failed to create cache directory " + directory.getAbsolutePath());
+            return;
+        }
+
+        final File file = fileOf(key);
+        final File tempFile = new File(directory, file.getName() + TEMP_FILE_SUFFIX);
+        try (ObjectOutputStream output = new ObjectOutputStream(new GZIPOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tempFile))))) {
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(key);
+            output.writeLong(System.currentTimeMillis());
+            output.writeObject(info);
+        } catch (final Exception e) {
+            Log.e(TAG, "Failed to write cached info, key = [" + key + "]", e);
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            return;
+        }
+
+        final long oldSize = getSize();
+        final long replacedLength = file.length();
+        if (!tempFile.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tempFile.delete();
+            delete(file);
+            return;
+        }
+
+        size = oldSize - replacedLength + file.length();
+        if (size > MAX_SIZE_BYTES) {
+            trimTo(TRIM_SIZE_TO_BYTES);
+        }
+    }
+
+    @WorkerThread
+    synchronized void remove(@NonNull final String key) {
+        delete(fileOf(key));
+    }
+
+    @WorkerThread
+    synchronized void clear() {
+        for (final File file : listFiles()) {
+            //noinspection ResultOfMethodCallIgnored
+            file.delete();
+        }
+        size = 0;
+    }
+
+    private long getSize() {
+        if (size < 0) {
+            size = 0;
+            for (final File file : listFiles()) {
+                size += file.length();
+            }
+        }
+        return size;
+    }
+
+    private void trimTo(final long maxSize) {
+        final File[] files = listFiles();
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+        for (final File file : files) {
+            if (size <= maxSize) {
+                break;
+            }
+            delete(file);
+        }
+
+        if (DEBUG) {
+            Log.d(TAG, "trimTo() called, size = [" + size + "]");
+        }
+    }
+
+    private void delete(@NonNull final File file) {
+        final long length = file.length();
+        if (file.delete() && size >= 0) {
+            size -= length;
+        }
+    }
+
+    @NonNull
+    private File[] listFiles() {
+        final File[] files = directory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    @NonNull
+    private File fileOf(@NonNull final String key) {
+        return new File(directory, hash(key) + FILE_SUFFIX);
+    }
+
+    @NonNull
+    private static String hash(@NonNull final String key) {
+        try {
+            final byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest(key.getBytes(StandardCharsets.UTF_8));
+            final StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (final byte b : digest) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (final NoSuchAlgorithmException e) {
+            // every Java platform must support SHA-1
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package org.schabi.newpipe.util;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LruCache;
+
+import org.schabi.newpipe.MainActivity;
+import org.schabi.newpipe.extractor.Info;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.reactivex.rxjava3.core.Single;
+
+/**
+ * Shares the loads of the same item between the callers which request it while it is being
+ * loaded, so that e.g. the detail fragment and the player opening the same stream only extract
+ * it once. The first caller runs the load, the others join it and get the same result.
+ * <p>
+ * The load keeps running while at least one caller is subscribed to it, and is cancelled once
+ * all of them disposed their subscriptions.
+ * </p>
+ */
+final class InfoLoadCoalescer {
+    private static final String TAG = "InfoLoadCoalescer";
+    private static final int MAX_KEYS_WITH_STATS = 100;
+
+    private final ConcurrentHashMap<String, Single<? extends Info>> inFlight =
+            new ConcurrentHashMap<>();
+    private final LruCache<String, LoadStats> stats = new LruCache<>(MAX_KEYS_WITH_STATS);
+
+    /**
+     * @param key  identifies the item, see {@link InfoCache#keyOf(int, String, InfoCache.Type)}
+     * @param load the {@link Single} loading the item
+     * @return a {@link Single} which runs the load, or joins the one already running for the key
+     */
+    @NonNull
+    <I extends Info> Single<I> load(@NonNull final String key, @NonNull final Single<I> load) {
+        return Single.defer(() -> {
+            // the load is removed when it terminates or when its last subscriber leaves
+            final AtomicReference<Single<I>> shared = new AtomicReference<>();
+            shared.set(load.toObservable()
+                    .doFinally(() -> inFlight.remove(key, shared.get()))
+                    .replay(1)
+                    .refCount()
+                    .singleOrError());
+
+            //noinspection unchecked
+            final Single<I> running = (Single<I>) inFlight.putIfAbsent(key, shared.get());
+            if (running != null) {
+                onJoin(key);
+                return running;
+            }
+
+            onLoad(key);
+            return shared.get();
+        });
+    }
+
+    /**
+     * Records that an item was found in the cache, so that it did not need to be loaded.
+     */
+    void onCacheHit(@NonNull final String key) {
+        synchronized (stats) {
+            getOrCreateStats(key).cacheHits++;
+        }
+    }
+
+    /**
+     * @return the statistics of the recently requested item with the given key, if any
+     */
+    @Nullable
+    LoadStats getStats(@NonNull final String key) {
+        synchronized (stats) {
+            final LoadStats current = stats.get(key);
+            return current == null ? null : current.copy();
+        }
+    }
+
+    private void onLoad(@NonNull final String key) {
+        synchronized (stats) {
+            getOrCreateStats(key).loads++;
+        }
+    }
+
+    private void onJoin(@NonNull final String key) {
+        final LoadStats current;
+        synchronized (stats) {
+            current = getOrCreateStats(key);
+            current.joins++;
+        }
+        if (MainActivity.DEBUG) {
+            Log.d(TAG, "Joined the running load of " + key + ", stats > " + current);
+        }
+    }
+
+    @NonNull
+    private LoadStats getOrCreateStats(@NonNull final String key) {
+        LoadStats current = stats.get(key);
+        if (current == null) {
+            current = new LoadStats();
+            stats.put(key, current);
+        }
+        return current;
+    }
+
+    /**
+     * How the requests of an item have been served.
+     */
+    static final class LoadStats {
+        /**
+         * The requests served by {@link InfoCache}.
+         */
+        int cacheHits;
+        /**
+         * The requests which loaded the item.
+         */
+        int loads;
+        /**
+         * The requests which joined a running load instead of loading the item again.
+         */
+        int joins;
+
+        @NonNull
+        private LoadStats copy() {
+            final LoadStats copy = new LoadStats();
+            copy.cacheHits = cacheHits;
+            copy.loads = loads;
+            copy.joins = joins;
+            return copy;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "LoadStats{cacheHits=" + cacheHits + ", loads=" + loads
+                    + ", joins=" + joins + "}";
+        }
+    }
+}
@@ -15,12 +15,31 @@ import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.UUID;
 
+/**
+ * Holds copies of objects which are too big to be passed in intents, e.g. the play queue
+ * handed over to the player. The objects are copied when they are put, so that the caller can
+ * keep modifying its own.
+ * <p>
+ * {@link Copyable} objects are copied with {@link Copyable#copy()}, the other objects through
+ * Java serialization.
+ * </p>
+ */
 public final class SerializedCache {
     private static final boolean DEBUG = MainActivity.DEBUG;
     private static final SerializedCache INSTANCE = new SerializedCache();
-    private static final int MAX_ITEMS_ON_CACHE = 5;
+    /**
+     * The maximum total weight of the cached objects: every object weighs 1, plus
+     * {@link Copyable#getWeight()} for the copyable ones.
+     */
+    private static final int MAX_WEIGHT_ON_CACHE = 20_000;
     private static final LruCache<String, CacheData<?>> LRU_CACHE =
-            new LruCache<>(MAX_ITEMS_ON_CACHE);
+            new LruCache<String, CacheData<?>>(MAX_WEIGHT_ON_CACHE) {
+                @Override
+                protected int sizeOf(@NonNull final String key,
+                                     @NonNull final CacheData<?> value) {
+                    return value.weight;
+                }
+            };
     private static final String TAG = "SerializedCache";
 
     private SerializedCache() {
@@ -98,6 +117,10 @@ public final class SerializedCache {
     @NonNull
     private <T extends Serializable> T clone(@NonNull final T item,
                                              @NonNull final Class<T> type) throws Exception {
+        if (item instanceof Copyable) {
+            return type.cast(((Copyable<?>) item).copy());
+        }
+
         final ByteArrayOutputStream bytesOutput = new ByteArrayOutputStream();
         try (ObjectOutputStream objectOutput = new ObjectOutputStream(bytesOutput)) {
             objectOutput.writeObject(item);
@@ -111,10 +134,14 @@ public final class SerializedCache {
     private static final class CacheData<T> {
         private final T item;
         private final Class<T> type;
+        private final int weight;
 
         private CacheData(@NonNull final T item, @NonNull final Class<T> type) {
             this.item = item;
             this.type = type;
+            // an object heavier than the cache would not even be kept until it is taken
+            final int itemWeight = item instanceof Copyable ? ((Copyable<?>) item).getWeight() : 0;
+            this.weight = 1 + Math.max(0, Math.min(itemWeight, MAX_WEIGHT_ON_CACHE / 2));
         }
     }
 }
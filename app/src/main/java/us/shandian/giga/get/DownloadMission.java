@@ -21,14 +21,21 @@ import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.UnknownHostException;
 import java.nio.channels.ClosedByInterruptException;
+import java.util.Arrays;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.net.ssl.SSLException;
 
 import org.schabi.newpipe.streams.io.StoredFileHelper;
+import us.shandian.giga.postprocessing.PipelinedPostprocessing;
 import us.shandian.giga.postprocessing.Postprocessing;
 import us.shandian.giga.service.DownloadManagerService;
-import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
 
@@ -38,6 +45,14 @@ public class DownloadMission extends Mission {
     static final int BUFFER_SIZE = 64 * 1024;
     static final int BLOCK_SIZE = 512 * 1024;
 
+    /**
+     * Minimum amount of bytes left in a block to split it with an idle thread
+     */
+    private static final int STEAL_MIN_SIZE = 2 * BUFFER_SIZE;
+
+    private static final AtomicLongFieldUpdater<DownloadMission> DONE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(DownloadMission.class, "done");
+
     private static final String TAG = "DownloadMission";
 
     public static final int ERROR_NOTHING = -1;
@@ -84,6 +99,7 @@ public class DownloadMission extends Mission {
      * 1: running
      * 2: completed
      * 3: hold
+     * 4: running alongside the download of the last resource
      */
     public volatile int psState;
 
@@ -142,10 +158,20 @@ public class DownloadMission extends Mission {
     public Exception errObject = null;
 
     public transient Handler mHandler;
-    private transient boolean[] blockAcquired;
-
-    private transient long writingToFileNext;
+    private transient AtomicIntegerArray blockAcquired;
+    private transient AtomicInteger blockCursor;
+    private transient AtomicReferenceArray<Block> blocksInFlight;
+    private transient ConcurrentLinkedQueue<Integer> blocksPending;
+    private transient AtomicInteger connections;
+    private transient AtomicBoolean recoveryClaimed;
+    private transient DownloadTuner tuner;
+
+    private transient int blocksReady;
+    private transient volatile Thread psThread;
+
+    private transient volatile long writingToFileNext;
     private transient volatile boolean writingToFile;
+    transient MissionJournal journal;
 
     final Object LOCK = new Lock();
 
@@ -170,39 +196,304 @@ public class DownloadMission extends Mission {
     }
 
     /**
-     * Acquire a block
+     * Used by {@link MissionJournal} to restore a stored mission
+     */
+    DownloadMission() {
+    }
+
+    /**
+     * Prepares the state used to hand out the blocks to the download threads
+     *
+     * @param slots maximum amount of download threads running at once
+     */
+    void initBlockScheduling(int slots) {
+        blockAcquired = new AtomicIntegerArray(blocks.length);
+        blockCursor = new AtomicInteger(0);
+        blocksInFlight = new AtomicReferenceArray<>(slots);
+        blocksPending = new ConcurrentLinkedQueue<>();
+    }
+
+    /**
+     * Acquire a block, the blocks given back incomplete are acquired first. If no more blocks
+     * left, the largest part in progress of other thread is split and the second half is returned
      *
+     * @param slot the index of the calling download thread
+     * @param span maximum amount of consecutive blocks to acquire, all of them are downloaded
+     *             with a single request
      * @return the block or {@code null} if no more blocks left
      */
     @Nullable
-    Block acquireBlock() {
+    Block acquireBlock(int slot, int span) {
+        Integer pending;
+        while ((pending = blocksPending.poll()) != null) {
+            // the cursor already passed this block, resume it alone
+            if (blocks[pending] >= 0 && blockAcquired.compareAndSet(pending, 0, 1)) {
+                Block block = createBlock(pending, blocks[pending]);
+                block.slot = slot;
+
+                blocksInFlight.set(slot, block);
+                return block;
+            }
+        }
+
+        int position;
+        while ((position = blockCursor.getAndIncrement()) < blocks.length) {
+            if (blocks[position] >= 0 && blockAcquired.compareAndSet(position, 0, 1)) {
+                Block block = createBlock(position, blocks[position]);
+                block.slot = slot;
+
+                // take the following untouched blocks, unless other thread was faster
+                int next = position + 1;
+                while (block.spanEnd - position < span && next < blocks.length && blocks[next] == 0
+                        && blockCursor.compareAndSet(next, next + 1)) {
+                    if (!blockAcquired.compareAndSet(next, 0, 1)) break;
+                    block.spanEnd = ++next;
+                }
+
+                blocksInFlight.set(slot, block);
+                return block;
+            }
+        }
+
+        return stealBlock(slot);
+    }
+
+    private Block createBlock(int position, int done) {
+        Block block = new Block();
+        block.position = position;
+        block.done = done;
+        block.limit = (int) Math.min(BLOCK_SIZE, length - (long) position * BLOCK_SIZE);
+        block.spanEnd = position + 1;
+        block.head = block;
+        block.resetClaim();
+
+        return block;
+    }
+
+    /**
+     * Releases a completed block and continues with the next block of the same span
+     *
+     * @param block the completed block
+     * @return the next block or {@code null} if the span is finished, in that case the given
+     * block is not released
+     */
+    @Nullable
+    Block nextBlock(Block block) {
+        synchronized (LOCK) {
+            int position = block.position + 1;
+            int spanEnd = block.spanEnd;
+
+            if (position >= spanEnd) return null;
+
+            // do not give back the remaining blocks of the span
+            block.spanEnd = block.position + 1;
+            releaseBlock(block);
+
+            Block next = createBlock(position, 0);
+            next.slot = block.slot;
+            next.spanEnd = spanEnd;
+
+            blocksInFlight.set(next.slot, next);
+            return next;
+        }
+    }
+
+    /**
+     * Gets the end of the range to request for the given block and the blocks of its span
+     *
+     * @param block the block
+     * @return the offset (exclusive) in the resource
+     */
+    long getSpanEnd(Block block) {
+        synchronized (LOCK) {
+            if (block.spanEnd - block.position > 1) {
+                return Math.min((long) block.spanEnd * BLOCK_SIZE, length);
+            }
+            return (long) block.position * BLOCK_SIZE + block.getLimit();
+        }
+    }
+
+    /**
+     * Checks if there are more connections than the required by the {@link DownloadTuner}
+     *
+     * @return {@code true} if the calling thread should exit, otherwise, {@code false}
+     */
+    boolean retireConnection() {
+        int count;
+        do {
+            count = connections.get();
+            if (count <= tuner.getTargetConnections()) return false;
+
+            // the blocks given back must be finished by someone
+            if (!blocksPending.isEmpty()) return false;
+        } while (!connections.compareAndSet(count, count - 1));
+
+        return true;
+    }
+
+    /**
+     * Claims the recovery of the expired url, several download threads can get the error at once
+     *
+     * @return {@code true} if the calling thread must run the recovery procedure, otherwise,
+     * {@code false}
+     */
+    boolean claimRecovery() {
+        return recoveryClaimed.compareAndSet(false, true);
+    }
+
+    /**
+     * Samples the throughput and adds a download thread if the {@link DownloadTuner} asks so
+     */
+    void tuneConnections() {
+        if (tuner.sample(System.nanoTime(), done) < 1) return;
+
+        synchronized (this) {
+            // do not add threads if the download is finishing
+            if (!running || finishCount >= threads.length || blockCursor.get() >= blocks.length) {
+                return;
+            }
+
+            int slot = -1;
+            for (int i = 0; i < blocksInFlight.length() && slot < 0; i++) {
+                slot = i;
+                for (Thread thread : threads) {
+                    if (thread instanceof DownloadRunnable && thread.isAlive()
+                            && ((DownloadRunnable) thread).mId == i) {
+                        slot = -1;
+                        break;
+                    }
+                }
+            }
+
+            if (slot < 0) return;// a retired thread is still exiting
+
+            if (DEBUG) {
+                Log.d(TAG, "adding download thread, connections=" + (connections.get() + 1));
+            }
+
+            connections.incrementAndGet();
+            Thread[] list = Arrays.copyOf(threads, threads.length + 1);
+            list[threads.length] = runAsync(slot + 1, new DownloadRunnable(this, slot));
+            threads = list;
+        }
+    }
+
+    @Nullable
+    private Block stealBlock(int slot) {
         synchronized (LOCK) {
-            for (int i = 0; i < blockAcquired.length; i++) {
-                if (!blockAcquired[i] && blocks[i] >= 0) {
-                    Block block = new Block();
-                    block.position = i;
-                    block.done = blocks[i];
-
-                    blockAcquired[i] = true;
-                    return block;
+            Block victim = null;
+            long largest = STEAL_MIN_SIZE - 1;
+
+            for (int i = 0; i < blocksInFlight.length(); i++) {
+                Block block = blocksInFlight.get(i);
+                if (block == null || i == slot) continue;
+
+                long remain = block.remaining() + (long) (block.spanEnd - block.position - 1) * BLOCK_SIZE;
+                if (remain > largest) {
+                    victim = block;
+                    largest = remain;
                 }
             }
+
+            if (victim == null) return null;
+
+            Block block;
+            if (victim.spanEnd - victim.position > 1) {
+                // take the second half of the untouched blocks
+                int position = victim.spanEnd - (victim.spanEnd - victim.position) / 2;
+
+                block = createBlock(position, 0);
+                block.spanEnd = victim.spanEnd;
+                victim.spanEnd = position;
+            } else {
+                block = victim.split(STEAL_MIN_SIZE);
+                if (block == null) return null;
+            }
+
+            block.slot = slot;
+            blocksInFlight.set(slot, block);
+
+            if (DEBUG) {
+                Log.d(TAG, slot + ":stealing position=" + block.position + " from=" + block.start + " to=" + block.limit);
+            }
+
+            return block;
         }
+    }
+
+    /**
+     * Release a block (or a part of it). Once all parts of the block are released, the block is
+     * marked as done or, if a part is incomplete, stores the contiguous progress to resume later
+     *
+     * @param block the block
+     */
+    void releaseBlock(Block block) {
+        synchronized (LOCK) {
+            blocksInFlight.compareAndSet(block.slot, block, null);
+            block.released = true;
+
+            // the download was stopped, give back the untouched blocks of the span, the cursor
+            // already passed them
+            for (int i = block.position + 1; i < block.spanEnd; i++) {
+                blockAcquired.set(i, 0);
+                blocksPending.offer(i);
+            }
+            block.spanEnd = block.position + 1;
+
+            for (Block part = block.head; part != null; part = part.next) {
+                if (!part.released) return;// wait for the other threads
+            }
+
+            int done = -1;
+            long lost = 0;
+
+            for (Block part = block.head; part != null; part = part.next) {
+                if (done != -1) {
+                    // the progress after an incomplete part can not be stored
+                    lost += part.done - part.start;
+                } else if (part.done < part.getLimit()) {
+                    done = part.done;
+                }
+            }
 
-        return null;
+            blocks[block.position] = done;
+            blockAcquired.set(block.position, 0);
+
+            // the cursor does not go back, hand out the block again
+            if (done >= 0) blocksPending.offer(block.position);
+
+            if (lost > 0) notifyProgress(-lost);
+            if (done < 0 && psState == 4) LOCK.notifyAll();
+        }
     }
 
     /**
-     * Release an block
+     * Waits until the first bytes of the resource being downloaded are written, used by the
+     * post-processing running alongside the download of the last resource
      *
-     * @param position the index of the block
-     * @param done     amount of bytes downloaded
+     * @param amount amount of bytes required, counted from the start of the resource
+     * @return the amount of bytes written or {@link Long#MAX_VALUE} if the download is finished
+     * @throws InterruptedIOException if the waiting thread is interrupted
      */
-    void releaseBlock(int position, int done) {
+    public long awaitDownloaded(long amount) throws InterruptedIOException {
         synchronized (LOCK) {
-            blockAcquired[position] = false;
-            blocks[position] = done;
+            while (psState == 4) {
+                if (blocks != null) {
+                    while (blocksReady < blocks.length && blocks[blocksReady] < 0) blocksReady++;
+
+                    long available = Math.min((long) blocksReady * BLOCK_SIZE, length);
+                    if (available >= amount) return available;
+                }
+
+                try {
+                    LOCK.wait();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException("interrupted while waiting for the download");
+                }
+            }
         }
+
+        return Long.MAX_VALUE;
     }
 
     /**
@@ -277,19 +568,22 @@ public class DownloadMission extends Mission {
         mHandler.obtainMessage(what, this).sendToTarget();
     }
 
-    synchronized void notifyProgress(long deltaLen) {
+    void notifyProgress(long deltaLen) {
         if (unknownLength) {
-            length += deltaLen;// Update length before proceeding
+            length += deltaLen;// Update length before proceeding (only in fallback mode)
         }
 
-        done += deltaLen;
+        long value = DONE_UPDATER.addAndGet(this, deltaLen);
 
         if (metadata == null) return;
 
-        if (!writingToFile && (done > writingToFileNext || deltaLen < 0)) {
-            writingToFile = true;
-            writingToFileNext = done + BLOCK_SIZE;
-            writeThisToFileAsync();
+        if (!writingToFile && (value > writingToFileNext || deltaLen < 0)) {
+            synchronized (this) {
+                if (writingToFile) return;
+                writingToFile = true;
+                writingToFileNext = value + BLOCK_SIZE;
+            }
+            runAsync(-2, this::writeProgressToFile);
         }
     }
 
@@ -377,6 +671,12 @@ public class DownloadMission extends Mission {
             }
         }
 
+        if (psThread != null && psThread != Thread.currentThread()) {
+            // the post-processing is running alongside the download, let it finish the mission
+            if (psState == 4) notifyPostProcessing(1);
+            return;
+        }
+
         if (psAlgorithm != null && psState == 0) {
             threads = new Thread[]{
                     runAsync(1, this::doPostprocessing)
@@ -404,6 +704,9 @@ public class DownloadMission extends Mission {
             case 2:
                 action = "Completed";
                 break;
+            case 4:
+                action = "Pipelining";
+                break;
             default:
                 action = "Failed";
         }
@@ -419,6 +722,7 @@ public class DownloadMission extends Mission {
             // don't return without fully write the current state
             psState = state;
             writeThisToFile();
+            LOCK.notifyAll();
         }
     }
 
@@ -429,6 +733,9 @@ public class DownloadMission extends Mission {
     public void start() {
         if (running || isFinished() || urls.length < 1) return;
 
+        // the sources were overwritten by the failed post-processing, only a retry can help
+        if (isPsFailed()) return;
+
         // ensure that the previous state is completely paused.
         joinForThreads(10000);
 
@@ -459,7 +766,7 @@ public class DownloadMission extends Mission {
 
         init = null;
         finishCount = 0;
-        blockAcquired = new boolean[blocks.length];
+        recoveryClaimed = new AtomicBoolean(false);
 
         if (blocks.length < 1) {
             threads = new Thread[]{runAsync(1, new DownloadRunnableFallback(this))};
@@ -472,16 +779,32 @@ public class DownloadMission extends Mission {
                 return;
             }
 
-            threads = new Thread[Math.min(threadCount, remainingBlocks)];
+            tuner = new DownloadTuner(threadCount);
+            threads = new Thread[Math.min(tuner.getTargetConnections(), remainingBlocks)];
+            initBlockScheduling(Math.max(threadCount, threads.length));
+            connections = new AtomicInteger(threads.length);
 
             for (int i = 0; i < threads.length; i++) {
                 threads[i] = runAsync(i + 1, new DownloadRunnable(this, i));
             }
+
+            if (psThread == null && isPipelineApplicable()) {
+                // start muxing the downloaded blocks, the remaining ones are awaited
+                notifyPostProcessing(4);
+                psThread = new Thread(this::doPostprocessing);
+                runAsync(threads.length + 1, psThread);
+            }
         }
     }
 
+    private boolean isPipelineApplicable() {
+        return current == urls.length - 1 && psAlgorithm != null && psState == 0
+                && !unknownLength && PipelinedPostprocessing.isSupported(psAlgorithm);
+    }
+
     /**
-     * Pause the mission
+     * Pause the mission. The post-processing running alongside the download keeps waiting for
+     * the remaining blocks, it has already overwritten the previous resources in the file.
      */
     public void pause() {
         if (!running) return;
@@ -524,6 +847,8 @@ public class DownloadMission extends Mission {
      */
     @Override
     public boolean delete() {
+        Thread pipelined = psThread;
+        if (pipelined != null && pipelined.isAlive()) pipelined.interrupt();
         if (psAlgorithm != null) psAlgorithm.cleanupTemporalDir();
 
         notify(DownloadManagerService.MESSAGE_DELETED);
@@ -550,11 +875,36 @@ public class DownloadMission extends Mission {
         fallbackResumeOffset = 0;
         blocks = null;
         blockAcquired = null;
+        blockCursor = null;
+        blocksInFlight = null;
+        blocksPending = null;
+        blocksReady = 0;
+
+        // a pause keeps the pipelined post-processing waiting for the blocks, but a rollback
+        // downloads every resource again
+        if (rollback) discardPipelinedPostprocessing();
 
         if (rollback) current = 0;
         if (persistChanges) writeThisToFile();
     }
 
+    /**
+     * Stops the post-processing running alongside the download, used when the data already
+     * processed is no longer valid. The mission is left with
+     * {@link #ERROR_POSTPROCESSING_STOPPED} once the post-processing thread is over.
+     */
+    void discardPipelinedPostprocessing() {
+        Thread pipelined = psThread;
+        if (pipelined == null || pipelined == Thread.currentThread()) return;
+
+        pipelined.interrupt();
+        try {
+            pipelined.join(10000);
+        } catch (InterruptedException e) {
+            Log.w(TAG, "Pipelined post-processing thread is still running", e);
+        }
+    }
+
     private void initializer() {
         init = runAsync(DownloadInitializer.mId, new DownloadInitializer(this));
     }
@@ -564,13 +914,26 @@ public class DownloadMission extends Mission {
     }
 
     /**
-     * Write this {@link DownloadMission} to the meta file asynchronously
-     * if no thread is already running.
+     * Write the whole state of this {@link DownloadMission} to the meta file
      */
-    void writeThisToFile() {
+    public void writeThisToFile() {
         synchronized (LOCK) {
             if (metadata == null) return;
-            Utility.writeToFile(metadata, this);
+            if (journal == null) journal = new MissionJournal();
+            journal.snapshot(metadata, this);
+            writingToFile = false;
+        }
+    }
+
+    /**
+     * Append the download progress to the meta file, if the mission changed in other ways
+     * the whole state is written.
+     */
+    private void writeProgressToFile() {
+        synchronized (LOCK) {
+            if (metadata == null) return;
+            if (journal == null) journal = new MissionJournal();
+            journal.append(metadata, this);
             writingToFile = false;
         }
     }
@@ -608,6 +971,15 @@ public class DownloadMission extends Mission {
         return psAlgorithm != null && (psState == 1 || psState == 3);
     }
 
+    /**
+     * Indicates if a post-processing algorithm is running while the last resource is downloaded
+     *
+     * @return true, otherwise, false
+     */
+    public boolean isPsPipelined() {
+        return psAlgorithm != null && psState == 4;
+    }
+
     /**
      * Indicated if the mission is ready
      *
@@ -650,9 +1022,21 @@ public class DownloadMission extends Mission {
      * @param recover {@code true} to retry, otherwise, {@code false} to cancel
      */
     public void psContinue(boolean recover) {
-        psState = 1;
+        Thread pipelined = psThread;
+        if (pipelined == null) {
+            psState = 1;
+            errCode = recover ? ERROR_NOTHING : ERROR_POSTPROCESSING;
+            threads[0].interrupt();
+            return;
+        }
+
+        boolean downloading = current < urls.length;
+        psState = downloading ? 4 : 1;
         errCode = recover ? ERROR_NOTHING : ERROR_POSTPROCESSING;
-        threads[0].interrupt();
+        pipelined.interrupt();
+
+        // the download threads were stopped by the error
+        if (downloading && recover) start();
     }
 
     /**
@@ -689,7 +1073,7 @@ public class DownloadMission extends Mission {
         errObject = null;
         Thread thread = Thread.currentThread();
 
-        notifyPostProcessing(1);
+        if (psState != 4) notifyPostProcessing(1);
 
         if (DEBUG) {
             thread.setName("[" + TAG + "]  ps = " + psAlgorithm + "  filename = " + storage.getName());
@@ -699,6 +1083,9 @@ public class DownloadMission extends Mission {
 
         try {
             psAlgorithm.run(this);
+
+            // if pipelined, the download must be finished before completing the mission
+            if (errCode == ERROR_NOTHING) awaitDownloaded(Long.MAX_VALUE);
         } catch (Exception err) {
             Log.e(TAG, "Post-processing failed. " + psAlgorithm.toString(), err);
 
@@ -711,6 +1098,10 @@ public class DownloadMission extends Mission {
 
             exception = err;
         } finally {
+            synchronized (this) {
+                // the pipelined post-processing is over, do not wait for it to finish the mission
+                if (psThread == thread) psThread = null;
+            }
             notifyPostProcessing(errCode == ERROR_NOTHING ? 2 : 0);
         }
 
@@ -846,6 +1237,77 @@ public class DownloadMission extends Mission {
     public static class Block {
         public int position;
         public int done;
+
+        /**
+         * Offset in the block where this part starts, non-zero if the part was stolen
+         */
+        int start;
+
+        /**
+         * Offset in the block where this part ends (exclusive), reduced if the part is split
+         */
+        private int limit;
+
+        /**
+         * Index of the block after the last block acquired along this one, all of them are
+         * downloaded with the same request. Modified only while holding the mission lock
+         */
+        int spanEnd;
+
+        int slot;
+        Block head;
+        Block next;
+        boolean released;
+
+        private int claimed;
+
+        /**
+         * Reserve bytes before writing them, a part can be shortened by other thread at any time
+         *
+         * @param amount amount of bytes read
+         * @return amount of bytes that can be written
+         */
+        synchronized int claim(int amount) {
+            amount = Math.min(amount, limit - claimed);
+            claimed += amount;
+            return amount;
+        }
+
+        /**
+         * Discards the reserved bytes not written, used before (re)connecting
+         */
+        synchronized void resetClaim() {
+            claimed = done;
+        }
+
+        synchronized int getLimit() {
+            return limit;
+        }
+
+        synchronized int remaining() {
+            return limit - claimed;
+        }
+
+        @Nullable
+        synchronized Block split(int minimum) {
+            int remain = limit - claimed;
+            if (remain < minimum) return null;
+
+            Block block = new Block();
+            block.position = position;
+            block.start = claimed + remain / 2;
+            block.done = block.start;
+            block.claimed = block.start;
+            block.limit = limit;
+            block.spanEnd = position + 1;
+            block.head = head;
+            block.next = next;
+
+            next = block;
+            limit = block.start;
+
+            return block;
+        }
     }
 
     private static class Lock implements Serializable {
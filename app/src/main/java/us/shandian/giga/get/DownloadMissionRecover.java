@@ -232,6 +232,8 @@ public class DownloadMissionRecover extends Thread {
         if (mNotInitialized) return;
 
         if (stale) {
+            // the resource changed, the data already processed alongside the download is invalid
+            mMission.discardPipelinedPostprocessing();
             mMission.resetState(false, false, DownloadMission.ERROR_NOTHING);
         }
 
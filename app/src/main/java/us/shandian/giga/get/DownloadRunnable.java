@@ -2,6 +2,7 @@ package us.shandian.giga.get;
 
 import android.util.Log;
 
+import org.schabi.newpipe.streams.io.BufferPool;
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.IOException;
@@ -12,6 +13,7 @@ import java.util.Objects;
 
 import us.shandian.giga.get.DownloadMission.Block;
 import us.shandian.giga.get.DownloadMission.HttpError;
+import us.shandian.giga.service.BandwidthScheduler;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
 import static us.shandian.giga.get.DownloadMission.ERROR_HTTP_FORBIDDEN;
@@ -25,7 +27,7 @@ public class DownloadRunnable extends Thread {
     private static final String TAG = "DownloadRunnable";
 
     private final DownloadMission mMission;
-    private final int mId;
+    final int mId;
 
     private HttpURLConnection mConn;
 
@@ -34,17 +36,13 @@ public class DownloadRunnable extends Thread {
         mId = id;
     }
 
-    private void releaseBlock(Block block, long remain) {
-        // set the block offset to -1 if it is completed
-        mMission.releaseBlock(block.position, remain < 0 ? -1 : block.done);
-    }
-
     @Override
     public void run() {
         boolean retry = false;
         Block block = null;
         int retryCount = 0;
         SharpStream f;
+        long speed = 0;
 
         try {
             f = mMission.storage.getStream();
@@ -55,7 +53,13 @@ public class DownloadRunnable extends Thread {
 
         while (mMission.running && mMission.errCode == DownloadMission.ERROR_NOTHING) {
             if (!retry) {
-                block = mMission.acquireBlock();
+                // too many connections, let the other threads finish the download
+                if (mMission.retireConnection()) {
+                    if (DEBUG) Log.d(TAG, mId + ":retiring connection");
+                    break;
+                }
+
+                block = mMission.acquireBlock(mId, DownloadTuner.getSpan(speed));
             }
 
             if (block == null) {
@@ -70,14 +74,13 @@ public class DownloadRunnable extends Thread {
                     Log.d(TAG, mId + ":acquired block at position=" + block.position + " done=" + block.done);
             }
 
-            long start = (long)block.position * DownloadMission.BLOCK_SIZE;
-            long end = start + DownloadMission.BLOCK_SIZE - 1;
-
-            start += block.done;
+            long start = (long) block.position * DownloadMission.BLOCK_SIZE + block.done;
+            long end = mMission.getSpanEnd(block) - 1;
+            long requestEnd = end;
+            long requestStart = start;
+            long requestTime = System.nanoTime();
 
-            if (end >= mMission.length) {
-                end = mMission.length - 1;
-            }
+            block.resetClaim();
 
             try {
                 mConn = mMission.openConnection(false, start, end);
@@ -85,10 +88,10 @@ public class DownloadRunnable extends Thread {
 
                 // check if the download can be resumed
                 if (mConn.getResponseCode() == 416) {
-                    if (block.done > 0) {
+                    if (block.done > block.start) {
                         // try again from the start (of the block)
-                        mMission.notifyProgress(-block.done);
-                        block.done = 0;
+                        mMission.notifyProgress(block.start - block.done);
+                        block.done = block.start;
                         retry = true;
                         mConn.disconnect();
                         continue;
@@ -110,22 +113,53 @@ public class DownloadRunnable extends Thread {
 
                 f.seek(mMission.offsets[mMission.current] + start);
 
+                BandwidthScheduler scheduler = BandwidthScheduler.getInstance();
+                byte[] buf = BufferPool.acquire(DownloadMission.BUFFER_SIZE);
+
                 try (InputStream is = mConn.getInputStream()) {
-                    byte[] buf = new byte[DownloadMission.BUFFER_SIZE];
                     int len;
 
                     // use always start <= end
                     // fixes a deadlock because in some videos, youtube is sending one byte alone
                     while (start <= end && mMission.running && (len = is.read(buf, 0, buf.length)) != -1) {
-                        f.write(buf, 0, len);
-                        start += len;
-                        block.done += len;
-                        mMission.notifyProgress(len);
+                        // wait if this mission is using more than its share of the bandwidth
+                        scheduler.consume(mMission, len);
+
+                        int written = 0;
+                        while (written < len) {
+                            // other thread can take the tail of this block at any time
+                            int amount = block.claim(len - written);
+
+                            if (amount < 1) {
+                                // continue with the next block of the span (if any left)
+                                Block next = mMission.nextBlock(block);
+                                if (next == null) break;
+
+                                block = next;
+                                continue;
+                            }
+
+                            f.write(buf, written, amount);
+                            written += amount;
+                            start += amount;
+                            block.done += amount;
+                            mMission.notifyProgress(amount);
+                        }
+
+                        end = mMission.getSpanEnd(block) - 1;
                     }
+
+                    // the tail was stolen, do not wait for the rest of the response
+                    if (end < requestEnd) mConn.disconnect();
+                } finally {
+                    BufferPool.release(buf);
                 }
 
+                long elapsed = System.nanoTime() - requestTime;
+                if (elapsed > 0) speed = (start - requestStart) * 1_000_000_000L / elapsed;
+
                 if (DEBUG && mMission.running) {
-                    Log.d(TAG, mId + ":position " + block.position + " stopped " + start + "/" + end);
+                    Log.d(TAG, mId + ":position " + block.position + " stopped " + start + "/" + end + " speed=" + speed);
                 }
             } catch (Exception e) {
                 if (!mMission.running || e instanceof ClosedByInterruptException) break;
@@ -134,10 +168,8 @@ public class DownloadRunnable extends Thread {
                     // for youtube streams. The url has expired, recover
                     f.close();
 
-                    if (mId == 1) {
-                        // only the first thread will execute the recovery procedure
-                        mMission.doRecover(ERROR_HTTP_FORBIDDEN);
-                    }
+                    // only the first thread getting the error executes the recovery procedure
+                    if (mMission.claimRecovery()) mMission.doRecover(ERROR_HTTP_FORBIDDEN);
                     return;
                 }
 
@@ -148,8 +180,10 @@ public class DownloadRunnable extends Thread {
 
                 retry = true;
             } finally {
-                if (!retry) releaseBlock(block, end - start);
+                if (!retry) mMission.releaseBlock(block);
             }
+
+            if (!retry) mMission.tuneConnections();
         }
 
         f.close();
@@ -4,6 +4,7 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
+import org.schabi.newpipe.streams.io.BufferPool;
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.IOException;
@@ -12,6 +13,7 @@ import java.net.HttpURLConnection;
 import java.nio.channels.ClosedByInterruptException;
 
 import us.shandian.giga.get.DownloadMission.HttpError;
+import us.shandian.giga.service.BandwidthScheduler;
 import us.shandian.giga.util.Utility;
 
 import static org.schabi.newpipe.BuildConfig.DEBUG;
@@ -93,13 +95,21 @@ public class DownloadRunnableFallback extends Thread {
 
             mIs = mConn.getInputStream();
 
-            byte[] buf = new byte[DownloadMission.BUFFER_SIZE];
+            BandwidthScheduler scheduler = BandwidthScheduler.getInstance();
+            byte[] buf = BufferPool.acquire(DownloadMission.BUFFER_SIZE);
             int len = 0;
 
-            while (mMission.running && (len = mIs.read(buf, 0, buf.length)) != -1) {
-                mF.write(buf, 0, len);
-                start += len;
-                mMission.notifyProgress(len);
+            try {
+                while (mMission.running && (len = mIs.read(buf, 0, buf.length)) != -1) {
+                    // wait if this mission is using more than its share of the bandwidth
+                    scheduler.consume(mMission, len);
+
+                    mF.write(buf, 0, len);
+                    start += len;
+                    mMission.notifyProgress(len);
+                }
+            } finally {
+                BufferPool.release(buf);
             }
 
             dispose();
@@ -0,0 +1,111 @@
+package us.shandian.giga.get;
+
+/**
+ * Adjusts the amount of connections and the size of each range request of a mission, based on
+ * the measured throughput. The connections are added one by one while the aggregate bandwidth
+ * keeps improving, the amount of connections chosen by the user is used as the upper limit.
+ */
+class DownloadTuner {
+    /**
+     * Time between samples of the aggregate throughput
+     */
+    private static final long SAMPLE_INTERVAL = 3_000_000_000L;
+
+    /**
+     * Minimum improvement required to keep an added connection
+     */
+    private static final double MINIMUM_GAIN = 1.10;
+
+    /**
+     * Amount of samples to wait before probing again with more connections
+     */
+    private static final int PROBE_DELAY = 10;
+
+    /**
+     * Desired duration of each range request, shorter requests waste time in round-trips
+     */
+    private static final long REQUEST_DURATION = 4;
+
+    /**
+     * Maximum amount of blocks requested at once (8 MiB)
+     */
+    static final int MAXIMUM_SPAN = 16;
+
+    private final int maximum;
+    private volatile int target;
+
+    private long sampleTime = -1;
+    private long sampleBytes;
+    private double throughput;
+    private boolean probing;
+    private int stableSamples;
+
+    DownloadTuner(int maximumConnections) {
+        maximum = Math.max(1, maximumConnections);
+        target = Math.max(1, (maximum + 1) / 2);
+    }
+
+    /**
+     * @return the amount of connections that should be running
+     */
+    int getTargetConnections() {
+        return target;
+    }
+
+    /**
+     * Calculates the amount of blocks to request at once, fast connections request more data
+     * per request, slow ones use a single block
+     *
+     * @param speed the speed of the connection, in bytes per second, or {@code 0} if unknown
+     * @return amount of blocks, between 1 and {@link #MAXIMUM_SPAN}
+     */
+    static int getSpan(long speed) {
+        long blocks = (speed * REQUEST_DURATION) / DownloadMission.BLOCK_SIZE;
+        return (int) Math.max(1, Math.min(blocks, MAXIMUM_SPAN));
+    }
+
+    /**
+     * Takes a sample of the aggregate throughput
+     *
+     * @param now   the current time, in nanoseconds
+     * @param bytes amount of bytes downloaded so far
+     * @return {@code 1} to add a connection, {@code -1} if a connection should be retired,
+     * otherwise, {@code 0}
+     */
+    synchronized int sample(long now, long bytes) {
+        if (sampleTime < 0) {
+            sampleTime = now;
+            sampleBytes = bytes;
+            return 0;
+        }
+
+        long elapsed = now - sampleTime;
+        if (elapsed < SAMPLE_INTERVAL) return 0;
+
+        double current = (bytes - sampleBytes) * 1e9 / elapsed;
+        double previous = throughput;
+
+        sampleTime = now;
+        sampleBytes = bytes;
+        throughput = current;
+
+        if (probing) {
+            probing = false;
+            stableSamples = 0;
+
+            if (current < previous * MINIMUM_GAIN) {
+                // the last connection did not help, too many connections only thrash
+                target--;
+                return -1;
+            }
+        } else if (previous > 0 && ++stableSamples < PROBE_DELAY) {
+            return 0;
+        }
+
+        if (target >= maximum) return 0;
+
+        probing = true;
+        target++;
+        return 1;
+    }
+}
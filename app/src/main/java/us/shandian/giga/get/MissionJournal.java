@@ -0,0 +1,437 @@
+package us.shandian.giga.get;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.schabi.newpipe.streams.io.StoredFileHelper;
+import us.shandian.giga.postprocessing.Postprocessing;
+import us.shandian.giga.util.Utility;
+
+/**
+ * Stores the state of a {@link DownloadMission} in a compact binary file. The file holds a
+ * snapshot of the whole mission, followed by small progress records appended while the mission is
+ * downloading. Once too many records are appended, the file is compacted into a new snapshot.
+ * <p>
+ * Only the objects that can not be encoded by hand (the storage, the post-processing algorithm
+ * and the recovery information) are stored with the Java serialization, and those are written
+ * only in the snapshots.
+ * <p>
+ * The files written by old versions (a serialized {@link DownloadMission}) are still readable and
+ * migrated on the first load, the versions of the snapshot format are handled the same way.
+ */
+public final class MissionJournal {
+    private static final String TAG = "MissionJournal";
+
+    private static final int MAGIC = 0x4E504D4A;// "NPMJ"
+    private static final int VERSION = 1;
+
+    /**
+     * First bytes of a Java serialization stream, used by old versions
+     */
+    private static final int LEGACY_MAGIC = 0xACED;
+
+    private static final byte RECORD_PROGRESS = 1;
+
+    /**
+     * Maximum amount of progress records before compacting the file
+     */
+    private static final int MAXIMUM_RECORDS = 128;
+
+    // state of the mission when the last snapshot was written
+    private String[] urls;
+    private long[] offsets;
+    private int current;
+    private boolean unknownLength;
+    private int[] blocksRef;
+    private StoredFileHelper storage;
+    private Postprocessing psAlgorithm;
+    private MissionRecoveryInfo[] recoveryInfo;
+    private Exception errObject;
+
+    // block offsets written so far, used to append only the changed ones
+    private int[] blocks;
+    private int records;
+
+    /**
+     * Writes the whole mission, discarding the progress records
+     *
+     * @param file    the metadata file
+     * @param mission the mission to save
+     */
+    void snapshot(@NonNull File file, @NonNull DownloadMission mission) {
+        File temp = new File(file.getParentFile(), file.getName() + ".new");
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeSnapshot(out, mission);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to write the mission snapshot", e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+
+        if (!temp.renameTo(file)) {
+            Log.e(TAG, "Failed to replace the metadata file " + file.getName());
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+            return;
+        }
+
+        remember(mission);
+    }
+
+    /**
+     * Appends the current progress, if the mission changed in other ways a snapshot is written
+     *
+     * @param file    the metadata file
+     * @param mission the mission to save
+     */
+    void append(@NonNull File file, @NonNull DownloadMission mission) {
+        if (records >= MAXIMUM_RECORDS || hasChanged(mission)) {
+            snapshot(file, mission);
+            return;
+        }
+
+        int count = 0;
+        if (blocks != null) {
+            for (int i = 0; i < blocks.length; i++) {
+                if (blocks[i] != mission.blocks[i]) count++;
+            }
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(43 + count * 8);
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            out.writeByte(RECORD_PROGRESS);
+            out.writeLong(mission.done);
+            out.writeLong(mission.length);
+            out.writeLong(mission.fallbackResumeOffset);
+            out.writeInt(mission.psState);
+            out.writeInt(mission.errCode);
+            out.writeBoolean(mission.enqueued);
+            out.writeInt(count);
+
+            for (int i = 0; count > 0 && i < blocks.length; i++) {
+                if (blocks[i] == mission.blocks[i]) continue;
+
+                out.writeInt(i);
+                out.writeInt(mission.blocks[i]);
+                blocks[i] = mission.blocks[i];
+            }
+        } catch (IOException e) {
+            // never happens
+            throw new RuntimeException(e);
+        }
+
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(buffer.toByteArray());
+            records++;
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to append the mission progress", e);
+        }
+    }
+
+    private boolean hasChanged(DownloadMission mission) {
+        return urls != mission.urls || current != mission.current
+                || unknownLength != mission.unknownLength || blocksRef != mission.blocks
+                || !Arrays.equals(offsets, mission.offsets) || storage != mission.storage
+                || psAlgorithm != mission.psAlgorithm || recoveryInfo != mission.recoveryInfo
+                || errObject != mission.errObject;
+    }
+
+    private void remember(DownloadMission mission) {
+        urls = mission.urls;
+        offsets = mission.offsets.clone();
+        current = mission.current;
+        unknownLength = mission.unknownLength;
+        blocksRef = mission.blocks;
+        blocks = mission.blocks == null ? null : mission.blocks.clone();
+        storage = mission.storage;
+        psAlgorithm = mission.psAlgorithm;
+        recoveryInfo = mission.recoveryInfo;
+        errObject = mission.errObject;
+        records = 0;
+    }
+
+    /**
+     * Reads a mission from the given metadata file
+     *
+     * @param file the metadata file
+     * @return the mission or {@code null} if the file is not valid
+     */
+    @Nullable
+    public static DownloadMission read(@NonNull File file) {
+        DownloadMission mission;
+        boolean damaged = false;
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            in.mark(4);
+            if (in.readUnsignedShort() == LEGACY_MAGIC) {
+                in.close();
+                return migrate(file);
+            }
+            in.reset();
+
+            if (in.readInt() != MAGIC) {
+                throw new IOException("not a mission journal");
+            }
+
+            int version = in.readInt();
+            if (version > VERSION) {
+                throw new IOException("unsupported mission journal version " + version);
+            }
+
+            mission = readSnapshot(in, version);
+            MissionJournal journal = new MissionJournal();
+            journal.remember(mission);
+            mission.journal = journal;
+
+            try {
+                while (readRecord(in, mission)) journal.records++;
+            } catch (IOException e) {
+                // the last record can be truncated or garbage if the app was killed while writing
+                Log.w(TAG, "discarding a damaged progress record of " + file.getName(), e);
+                damaged = true;
+            }
+
+            // the records are compared against the last written state
+            if (mission.blocks != null) journal.blocks = mission.blocks.clone();
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to read the mission " + file.getName(), e);
+            return null;
+        }
+
+        // do not append new records after the damaged one
+        if (damaged) mission.journal.snapshot(file, mission);
+
+        return mission;
+    }
+
+    /**
+     * Writes the state of a newly created mission
+     *
+     * @param file    the metadata file
+     * @param mission the mission to save
+     */
+    public static void write(@NonNull File file, @NonNull DownloadMission mission) {
+        synchronized (mission.LOCK) {
+            if (mission.journal == null) mission.journal = new MissionJournal();
+            mission.journal.snapshot(file, mission);
+        }
+    }
+
+    @Nullable
+    private static DownloadMission migrate(File file) {
+        DownloadMission mission = Utility.readFromFile(file);
+        if (mission == null) return null;
+
+        Log.i(TAG, "migrating the mission " + file.getName());
+        write(file, mission);
+
+        return mission;
+    }
+
+    private static boolean readRecord(DataInputStream in, DownloadMission mission) throws IOException {
+        int type = in.read();
+        if (type == -1) return false;
+
+        if (type != RECORD_PROGRESS) {
+            throw new IOException("unknown record type " + type);
+        }
+
+        long done = in.readLong();
+        long length = in.readLong();
+        long fallbackResumeOffset = in.readLong();
+        int psState = in.readInt();
+        int errCode = in.readInt();
+        boolean enqueued = in.readBoolean();
+        int count = in.readInt();
+
+        int blocks = mission.blocks == null ? 0 : mission.blocks.length;
+        if (count < 0 || count > blocks) {
+            throw new IOException("invalid amount of blocks " + count);
+        }
+
+        int[] changes = new int[count * 2];
+        for (int i = 0; i < changes.length; i += 2) {
+            changes[i] = in.readInt();
+            changes[i + 1] = in.readInt();
+
+            if (changes[i] < 0 || changes[i] >= blocks) {
+                throw new IOException("invalid block index " + changes[i]);
+            }
+        }
+
+        // apply only complete records, the last one can be truncated by a crash
+        mission.done = done;
+        mission.length = length;
+        mission.fallbackResumeOffset = fallbackResumeOffset;
+        mission.psState = psState;
+        mission.errCode = errCode;
+        mission.enqueued = enqueued;
+
+        for (int i = 0; i < changes.length; i += 2) {
+            mission.blocks[changes[i]] = changes[i + 1];
+        }
+
+        return true;
+    }
+
+    private static void writeSnapshot(DataOutputStream out, DownloadMission mission) throws IOException {
+        out.writeLong(mission.timestamp);
+        out.writeChar(mission.kind);
+        writeString(out, mission.source);
+        out.writeLong(mission.length);
+
+        out.writeInt(mission.urls.length);
+        for (String url : mission.urls) writeString(out, url);
+
+        out.writeInt(mission.offsets.length);
+        for (long offset : mission.offsets) out.writeLong(offset);
+
+        out.writeInt(mission.current);
+        out.writeLong(mission.done);
+        out.writeBoolean(mission.unknownLength);
+        out.writeInt(mission.psState);
+        out.writeLong(mission.nearLength);
+
+        if (mission.blocks == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(mission.blocks.length);
+            for (int block : mission.blocks) out.writeInt(block);
+        }
+
+        out.writeLong(mission.fallbackResumeOffset);
+        out.writeInt(mission.threadCount);
+        out.writeBoolean(mission.enqueued);
+        out.writeInt(mission.errCode);
+
+        writeObject(out, new Object[]{mission.storage, mission.psAlgorithm, mission.recoveryInfo});
+
+        try {
+            // the exception can hold non-serializable objects, is not critical
+            writeObject(out, serialize(mission.errObject));
+        } catch (IOException e) {
+            writeObject(out, null);
+        }
+    }
+
+    private static DownloadMission readSnapshot(DataInputStream in, int version) throws IOException {
+        DownloadMission mission = new DownloadMission();
+
+        mission.timestamp = in.readLong();
+        mission.kind = in.readChar();
+        mission.source = readString(in);
+        mission.length = in.readLong();
+
+        mission.urls = new String[in.readInt()];
+        for (int i = 0; i < mission.urls.length; i++) mission.urls[i] = readString(in);
+
+        mission.offsets = new long[in.readInt()];
+        for (int i = 0; i < mission.offsets.length; i++) mission.offsets[i] = in.readLong();
+
+        mission.current = in.readInt();
+        mission.done = in.readLong();
+        mission.unknownLength = in.readBoolean();
+        mission.psState = in.readInt();
+        mission.nearLength = in.readLong();
+
+        int blocks = in.readInt();
+        if (blocks >= 0) {
+            mission.blocks = new int[blocks];
+            for (int i = 0; i < blocks; i++) mission.blocks[i] = in.readInt();
+        }
+
+        mission.fallbackResumeOffset = in.readLong();
+        mission.threadCount = in.readInt();
+        mission.enqueued = in.readBoolean();
+        mission.errCode = in.readInt();
+
+        Object[] objects = (Object[]) readObject(in);
+        mission.storage = (StoredFileHelper) objects[0];
+        mission.psAlgorithm = (Postprocessing) objects[1];
+        mission.recoveryInfo = (MissionRecoveryInfo[]) objects[2];
+
+        byte[] error = (byte[]) readObject(in);
+        if (error != null) {
+            try {
+                mission.errObject = (Exception) deserialize(error);
+            } catch (IOException e) {
+                Log.w(TAG, "discarding the mission error", e);
+            }
+        }
+
+        return mission;
+    }
+
+    private static void writeString(DataOutputStream out, @Nullable String str) throws IOException {
+        if (str == null) {
+            out.writeInt(-1);
+            return;
+        }
+
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) return null;
+
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeObject(DataOutputStream out, @Nullable Object obj) throws IOException {
+        byte[] bytes = serialize(obj);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    @Nullable
+    private static Object readObject(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return deserialize(bytes);
+    }
+
+    private static byte[] serialize(@Nullable Object obj) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(buffer)) {
+            out.writeObject(obj);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Nullable
+    private static Object deserialize(byte[] bytes) throws IOException {
+        try (InputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ((ObjectInputStream) in).readObject();
+        } catch (ClassNotFoundException e) {
+            throw new IOException(e);
+        }
+    }
+}
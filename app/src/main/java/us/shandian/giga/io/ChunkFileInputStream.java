@@ -15,6 +15,9 @@ public class ChunkFileInputStream extends SharpStream {
     private long progressReport;
     private final ProgressReport onProgress;
 
+    private DataAvailability availability;
+    private long availableLength;
+
     public ChunkFileInputStream(SharpStream target, long start, long end, ProgressReport callback) throws IOException {
         source = target;
         offset = start;
@@ -38,6 +41,23 @@ public class ChunkFileInputStream extends SharpStream {
         source.seek(offset);
     }
 
+    /**
+     * Restrict the reads to the data already written, used when the chunk is still being
+     * downloaded. The reads block until the required data is available.
+     *
+     * @param availability the source of the available amount of bytes
+     */
+    public void setAvailability(DataAvailability availability) {
+        this.availability = availability;
+        this.availableLength = 0;
+    }
+
+    private void awaitData(long required) throws IOException {
+        if (availability != null && required > availableLength) {
+            availableLength = availability.await(required);
+        }
+    }
+
     /**
      * Get absolute position on file
      *
@@ -53,6 +73,8 @@ public class ChunkFileInputStream extends SharpStream {
             return 0;
         }
 
+        awaitData(position + 1);
+
         int res = source.read();
         if (res >= 0) {
             position++;
@@ -75,6 +97,11 @@ public class ChunkFileInputStream extends SharpStream {
             return 0;
         }
 
+        awaitData(position + 1);
+        if (availability != null && (position + len) > availableLength) {
+            len = (int) (availableLength - position);
+        }
+
         int res = source.read(b, off, len);
         position += res;
 
@@ -86,6 +113,33 @@ public class ChunkFileInputStream extends SharpStream {
         return res;
     }
 
+    @Override
+    public boolean canTransfer() {
+        return source.canTransfer();
+    }
+
+    @Override
+    public long transferTo(long count, SharpStream target) throws IOException {
+        if (count > (length - position)) {
+            count = length - position;
+        }
+        if (count < 1) {
+            return 0;
+        }
+
+        awaitData(position + count);
+
+        long res = source.transferTo(count, target);
+        position += res;
+
+        if (onProgress != null && position > progressReport) {
+            onProgress.report(position);
+            progressReport = position + REPORT_INTERVAL;
+        }
+
+        return res;
+    }
+
     @Override
     public long skip(long pos) throws IOException {
         pos = Math.min(pos + position, length);
@@ -2,11 +2,16 @@ package us.shandian.giga.io;
 
 import androidx.annotation.NonNull;
 
+import org.schabi.newpipe.streams.io.BufferPool;
 import org.schabi.newpipe.streams.io.SharpStream;
 
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
 import java.util.Objects;
 
 public class CircularFileWriter extends SharpStream {
@@ -15,6 +20,8 @@ public class CircularFileWriter extends SharpStream {
     private static final int COPY_BUFFER_SIZE = 128 * 1024; // 128 KiB
     private static final int NOTIFY_BYTES_INTERVAL = 64 * 1024;// 64 KiB
     private static final int THRESHOLD_AUX_LENGTH = 15 * 1024 * 1024;// 15 MiB
+    private static final int WRITE_BEHIND_BUFFER_SIZE = 256 * 1024;// 256 KiB
+    private static final int TRANSFER_CHUNK_SIZE = 1024 * 1024;// 1 MiB
 
     private final OffsetChecker callback;
 
@@ -28,6 +35,24 @@ public class CircularFileWriter extends SharpStream {
     private BufferedFile aux;
 
     public CircularFileWriter(SharpStream target, File temp, OffsetChecker checker) throws IOException {
+        this(target, temp, checker, 0);
+    }
+
+    /**
+     * Creates a writer, the data for the output file is written by a dedicated thread. The caller
+     * only blocks when all buffers are waiting to be written, when a transfer targets a region
+     * still waiting to be written, or when the output file must be accessed directly (seek, flush
+     * and finalization).
+     *
+     * @param target      the output file
+     * @param temp        the auxiliar file
+     * @param checker     tells how far the output can be written
+     * @param bufferCount amount of 256 KiB buffers used to write the output, use {@code 0} to
+     *                    write in the calling thread. Ignored if the output is not backed by a
+     *                    file channel
+     * @throws IOException if the auxiliar file can not be created
+     */
+    public CircularFileWriter(SharpStream target, File temp, OffsetChecker checker, int bufferCount) throws IOException {
         Objects.requireNonNull(checker);
 
         if (!temp.exists()) {
@@ -39,6 +64,11 @@ public class CircularFileWriter extends SharpStream {
         aux = new BufferedFile(temp);
         out = new BufferedFile(target);
 
+        if (bufferCount > 0 && target.getChannel() != null) {
+            // at least two buffers, one is always used to enqueue the incoming data
+            out.setWriteBehind(new WriteBehind(Math.max(2, bufferCount), WRITE_BEHIND_BUFFER_SIZE));
+        }
+
         callback = checker;
 
         reportPosition = NOTIFY_BYTES_INTERVAL;
@@ -49,27 +79,17 @@ public class CircularFileWriter extends SharpStream {
             return;
         }
 
-        out.flush();
-        aux.flush();
+        out.sync();
+        aux.sync();
 
         boolean underflow = aux.offset < aux.length || out.offset < out.length;
-        byte[] buffer = new byte[COPY_BUFFER_SIZE];
 
-        aux.target.seek(0);
         out.target.seek(out.length);
 
-        long length = amount;
-        while (length > 0) {
-            int read = (int) Math.min(length, Integer.MAX_VALUE);
-            read = aux.target.read(buffer, 0, Math.min(read, buffer.length));
-
-            if (read < 1) {
-                amount -= length;
-                break;
-            }
-
-            out.writeProof(buffer, read);
-            length -= read;
+        // copy straight from the auxiliar file, without passing through the heap
+        long transferred = out.transferProof(aux.target.getChannel(), 0, amount, out.length);
+        if (transferred < amount) {
+            amount = transferred;
         }
 
         if (underflow) {
@@ -99,23 +119,29 @@ public class CircularFileWriter extends SharpStream {
 
         if (amount < aux.length) {
             // move the excess data to the beginning of the file
-            long readOffset = amount;
-            long writeOffset = 0;
+            byte[] buffer = BufferPool.acquire(COPY_BUFFER_SIZE);
+            try {
+                long readOffset = amount;
+                long writeOffset = 0;
 
-            aux.length -= amount;
-            length = aux.length;
-            while (length > 0) {
-                int read = (int) Math.min(length, Integer.MAX_VALUE);
-                read = aux.target.read(buffer, 0, Math.min(read, buffer.length));
+                aux.target.seek(readOffset);
+                aux.length -= amount;
+                long length = aux.length;
+                while (length > 0) {
+                    int read = (int) Math.min(length, Integer.MAX_VALUE);
+                    read = aux.target.read(buffer, 0, Math.min(read, buffer.length));
 
-                aux.target.seek(writeOffset);
-                aux.writeProof(buffer, read);
+                    aux.target.seek(writeOffset);
+                    aux.writeProof(buffer, read);
 
-                writeOffset += read;
-                readOffset += read;
-                length -= read;
+                    writeOffset += read;
+                    readOffset += read;
+                    length -= read;
 
-                aux.target.seek(readOffset);
+                    aux.target.seek(readOffset);
+                }
+            } finally {
+                BufferPool.release(buffer);
             }
 
             aux.target.setLength(aux.length);
@@ -139,7 +165,7 @@ public class CircularFileWriter extends SharpStream {
     public long finalizeFile() throws IOException {
         flushAuxiliar(aux.length);
 
-        out.flush();
+        out.sync();
 
         // change file length (if required)
         long length = Math.max(maxLengthKnown, out.length);
@@ -231,6 +257,67 @@ public class CircularFileWriter extends SharpStream {
             }
         }
 
+        notifyProgress();
+    }
+
+    @Override
+    public long transferFrom(FileChannel source, long position, long count) throws IOException {
+        if (count < 1) {
+            return 0;
+        }
+
+        long available;
+        long offsetOut = out.getOffset();
+        long offsetAux = aux.getOffset();
+        long end = callback.check();
+
+        if (end == -1) {
+            available = Integer.MAX_VALUE;
+        } else if (end < offsetOut) {
+            throw new IOException("The reported offset is invalid: " + end + "<" + offsetOut);
+        } else {
+            available = end - offsetOut;
+        }
+
+        boolean usingAux = aux.length > 0 && offsetOut >= out.length;
+        boolean underflow = offsetAux < aux.length || offsetOut < out.length;
+        long transferred;
+
+        // same logic as write(), but the bytes go from channel to channel
+        if (usingAux) {
+            long length = offsetAux + count;
+            if (underflow) {
+                if (aux.length > length) {
+                    length = aux.length;// the length is not changed
+                }
+            } else {
+                length = aux.length + count;
+            }
+
+            transferred = aux.transfer(source, position, count);
+
+            if (length >= THRESHOLD_AUX_LENGTH && length <= available) {
+                flushAuxiliar(available);
+            }
+        } else {
+            if (underflow) {
+                available = out.length - offsetOut;
+            }
+
+            long length = Math.min(count, available);
+            transferred = out.transfer(source, position, length);
+
+            if (transferred == length && count > length) {
+                transferred += aux.transfer(source, position + length, count - length);
+            }
+        }
+
+        notifyProgress();
+
+        return transferred;
+    }
+
+    private void notifyProgress() {
         if (onProgress != null) {
             long absoluteOffset = out.getOffset() + aux.getOffset();
             if (absoluteOffset > reportPosition) {
@@ -243,7 +330,7 @@ public class CircularFileWriter extends SharpStream {
     @Override
     public void flush() throws IOException {
         aux.flush();
-        out.flush();
+        out.sync();
 
         long total = out.length + aux.length;
         if (total > maxLengthKnown) {
@@ -378,6 +465,8 @@ public class CircularFileWriter extends SharpStream {
         private byte[] queue = new byte[QUEUE_BUFFER_SIZE];
         private int queueSize;
 
+        private WriteBehind writeBehind;
+
         BufferedFile(File file) throws FileNotFoundException {
             this.target = new FileStream(file);
         }
@@ -390,7 +479,17 @@ public class CircularFileWriter extends SharpStream {
             return offset + queueSize;// absolute offset in the file
         }
 
+        void setWriteBehind(WriteBehind writeBehind) {
+            this.writeBehind = writeBehind;
+            this.queue = writeBehind.obtain();
+        }
+
         void close() {
+            if (writeBehind != null) {
+                writeBehind.close(queue);
+                writeBehind = null;
+            }
+
             queue = null;
             target.close();
         }
@@ -415,12 +514,31 @@ public class CircularFileWriter extends SharpStream {
         }
 
         void flush() throws IOException {
-            writeProof(queue, queueSize);
+            if (writeBehind == null) {
+                writeProof(queue, queueSize);
+            } else if (queueSize > 0) {
+                // the queue is written later, continue with other buffer
+                queue = writeBehind.submit(this, queue, queueSize, offset);
+            } else {
+                writeBehind.check();
+            }
+
             offset += queueSize;
             queueSize = 0;
         }
 
+        /**
+         * Flush the queue and wait until the data is written, required before accessing the
+         * target file directly
+         */
+        void sync() throws IOException {
+            flush();
+            if (writeBehind != null) writeBehind.sync();
+        }
+
         protected void rewind() throws IOException {
+            if (writeBehind != null) writeBehind.sync();
+
             offset = 0;
             target.seek(0);
         }
@@ -435,6 +553,8 @@ public class CircularFileWriter extends SharpStream {
         }
 
         void reset() throws IOException {
+            if (writeBehind != null) writeBehind.sync();
+
             offset = 0;
             length = 0;
             target.seek(0);
@@ -444,10 +564,16 @@ public class CircularFileWriter extends SharpStream {
             if (absoluteOffset == offset) {
                 return;// nothing to do
             }
+            if (writeBehind != null) writeBehind.sync();
+
             offset = absoluteOffset;
             target.seek(absoluteOffset);
         }
 
+        boolean handleWriteError(Exception err) {
+            return onWriteError != null && onWriteError.handle(err);
+        }
+
         void writeProof(byte[] buffer, int length) throws IOException {
             if (onWriteError == null) {
                 target.write(buffer, 0, length);
@@ -466,6 +592,84 @@ public class CircularFileWriter extends SharpStream {
             }
         }
 
+        /**
+         * Writes the buffer at the given absolute offset, without moving the file pointer of the
+         * target. Used by the writing thread, so the caller can transfer at the same time.
+         */
+        void writeAt(byte[] buffer, int size, long position) throws IOException {
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, size);
+
+            while (data.hasRemaining()) {
+                position += target.write(data, position);
+            }
+        }
+
+        void writeProofAt(byte[] buffer, int size, long position) throws IOException {
+            while (true) {
+                try {
+                    writeAt(buffer, size, position);
+                    return;
+                } catch (Exception e) {
+                    if (!handleWriteError(e)) {
+                        throw e;// give up
+                    }
+                }
+            }
+        }
+
+        long transfer(FileChannel source, long position, long count) throws IOException {
+            flush();
+
+            if (writeBehind != null) {
+                // the queued buffers are written at their own offsets, only wait for those
+                // that the transfer would overwrite
+                writeBehind.sync(offset, offset + count);
+                target.seek(offset);
+            }
+
+            long transferred = transferProof(source, position, count, offset);
+            offset += transferred;
+
+            if (offset > length) {
+                length = offset;// save length
+            }
+
+            return transferred;
+        }
+
+        /**
+         * Transfers the bytes in chunks, if a chunk fails and the error is handled the transfer
+         * continues after the last chunk written instead of starting again
+         *
+         * @param offset the absolute offset in the target where the transfer starts
+         */
+        long transferProof(FileChannel source, long position, long count, long offset) throws IOException {
+            long transferred = 0;
+
+            while (transferred < count) {
+                long amount;
+                try {
+                    amount = target.transferFrom(source, position + transferred,
+                            Math.min(count - transferred, TRANSFER_CHUNK_SIZE));
+                } catch (Exception e) {
+                    if (onWriteError == null || !onWriteError.handle(e)) {
+                        throw e;// give up
+                    }
+
+                    // discard the partially written chunk
+                    target.seek(offset + transferred);
+                    continue;
+                }
+
+                if (amount < 1) {
+                    break;
+                }
+                transferred += amount;
+            }
+
+            return transferred;
+        }
+
         @NonNull
         @Override
         public String toString() {
@@ -483,4 +687,222 @@ public class CircularFileWriter extends SharpStream {
             );
         }
     }
+
+    /**
+     * Writes the queued buffers of a {@link BufferedFile} in a dedicated thread, each one at the
+     * offset it was queued at, so the file pointer is left to the caller. The amount of buffers
+     * is fixed, if all of them are waiting to be written the caller is blocked.
+     * If a write fails the thread stops, the error is handled by {@link #onWriteError} in the
+     * thread of the caller on the next operation and, if recovered, the failed buffer is written
+     * again and the thread continues with the pending ones.
+     */
+    private static class WriteBehind {
+        private final ArrayDeque<byte[]> free = new ArrayDeque<>();
+        private final ArrayDeque<Task> pending = new ArrayDeque<>();
+        private final Thread thread;
+
+        private Exception error;
+        private Task failed;
+        private Task writing;
+        private boolean closed;
+
+        WriteBehind(int bufferCount, int bufferSize) {
+            for (int i = 0; i < bufferCount; i++) free.add(BufferPool.acquire(bufferSize));
+
+            thread = new Thread(this::run, "CircularFileWriter");
+            thread.start();
+        }
+
+        synchronized byte[] obtain() {
+            return free.poll();
+        }
+
+        byte[] submit(BufferedFile file, byte[] buffer, int size, long offset) throws IOException {
+            check();
+
+            synchronized (this) {
+                pending.add(new Task(file, buffer, size, offset));
+                notifyAll();
+            }
+
+            while (true) {
+                synchronized (this) {
+                    try {
+                        while (free.isEmpty() && error == null) wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("interrupted while waiting for a free buffer");
+                    }
+
+                    if (error == null) return free.poll();
+                }
+
+                check();
+            }
+        }
+
+        void sync() throws IOException {
+            while (true) {
+                synchronized (this) {
+                    try {
+                        while ((writing != null || !pending.isEmpty()) && error == null) wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("interrupted while waiting for the pending writes");
+                    }
+
+                    if (error == null) return;
+                }
+
+                check();
+            }
+        }
+
+        /**
+         * Waits until no queued buffer overlaps the region, the other ones are still written in
+         * the background
+         *
+         * @param start the absolute offset where the region starts
+         * @param end   the absolute offset where the region ends, exclusive
+         */
+        void sync(long start, long end) throws IOException {
+            while (true) {
+                synchronized (this) {
+                    try {
+                        while (overlaps(start, end) && error == null) wait();
+                    } catch (InterruptedException e) {
+                        throw new InterruptedIOException("interrupted while waiting for the pending writes");
+                    }
+
+                    if (error == null) return;
+                }
+
+                check();
+            }
+        }
+
+        private boolean overlaps(long start, long end) {
+            if (writing != null && writing.overlaps(start, end)) return true;
+
+            for (Task task : pending) {
+                if (task.overlaps(start, end)) return true;
+            }
+
+            return false;
+        }
+
+        /**
+         * Handles the error of the writing thread, if any. The handler can block until the user
+         * decides what to do, so is never called while holding the lock
+         *
+         * @throws IOException if the error was not recovered
+         */
+        void check() throws IOException {
+            Exception err;
+            Task task;
+
+            synchronized (this) {
+                if (error == null) return;
+                err = error;
+                task = failed;
+            }
+
+            if (!task.file.handleWriteError(err)) {
+                if (err instanceof IOException) throw (IOException) err;
+                throw new IOException(err);
+            }
+
+            // write again the failed buffer, before the pending ones
+            task.file.writeProofAt(task.buffer, task.size, task.offset);
+
+            synchronized (this) {
+                free.add(task.buffer);
+                failed = null;
+                error = null;
+                notifyAll();
+            }
+        }
+
+        /**
+         * Discards the pending buffers and stops the writing thread
+         *
+         * @param queue the buffer in use by the {@link BufferedFile}
+         */
+        void close(byte[] queue) {
+            synchronized (this) {
+                closed = true;
+                while (!pending.isEmpty()) free.add(pending.poll().buffer);
+                notifyAll();
+            }
+
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            synchronized (this) {
+                if (failed != null) free.add(failed.buffer);
+                if (queue != null) free.add(queue);
+                while (!free.isEmpty()) BufferPool.release(free.poll());
+            }
+        }
+
+        private void run() {
+            while (true) {
+                Task task;
+
+                synchronized (this) {
+                    // after an error, wait until the caller handles it
+                    while ((pending.isEmpty() || error != null) && !closed) {
+                        try {
+                            wait();
+                        } catch (InterruptedException e) {
+                            // check again if closed
+                        }
+                    }
+
+                    if (closed) return;
+
+                    task = pending.poll();
+                    writing = task;
+                }
+
+                Exception err = null;
+                try {
+                    task.file.writeAt(task.buffer, task.size, task.offset);
+                } catch (Exception e) {
+                    err = e;
+                }
+
+                synchronized (this) {
+                    if (err != null && !closed) {
+                        error = err;
+                        failed = task;
+                    } else {
+                        free.add(task.buffer);
+                    }
+
+                    writing = null;
+                    notifyAll();
+                }
+            }
+        }
+
+        private static class Task {
+            final BufferedFile file;
+            final byte[] buffer;
+            final int size;
+            final long offset;
+
+            Task(BufferedFile file, byte[] buffer, int size, long offset) {
+                this.file = file;
+                this.buffer = buffer;
+                this.size = size;
+                this.offset = offset;
+            }
+
+            boolean overlaps(long start, long end) {
+                return offset < end && start < offset + size;
+            }
+        }
+    }
 }
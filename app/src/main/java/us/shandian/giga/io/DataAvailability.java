@@ -0,0 +1,15 @@
+package us.shandian.giga.io;
+
+import java.io.IOException;
+
+public interface DataAvailability {
+
+    /**
+     * Wait until the given amount of bytes, counted from the start of the chunk, is written
+     *
+     * @param amount the amount of bytes required
+     * @return the amount of bytes that can be read, never less than {@code amount}
+     * @throws IOException if the wait was interrupted
+     */
+    long await(long amount) throws IOException;
+}
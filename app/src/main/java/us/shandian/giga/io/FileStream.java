@@ -8,6 +8,8 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * @author kapodamy
@@ -39,6 +41,11 @@ public class FileStream extends SharpStream {
         return source.read(b, off, len);
     }
 
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        return source.getChannel().read(buffer);
+    }
+
     @Override
     public long skip(long pos) throws IOException {
         return source.skipBytes((int) pos);
@@ -114,6 +121,31 @@ public class FileStream extends SharpStream {
         source.write(buffer, offset, count);
     }
 
+    @Override
+    public int write(ByteBuffer buffer) throws IOException {
+        return source.getChannel().write(buffer);
+    }
+
+    @Override
+    public FileChannel getChannel() {
+        return source.getChannel();
+    }
+
+    @Override
+    public boolean canTransfer() {
+        return true;
+    }
+
+    @Override
+    public long transferTo(long count, SharpStream target) throws IOException {
+        FileChannel channel = source.getChannel();
+        long position = channel.position();
+        long transferred = target.transferFrom(channel, position, count);
+
+        channel.position(position + transferred);
+        return transferred;
+    }
+
     @Override
     public void setLength(long length) throws IOException {
         source.setLength(length);
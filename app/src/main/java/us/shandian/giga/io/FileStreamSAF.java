@@ -12,6 +12,7 @@ import org.schabi.newpipe.streams.io.SharpStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 public class FileStreamSAF extends SharpStream {
@@ -55,6 +56,11 @@ public class FileStreamSAF extends SharpStream {
         return in.read(buffer, offset, count);
     }
 
+    @Override
+    public int read(ByteBuffer buffer) throws IOException {
+        return channel.read(buffer);
+    }
+
     @Override
     public long skip(long amount) throws IOException {
         return in.skip(amount);// ¿or use channel.position(channel.position() + amount)?
@@ -133,6 +139,31 @@ public class FileStreamSAF extends SharpStream {
         out.write(buffer, offset, count);
     }
 
+    @Override
+    public int write(ByteBuffer buffer) throws IOException {
+        return channel.write(buffer);
+    }
+
+    @Override
+    public FileChannel getChannel() {
+        return channel;
+    }
+
+    @Override
+    public boolean canTransfer() {
+        return true;
+    }
+
+    @Override
+    public long transferTo(long count, SharpStream target) throws IOException {
+        // the channel shares the file offset with "in" and "out" streams
+        long position = channel.position();
+        long transferred = target.transferFrom(channel, position, count);
+
+        channel.position(position + transferred);
+        return transferred;
+    }
+
     @Override
     public void setLength(long length) throws IOException {
         channel.truncate(length);
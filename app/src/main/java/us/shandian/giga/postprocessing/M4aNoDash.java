@@ -17,14 +17,19 @@ class M4aNoDash extends Postprocessing {
         // check if the mp4 file is DASH (youtube)
 
         Mp4DashReader reader = new Mp4DashReader(sources[0]);
-        reader.parse();
-
-        switch (reader.getBrands()[0]) {
-            case 0x64617368:// DASH
-            case 0x69736F35:// ISO5
-                return true;
-            default:
-                return false;
+        try {
+            reader.parse();
+
+            switch (reader.getBrands()[0]) {
+                case 0x64617368:// DASH
+                case 0x69736F35:// ISO5
+                    return true;
+                default:
+                    return false;
+            }
+        } finally {
+            // give back the read buffer, the muxer uses its own reader
+            reader.release();
         }
     }
 
@@ -19,7 +19,13 @@ class Mp4FromDashMuxer extends Postprocessing {
         Mp4FromDashWriter muxer = new Mp4FromDashWriter(sources);
         muxer.parseSources();
         muxer.selectTracks(0, 0);
-        muxer.build(out);
+
+        if (getArgumentAt(0, "false").equals("true")) {
+            // fragmented output, written append-only
+            muxer.buildFragmented(out);
+        } else {
+            muxer.build(out);
+        }
 
         return OK_RESULT;
     }
@@ -0,0 +1,33 @@
+package us.shandian.giga.postprocessing;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Tells which post-processing algorithms can run while the last resource is still being
+ * downloaded. This lives outside of {@link Postprocessing} because adding members there changes
+ * the serialized form of the already stored missions.
+ */
+public final class PipelinedPostprocessing {
+
+    private PipelinedPostprocessing() {
+    }
+
+    /**
+     * Indicates if the algorithm reads its sources only forward, so the muxing can start with
+     * the data already downloaded and wait for the remaining blocks
+     *
+     * @param algorithm the post-processing algorithm
+     * @return {@code true} if can run alongside the download, otherwise, {@code false}
+     */
+    public static boolean isSupported(@NonNull Postprocessing algorithm) {
+        if (!algorithm.worksOnSameFile) return false;
+
+        if (algorithm instanceof WebMMuxer || algorithm instanceof OggFromWebmDemuxer) {
+            return true;
+        }
+
+        // the regular mp4 muxer reads all samples (to build the sample tables) before writing
+        return algorithm instanceof Mp4FromDashMuxer
+                && algorithm.getArgumentAt(0, "false").equals("true");
+    }
+}
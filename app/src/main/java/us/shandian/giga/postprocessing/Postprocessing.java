@@ -114,12 +114,17 @@ public abstract class Postprocessing implements Serializable {
         int result;
         long finalLength = -1;
 
-        mission.done = 0;
+        // if the last resource is still downloading, the progress is reported by the download
+        final boolean pipelined = mission.isPsPipelined();
 
-        long length = mission.storage.length() - mission.offsets[0];
-        mission.length = Math.max(length, mission.nearLength);
+        if (!pipelined) {
+            mission.done = 0;
 
-        final ProgressReport readProgress = (long position) -> {
+            long length = mission.storage.length() - mission.offsets[0];
+            mission.length = Math.max(length, mission.nearLength);
+        }
+
+        final ProgressReport readProgress = pipelined ? null : (long position) -> {
             position -= mission.offsets[0];
             if (position > mission.done) mission.done = position;
         };
@@ -132,6 +137,10 @@ public abstract class Postprocessing implements Serializable {
                     long end = j < sources.length ? mission.offsets[j] : source.length();
 
                     sources[i] = new ChunkFileInputStream(source, mission.offsets[i], end, readProgress);
+
+                    if (pipelined && i == mission.current) {
+                        sources[i].setAvailability(mission::awaitDownloaded);
+                    }
                 }
 
                 if (test(sources)) {
@@ -153,9 +162,10 @@ public abstract class Postprocessing implements Serializable {
                         return -1;
                     };
 
+                    // write the output in other thread, overlapping the muxing with the storage I/O
                     try (CircularFileWriter out = new CircularFileWriter(
-                            mission.storage.getStream(), tempFile, checker)) {
-                        out.onProgress = (long position) -> mission.done = position;
+                            mission.storage.getStream(), tempFile, checker, 4)) {
+                        if (!pipelined) out.onProgress = (long position) -> mission.done = position;
 
                         out.onWriteError = err -> {
                             mission.psState = 3;
@@ -176,6 +186,11 @@ public abstract class Postprocessing implements Serializable {
 
                         result = process(out, sources);
 
+                        if (result == OK_RESULT && pipelined) {
+                            // the download threads can still be writing the unused tail
+                            mission.awaitDownloaded(Long.MAX_VALUE);
+                        }
+
                         if (result == OK_RESULT)
                             finalLength = out.finalizeFile();
                     }
@@ -0,0 +1,220 @@
+package us.shandian.giga.service;
+
+import androidx.annotation.NonNull;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+import us.shandian.giga.get.DownloadMission;
+
+/**
+ * Shares the download bandwidth between all running missions. Every read done by the download
+ * threads is accounted here, when a rate limit is active the threads are put to sleep until the
+ * bytes read are covered by the token bucket.
+ * <p>
+ * The missions waiting for bandwidth are served in the order of their virtual finish time, a
+ * mission with more connections gets a proportionally bigger share. If enabled, while the player
+ * is streaming the rate is reduced, so the downloads do not starve the playback buffering.
+ * <p>
+ * Without a rate to apply, the reads are only counted to measure the speed, and the monitor of
+ * the scheduler is not taken.
+ */
+public final class BandwidthScheduler {
+    private static final BandwidthScheduler INSTANCE = new BandwidthScheduler();
+
+    /**
+     * Lowest rate used while the player is streaming (64 KiB/s)
+     */
+    private static final long MINIMUM_PLAYBACK_RATE = 64 * 1024;
+
+    /**
+     * Fraction of the bandwidth left to the downloads while the player is streaming
+     */
+    private static final double PLAYBACK_SHARE = 0.25;
+
+    /**
+     * Interval used to measure the aggregate download speed
+     */
+    private static final long MEASURE_INTERVAL = 2_000_000_000L;
+
+    /**
+     * Time after the missions without reads are forgotten
+     */
+    private static final long FLOW_TIMEOUT = 5_000_000_000L;
+
+    private volatile long limit;
+    private volatile boolean throttleOnPlayback;
+    private volatile boolean playbackActive;
+
+    // guarded by the monitor of the scheduler
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private double virtualTime;
+    private final HashMap<DownloadMission, Flow> flows = new HashMap<>();
+    private long lastSweep = System.nanoTime();
+
+    private final AtomicLong measureTime = new AtomicLong(System.nanoTime());
+    private final AtomicLong measureBytes = new AtomicLong();
+    private volatile long measuredSpeed;
+
+    BandwidthScheduler() {
+        // use getInstance(), a new instance is created only by the tests
+    }
+
+    public static BandwidthScheduler getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Sets the maximum speed of all downloads together
+     *
+     * @param bytesPerSecond the limit, use {@code 0} for no limit
+     */
+    public synchronized void setLimit(long bytesPerSecond) {
+        limit = Math.max(0, bytesPerSecond);
+        notifyAll();
+    }
+
+    /**
+     * @param enabled {@code true} to reduce the download speed while the player is streaming
+     */
+    public synchronized void setThrottleOnPlayback(boolean enabled) {
+        throttleOnPlayback = enabled;
+        notifyAll();
+    }
+
+    /**
+     * Called when the player starts or stops streaming
+     *
+     * @param active {@code true} if the player is buffering or playing, otherwise, {@code false}
+     */
+    public synchronized void setPlaybackActive(boolean active) {
+        if (playbackActive == active) return;
+        playbackActive = active;
+        notifyAll();
+    }
+
+    /**
+     * Accounts the bytes read by a download thread, waiting if the mission is using more than
+     * its share of the bandwidth
+     *
+     * @param mission the mission of the calling thread
+     * @param amount  amount of bytes read
+     * @throws InterruptedIOException if the thread was interrupted while waiting
+     */
+    public void consume(@NonNull DownloadMission mission, int amount)
+            throws InterruptedIOException {
+        if (amount < 1) return;
+
+        long now = System.nanoTime();
+        measure(now, amount);
+
+        // the common case, nothing to wait for
+        if (getRate() < 1) return;
+
+        acquire(mission, amount, now);
+    }
+
+    private synchronized void acquire(@NonNull DownloadMission mission, int amount, long now)
+            throws InterruptedIOException {
+        forgetIdleFlows(now);
+
+        Flow flow = flows.get(mission);
+        if (flow == null) {
+            flow = new Flow();
+            flows.put(mission, flow);
+        }
+
+        // an idle mission can not claim the bandwidth that did not use
+        double start = Math.max(flow.finish, virtualTime);
+        flow.finish = start + (double) amount / Math.max(1, mission.threadCount);
+        flow.lastUse = now;
+        flow.waiting++;
+
+        try {
+            while (true) {
+                now = System.nanoTime();
+                long rate = getRate();
+                if (rate < 1) return;
+
+                refill(now, rate);
+
+                if (tokens >= 0 && isNext(flow)) break;
+
+                long delay = tokens < 0 ? (long) (-tokens * 1000 / rate) : 10;
+                wait(Math.max(1, Math.min(delay, 1000)));
+            }
+
+            tokens -= amount;
+            virtualTime = start;
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("interrupted while waiting for bandwidth");
+        } finally {
+            flow.waiting--;
+            notifyAll();
+        }
+    }
+
+    private long getRate() {
+        if (!playbackActive || !throttleOnPlayback) return limit;
+
+        // without a limit, reduce the speed measured before the playback started
+        long base = limit > 0 ? limit : measuredSpeed;
+        if (base < 1) return MINIMUM_PLAYBACK_RATE;
+
+        return Math.max(MINIMUM_PLAYBACK_RATE, (long) (base * PLAYBACK_SHARE));
+    }
+
+    private void refill(long now, long rate) {
+        // allow small bursts, the download threads read up to 64 KiB at once
+        double burst = Math.max(64 * 1024, rate / 4.0);
+
+        tokens = Math.min(burst, tokens + (now - lastRefill) * rate / 1e9);
+        lastRefill = now;
+    }
+
+    /**
+     * Checks if no other waiting mission has a earlier finish time
+     */
+    private boolean isNext(Flow flow) {
+        for (Flow other : flows.values()) {
+            if (other != flow && other.waiting > 0 && other.finish < flow.finish) return false;
+        }
+        return true;
+    }
+
+    private void measure(long now, int amount) {
+        long bytes = measureBytes.addAndGet(amount);
+
+        long start = measureTime.get();
+        long elapsed = now - start;
+        if (elapsed < MEASURE_INTERVAL || !measureTime.compareAndSet(start, now)) return;
+
+        // the bytes counted meanwhile by other threads go to the next interval
+        measureBytes.addAndGet(-bytes);
+
+        if (!playbackActive) measuredSpeed = (long) (bytes * 1e9 / elapsed);
+    }
+
+    /**
+     * Forgets the paused and finished missions
+     */
+    private void forgetIdleFlows(long now) {
+        if (now - lastSweep < MEASURE_INTERVAL) return;
+        lastSweep = now;
+
+        Iterator<Flow> iterator = flows.values().iterator();
+        while (iterator.hasNext()) {
+            Flow flow = iterator.next();
+            if (flow.waiting < 1 && now - flow.lastUse > FLOW_TIMEOUT) iterator.remove();
+        }
+    }
+
+    private static class Flow {
+        double finish;
+        long lastUse;
+        int waiting;
+    }
+}
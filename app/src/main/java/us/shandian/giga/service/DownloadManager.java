@@ -18,6 +18,7 @@ import java.util.List;
 import us.shandian.giga.get.DownloadMission;
 import us.shandian.giga.get.FinishedMission;
 import us.shandian.giga.get.Mission;
+import us.shandian.giga.get.MissionJournal;
 import us.shandian.giga.get.sqlite.FinishedMissionStore;
 import org.schabi.newpipe.streams.io.StoredDirectoryHelper;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
@@ -149,8 +150,14 @@ public class DownloadManager {
         for (File sub : subs) {
             if (!sub.isFile()) continue;
             if (sub.getName().equals(".tmp")) continue;
+            if (sub.getName().endsWith(".new")) {
+                // unfinished snapshot, the previous metadata file is still intact
+                //noinspection ResultOfMethodCallIgnored
+                sub.delete();
+                continue;
+            }
 
-            DownloadMission mis = Utility.readFromFile(sub);
+            DownloadMission mis = MissionJournal.read(sub);
             if (mis == null) {
                 //noinspection ResultOfMethodCallIgnored
                 sub.delete();
@@ -188,9 +195,12 @@ public class DownloadManager {
                 exists = false;
             }
 
-            if (mis.isPsRunning()) {
+            if (mis.isPsRunning() || mis.isPsPipelined()) {
                 if (mis.psAlgorithm.worksOnSameFile) {
-                    // Incomplete post-processing results in a corrupted download file
+                    // Incomplete post-processing results in a corrupted download file. The state
+                    // of the muxer is not persisted, so this also applies to the post-processing
+                    // running alongside the download of the last resource: the whole mission is
+                    // downloaded again by a retry
                     if (exists && mis.storage.isDirect() && !mis.storage.delete())
                         Log.w(TAG, "Unable to delete incomplete download file: " + sub.getPath());
                 }
@@ -252,7 +262,7 @@ public class DownloadManager {
             mMissionsPending.add(mission);
 
             // Before continue, save the metadata in case the internet connection is not available
-            Utility.writeToFile(mission.metadata, mission);
+            mission.writeThisToFile();
 
             if (mission.storage == null) {
                 // noting to do here
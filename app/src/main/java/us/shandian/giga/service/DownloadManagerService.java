@@ -42,6 +42,7 @@ import org.schabi.newpipe.R;
 import org.schabi.newpipe.download.DownloadActivity;
 import org.schabi.newpipe.extractor.stream.StreamInfo;
 import org.schabi.newpipe.player.helper.LockManager;
+import org.schabi.newpipe.player.helper.PlaybackStateMonitor;
 import org.schabi.newpipe.streams.io.StoredDirectoryHelper;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
 import org.schabi.newpipe.util.Localization;
@@ -52,6 +53,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
+import io.reactivex.rxjava3.disposables.Disposable;
+
 import us.shandian.giga.get.DownloadMission;
 import us.shandian.giga.get.MissionRecoveryInfo;
 import us.shandian.giga.postprocessing.Postprocessing;
@@ -108,6 +111,8 @@ public class DownloadManagerService extends Service {
     private boolean mLockAcquired = false;
     private LockManager mLock = null;
 
+    private Disposable mPlaybackStateDisposable = null;
+
     private int downloadFailedNotificationID = DOWNLOADS_NOTIFICATION_ID + 1;
     private Builder downloadFailedNotification = null;
     private final SparseArrayCompat<DownloadMission> mFailedDownloads =
@@ -184,6 +189,12 @@ public class DownloadManagerService extends Service {
         handlePreferenceChange(mPrefs, getString(R.string.downloads_cross_network));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_maximum_retry));
         handlePreferenceChange(mPrefs, getString(R.string.downloads_queue_limit));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_bandwidth_limit));
+        handlePreferenceChange(mPrefs, getString(R.string.downloads_throttle_on_playback));
+
+        // leave the bandwidth to the player while is loading or playing
+        mPlaybackStateDisposable = PlaybackStateMonitor.observeActive()
+                .subscribe(BandwidthScheduler.getInstance()::setPlaybackActive);
 
         mLock = new LockManager(this);
     }
@@ -240,6 +251,9 @@ public class DownloadManagerService extends Service {
 
         mPrefs.unregisterOnSharedPreferenceChangeListener(mPrefChangeListener);
 
+        mPlaybackStateDisposable.dispose();
+        BandwidthScheduler.getInstance().setPlaybackActive(false);
+
         if (icDownloadDone != null) icDownloadDone.recycle();
         if (icDownloadFailed != null) icDownloadFailed.recycle();
         if (icLauncher != null) icLauncher.recycle();
@@ -324,6 +338,17 @@ public class DownloadManagerService extends Service {
             mManager.mPrefMeteredDownloads = prefs.getBoolean(key, false);
         } else if (getString(R.string.downloads_queue_limit).equals(key)) {
             mManager.mPrefQueueLimit = prefs.getBoolean(key, true);
+        } else if (getString(R.string.downloads_bandwidth_limit).equals(key)) {
+            long limit;
+            try {
+                String value = prefs.getString(key, getString(R.string.downloads_bandwidth_limit_default));
+                limit = value == null ? 0 : Long.parseLong(value) * 1024;
+            } catch (Exception e) {
+                limit = 0;
+            }
+            BandwidthScheduler.getInstance().setLimit(limit);
+        } else if (getString(R.string.downloads_throttle_on_playback).equals(key)) {
+            BandwidthScheduler.getInstance().setThrottleOnPlayback(prefs.getBoolean(key, false));
         } else if (getString(R.string.download_path_video_key).equals(key)) {
             mManager.mMainStorageVideo = loadMainVideoStorage();
         } else if (getString(R.string.download_path_audio_key).equals(key)) {
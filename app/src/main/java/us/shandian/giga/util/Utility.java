@@ -18,14 +18,10 @@ import org.schabi.newpipe.R;
 import org.schabi.newpipe.streams.io.SharpInputStream;
 import org.schabi.newpipe.streams.io.StoredFileHelper;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
 import java.net.HttpURLConnection;
 import java.util.Locale;
 
@@ -66,16 +62,6 @@ public class Utility {
         }
     }
 
-    public static void writeToFile(@NonNull File file, @NonNull Serializable serializable) {
-
-        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
-            objectOutputStream.writeObject(serializable);
-        } catch (Exception e) {
-            //nothing to do
-        }
-        //nothing to do
-    }
-
     @Nullable
     @SuppressWarnings("unchecked")
     public static <T> T readFromFile(File file) {
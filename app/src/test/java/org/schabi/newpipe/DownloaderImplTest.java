@@ -0,0 +1,179 @@
+package org.schabi.newpipe;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.schabi.newpipe.DownloaderImpl.NotModifiedException;
+import org.schabi.newpipe.DownloaderImpl.Validators;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class DownloaderImplTest {
+    private static final String FEED_URL = "https://www.youtube.com/feeds/videos.xml?id=1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Request request(final String url) {
+        return new Request.Builder().url(url).build();
+    }
+
+    /**
+     * Answers the requests with the enqueued responses, without network, and records them.
+     */
+    private static class FakeServer implements Interceptor {
+        final Queue<Response.Builder> responses = new ArrayDeque<>();
+        final List<Request> requests = new ArrayList<>();
+
+        void enqueue(final int code, final String etag, final String body) {
+            final Response.Builder response = new Response.Builder()
+                    .protocol(Protocol.HTTP_1_1)
+                    .code(code)
+                    .message(code == 304 ? "Not Modified" : "OK")
+                    .body(ResponseBody.create(body, MediaType.get("text/xml")));
+            if (etag != null) {
+                response.header("ETag", etag);
+            }
+            responses.add(response);
+        }
+
+        @Override
+        public Response intercept(final Chain chain) {
+            requests.add(chain.request());
+            return responses.remove().request(chain.request()).build();
+        }
+    }
+
+    private static DownloaderImpl downloaderOf(final FakeServer server) {
+        return new DownloaderImpl(new OkHttpClient.Builder().addInterceptor(server), null);
+    }
+
+    /**
+     * @return the validators of the first, unconditional, request of the feed
+     */
+    private static Validators fetchFeed(final DownloaderImpl downloader) throws Exception {
+        downloader.startRevalidation(null);
+        downloader.get(FEED_URL);
+        return downloader.endRevalidation();
+    }
+
+    @Test
+    public void cacheIsDisabledByDefault() {
+        final DownloaderImpl downloader =
+                new DownloaderImpl(new OkHttpClient.Builder(), folder.getRoot());
+        assertSame(downloader.getClient(),
+                downloader.clientFor(request("https://www.youtube.com/feed")));
+    }
+
+    @Test
+    public void cacheIsUsedWhenEnabled() {
+        final DownloaderImpl downloader =
+                new DownloaderImpl(new OkHttpClient.Builder(), folder.getRoot());
+        downloader.setHttpCacheEnabled(true);
+
+        final OkHttpClient client =
+                downloader.clientFor(request("https://www.youtube.com/feed"));
+        assertNotNull(client.cache());
+        // the connections are shared with the uncached client
+        assertSame(downloader.getClient().connectionPool(), client.connectionPool());
+    }
+
+    @Test
+    public void mediaHostsAreNotCached() {
+        final DownloaderImpl downloader =
+                new DownloaderImpl(new OkHttpClient.Builder(), folder.getRoot());
+        downloader.setHttpCacheEnabled(true);
+
+        assertSame(downloader.getClient(), downloader.clientFor(
+                request("https://rr1---sn-abc.googlevideo.com/videoplayback")));
+        assertSame(downloader.getClient(), downloader.clientFor(
+                request("https://cf-media.sndcdn.com/track.mp3")));
+        assertNotNull(downloader.clientFor(
+                request("https://notgooglevideo.com/videoplayback")).cache());
+    }
+
+    @Test
+    public void cacheIsNotUsedWithoutDirectory() {
+        final DownloaderImpl downloader = new DownloaderImpl(new OkHttpClient.Builder(), null);
+        downloader.setHttpCacheEnabled(true);
+
+        final OkHttpClient client =
+                downloader.clientFor(request("https://www.youtube.com/feed"));
+        assertSame(downloader.getClient(), client);
+        assertNull(client.cache());
+    }
+
+    @Test
+    public void notModifiedResponseKeepsThePreviousValidators() throws Exception {
+        final FakeServer server = new FakeServer();
+        final DownloaderImpl downloader = downloaderOf(server);
+        server.enqueue(200, "\"v1\"", "<feed/>");
+        server.enqueue(304, null, "");
+
+        final Validators previous = fetchFeed(downloader);
+        assertEquals("\"v1\"", previous.etag);
+        assertNull(server.requests.get(0).header("If-None-Match"));
+
+        downloader.startRevalidation(previous);
+        assertThrows(NotModifiedException.class, () -> downloader.get(FEED_URL));
+        assertSame(previous, downloader.endRevalidation());
+        assertEquals("\"v1\"", server.requests.get(1).header("If-None-Match"));
+    }
+
+    @Test
+    public void unchangedBodyIsNotModifiedEvenWithAnotherEtag() throws Exception {
+        final FakeServer server = new FakeServer();
+        final DownloaderImpl downloader = downloaderOf(server);
+        server.enqueue(200, "\"v1\"", "<feed/>");
+        server.enqueue(200, "\"v2\"", "<feed/>");
+
+        final Validators previous = fetchFeed(downloader);
+
+        downloader.startRevalidation(previous);
+        assertThrows(NotModifiedException.class, () -> downloader.get(FEED_URL));
+        final Validators result = downloader.endRevalidation();
+        // the new validators are kept for the next revalidation
+        assertEquals("\"v2\"", result.etag);
+        assertEquals(previous.contentHash, result.contentHash);
+    }
+
+    @Test
+    public void onlyTheFirstRequestOfTheRevalidationIsConditional() throws Exception {
+        final FakeServer server = new FakeServer();
+        final DownloaderImpl downloader = downloaderOf(server);
+        server.enqueue(200, "\"v1\"", "<feed/>");
+        server.enqueue(200, "\"v2\"", "<feed><entry/></feed>");
+        server.enqueue(200, "\"v1\"", "<feed/>");
+
+        final Validators previous = fetchFeed(downloader);
+
+        downloader.startRevalidation(previous);
+        try {
+            assertEquals("<feed><entry/></feed>", downloader.get(FEED_URL).responseBody());
+            // e.g. the page of the channel, requested while extracting the feed
+            assertEquals("<feed/>", downloader.get(FEED_URL).responseBody());
+        } finally {
+            assertEquals("\"v2\"", downloader.endRevalidation().etag);
+        }
+
+        assertEquals("\"v1\"", server.requests.get(1).header("If-None-Match"));
+        assertNull(server.requests.get(2).header("If-None-Match"));
+    }
+}
@@ -0,0 +1,59 @@
+package org.schabi.newpipe.local.feed.service
+
+import io.reactivex.rxjava3.schedulers.TestScheduler
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.schabi.newpipe.extractor.ServiceList
+import org.schabi.newpipe.extractor.exceptions.ReCaptchaException
+
+class FeedLoadLimiterTest {
+    private val scheduler = TestScheduler()
+    private val limiter = FeedLoadLimiter(scheduler, Random(0))
+    private val serviceId = ServiceList.SoundCloud.serviceId
+
+    @Test fun `concurrency is limited`() {
+        val observers = (1..6).map { limiter.acquire(serviceId).test() }
+        val concurrency = limiter.getConcurrency(serviceId)
+        assertEquals(concurrency, observers.count { it.values().isNotEmpty() })
+
+        observers.first().values().single().release(null)
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+        assertEquals(concurrency + 1, observers.count { it.values().isNotEmpty() })
+    }
+
+    @Test fun `rate limit reduces the concurrency and pauses`() {
+        val concurrency = limiter.getConcurrency(serviceId)
+        val observers = (1..concurrency + 1).map { limiter.acquire(serviceId).test() }
+
+        observers.first().values().single().release(Exception(ReCaptchaException("", "")))
+        assertEquals(concurrency / 2, limiter.getConcurrency(serviceId))
+
+        // still paused, and the other extractions keep the only slots
+        scheduler.advanceTimeBy(5, TimeUnit.SECONDS)
+        observers.last().assertNoValues()
+
+        // a second rate limit of an extraction started before the backoff is ignored
+        observers[1].values().single().release(ReCaptchaException("", ""))
+        assertEquals(concurrency / 2, limiter.getConcurrency(serviceId))
+
+        observers.drop(2).dropLast(1).forEach { it.values().single().release(null) }
+        scheduler.advanceTimeBy(10, TimeUnit.SECONDS)
+        observers.last().assertValueCount(1)
+    }
+
+    @Test fun `disposed waiters do not take a slot`() {
+        val concurrency = limiter.getConcurrency(serviceId)
+        val observers = (1..concurrency).map { limiter.acquire(serviceId).test() }
+        val disposed = limiter.acquire(serviceId).test()
+        val waiting = limiter.acquire(serviceId).test()
+
+        disposed.dispose()
+        observers.first().values().single().release(null)
+        scheduler.advanceTimeBy(1, TimeUnit.SECONDS)
+
+        disposed.assertNoValues()
+        waiting.assertValueCount(1)
+    }
+}
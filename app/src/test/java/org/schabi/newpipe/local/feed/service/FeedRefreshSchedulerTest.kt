@@ -0,0 +1,54 @@
+package org.schabi.newpipe.local.feed.service
+
+import java.time.OffsetDateTime
+import java.time.ZoneOffset
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import org.schabi.newpipe.database.feed.dao.FeedDAO.SubscriptionUploadStats
+import org.schabi.newpipe.database.subscription.SubscriptionEntity
+
+class FeedRefreshSchedulerTest {
+    private val now = OffsetDateTime.of(2024, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC)
+
+    private fun daily(subscriptionId: Long, days: Long) =
+        SubscriptionUploadStats(subscriptionId, days.toInt(), now.minusDays(days))
+
+    private fun once(subscriptionId: Long, daysAgo: Long) =
+        SubscriptionUploadStats(subscriptionId, 1, now.minusDays(daysAgo))
+
+    @Test fun `frequent uploaders are checked sooner`() {
+        val scheduler = FeedRefreshScheduler(
+            mapOf(1L to now, 2L to now),
+            mapOf(1L to daily(1, 30), 2L to once(2, 60))
+        )
+
+        val frequent = scheduler.getNextCheck(1, now)!!
+        val rare = scheduler.getNextCheck(2, now)!!
+        assertTrue(frequent.isBefore(now.plusDays(1)))
+        assertTrue(frequent.isBefore(rare))
+        assertEquals(now.plusDays(7), rare)
+    }
+
+    @Test fun `never loaded subscriptions are due`() {
+        val scheduler = FeedRefreshScheduler(mapOf(1L to null), emptyMap())
+        assertNull(scheduler.getNextCheck(1, now))
+        assertNull(scheduler.getNextCheck(2, now))
+    }
+
+    @Test fun `select due and the stalest others`() {
+        val subscriptions = (1L..20L).map { SubscriptionEntity(uid = it) }
+        val lastUpdated = subscriptions.associate { it.uid to now.minusHours(20 + it.uid) }
+        val uploadStats = subscriptions.associate {
+            // only the first two upload every day
+            it.uid to if (it.uid <= 2) daily(it.uid, 30) else once(it.uid, 80)
+        }
+
+        val selected = FeedRefreshScheduler(lastUpdated, uploadStats)
+            .selectDue(subscriptions, now)
+            .map { it.uid }
+
+        assertEquals(listOf(1L, 2L, 20L, 19L, 18L, 17L, 16L), selected)
+    }
+}
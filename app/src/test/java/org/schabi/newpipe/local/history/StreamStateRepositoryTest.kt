@@ -0,0 +1,59 @@
+package org.schabi.newpipe.local.history
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNull
+import org.junit.Test
+import org.mockito.ArgumentMatchers.anyInt
+import org.mockito.ArgumentMatchers.anyList
+import org.mockito.Mockito.mock
+import org.mockito.Mockito.times
+import org.mockito.Mockito.verify
+import org.mockito.Mockito.`when`
+import org.schabi.newpipe.database.stream.dao.StreamStateDAO
+import org.schabi.newpipe.database.stream.dao.StreamStateDAO.StreamStateByUrl
+import org.schabi.newpipe.database.stream.model.StreamStateEntity
+import org.schabi.newpipe.extractor.stream.StreamInfoItem
+import org.schabi.newpipe.extractor.stream.StreamType
+
+class StreamStateRepositoryTest {
+    private val dao = mock(StreamStateDAO::class.java)
+    private val repository = StreamStateRepository(dao)
+
+    private fun item(url: String) = StreamInfoItem(0, url, url, StreamType.VIDEO_STREAM)
+
+    @Test fun `a page is loaded with one query and then cached`() {
+        `when`(dao.getStatesByUrl(anyInt(), anyList())).thenReturn(
+            listOf(StreamStateByUrl(1, "a", 1000), StreamStateByUrl(2, "b", null))
+        )
+        val items = listOf(item("a"), item("b"), item("c"))
+
+        val states = repository.loadStates(items)
+        assertEquals(1000L, states[0]!!.progressMillis)
+        assertNull(states[1])
+        assertNull(states[2])
+
+        repository.loadStates(items)
+        verify(dao, times(1)).getStatesByUrl(anyInt(), anyList())
+        assertEquals(1000L, repository.getCachedState(0, "a")!!.state!!.progressMillis)
+        assertNull(repository.getCachedState(0, "c")!!.state)
+    }
+
+    @Test fun `written states replace the cached ones`() {
+        `when`(dao.getStates(anyList())).thenReturn(emptyList())
+        assertNull(repository.loadLocalStates(listOf(1L))[0])
+
+        repository.onStateChanged(0, "a", 1, StreamStateEntity(1, 5000))
+        assertEquals(5000L, repository.loadLocalStates(listOf(1L))[0]!!.progressMillis)
+        assertEquals(5000L, repository.getCachedState(0, "a")!!.state!!.progressMillis)
+
+        repository.onStateDeleted(1)
+        assertNull(repository.getCachedState(1)!!.state)
+        verify(dao, times(1)).getStates(anyList())
+    }
+
+    @Test fun `written states are published`() {
+        val observer = repository.updates.test()
+        repository.onStateChanged(0, "a", 1, null)
+        observer.assertValue(StreamStateRepository.Update(0, "a", 1, null))
+    }
+}
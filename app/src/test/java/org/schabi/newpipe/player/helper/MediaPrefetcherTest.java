@@ -0,0 +1,170 @@
+package org.schabi.newpipe.player.helper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.PriorityTaskManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class MediaPrefetcherTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final PriorityTaskManager priorityTaskManager = new PriorityTaskManager();
+    private ExecutorService executor;
+    private MediaPrefetcher prefetcher;
+
+    /**
+     * Writes nothing, until it is released or cancelled.
+     */
+    private static class TestWriter implements MediaPrefetcher.StreamWriter {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch released = new CountDownLatch(1);
+        final AtomicInteger writes = new AtomicInteger();
+        volatile boolean cancelled;
+        volatile boolean failing;
+
+        @Override
+        public void cache() throws IOException {
+            started.countDown();
+            try {
+                released.await();
+            } catch (final InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            if (cancelled) {
+                throw new InterruptedIOException();
+            }
+            if (failing) {
+                throw new IOException("failed");
+            }
+            writes.incrementAndGet();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            released.countDown();
+        }
+    }
+
+    @Before
+    public void setUp() {
+        final PlayerDataSource dataSource = mock(PlayerDataSource.class);
+        when(dataSource.getPriorityTaskManager()).thenReturn(priorityTaskManager);
+        executor = Executors.newSingleThreadExecutor();
+        prefetcher = new MediaPrefetcher(dataSource, executor);
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @return whether the prefetch priority has been removed, i.e. the player would not wait for
+     * it
+     */
+    private boolean isPriorityReleased() {
+        // the highest priority is the one of the prefetch while it is registered
+        priorityTaskManager.add(C.PRIORITY_DOWNLOAD - 1);
+        try {
+            priorityTaskManager.proceedOrThrow(C.PRIORITY_DOWNLOAD - 1);
+            return true;
+        } catch (final PriorityTaskManager.PriorityTooLowException e) {
+            return false;
+        } finally {
+            priorityTaskManager.remove(C.PRIORITY_DOWNLOAD - 1);
+        }
+    }
+
+    @Test
+    public void testPriorityIsReleasedOnCompletion() throws Exception {
+        final TestWriter first = new TestWriter();
+        final TestWriter second = new TestWriter();
+        prefetcher.prefetch("https://example.com/a", List.of(first, second));
+
+        assertTrue(first.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertFalse(isPriorityReleased());
+        first.released.countDown();
+        second.released.countDown();
+
+        awaitIdle();
+        assertEquals(1, first.writes.get());
+        assertEquals(1, second.writes.get());
+        assertTrue(isPriorityReleased());
+    }
+
+    @Test
+    public void testPriorityIsReleasedOnError() throws Exception {
+        final TestWriter failing = new TestWriter();
+        failing.failing = true;
+        final TestWriter next = new TestWriter();
+        prefetcher.prefetch("https://example.com/a", List.of(failing, next));
+
+        assertTrue(failing.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        failing.released.countDown();
+
+        awaitIdle();
+        // the player loads the streams itself after an error
+        assertEquals(0, next.writes.get());
+        assertTrue(isPriorityReleased());
+    }
+
+    @Test
+    public void testPreviousItemIsCancelledWhenTheQueueMovesOn() throws Exception {
+        final TestWriter previous = new TestWriter();
+        final TestWriter previousNext = new TestWriter();
+        prefetcher.prefetch("https://example.com/a", List.of(previous, previousNext));
+        assertTrue(previous.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        final TestWriter current = new TestWriter();
+        prefetcher.prefetch("https://example.com/b", List.of(current));
+        assertTrue(previous.cancelled);
+        assertTrue(previousNext.cancelled);
+
+        assertTrue(current.started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        current.released.countDown();
+
+        awaitIdle();
+        assertEquals(0, previous.writes.get());
+        assertEquals(0, previousNext.writes.get());
+        assertEquals(1, current.writes.get());
+        assertTrue(isPriorityReleased());
+    }
+
+    @Test
+    public void testWaitsWhileThePlayerIsLoading() throws Exception {
+        priorityTaskManager.add(C.PRIORITY_PLAYBACK);
+
+        final TestWriter writer = new TestWriter();
+        writer.released.countDown();
+        prefetcher.prefetch("https://example.com/a", List.of(writer));
+        assertFalse(writer.started.await(200, TimeUnit.MILLISECONDS));
+
+        priorityTaskManager.remove(C.PRIORITY_PLAYBACK);
+        awaitIdle();
+        assertEquals(1, writer.writes.get());
+        assertTrue(isPriorityReleased());
+    }
+}
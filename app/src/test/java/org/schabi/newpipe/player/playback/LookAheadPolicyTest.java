@@ -0,0 +1,79 @@
+package org.schabi.newpipe.player.playback;
+
+import org.junit.Test;
+import org.schabi.newpipe.extractor.stream.StreamInfoItem;
+import org.schabi.newpipe.extractor.stream.StreamType;
+import org.schabi.newpipe.player.playqueue.PlayQueue;
+import org.schabi.newpipe.player.playqueue.PlayQueueItem;
+import org.schabi.newpipe.player.playqueue.SinglePlayQueue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LookAheadPolicyTest {
+    private static final long MINUTE = 60;
+    private static final long HOUR = 60 * MINUTE;
+
+    private static PlayQueue makePlayQueue(final int index, final int size,
+                                           final long durationSeconds) {
+        final List<StreamInfoItem> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final StreamInfoItem item =
+                    new StreamInfoItem(0, "URL_" + i, "Item " + i, StreamType.VIDEO_STREAM);
+            item.setDuration(durationSeconds);
+            items.add(item);
+        }
+        return new SinglePlayQueue(items, index);
+    }
+
+    private static List<String> getUrlsToLoad(final PlayQueue playQueue, final int lookAhead) {
+        return LookAheadPolicy.getItemsToLoad(playQueue, lookAhead).stream()
+                .map(PlayQueueItem::getUrl)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void currentThenNextThenPrevious() {
+        final PlayQueue playQueue = makePlayQueue(2, 6, 5 * MINUTE);
+        assertEquals(List.of("URL_2", "URL_3", "URL_4", "URL_5", "URL_1"),
+                getUrlsToLoad(playQueue, 3));
+        assertEquals(List.of("URL_2", "URL_3", "URL_1"), getUrlsToLoad(playQueue, 1));
+    }
+
+    @Test
+    public void roundRobinAtTheEnd() {
+        final PlayQueue playQueue = makePlayQueue(4, 5, 5 * MINUTE);
+        assertEquals(List.of("URL_4", "URL_0", "URL_1", "URL_3"), getUrlsToLoad(playQueue, 2));
+    }
+
+    @Test
+    public void itemsAreNotRepeatedInShortQueues() {
+        assertEquals(List.of("URL_0", "URL_1"), getUrlsToLoad(makePlayQueue(0, 2, MINUTE), 3));
+        assertEquals(List.of("URL_0"), getUrlsToLoad(makePlayQueue(0, 1, MINUTE), 3));
+    }
+
+    @Test
+    public void itemsReachedAfterExpirationAreSkipped() {
+        // the next item is always loaded, the one after only starts after the cache expired
+        final PlayQueue playQueue = makePlayQueue(1, 5, 2 * HOUR);
+        assertEquals(List.of("URL_1", "URL_2", "URL_0"), getUrlsToLoad(playQueue, 3));
+    }
+
+    @Test
+    public void liveStreamsDoNotDelayTheNextItems() {
+        // the duration of live streams is unknown
+        final PlayQueue playQueue = makePlayQueue(0, 4, -1);
+        assertEquals(List.of("URL_0", "URL_1", "URL_2", "URL_3"), getUrlsToLoad(playQueue, 3));
+    }
+
+    @Test
+    public void nothingToLoadWithoutCurrentItem() {
+        final PlayQueue playQueue = new SinglePlayQueue(Collections.emptyList(), 0);
+        assertTrue(LookAheadPolicy.getItemsToLoad(playQueue, 3).isEmpty());
+    }
+}
@@ -0,0 +1,120 @@
+package org.schabi.newpipe.player.playqueue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.schabi.newpipe.player.playqueue.PlayQueueTest.makeItemWithUrl;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class PlayQueueItemListTest {
+    private static List<PlayQueueItem> makeItems(final int count) {
+        final List<PlayQueueItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(makeItemWithUrl("URL_" + i));
+        }
+        return items;
+    }
+
+    @Test
+    public void editsMatchArrayList() {
+        final Random random = new Random(0);
+        final List<PlayQueueItem> expected = new ArrayList<>();
+        final PlayQueueItemList list = new PlayQueueItemList(List.of());
+        final List<PlayQueueItem> added = new ArrayList<>();
+
+        for (int i = 0; i < 1000; i++) {
+            final int operation = random.nextInt(3);
+            if (operation == 0 || expected.isEmpty()) {
+                final PlayQueueItem item = makeItemWithUrl("URL_" + i);
+                final int index = random.nextInt(expected.size() + 1);
+                expected.add(index, item);
+                list.add(index, item);
+                added.add(item);
+            } else if (operation == 1) {
+                final int index = random.nextInt(expected.size());
+                assertSame(expected.remove(index), list.remove(index));
+            } else {
+                final int source = random.nextInt(expected.size());
+                final int target = random.nextInt(expected.size());
+                expected.add(target, expected.remove(source));
+                list.move(source, target);
+            }
+        }
+
+        assertEquals(expected, new ArrayList<>(list));
+        for (final PlayQueueItem item : added) {
+            assertEquals(expected.indexOf(item), list.indexOf(item));
+        }
+    }
+
+    @Test
+    public void indexOfReturnsFirstPositionOfRepeatedItem() {
+        final PlayQueueItem item = makeItemWithUrl("TARGET_URL");
+        final PlayQueueItemList list = new PlayQueueItemList(makeItems(5));
+        list.add(4, item);
+        list.add(2, item);
+        assertEquals(2, list.indexOf(item));
+
+        list.remove(2);
+        assertEquals(4, list.indexOf(item));
+        list.remove(4);
+        assertEquals(-1, list.indexOf(item));
+    }
+
+    @Test
+    public void restoreOrderUndoesShuffle() {
+        final List<PlayQueueItem> items = makeItems(100);
+        final PlayQueueItemList list = new PlayQueueItemList(items);
+
+        list.saveOrder();
+        list.shuffle(42, new Random(0));
+        assertSame(items.get(42), list.get(0));
+
+        // added items go at the end of the saved order, moves do not change it
+        final PlayQueueItem added = makeItemWithUrl("ADDED_URL");
+        list.add(0, added);
+        list.move(0, 50);
+        list.restoreOrder();
+
+        final List<PlayQueueItem> expected = new ArrayList<>(items);
+        expected.add(added);
+        assertEquals(expected, new ArrayList<>(list));
+    }
+
+    @Test
+    public void serializationKeepsItemsAndSavedOrder() throws Exception {
+        final List<PlayQueueItem> items = makeItems(10);
+        final PlayQueueItemList list = new PlayQueueItemList(items);
+        list.saveOrder();
+        list.shuffle(3, new Random(0));
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(list);
+        }
+        final PlayQueueItemList copy;
+        try (ObjectInputStream input = new ObjectInputStream(
+                new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (PlayQueueItemList) input.readObject();
+        }
+
+        assertEquals(list.size(), copy.size());
+        for (int i = 0; i < list.size(); i++) {
+            assertEquals(list.get(i).getUrl(), copy.get(i).getUrl());
+            assertEquals(i, copy.indexOf(copy.get(i)));
+        }
+
+        copy.restoreOrder();
+        for (int i = 0; i < items.size(); i++) {
+            assertEquals(items.get(i).getUrl(), copy.get(i).getUrl());
+        }
+    }
+}
@@ -13,6 +13,7 @@ import java.util.Objects;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -199,4 +200,55 @@ public class PlayQueueTest {
             assertFalse(queue1.equalStreams(queue2));
         }
     }
+
+    public static class CopyTests {
+        private static List<PlayQueueItem> makeItems(final int count) {
+            final List<PlayQueueItem> items = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                items.add(makeItemWithUrl("URL_" + i));
+            }
+            return items;
+        }
+
+        @Test
+        public void copyHasSameStateWithOwnItems() {
+            final PlayQueue queue = makePlayQueue(2, makeItems(5));
+            queue.setRecovery(1, 1000);
+
+            final PlayQueue copy = queue.copy();
+            assertTrue(queue.equalStreamsAndIndex(copy));
+            assertNotSame(queue.getItem(1), copy.getItem(1));
+            assertEquals(1000, Objects.requireNonNull(copy.getItem(1)).getRecoveryPosition());
+
+            copy.setRecovery(3, 2000);
+            copy.remove(0);
+            assertEquals(5, queue.size());
+            assertEquals(PlayQueueItem.RECOVERY_UNSET,
+                    Objects.requireNonNull(queue.getItem(3)).getRecoveryPosition());
+        }
+
+        @Test
+        public void copyCanBeUnshuffled() {
+            final List<PlayQueueItem> items = makeItems(10);
+            final PlayQueue queue = makePlayQueue(0, items);
+            queue.shuffle();
+
+            final PlayQueue copy = queue.copy();
+            assertTrue(copy.isShuffled());
+            copy.unshuffle();
+            for (int i = 0; i < items.size(); i++) {
+                assertEquals(items.get(i).getUrl(),
+                        Objects.requireNonNull(copy.getItem(i)).getUrl());
+            }
+        }
+
+        @Test
+        public void repeatedItemIsCopiedOnce() {
+            final PlayQueue queue = makePlayQueue(0,
+                    Collections.nCopies(3, makeItemWithUrl("URL")));
+
+            final PlayQueue copy = queue.copy();
+            assertSame(copy.getItem(0), copy.getItem(2));
+        }
+    }
 }
@@ -0,0 +1,55 @@
+package org.schabi.newpipe.streams;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import us.shandian.giga.io.ChunkFileInputStream;
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class DataReaderTest {
+    private static final int DATA_SIZE = 512 * 1024;
+    private static final int CHUNK_START = 1000;
+    private static final int CHUNK_END = 400 * 1024;
+
+    private static byte[] createSource(final File file) throws IOException {
+        final byte[] data = new byte[DATA_SIZE];
+        new Random(42).nextBytes(data);
+        Files.write(file.toPath(), data);
+        return data;
+    }
+
+    @Test
+    public void testTransferToAfterBufferedRead() throws IOException {
+        final File source = File.createTempFile("newpipe_", "");
+        final File target = File.createTempFile("newpipe_", "");
+        final byte[] data = createSource(source);
+
+        final DataReader reader = new DataReader(new ChunkFileInputStream(
+                new FileStream(source), CHUNK_START, CHUNK_END, null));
+        final FileStream output = new FileStream(target);
+
+        // fill the read buffer first, the transfer must start with the buffered bytes
+        assertEquals(data[CHUNK_START] & 0xFF, reader.read());
+        assertEquals(100_000, reader.transferTo(100_000, output));
+
+        final DataReader.View view = reader.getView(50_000);
+        assertEquals(50_000, view.transferTo(Integer.MAX_VALUE, output));
+        assertEquals(0, view.transferTo(1, output));
+
+        final long remaining = CHUNK_END - CHUNK_START - 150_001;
+        assertEquals(remaining, reader.transferTo(Long.MAX_VALUE, output));
+        assertEquals(CHUNK_END - CHUNK_START, reader.position());
+        output.close();
+
+        assertArrayEquals(Arrays.copyOfRange(data, CHUNK_START + 1, CHUNK_END),
+                Files.readAllBytes(target.toPath()));
+    }
+}
@@ -0,0 +1,171 @@
+package org.schabi.newpipe.streams;
+
+import org.junit.Test;
+import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashChunk;
+import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashSample;
+import org.schabi.newpipe.streams.Mp4DashReader.Mp4Track;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class Mp4FromDashWriterTest {
+    private static final int TIMESCALE = 1000;
+    private static final int FRAGMENTS = 3;
+    private static final int SAMPLES_PER_FRAGMENT = 4;
+    private static final int SAMPLE_DURATION = 100;
+
+    private static byte[] box(final String type, final byte[]... payloads) {
+        int size = 8;
+        for (final byte[] payload : payloads) {
+            size += payload.length;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(size);
+        buffer.put(type.getBytes(StandardCharsets.US_ASCII));
+        for (final byte[] payload : payloads) {
+            buffer.put(payload);
+        }
+        return buffer.array();
+    }
+
+    private static void append(final ByteArrayOutputStream output, final byte[] bytes) {
+        output.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] ints(final int... values) {
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (final int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * @return a DASH audio track, whose duration is only known by reading its fragments
+     */
+    private static byte[] createSource(final List<byte[]> samples) {
+        final ByteArrayOutputStream source = new ByteArrayOutputStream();
+        append(source, box("ftyp", ints(0x64617368, 0, 0x69736F36))); // dash, iso6
+
+        final byte[] mvhd = ByteBuffer.allocate(100)
+                .putInt(12, TIMESCALE)
+                .putInt(96, 2) // next track id
+                .array();
+        final byte[] tkhd = ByteBuffer.allocate(84)
+                .putInt(0, 0x03) // enabled and in movie
+                .putInt(12, 1) // track id
+                .putInt(20, 0) // unknown duration
+                .putInt(40, 0x00010000) // identity matrix
+                .putInt(56, 0x00010000)
+                .putInt(72, 0x40000000)
+                .array();
+        final byte[] mdhd = ByteBuffer.allocate(24)
+                .putInt(12, TIMESCALE)
+                .array();
+        final byte[] hdlr = ByteBuffer.allocate(25)
+                .putInt(8, 0x736F756E) // soun
+                .array();
+
+        append(source, box("moov",
+                box("mvhd", mvhd),
+                box("trak",
+                        box("tkhd", tkhd),
+                        box("mdia",
+                                box("mdhd", mdhd),
+                                box("hdlr", hdlr),
+                                box("minf",
+                                        box("smhd", ints(0, 0)),
+                                        box("dinf", box("dref", ints(0, 1),
+                                                box("url ", ints(1)))),
+                                        box("stbl", box("stsd", ints(0, 0)))))),
+                box("mvex", box("trex", ints(0, 1, 1, 0, 0, 0)))));
+
+        int sample = 0;
+        for (int fragment = 0; fragment < FRAGMENTS; fragment++) {
+            final int moofSize = 8 + 16 + 8 + 16 + 20 + 20 + (SAMPLES_PER_FRAGMENT * 8);
+            final ByteBuffer trun = ByteBuffer.allocate(12 + (SAMPLES_PER_FRAGMENT * 8));
+            trun.putInt(0x0301); // data offset, sample durations and sizes
+            trun.putInt(SAMPLES_PER_FRAGMENT);
+            trun.putInt(moofSize + 8);
+
+            final ByteArrayOutputStream mdat = new ByteArrayOutputStream();
+            for (int i = 0; i < SAMPLES_PER_FRAGMENT; i++, sample++) {
+                final byte[] data = new byte[50 + (sample * 7)];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte) (sample + j);
+                }
+                samples.add(data);
+                append(mdat, data);
+                trun.putInt(SAMPLE_DURATION).putInt(data.length);
+            }
+
+            final byte[] tfdt = ByteBuffer.allocate(12)
+                    .putInt(0x01000000)
+                    .putLong((long) fragment * SAMPLES_PER_FRAGMENT * SAMPLE_DURATION)
+                    .array();
+            append(source, box("moof",
+                    box("mfhd", ints(0, fragment + 1)),
+                    box("traf",
+                            box("tfhd", ints(0, 1)),
+                            box("tfdt", tfdt),
+                            box("trun", trun.array()))));
+            append(source, box("mdat", mdat.toByteArray()));
+        }
+
+        return source.toByteArray();
+    }
+
+    @Test
+    public void testFragmentedOutputHasSamplesAndDurations() throws IOException {
+        final File source = File.createTempFile("newpipe_", "");
+        final File target = File.createTempFile("newpipe_", "");
+        final List<byte[]> samples = new ArrayList<>();
+        Files.write(source.toPath(), createSource(samples));
+
+        final Mp4FromDashWriter muxer = new Mp4FromDashWriter(new FileStream(source));
+        muxer.parseSources();
+        muxer.selectTracks(0);
+        // a DASH brand, so the output can be read back with Mp4DashReader
+        muxer.setMainBrand(0x69736F35); // iso5
+
+        final FileStream output = new FileStream(target);
+        muxer.buildFragmented(output);
+        muxer.close();
+        output.close();
+
+        final Mp4DashReader reader = new Mp4DashReader(new FileStream(target));
+        reader.parse();
+        final Mp4Track track = reader.getAvailableTracks()[0];
+
+        // in milliseconds, the movie timescale
+        final long duration = (long) FRAGMENTS * SAMPLES_PER_FRAGMENT * SAMPLE_DURATION;
+        assertEquals(duration, track.trak.tkhd.duration);
+
+        reader.selectTrack(0);
+        int index = 0;
+        Mp4DashChunk chunk;
+        while ((chunk = reader.getNextChunk(false)) != null) {
+            Mp4DashSample sample;
+            while ((sample = chunk.getNextSample()) != null) {
+                assertEquals(SAMPLE_DURATION, sample.info.sampleDuration);
+                assertArrayEquals(samples.get(index++), sample.data);
+            }
+        }
+        assertEquals(samples.size(), index);
+        assertNull(reader.getNextChunk(false));
+        reader.release();
+    }
+}
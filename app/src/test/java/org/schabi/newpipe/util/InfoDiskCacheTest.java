@@ -0,0 +1,65 @@
+package org.schabi.newpipe.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.schabi.newpipe.extractor.channel.ChannelInfo;
+
+import java.util.concurrent.TimeUnit;
+
+public class InfoDiskCacheTest {
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private InfoDiskCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new InfoDiskCache(folder.getRoot());
+    }
+
+    private static ChannelInfo channel(final String url) {
+        return new ChannelInfo(0, url, url, url, "name of " + url);
+    }
+
+    @Test
+    public void getReturnsWhatWasPut() {
+        cache.put("a", channel("https://a"));
+
+        final InfoDiskCache.Entry entry = cache.get("a", MAX_AGE);
+        assertNotNull(entry);
+        assertEquals("name of https://a", entry.info.getName());
+        assertNull(cache.get("b", MAX_AGE));
+    }
+
+    @Test
+    public void getForgetsOldEntries() throws InterruptedException {
+        cache.put("a", channel("https://a"));
+        Thread.sleep(5);
+
+        assertNull(cache.get("a", 1));
+        // the old entry has been deleted
+        assertNull(cache.get("a", MAX_AGE));
+    }
+
+    @Test
+    public void removeAndClearDeleteEntries() {
+        cache.put("a", channel("https://a"));
+        cache.put("b", channel("https://b"));
+
+        cache.remove("a");
+        assertNull(cache.get("a", MAX_AGE));
+        assertNotNull(cache.get("b", MAX_AGE));
+
+        cache.clear();
+        assertNull(cache.get("b", MAX_AGE));
+        assertEquals(0, folder.getRoot().listFiles().length);
+    }
+}
@@ -0,0 +1,91 @@
+package org.schabi.newpipe.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.schabi.newpipe.extractor.channel.ChannelInfo;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.observers.TestObserver;
+import io.reactivex.rxjava3.subjects.SingleSubject;
+
+public class InfoLoadCoalescerTest {
+    private final InfoLoadCoalescer coalescer = new InfoLoadCoalescer();
+
+    @Test
+    public void concurrentLoadsAreShared() {
+        final AtomicInteger subscriptions = new AtomicInteger();
+        final SingleSubject<ChannelInfo> network = SingleSubject.create();
+        final Single<ChannelInfo> load =
+                network.doOnSubscribe(d -> subscriptions.incrementAndGet());
+
+        final TestObserver<ChannelInfo> first = coalescer.load("a", load).test();
+        final TestObserver<ChannelInfo> second = coalescer.load("a", load).test();
+        // the first caller leaving does not cancel the load of the second one
+        first.dispose();
+
+        final ChannelInfo info = new ChannelInfo(0, "a", "a", "a", "a");
+        network.onSuccess(info);
+        second.assertValue(info);
+        assertEquals(1, subscriptions.get());
+
+        final InfoLoadCoalescer.LoadStats stats = coalescer.getStats("a");
+        assertEquals(1, stats.loads);
+        assertEquals(1, stats.joins);
+    }
+
+    @Test
+    public void loadIsCancelledWhenAllCallersLeave() {
+        final AtomicInteger subscriptions = new AtomicInteger();
+        final SingleSubject<ChannelInfo> network = SingleSubject.create();
+        final Single<ChannelInfo> load =
+                network.doOnSubscribe(d -> subscriptions.incrementAndGet());
+
+        final TestObserver<ChannelInfo> first = coalescer.load("a", load).test();
+        final TestObserver<ChannelInfo> second = coalescer.load("a", load).test();
+        assertTrue(network.hasObservers());
+
+        first.dispose();
+        assertTrue(network.hasObservers());
+        second.dispose();
+        assertFalse(network.hasObservers());
+
+        // the cancelled load is not joined, the item is loaded again
+        final TestObserver<ChannelInfo> third = coalescer.load("a", load).test();
+        assertEquals(2, subscriptions.get());
+
+        final ChannelInfo info = new ChannelInfo(0, "a", "a", "a", "a");
+        network.onSuccess(info);
+        third.assertValue(info);
+    }
+
+    @Test
+    public void finishedLoadsAreNotShared() {
+        final AtomicInteger subscriptions = new AtomicInteger();
+        final Single<ChannelInfo> load = Single.fromCallable(() -> {
+            subscriptions.incrementAndGet();
+            return new ChannelInfo(0, "a", "a", "a", "a");
+        });
+
+        coalescer.load("a", load).test().assertValueCount(1);
+        coalescer.load("a", load).test().assertValueCount(1);
+        coalescer.load("b", load).test().assertValueCount(1);
+        assertEquals(3, subscriptions.get());
+    }
+
+    @Test
+    public void errorsAreShared() {
+        final SingleSubject<ChannelInfo> network = SingleSubject.create();
+        final TestObserver<ChannelInfo> first = coalescer.load("a", network).test();
+        final TestObserver<ChannelInfo> second = coalescer.load("a", network).test();
+
+        final Exception error = new Exception("failed");
+        network.onError(error);
+        first.assertError(error);
+        second.assertError(error);
+    }
+}
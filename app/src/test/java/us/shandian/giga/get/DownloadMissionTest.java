@@ -0,0 +1,182 @@
+package us.shandian.giga.get;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import us.shandian.giga.get.DownloadMission.Block;
+import us.shandian.giga.io.ChunkFileInputStream;
+import us.shandian.giga.io.FileStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static us.shandian.giga.get.DownloadMission.BLOCK_SIZE;
+
+public class DownloadMissionTest {
+    private static final int BLOCK_COUNT = 4;
+    private static final long LENGTH = (long) BLOCK_COUNT * BLOCK_SIZE - 1000;
+
+    private static byte[] createData() {
+        final byte[] data = new byte[(int) LENGTH];
+        new Random(42).nextBytes(data);
+        return data;
+    }
+
+    private static File createFile() throws IOException {
+        final File file = File.createTempFile("newpipe_", "");
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(LENGTH);
+        }
+        return file;
+    }
+
+    private static DownloadMission createMission() {
+        final DownloadMission mission = new DownloadMission();
+        mission.length = LENGTH;
+        mission.blocks = new int[BLOCK_COUNT];
+        return mission;
+    }
+
+    /**
+     * Writes the bytes of the block the same way a download thread does
+     *
+     * @return {@code true} if the whole block was written
+     */
+    private static boolean download(final FileStream output, final byte[] data,
+                                    final Block block, final int amount)
+            throws IOException {
+        final int written = block.claim(amount);
+        final long offset = (long) block.position * BLOCK_SIZE + block.done;
+
+        output.seek(offset);
+        output.write(data, (int) offset, written);
+        block.done += written;
+
+        return block.done >= block.getLimit();
+    }
+
+    @Test
+    public void testPipelinedSourceWaitsForDownloadedBlocks() throws Exception {
+        final byte[] data = createData();
+        final File file = createFile();
+        final DownloadMission mission = createMission();
+        mission.psState = 4;
+
+        final AtomicLong downloaded = new AtomicLong();
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+        final Thread download = new Thread(() -> {
+            try (FileStream output = new FileStream(file)) {
+                for (int i = 0; i < BLOCK_COUNT; i++) {
+                    Thread.sleep(20);
+
+                    final int start = i * BLOCK_SIZE;
+                    final int end = (int) Math.min(start + BLOCK_SIZE, LENGTH);
+                    output.seek(start);
+                    output.write(data, start, end - start);
+                    downloaded.set(end);
+
+                    // the same as releasing a completed block
+                    synchronized (mission.LOCK) {
+                        mission.blocks[i] = -1;
+                        mission.LOCK.notifyAll();
+                    }
+                }
+            } catch (final Exception e) {
+                error.set(e);
+            }
+        });
+        download.start();
+
+        final byte[] result = new byte[(int) LENGTH];
+        try (ChunkFileInputStream source =
+                     new ChunkFileInputStream(new FileStream(file), 0, LENGTH, null)) {
+            source.setAvailability(mission::awaitDownloaded);
+
+            int position = 0;
+            while (position < LENGTH) {
+                position += source.read(result, position, DownloadMission.BUFFER_SIZE);
+                assertTrue("read past the downloaded blocks", position <= downloaded.get());
+            }
+        }
+
+        download.join();
+        assertNull(error.get());
+        assertArrayEquals(data, result);
+
+        // once the download is finished the post-processing is no longer restricted
+        mission.psState = 1;
+        assertEquals(Long.MAX_VALUE, mission.awaitDownloaded(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void testPartialBlockIsAcquiredAgain() throws IOException {
+        final byte[] data = createData();
+        final File file = createFile();
+        final DownloadMission mission = createMission();
+        mission.initBlockScheduling(1);
+
+        try (FileStream output = new FileStream(file)) {
+            // the response ended in the middle of the first block
+            final Block partial = mission.acquireBlock(0, 1);
+            assertEquals(0, partial.position);
+            assertFalse(download(output, data, partial, BLOCK_SIZE / 2));
+            mission.releaseBlock(partial);
+            assertEquals(BLOCK_SIZE / 2, mission.blocks[0]);
+
+            Block block;
+            while ((block = mission.acquireBlock(0, 1)) != null) {
+                if (block.position == 0) assertEquals(BLOCK_SIZE / 2, block.done);
+                assertTrue(download(output, data, block, BLOCK_SIZE));
+                mission.releaseBlock(block);
+            }
+        }
+
+        for (final int block : mission.blocks) {
+            assertEquals(-1, block);
+        }
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testUntouchedBlocksOfSpanAreAcquiredAgain() throws IOException {
+        final byte[] data = createData();
+        final File file = createFile();
+        final DownloadMission mission = createMission();
+        mission.initBlockScheduling(1);
+
+        try (FileStream output = new FileStream(file)) {
+            // a single request for the first three blocks, stopped in the middle of the second
+            Block block = mission.acquireBlock(0, 3);
+            assertEquals(3, block.spanEnd);
+            assertTrue(download(output, data, block, BLOCK_SIZE));
+            assertEquals(0, block.claim(1));
+
+            block = mission.nextBlock(block);
+            assertEquals(1, block.position);
+            assertFalse(download(output, data, block, BLOCK_SIZE / 2));
+            mission.releaseBlock(block);
+            assertEquals(-1, mission.blocks[0]);
+            assertEquals(BLOCK_SIZE / 2, mission.blocks[1]);
+            assertEquals(0, mission.blocks[2]);
+
+            while ((block = mission.acquireBlock(0, 1)) != null) {
+                assertTrue(download(output, data, block, BLOCK_SIZE));
+                mission.releaseBlock(block);
+            }
+        }
+
+        for (final int block : mission.blocks) {
+            assertEquals(-1, block);
+        }
+        assertArrayEquals(data, Files.readAllBytes(file.toPath()));
+    }
+}
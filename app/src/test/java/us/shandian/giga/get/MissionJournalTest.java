@@ -0,0 +1,126 @@
+package us.shandian.giga.get;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+public class MissionJournalTest {
+    private static final int BLOCK_COUNT = 8;
+
+    private static DownloadMission createMission() {
+        final DownloadMission mission = new DownloadMission(
+                new String[]{"https://example.com/video", "https://example.com/audio"},
+                null, 'v', null);
+        mission.source = "https://example.com/watch";
+        mission.timestamp = 1234567890L;
+        mission.length = (long) BLOCK_COUNT * DownloadMission.BLOCK_SIZE;
+        mission.offsets[1] = mission.length;
+        mission.current = 1;
+        mission.blocks = new int[BLOCK_COUNT];
+        mission.threadCount = 5;
+        mission.nearLength = mission.length * 2;
+        return mission;
+    }
+
+    private static void assertMissionEquals(final DownloadMission expected,
+                                            final DownloadMission actual) {
+        assertNotNull(actual);
+        assertEquals(expected.timestamp, actual.timestamp);
+        assertEquals(expected.kind, actual.kind);
+        assertEquals(expected.source, actual.source);
+        assertEquals(expected.length, actual.length);
+        assertArrayEquals(expected.urls, actual.urls);
+        assertArrayEquals(expected.offsets, actual.offsets);
+        assertEquals(expected.current, actual.current);
+        assertEquals(expected.done, actual.done);
+        assertEquals(expected.psState, actual.psState);
+        assertEquals(expected.nearLength, actual.nearLength);
+        assertArrayEquals(expected.blocks, actual.blocks);
+        assertEquals(expected.threadCount, actual.threadCount);
+        assertEquals(expected.enqueued, actual.enqueued);
+        assertEquals(expected.errCode, actual.errCode);
+    }
+
+    private static void progress(final File file, final DownloadMission mission,
+                                 final int block) {
+        mission.blocks[block] = -1;
+        mission.done += DownloadMission.BLOCK_SIZE;
+        mission.journal.append(file, mission);
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final File file = File.createTempFile("newpipe_", "");
+        final DownloadMission mission = createMission();
+
+        MissionJournal.write(file, mission);
+        assertMissionEquals(mission, MissionJournal.read(file));
+
+        progress(file, mission, 0);
+        progress(file, mission, 3);
+        mission.blocks[4] = 1000;
+        mission.errCode = DownloadMission.ERROR_CONNECT_HOST;
+        mission.enqueued = false;
+        mission.journal.append(file, mission);
+
+        final DownloadMission restored = MissionJournal.read(file);
+        assertMissionEquals(mission, restored);
+
+        // the restored mission keeps appending to the same file
+        progress(file, restored, 5);
+        assertMissionEquals(restored, MissionJournal.read(file));
+    }
+
+    @Test
+    public void testTruncatedRecordIsDiscarded() throws IOException {
+        final File file = File.createTempFile("newpipe_", "");
+        final DownloadMission mission = createMission();
+
+        MissionJournal.write(file, mission);
+        progress(file, mission, 0);
+        final long validLength = file.length();
+        final int[] validBlocks = mission.blocks.clone();
+        final long validDone = mission.done;
+
+        // the app was killed while appending the second record
+        progress(file, mission, 1);
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            output.setLength(validLength + (file.length() - validLength) / 2);
+        }
+        mission.blocks = validBlocks;
+        mission.done = validDone;
+
+        final DownloadMission restored = MissionJournal.read(file);
+        assertMissionEquals(mission, restored);
+
+        // the damaged record was dropped, so the new records can be read back
+        progress(file, restored, 2);
+        assertMissionEquals(restored, MissionJournal.read(file));
+    }
+
+    @Test
+    public void testCorruptRecordIsDiscarded() throws IOException {
+        final File file = File.createTempFile("newpipe_", "");
+        final DownloadMission mission = createMission();
+
+        MissionJournal.write(file, mission);
+        progress(file, mission, 0);
+        final long validLength = file.length();
+
+        try (FileOutputStream output = new FileOutputStream(file, true)) {
+            output.write(new byte[]{0x7F, 0x12, 0x34, 0x56, 0x78});
+        }
+
+        final DownloadMission restored = MissionJournal.read(file);
+        assertMissionEquals(mission, restored);
+        assertTrue("the file was not rewritten", file.length() <= validLength);
+    }
+}
@@ -0,0 +1,170 @@
+package us.shandian.giga.io;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class CircularFileWriterTest {
+    private static final int LENGTH = 3 * 1024 * 1024;
+    private static final int CHUNK = 10000;
+
+    /**
+     * Fails one write, like a full storage would do
+     */
+    private static class FailingStream extends FileStream {
+        private final AtomicInteger writes = new AtomicInteger();
+        private final int failAt;
+
+        FailingStream(final File file, final int failAt) throws IOException {
+            super(file);
+            this.failAt = failAt;
+        }
+
+        @Override
+        public void write(final byte[] buffer, final int offset, final int count)
+                throws IOException {
+            if (writes.incrementAndGet() == failAt) {
+                throw new IOException("No space left on device");
+            }
+            super.write(buffer, offset, count);
+        }
+
+        @Override
+        public int write(final ByteBuffer buffer, final long position) throws IOException {
+            // used by the writing thread
+            if (writes.incrementAndGet() == failAt) {
+                throw new IOException("No space left on device");
+            }
+            return super.write(buffer, position);
+        }
+    }
+
+    private static byte[] createData() {
+        final byte[] data = new byte[LENGTH];
+        new Random(7).nextBytes(data);
+        return data;
+    }
+
+    private static void write(final CircularFileWriter writer, final byte[] data)
+            throws IOException {
+        for (int i = 0; i < data.length; i += CHUNK) {
+            writer.write(data, i, Math.min(CHUNK, data.length - i));
+        }
+    }
+
+    @Test
+    public void testErrorIsRecoveredAndWritingContinues() throws Exception {
+        final byte[] data = createData();
+        final File output = File.createTempFile("newpipe_", "");
+        final File temp = File.createTempFile("newpipe_", "");
+
+        final CountDownLatch resumed = new CountDownLatch(1);
+        final AtomicReference<Thread> handlerThread = new AtomicReference<>();
+        final AtomicInteger errors = new AtomicInteger();
+
+        final CircularFileWriter writer = new CircularFileWriter(
+                new FailingStream(output, 3), temp, () -> -1, 2);
+        writer.onWriteError = err -> {
+            errors.incrementAndGet();
+            handlerThread.set(Thread.currentThread());
+
+            // wait for the user, as the post-processing does
+            try {
+                return resumed.await(5, TimeUnit.SECONDS);
+            } catch (final InterruptedException e) {
+                return false;
+            }
+        };
+
+        // the user decides to continue after a while
+        final Thread user = new Thread(() -> {
+            try {
+                Thread.sleep(100);
+            } catch (final InterruptedException ignored) {
+                // continue anyway
+            }
+            resumed.countDown();
+        });
+        user.start();
+
+        write(writer, data);
+        assertEquals(LENGTH, writer.finalizeFile());
+        user.join();
+
+        assertEquals(1, errors.get());
+        assertSame("the error was not handled by the calling thread",
+                Thread.currentThread(), handlerThread.get());
+        assertArrayEquals(data, Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    public void testTransfersInterleaveWithQueuedBuffers() throws Exception {
+        final byte[] data = createData();
+        final File output = File.createTempFile("newpipe_", "");
+        final File temp = File.createTempFile("newpipe_", "");
+        final File source = File.createTempFile("newpipe_", "");
+        Files.write(source.toPath(), data);
+
+        final Random random = new Random(3);
+        try (RandomAccessFile input = new RandomAccessFile(source, "r")) {
+            final FileChannel channel = input.getChannel();
+            final CircularFileWriter writer =
+                    new CircularFileWriter(new FileStream(output), temp, () -> -1, 2);
+
+            // small writes stay queued while the transfers of the payloads are done, like the
+            // box headers and the samples written by the muxers
+            int position = 0;
+            while (position < LENGTH) {
+                final int count = Math.min(LENGTH - position, 1 + random.nextInt(300 * 1024));
+                if (random.nextBoolean()) {
+                    writer.write(data, position, count);
+                } else {
+                    assertEquals(count, writer.transferFrom(channel, position, count));
+                }
+                position += count;
+            }
+
+            assertEquals(LENGTH, writer.finalizeFile());
+        }
+
+        assertArrayEquals(data, Files.readAllBytes(output.toPath()));
+    }
+
+    @Test
+    public void testErrorNotRecoveredIsThrown() throws Exception {
+        final byte[] data = createData();
+        final File output = File.createTempFile("newpipe_", "");
+        final File temp = File.createTempFile("newpipe_", "");
+
+        final CircularFileWriter writer = new CircularFileWriter(
+                new FailingStream(output, 2), temp, () -> -1, 2);
+        writer.onWriteError = err -> false;
+
+        assertThrows(IOException.class, () -> {
+            write(writer, data);
+            writer.finalizeFile();
+        });
+
+        // must not wait forever for the writing thread
+        final Thread closing = new Thread(writer::close);
+        closing.start();
+        closing.join(5000);
+        assertFalse("close() is blocked", closing.isAlive());
+    }
+}
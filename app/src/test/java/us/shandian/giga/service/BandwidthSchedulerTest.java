@@ -0,0 +1,113 @@
+package us.shandian.giga.service;
+
+import org.junit.Test;
+
+import java.io.InterruptedIOException;
+
+import us.shandian.giga.get.DownloadMission;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BandwidthSchedulerTest {
+    private static final int CHUNK = 64 * 1024;
+    private static final long ONE_MIB = 1024 * 1024;
+
+    private static DownloadMission createMission() {
+        return new DownloadMission(new String[]{"https://example.com"}, null, 'v', null);
+    }
+
+    /**
+     * @return the elapsed milliseconds
+     */
+    private static long consume(final BandwidthScheduler scheduler, final DownloadMission mission,
+                                final long amount) throws InterruptedIOException {
+        final long start = System.nanoTime();
+        for (long i = 0; i < amount; i += CHUNK) {
+            scheduler.consume(mission, CHUNK);
+        }
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    @Test
+    public void testNoLimit() throws InterruptedIOException {
+        final BandwidthScheduler scheduler = new BandwidthScheduler();
+        final long elapsed = consume(scheduler, createMission(), 64 * ONE_MIB);
+        assertTrue("waited " + elapsed + "ms without a limit", elapsed < 500);
+    }
+
+    @Test
+    public void testNoLimitDoesNotTakeTheLock() throws Exception {
+        final BandwidthScheduler scheduler = new BandwidthScheduler();
+        final DownloadMission mission = createMission();
+
+        final Thread thread = new Thread(() -> {
+            try {
+                consume(scheduler, mission, 16 * ONE_MIB);
+            } catch (final InterruptedIOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        // the reads are not blocked by another thread holding the scheduler
+        synchronized (scheduler) {
+            thread.start();
+            thread.join(2000);
+            assertFalse("the thread waited for the lock", thread.isAlive());
+        }
+    }
+
+    @Test
+    public void testLimit() throws InterruptedIOException {
+        final BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setLimit(ONE_MIB);
+
+        // the bucket starts empty, only the first read is not covered by the tokens
+        final long elapsed = consume(scheduler, createMission(), ONE_MIB);
+        assertTrue("took " + elapsed + "ms at 1 MiB/s", elapsed >= 800 && elapsed < 3000);
+    }
+
+    @Test
+    public void testThrottleOnPlayback() throws InterruptedIOException {
+        final BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setLimit(4 * ONE_MIB);
+        scheduler.setPlaybackActive(true);
+
+        // disabled by default
+        long elapsed = consume(scheduler, createMission(), ONE_MIB);
+        assertTrue("took " + elapsed + "ms at 4 MiB/s", elapsed < 500);
+
+        // a quarter of the limit is left to the downloads
+        scheduler.setThrottleOnPlayback(true);
+        elapsed = consume(scheduler, createMission(), ONE_MIB);
+        assertTrue("took " + elapsed + "ms at 1 MiB/s", elapsed >= 500 && elapsed < 3000);
+
+        scheduler.setPlaybackActive(false);
+        elapsed = consume(scheduler, createMission(), ONE_MIB);
+        assertTrue("took " + elapsed + "ms at 4 MiB/s", elapsed < 500);
+    }
+
+    @Test
+    public void testRemovingLimitWakesWaitingThreads() throws Exception {
+        final BandwidthScheduler scheduler = new BandwidthScheduler();
+        scheduler.setLimit(1024);
+
+        final DownloadMission mission = createMission();
+        final Thread thread = new Thread(() -> {
+            try {
+                // at 1 KiB/s this takes a minute
+                consume(scheduler, mission, 2 * CHUNK);
+            } catch (final InterruptedIOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        thread.start();
+
+        Thread.sleep(200);
+        assertTrue(thread.isAlive());
+
+        scheduler.setLimit(0);
+        thread.join(2000);
+        assertFalse("the thread is still waiting", thread.isAlive());
+    }
+}
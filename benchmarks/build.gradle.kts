@@ -0,0 +1,52 @@
+/*
+ * SPDX-FileCopyrightText: 2025 NewPipe e.V. <https://newpipe-ev.de>
+ * SPDX-License-Identifier: GPL-3.0-or-later
+ */
+
+/*
+ * JVM-only benchmarks of the muxers and demuxers used by the downloader. Those classes do not
+ * depend on the Android framework, so they are compiled here straight from the app sources,
+ * the few Android references are satisfied by the classes in src/shims.
+ *
+ * Run with: ./gradlew :benchmarks:jmh
+ * The results (MB/s and bytes allocated per operation) are written to build/results/jmh
+ */
+
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    toolchain {
+        languageVersion = JavaLanguageVersion.of(17)
+    }
+}
+
+val shims: SourceSet by sourceSets.creating
+
+sourceSets {
+    main {
+        java {
+            setSrcDirs(listOf("../app/src/main/java"))
+            include("org/schabi/newpipe/streams/*.java")
+            include("org/schabi/newpipe/streams/io/BufferPool.java")
+            include("org/schabi/newpipe/streams/io/SharpStream.java")
+            include("us/shandian/giga/io/FileStream.java")
+        }
+    }
+}
+
+dependencies {
+    implementation(shims.output)
+
+    compileOnly(libs.androidx.annotation)
+    implementation(libs.jsoup)
+    implementation(libs.newpipe.extractor)
+}
+
+jmh {
+    jmhVersion = libs.versions.jmh.get()
+    profilers = listOf("gc")
+    resultFormat = "JSON"
+}
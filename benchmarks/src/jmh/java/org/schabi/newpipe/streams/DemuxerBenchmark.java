@@ -0,0 +1,92 @@
+package org.schabi.newpipe.streams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashChunk;
+import org.schabi.newpipe.streams.Mp4DashReader.Mp4DashSample;
+import org.schabi.newpipe.streams.MediaState.Source;
+import org.schabi.newpipe.streams.MediaState.Throughput;
+import org.schabi.newpipe.streams.WebMReader.Cluster;
+import org.schabi.newpipe.streams.WebMReader.Segment;
+import org.schabi.newpipe.streams.WebMReader.SimpleBlock;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the readers alone, every sample of the selected track is read into memory like the
+ * writers do.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DemuxerBenchmark {
+
+    @Benchmark
+    public long mp4Dash(final MediaState media, final Throughput throughput)
+            throws IOException {
+        final SharpStream source = media.open(Source.DASH_VIDEO);
+        final Mp4DashReader reader = new Mp4DashReader(source);
+        long samples = 0;
+
+        try {
+            reader.parse();
+            reader.selectTrack(0);
+
+            Mp4DashChunk chunk;
+            while ((chunk = reader.getNextChunk(false)) != null) {
+                Mp4DashSample sample;
+                while ((sample = chunk.getNextSample()) != null) {
+                    samples += sample.data.length;
+                }
+            }
+        } finally {
+            reader.release();
+            source.close();
+        }
+
+        throughput.add(media.dashVideo.length);
+        return samples;
+    }
+
+    @Benchmark
+    public long webm(final MediaState media, final Throughput throughput) throws IOException {
+        final SharpStream source = media.open(Source.WEBM_VIDEO);
+        final WebMReader reader = new WebMReader(source);
+        final byte[] buffer = new byte[64 * 1024];
+        long samples = 0;
+
+        try {
+            reader.parse();
+            reader.selectTrack(0);
+
+            Segment segment;
+            while ((segment = reader.getNextSegment()) != null) {
+                Cluster cluster;
+                while ((cluster = segment.getNextCluster()) != null) {
+                    SimpleBlock block;
+                    while ((block = cluster.getNextSimpleBlock()) != null) {
+                        int read;
+                        while ((read = block.data.read(buffer)) > 0) {
+                            samples += read;
+                        }
+                    }
+                }
+            }
+        } finally {
+            reader.release();
+            source.close();
+        }
+
+        throughput.add(media.webmVideo.length);
+        return samples;
+    }
+}
@@ -0,0 +1,154 @@
+package org.schabi.newpipe.streams;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import us.shandian.giga.io.FileStream;
+
+/**
+ * Fixtures shared by the benchmarks, the media is generated once per trial and, when the
+ * {@code file} storage is selected, written to temporary files.
+ */
+@State(Scope.Benchmark)
+public class MediaState {
+    /**
+     * Duration of the generated media, in seconds
+     */
+    @Param({"10", "60", "240"})
+    public int duration;
+
+    /**
+     * Where the sources are read from and the output is written to, {@code memory} or
+     * {@code file}
+     */
+    @Param({"memory", "file"})
+    public String storage;
+
+    byte[] dashVideo;
+    byte[] dashAudio;
+    byte[] webmVideo;
+    byte[] webmAudio;
+    byte[] ttml;
+
+    private File directory;
+    private final File[] files = new File[Source.values().length];
+    private File outputFile;
+    private MemorySharpStream outputMemory;
+
+    enum Source {
+        DASH_VIDEO, DASH_AUDIO, WEBM_VIDEO, WEBM_AUDIO, TTML
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        dashVideo = SyntheticMedia.dash(true, duration, 1);
+        dashAudio = SyntheticMedia.dash(false, duration, 2);
+        webmVideo = SyntheticMedia.webm(true, duration, 3);
+        webmAudio = SyntheticMedia.webm(false, duration, 4);
+        ttml = SyntheticMedia.ttml(duration);
+
+        if (isFile()) {
+            directory = Files.createTempDirectory("newpipe_bench").toFile();
+            for (final Source source : Source.values()) {
+                files[source.ordinal()] = new File(directory, source.name());
+                Files.write(files[source.ordinal()].toPath(), getBytes(source));
+            }
+            outputFile = new File(directory, "output");
+        } else {
+            outputMemory = new MemorySharpStream(dashVideo.length + dashAudio.length + 1024);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (directory == null) {
+            return;
+        }
+
+        final File[] content = directory.listFiles();
+        if (content != null) {
+            for (final File file : content) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    /**
+     * Opens one of the fixtures, the caller must close the returned stream
+     *
+     * @param source the fixture to open
+     * @return a readable and seekable stream
+     * @throws IOException if the fixture file can not be opened
+     */
+    SharpStream open(final Source source) throws IOException {
+        if (isFile()) {
+            return new FileStream(files[source.ordinal()]);
+        }
+        return new MemorySharpStream(getBytes(source));
+    }
+
+    /**
+     * Opens the output stream, the previous content is discarded
+     *
+     * @return an empty writable and seekable stream
+     * @throws IOException if the output file can not be opened
+     */
+    SharpStream output() throws IOException {
+        if (isFile()) {
+            final FileStream stream = new FileStream(outputFile);
+            stream.setLength(0);
+            return stream;
+        }
+
+        outputMemory.reset();
+        return outputMemory;
+    }
+
+    private boolean isFile() {
+        return "file".equals(storage);
+    }
+
+    private byte[] getBytes(final Source source) {
+        switch (source) {
+            case DASH_VIDEO:
+                return dashVideo;
+            case DASH_AUDIO:
+                return dashAudio;
+            case WEBM_VIDEO:
+                return webmVideo;
+            case WEBM_AUDIO:
+                return webmAudio;
+            default:
+                return ttml;
+        }
+    }
+
+    /**
+     * Reports the amount of processed media, JMH shows it as MB/s next to the score
+     */
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+        public double megabytes;
+
+        void add(final long bytes) {
+            megabytes += bytes / (1024.0 * 1024.0);
+        }
+
+        @Setup(Level.Iteration)
+        public void clean() {
+            megabytes = 0;
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package org.schabi.newpipe.streams;
+
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Seekable {@link SharpStream} backed by a byte array, used to measure the muxers and demuxers
+ * without the cost of the storage.
+ */
+final class MemorySharpStream extends SharpStream {
+    private byte[] buffer;
+    private final boolean writable;
+    private int position;
+    private int length;
+    private boolean closed;
+
+    /**
+     * Creates a read-only stream over the given data, the array is not copied
+     *
+     * @param data the stream contents
+     */
+    MemorySharpStream(final byte[] data) {
+        this.buffer = data;
+        this.length = data.length;
+        this.writable = false;
+    }
+
+    /**
+     * Creates an empty writable stream
+     *
+     * @param capacity initial capacity, the stream grows as needed
+     */
+    MemorySharpStream(final int capacity) {
+        this.buffer = new byte[capacity];
+        this.writable = true;
+    }
+
+    /**
+     * Discards the contents and reopens the stream, the buffer is kept for the next use
+     */
+    void reset() {
+        position = 0;
+        if (writable) {
+            length = 0;
+        }
+        closed = false;
+    }
+
+    @Override
+    public int read() {
+        if (position >= length) {
+            return -1;
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] buf) {
+        return read(buf, 0, buf.length);
+    }
+
+    @Override
+    public int read(final byte[] buf, final int offset, final int count) {
+        if (position >= length) {
+            return count < 1 ? 0 : -1;
+        }
+
+        final int amount = Math.min(count, length - position);
+        System.arraycopy(buffer, position, buf, offset, amount);
+        position += amount;
+
+        return amount;
+    }
+
+    @Override
+    public long skip(final long amount) {
+        final int skipped = (int) Math.max(0, Math.min(amount, length - position));
+        position += skipped;
+        return skipped;
+    }
+
+    @Override
+    public long available() {
+        return length - position;
+    }
+
+    @Override
+    public void rewind() {
+        position = 0;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public boolean canRewind() {
+        return true;
+    }
+
+    @Override
+    public boolean canRead() {
+        return true;
+    }
+
+    @Override
+    public boolean canWrite() {
+        return writable;
+    }
+
+    @Override
+    public boolean canSeek() {
+        return true;
+    }
+
+    @Override
+    public boolean canSetLength() {
+        return writable;
+    }
+
+    @Override
+    public void write(final byte value) throws IOException {
+        ensureCapacity(position + 1);
+        buffer[position++] = value;
+        length = Math.max(length, position);
+    }
+
+    @Override
+    public void write(final byte[] buf) throws IOException {
+        write(buf, 0, buf.length);
+    }
+
+    @Override
+    public void write(final byte[] buf, final int offset, final int count) throws IOException {
+        ensureCapacity(position + count);
+        System.arraycopy(buf, offset, buffer, position, count);
+        position += count;
+        length = Math.max(length, position);
+    }
+
+    @Override
+    public void setLength(final long newLength) throws IOException {
+        ensureCapacity((int) newLength);
+        if (newLength > length) {
+            Arrays.fill(buffer, length, (int) newLength, (byte) 0);
+        }
+        length = (int) newLength;
+        position = Math.min(position, length);
+    }
+
+    @Override
+    public void seek(final long offset) throws IOException {
+        if (offset < 0 || offset > length) {
+            throw new IOException("offset out of bounds: " + offset);
+        }
+        position = (int) offset;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    private void ensureCapacity(final int capacity) throws IOException {
+        if (!writable) {
+            throw new IOException("read-only stream");
+        }
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
+        }
+    }
+}
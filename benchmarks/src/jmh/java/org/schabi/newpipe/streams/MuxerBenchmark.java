@@ -0,0 +1,125 @@
+package org.schabi.newpipe.streams;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.schabi.newpipe.streams.MediaState.Source;
+import org.schabi.newpipe.streams.MediaState.Throughput;
+import org.schabi.newpipe.streams.io.SharpStream;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the writers used by the download post-processing, the score is in operations per
+ * second and the {@code megabytes} counter gives the MB/s of the source media.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MuxerBenchmark {
+
+    @Benchmark
+    public long mp4FromDash(final MediaState media, final Throughput throughput)
+            throws IOException {
+        return mp4FromDash(media, throughput, false);
+    }
+
+    @Benchmark
+    public long mp4FromDashFragmented(final MediaState media, final Throughput throughput)
+            throws IOException {
+        return mp4FromDash(media, throughput, true);
+    }
+
+    @Benchmark
+    public long webm(final MediaState media, final Throughput throughput) throws IOException {
+        final SharpStream output = media.output();
+        final WebMWriter muxer = new WebMWriter(
+                media.open(Source.WEBM_VIDEO), media.open(Source.WEBM_AUDIO));
+
+        final long length;
+        try {
+            muxer.parseSources();
+            muxer.selectTracks(0, 0);
+            muxer.build(output);
+            length = output.length();
+        } finally {
+            muxer.close();
+            output.close();
+        }
+
+        throughput.add(media.webmVideo.length + media.webmAudio.length);
+        return length;
+    }
+
+    @Benchmark
+    public long oggFromWebM(final MediaState media, final Throughput throughput)
+            throws IOException {
+        final SharpStream output = media.output();
+        final OggFromWebMWriter demuxer =
+                new OggFromWebMWriter(media.open(Source.WEBM_AUDIO), output, null);
+
+        final long length;
+        try {
+            demuxer.parseSource();
+            demuxer.selectTrack(0);
+            demuxer.build();
+            length = output.length();
+        } finally {
+            demuxer.close();
+        }
+
+        throughput.add(media.webmAudio.length);
+        return length;
+    }
+
+    @Benchmark
+    public long srtFromTtml(final MediaState media, final Throughput throughput)
+            throws IOException {
+        final SharpStream output = media.output();
+        final SharpStream source = media.open(Source.TTML);
+
+        final long length;
+        try {
+            new SrtFromTtmlWriter(output, false).build(source);
+            length = output.length();
+        } finally {
+            source.close();
+            output.close();
+        }
+
+        throughput.add(media.ttml.length);
+        return length;
+    }
+
+    private static long mp4FromDash(final MediaState media, final Throughput throughput,
+                                    final boolean fragmented) throws IOException {
+        final SharpStream output = media.output();
+        final Mp4FromDashWriter muxer = new Mp4FromDashWriter(
+                media.open(Source.DASH_VIDEO), media.open(Source.DASH_AUDIO));
+
+        final long length;
+        try {
+            muxer.parseSources();
+            muxer.selectTracks(0, 0);
+            if (fragmented) {
+                muxer.buildFragmented(output);
+            } else {
+                muxer.build(output);
+            }
+            length = output.length();
+        } finally {
+            muxer.close();
+            output.close();
+        }
+
+        throughput.add(media.dashVideo.length + media.dashAudio.length);
+        return length;
+    }
+}
@@ -0,0 +1,323 @@
+package org.schabi.newpipe.streams;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Generates the fixtures used by the benchmarks: fragmented MP4 (DASH) and WebM files with a
+ * single video or audio track, and TTML subtitles. The sample payloads are random bytes, only
+ * the container structure is meaningful.
+ */
+final class SyntheticMedia {
+    static final int VIDEO_BITRATE = 2_000_000; // 2 Mbit/s
+    static final int AUDIO_BITRATE = 128_000; // 128 kbit/s
+
+    private static final int[] MATRIX = {0x10000, 0, 0, 0, 0x10000, 0, 0, 0, 0x40000000};
+
+    private static final int VIDEO_TIMESCALE = 30000;
+    private static final int VIDEO_FRAME_DURATION = 1001; // 29.97 fps
+    private static final int AUDIO_TIMESCALE = 48000;
+    private static final int AUDIO_FRAME_DURATION = 1024;
+    private static final int OPUS_FRAME_MS = 20;
+    private static final int CLUSTER_MS = 2000;
+
+    private SyntheticMedia() {
+    }
+
+    // <editor-fold defaultstate="collapsed" desc="DASH">
+
+    /**
+     * Creates a fragmented MP4 file, each fragment holds about one second of media
+     *
+     * @param video    {@code true} for an AVC video track, {@code false} for an AAC audio track
+     * @param duration duration in seconds
+     * @param seed     seed of the random payload
+     * @return the file contents
+     */
+    static byte[] dash(final boolean video, final int duration, final long seed) {
+        final int timescale = video ? VIDEO_TIMESCALE : AUDIO_TIMESCALE;
+        final int frameDuration = video ? VIDEO_FRAME_DURATION : AUDIO_FRAME_DURATION;
+        final int framesPerFragment = timescale / frameDuration;
+        final int frameSize = (video ? VIDEO_BITRATE : AUDIO_BITRATE) / 8 / framesPerFragment;
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, box("ftyp", ints(0x64617368, 0, 0x69736F36, 0x6D703431))); // dash iso6 mp41
+        write(out, makeMoov(video, timescale));
+
+        final Random random = new Random(seed);
+        long decodeTime = 0;
+
+        for (int fragment = 0; fragment < duration; fragment++) {
+            final int rowSize = video ? 16 : 8;
+            final int trunSize = 20 + framesPerFragment * rowSize;
+            final int moofSize = 8 + 16 + 8 + 16 + 20 + trunSize;
+            final ByteBuffer trun = ByteBuffer.allocate(trunSize - 8)
+                    .putInt(video ? 0xF01 : 0x301)
+                    .putInt(framesPerFragment)
+                    .putInt(moofSize + 8); // data offset, after the mdat header
+
+            int total = 0;
+            for (int i = 0; i < framesPerFragment; i++) {
+                final int size = frameSize / 2 + random.nextInt(frameSize);
+                total += size;
+
+                trun.putInt(frameDuration).putInt(size);
+                if (video) {
+                    trun.putInt(i == 0 ? 0x02000000 : 0x01010000); // sample flags
+                    trun.putInt((i % 3) * frameDuration); // composition time offset
+                }
+            }
+
+            write(out, box("moof",
+                    box("mfhd", ints(0, fragment + 1)),
+                    box("traf",
+                            box("tfhd", ints(0x020000, 1)),
+                            box("tfdt", ByteBuffer.allocate(12)
+                                    .putInt(0x01000000).putLong(decodeTime).array()),
+                            box("trun", trun.array()))));
+
+            final byte[] payload = new byte[total];
+            random.nextBytes(payload);
+            write(out, box("mdat", payload));
+
+            decodeTime += (long) frameDuration * framesPerFragment;
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] makeMoov(final boolean video, final int timescale) {
+        final ByteBuffer mvhd = ByteBuffer.allocate(100)
+                .putInt(0).putInt(0).putInt(0).putInt(timescale).putInt(0)
+                .putInt(0x10000).putShort((short) 0x100).put(new byte[10]);
+        for (final int value : MATRIX) {
+            mvhd.putInt(value);
+        }
+        mvhd.put(new byte[24]).putInt(2);
+
+        final ByteBuffer tkhd = ByteBuffer.allocate(84)
+                .putInt(3).putInt(0).putInt(0).putInt(1).putInt(0).putInt(0).put(new byte[8])
+                .putShort((short) 0).putShort((short) 0)
+                .putShort((short) (video ? 0 : 0x100)).putShort((short) 0);
+        for (final int value : MATRIX) {
+            tkhd.putInt(value);
+        }
+        tkhd.putInt(video ? 1280 << 16 : 0).putInt(video ? 720 << 16 : 0);
+
+        final byte[] mdhd = box("mdhd", ByteBuffer.allocate(24)
+                .putInt(0).putInt(0).putInt(0).putInt(timescale).putInt(0)
+                .putShort((short) 0x55c4).putShort((short) 0).array());
+        final byte[] hdlr = box("hdlr", ByteBuffer.allocate(25)
+                .putInt(0).putInt(0).put(ascii(video ? "vide" : "soun")).put(new byte[13])
+                .array());
+        final byte[] mhd = video ? box("vmhd", ints(1, 0, 0)) : box("smhd", ints(0, 0));
+        final byte[] dinf = box("dinf", box("dref", ints(0, 1), box("url ", ints(1))));
+        final byte[] stsd = box("stsd", ints(0, 1),
+                box(video ? "avc1" : "mp4a", new byte[video ? 78 : 28]));
+        final byte[] stbl = box("stbl", stsd, box("stts", ints(0, 0)), box("stsc", ints(0, 0)),
+                box("stsz", ints(0, 0, 0)), box("stco", ints(0, 0)));
+
+        return box("moov",
+                box("mvhd", mvhd.array()),
+                box("trak", box("tkhd", tkhd.array()),
+                        box("mdia", mdhd, hdlr, box("minf", mhd, dinf, stbl))),
+                box("mvex", box("trex", ints(0, 1, 1, 0, 0, 0))));
+    }
+
+    private static byte[] box(final String type, final byte[]... children) {
+        int size = 8;
+        for (final byte[] child : children) {
+            size += child.length;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size).putInt(size).put(ascii(type));
+        for (final byte[] child : children) {
+            buffer.put(child);
+        }
+
+        return buffer.array();
+    }
+
+    private static byte[] ints(final int... values) {
+        final ByteBuffer buffer = ByteBuffer.allocate(values.length * 4);
+        for (final int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    // </editor-fold>
+
+    // <editor-fold defaultstate="collapsed" desc="WebM">
+
+    /**
+     * Creates a WebM file with clusters of two seconds
+     *
+     * @param video    {@code true} for a VP9 video track, {@code false} for an Opus audio track
+     * @param duration duration in seconds
+     * @param seed     seed of the random payload
+     * @return the file contents
+     */
+    static byte[] webm(final boolean video, final int duration, final long seed) {
+        final int frameMs = video ? 33 : OPUS_FRAME_MS;
+        final int frameSize = (video ? VIDEO_BITRATE : AUDIO_BITRATE) / 8 * frameMs / 1000;
+        final Random random = new Random(seed);
+
+        final ByteArrayOutputStream segment = new ByteArrayOutputStream();
+        write(segment, element(0x1549A966, // Info
+                element(0x2AD7B1, uint(1_000_000)))); // TimecodeScale, in nanoseconds
+        write(segment, element(0x1654AE6B, // Tracks
+                element(0xAE, makeTrackEntry(video, frameMs))));
+
+        for (int cluster = 0; cluster < duration * 1000; cluster += CLUSTER_MS) {
+            final ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+            write(blocks, element(0xE7, uint(cluster))); // Timecode
+
+            for (int time = 0; time < CLUSTER_MS; time += frameMs) {
+                final byte[] block = new byte[4 + frameSize / 2 + random.nextInt(frameSize)];
+                random.nextBytes(block);
+
+                block[0] = (byte) 0x81; // track number
+                block[1] = (byte) (time >> 8);
+                block[2] = (byte) time;
+                block[3] = (byte) (!video || time == 0 ? 0x80 : 0x00); // keyframe
+
+                write(blocks, element(0xA3, block)); // SimpleBlock
+            }
+
+            write(segment, element(0x1F43B675, blocks.toByteArray())); // Cluster
+        }
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(out, element(0x1A45DFA3, // EBML
+                element(0x4286, uint(1)), // EBMLVersion
+                element(0x42F7, uint(1)), // EBMLReadVersion
+                element(0x42F2, uint(4)), // EBMLMaxIDLength
+                element(0x42F3, uint(8)), // EBMLMaxSizeLength
+                element(0x4282, ascii("webm")), // DocType
+                element(0x4287, uint(4)), // DocTypeVersion
+                element(0x4285, uint(2)))); // DocTypeReadVersion
+        write(out, element(0x18538067, segment.toByteArray())); // Segment
+
+        return out.toByteArray();
+    }
+
+    private static byte[] makeTrackEntry(final boolean video, final int frameMs) {
+        if (video) {
+            return concat(
+                    element(0xD7, uint(1)), // TrackNumber
+                    element(0x83, uint(1)), // TrackType
+                    element(0x86, ascii("V_VP9")), // CodecID
+                    element(0x9C, uint(0)), // FlagLacing
+                    element(0x23E383, uint(frameMs * 1_000_000L)), // DefaultDuration
+                    element(0xE0, concat( // Video
+                            element(0xB0, uint(1280)), // PixelWidth
+                            element(0xBA, uint(720))))); // PixelHeight
+        }
+
+        final byte[] opusHead = ByteBuffer.allocate(19)
+                .put(ascii("OpusHead")).put((byte) 1).put((byte) 2)
+                .put(new byte[]{0x38, 0x01, (byte) 0x80, (byte) 0xBB, 0x00, 0x00, 0x00, 0x00, 0x00})
+                .array();
+
+        return concat(
+                element(0xD7, uint(1)), // TrackNumber
+                element(0x83, uint(2)), // TrackType
+                element(0x86, ascii("A_OPUS")), // CodecID
+                element(0x63A2, opusHead), // CodecPrivate
+                element(0x9C, uint(0)), // FlagLacing
+                element(0x56AA, uint(6_500_000)), // CodecDelay
+                element(0x56BB, uint(80_000_000)), // SeekPreRoll
+                element(0xE1, concat( // Audio
+                        // SamplingFrequency, OggFromWebMWriter looks for it with a 1 byte size
+                        ByteBuffer.allocate(6).putShort((short) 0xB584).putFloat(48000f).array(),
+                        element(0x9F, uint(2))))); // Channels
+    }
+
+    private static byte[] element(final int id, final byte[]... children) {
+        final byte[] content = concat(children);
+        final ByteBuffer buffer = ByteBuffer.allocate(4 + 8 + content.length);
+
+        // the identifiers are stored with their length marker
+        if (id > 0xFFFFFF) {
+            buffer.putInt(id);
+        } else if (id > 0xFFFF) {
+            buffer.put((byte) (id >> 16)).putShort((short) id);
+        } else if (id > 0xFF) {
+            buffer.putShort((short) id);
+        } else {
+            buffer.put((byte) id);
+        }
+
+        // always use 8 bytes for the size, simplifies the element writing
+        buffer.putLong(0x0100000000000000L | content.length);
+        buffer.put(content);
+
+        final byte[] bytes = new byte[buffer.position()];
+        buffer.flip();
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    private static byte[] uint(final long value) {
+        int length = 1;
+        while (length < 8 && (value >>> (length * 8)) != 0) {
+            length++;
+        }
+
+        final byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) (value >>> ((length - i - 1) * 8));
+        }
+        return bytes;
+    }
+
+    // </editor-fold>
+
+    /**
+     * Creates TTML subtitles, with a cue every two seconds
+     *
+     * @param duration duration in seconds
+     * @return the file contents
+     */
+    static byte[] ttml(final int duration) {
+        final StringBuilder builder = new StringBuilder(duration * 80);
+        builder.append("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n")
+                .append("<tt xml:lang=\"en\" xmlns=\"http://www.w3.org/ns/ttml\">")
+                .append("<body><div>\n");
+
+        for (int time = 0; time < duration; time += 2) {
+            builder.append(String.format(Locale.ROOT,
+                    "<p begin=\"%s\" end=\"%s\">Subtitle line number %d<br/>"
+                            + "<span>second line &amp; more text</span></p>\n",
+                    timestamp(time), timestamp(time + 2), time / 2));
+        }
+
+        builder.append("</div></body></tt>\n");
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String timestamp(final int seconds) {
+        return String.format(Locale.ROOT, "%02d:%02d:%02d.000",
+                seconds / 3600, (seconds / 60) % 60, seconds % 60);
+    }
+
+    private static byte[] concat(final byte[]... parts) {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (final byte[] part : parts) {
+            write(out, part);
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(final ByteArrayOutputStream out, final byte[] bytes) {
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static byte[] ascii(final String str) {
+        return str.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,29 @@
+package android.util;
+
+/**
+ * Replacement of the Android logger for the JVM benchmarks, the messages are discarded.
+ */
+public final class Log {
+    private Log() {
+    }
+
+    public static int d(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int i(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int w(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int e(final String tag, final String msg) {
+        return 0;
+    }
+
+    public static int e(final String tag, final String msg, final Throwable tr) {
+        return 0;
+    }
+}
@@ -0,0 +1,18 @@
+package android.util;
+
+/**
+ * Replacement of the Android pair for the JVM benchmarks.
+ */
+public class Pair<F, S> {
+    public final F first;
+    public final S second;
+
+    public Pair(final F first, final S second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    public static <A, B> Pair<A, B> create(final A a, final B b) {
+        return new Pair<>(a, b);
+    }
+}
@@ -9,5 +9,6 @@ plugins {
     alias(libs.plugins.jetbrains.kotlin.kapt) apply false
     alias(libs.plugins.google.ksp) apply false
     alias(libs.plugins.jetbrains.kotlin.parcelize) apply false
+    alias(libs.plugins.jmh) apply false
     alias(libs.plugins.sonarqube) apply false
 }
@@ -20,6 +20,7 @@ dependencyResolutionManagement {
     }
 }
 include (":app")
+include (":benchmarks")
 
 // Use a local copy of NewPipe Extractor by uncommenting the lines below.
 // We assume, that NewPipe and NewPipe Extractor have the same parent directory.